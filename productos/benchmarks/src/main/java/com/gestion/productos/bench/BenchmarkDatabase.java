@@ -0,0 +1,229 @@
+package com.gestion.productos.bench;
+
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.DB;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prepara la base de datos de los benchmarks.
+ *
+ * Usa la base de datos de db.url (que debe ser una BD dedicada, por ejemplo MINDEREST_BENCH, porque se borran sus tablas)
+ * y la rellena con el tamaño pedido:
+ * - bench.clients: número de clientes
+ * - bench.productsPerClient: productos por cliente (el producto j se llama igual en todos los clientes)
+ * - bench.equivalences: equivalencias aleatorias entre productos de clientes distintos
+ *
+ * Las tablas salen del mismo schema.sql de la aplicación. Si la BD ya tiene datos de ese mismo tamaño
+ * (tabla BENCH_META) no se vuelve a rellenar, así cada fork de JMH no repite la carga.
+ */
+public final class BenchmarkDatabase {
+
+    private static final Pattern CREATE_TABLE = Pattern.compile("(?i)CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(\\w+)");
+    private static final int CHUNK = 1000;
+
+    private final int clients;
+    private final int productsPerClient;
+    private final int equivalences;
+
+    private BenchmarkDatabase(int clients, int productsPerClient, int equivalences) {
+        this.clients = clients;
+        this.productsPerClient = productsPerClient;
+        this.equivalences = equivalences;
+    }
+
+    /**
+     * @return base de datos con el tamaño configurado, creada y rellena si hacía falta
+     */
+    public static BenchmarkDatabase prepare() {
+        BenchmarkDatabase db = new BenchmarkDatabase(
+            Config.getInt("bench.clients", 50),
+            Config.getInt("bench.productsPerClient", 2000),
+            Config.getInt("bench.equivalences", 50000)
+        );
+
+        if (db.clients < 2 || db.productsPerClient < 1) {
+            throw new IllegalArgumentException("Hacen falta al menos 2 clientes y 1 producto por cliente");
+        }
+
+        try {
+            if (!db.alreadySeeded()) {
+                db.createSchema();
+                db.seed();
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("No se pudo preparar la BD de benchmarks: " + e.getMessage(), e);
+        }
+
+        return db;
+    }
+
+    public int getClients() {return clients;}
+    public int getProductsPerClient() {return productsPerClient;}
+
+    public String clientCode(int client) {
+        return String.format("B%05d", client + 1);
+    }
+
+    // Los clientes se crean en orden en tablas vacías, así que el id es la posición + 1
+    public int clientId(int client) {
+        return client + 1;
+    }
+
+    public String productName(int product) {
+        return "Producto " + product;
+    }
+
+    // Igual que con los clientes: productos insertados en orden con AUTO_INCREMENT consecutivo
+    public int productId(int client, int product) {
+        return client * productsPerClient + product + 1;
+    }
+
+    private String scale() {
+        return clients + "x" + productsPerClient + "x" + equivalences;
+    }
+
+    private boolean alreadySeeded() {
+        try (Connection con = DB.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT SCALE FROM BENCH_META")) {
+            return rs.next() && scale().equals(rs.getString(1));
+        } catch (SQLException e) {
+            // Todavía no existe la tabla: hay que crear todo
+            return false;
+        }
+    }
+
+    /**
+     * Borra y vuelve a crear las tablas de schema.sql (sin las sentencias de DROP/CREATE DATABASE ni USE).
+     */
+    private void createSchema() throws SQLException, IOException {
+        String script;
+        try (InputStream is = BenchmarkDatabase.class.getClassLoader().getResourceAsStream("schema.sql")) {
+            if (is == null) {
+                throw new IOException("No se encuentra schema.sql en el classpath");
+            }
+            script = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        List<String> statements = new ArrayList<>();
+        List<String> tables = new ArrayList<>();
+        for (String raw : script.replaceAll("(?m)^\\s*--.*$", "").split(";")) {
+            String sql = raw.trim();
+            String upper = sql.toUpperCase();
+            if (sql.isEmpty() || upper.startsWith("DROP DATABASE") || upper.startsWith("CREATE DATABASE") || upper.startsWith("USE ")) {
+                continue;
+            }
+            Matcher m = CREATE_TABLE.matcher(sql);
+            if (m.find()) tables.add(m.group(1));
+            statements.add(sql);
+        }
+
+        try (Connection con = DB.getConnection();
+             Statement stmt = con.createStatement()) {
+
+            stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
+            try {
+                stmt.execute("DROP TABLE IF EXISTS BENCH_META");
+                for (String table : tables) {
+                    stmt.execute("DROP TABLE IF EXISTS " + table);
+                }
+            } finally {
+                stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+
+            for (String sql : statements) {
+                stmt.execute(sql);
+            }
+            stmt.execute("CREATE TABLE BENCH_META (SCALE VARCHAR(100) NOT NULL)");
+        }
+    }
+
+    /**
+     * Rellena clientes, productos y equivalencias usando los mismos caminos de carga masiva que la aplicación.
+     */
+    private void seed() throws SQLException {
+        ProductDAO productDAO = new ProductDAO();
+        EquivalenceDAO equivalenceDAO = new EquivalenceDAO();
+
+        try (Connection con = DB.getConnection()) {
+            con.setAutoCommit(false);
+
+            try (PreparedStatement stmt = con.prepareStatement("INSERT INTO CLIENTS (CODE, NAME) VALUES (?, ?)")) {
+                for (int c = 0; c < clients; c++) {
+                    stmt.setString(1, clientCode(c));
+                    stmt.setString(2, "Cliente benchmark " + (c + 1));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+
+            List<Product> rows = new ArrayList<>(CHUNK);
+            for (int c = 0; c < clients; c++) {
+                for (int p = 0; p < productsPerClient; p++) {
+                    rows.add(new Product(0, clientId(c), productName(p)));
+                    if (rows.size() == CHUNK) {
+                        productDAO.insertProductsIgnoringDuplicates(con, rows);
+                        rows.clear();
+                    }
+                }
+                con.commit();
+            }
+            productDAO.insertProductsIgnoringDuplicates(con, rows);
+            con.commit();
+
+            // Equivalencias aleatorias (semilla fija para que todas las ejecuciones tengan los mismos datos)
+            Random random = new Random(42);
+            List<int[]> pairs = new ArrayList<>(CHUNK);
+            for (int i = 0; i < equivalences && clients > 1; i++) {
+                int ca = random.nextInt(clients);
+                int cb = (ca + 1 + random.nextInt(clients - 1)) % clients;
+                int a = productId(ca, random.nextInt(productsPerClient));
+                int b = productId(cb, random.nextInt(productsPerClient));
+                pairs.add(new int[]{Math.min(a, b), Math.max(a, b)});
+                if (pairs.size() == CHUNK) {
+                    equivalenceDAO.insertEquivalencesIgnoringDuplicates(con, pairs);
+                    con.commit();
+                    pairs.clear();
+                }
+            }
+            equivalenceDAO.insertEquivalencesIgnoringDuplicates(con, pairs);
+
+            try (PreparedStatement stmt = con.prepareStatement("INSERT INTO BENCH_META (SCALE) VALUES (?)")) {
+                stmt.setString(1, scale());
+                stmt.executeUpdate();
+            }
+            con.commit();
+        }
+
+        checkProductIds();
+    }
+
+    private void checkProductIds() throws SQLException {
+        try (Connection con = DB.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*), MAX(ID_PRODUCT) FROM PRODUCTS")) {
+            rs.next();
+            long expected = (long) clients * productsPerClient;
+            if (rs.getLong(1) != expected || rs.getLong(2) != expected) {
+                throw new IllegalStateException("Los ID de producto no son consecutivos (¿BD compartida?): "
+                    + rs.getLong(1) + " filas, max id " + rs.getLong(2) + ", esperado " + expected);
+            }
+        }
+    }
+}
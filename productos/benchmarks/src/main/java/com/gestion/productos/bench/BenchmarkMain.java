@@ -0,0 +1,28 @@
+package com.gestion.productos.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Punto de entrada del jar de benchmarks.
+ * Lanza JMH con los argumentos recibidos y, si no se indica otra cosa, guarda los resultados
+ * en JSON (jmh-result.json) para poder compararlos entre versiones.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+        }
+        if (!jmhArgs.contains("-rff")) {
+            jmhArgs.add("-rff");
+            jmhArgs.add("jmh-result.json");
+        }
+
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
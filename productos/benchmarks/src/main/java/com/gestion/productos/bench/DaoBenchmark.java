@@ -0,0 +1,101 @@
+package com.gestion.productos.bench;
+
+import com.gestion.productos.dao.ClientDAO;
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks de los métodos de los DAO que están en el camino caliente de los casos de uso.
+ * Modo SampleTime: además de la media, JMH da percentiles (p50, p99, p99.9...) de cada llamada.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DaoBenchmark {
+
+    private BenchmarkDatabase db;
+    private final ClientDAO clientDAO = new ClientDAO();
+    private final ProductDAO productDAO = new ProductDAO();
+    private final EquivalenceDAO equivalenceDAO = new EquivalenceDAO();
+
+    private final AtomicLong insertCounter = new AtomicLong();
+    private final long runId = System.currentTimeMillis();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = BenchmarkDatabase.prepare();
+    }
+
+    /**
+     * Aleatorio por hilo, para no compartir estado entre hilos en @Threads > 1.
+     */
+    @State(Scope.Thread)
+    public static class Rnd {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public Client findByCodigo(Rnd r) {
+        return clientDAO.findByCodigo(db.clientCode(r.random.nextInt(db.getClients())));
+    }
+
+    // Mismo método sin la caché de clientes: mide la ida y vuelta real a la base de datos
+    @Benchmark
+    public Client findByCodigoUncached(Rnd r) {
+        ClientDAO.invalidateCache();
+        return clientDAO.findByCodigo(db.clientCode(r.random.nextInt(db.getClients())));
+    }
+
+    @Benchmark
+    public Product finByClientAndName(Rnd r) {
+        return productDAO.finByClientAndName(
+            db.clientId(r.random.nextInt(db.getClients())),
+            db.productName(r.random.nextInt(db.getProductsPerClient()))
+        );
+    }
+
+    @Benchmark
+    public List<Product> findEquivalents(Rnd r) {
+        return equivalenceDAO.findEquivalents(
+            db.productId(r.random.nextInt(db.getClients()), r.random.nextInt(db.getProductsPerClient()))
+        );
+    }
+
+    @Benchmark
+    public List<Product> findSameNameInOtherClients(Rnd r) {
+        return productDAO.findSameNameInOtherClients(
+            db.clientId(r.random.nextInt(db.getClients())),
+            db.productName(r.random.nextInt(db.getProductsPerClient()))
+        );
+    }
+
+    // Cada llamada inserta un producto nuevo (nombre único por ejecución), así que la tabla crece durante la medida
+    @Benchmark
+    public int insertProduct(Rnd r) {
+        return productDAO.insertProduct(
+            db.clientId(r.random.nextInt(db.getClients())),
+            "Bench " + runId + " " + insertCounter.incrementAndGet()
+        );
+    }
+}
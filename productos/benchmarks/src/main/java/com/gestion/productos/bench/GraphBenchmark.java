@@ -0,0 +1,73 @@
+package com.gestion.productos.bench;
+
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.graph.EquivalenceGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks del grafo de equivalencias en memoria: consultas (vecinos, grado, recorridos) y construcción completa.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphBenchmark {
+
+    private BenchmarkDatabase db;
+    private EquivalenceGraph graph;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = BenchmarkDatabase.prepare();
+        graph = EquivalenceGraph.build(new EquivalenceDAO(), 4);
+    }
+
+    @State(Scope.Thread)
+    public static class Rnd {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    private int randomProduct(Rnd r) {
+        return db.productId(r.random.nextInt(db.getClients()), r.random.nextInt(db.getProductsPerClient()));
+    }
+
+    @Benchmark
+    public int[] neighbors(Rnd r) {
+        return graph.neighbors(randomProduct(r));
+    }
+
+    @Benchmark
+    public int degree(Rnd r) {
+        return graph.degree(randomProduct(r));
+    }
+
+    @Benchmark
+    public int[] reachableDepth3(Rnd r) {
+        return graph.reachable(randomProduct(r), 3, 1000);
+    }
+
+    // Construcción completa leyendo EQUIVALENCES en paralelo
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    @Warmup(iterations = 1)
+    public EquivalenceGraph build() {
+        return EquivalenceGraph.build(new EquivalenceDAO(), 4);
+    }
+}
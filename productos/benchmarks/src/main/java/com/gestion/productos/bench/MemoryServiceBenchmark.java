@@ -0,0 +1,89 @@
+package com.gestion.productos.bench;
+
+import com.gestion.productos.dao.memory.InMemoryDatabase;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.services.Service;
+import com.gestion.productos.util.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Los mismos casos de uso que ServiceBenchmark pero sobre InMemoryDatabase: lo que cuesta la lógica del Service
+ * sin ningún viaje a MySQL. No necesita base de datos; el tamaño sale de las mismas claves bench.*.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemoryServiceBenchmark {
+
+    private int clients;
+    private int productsPerClient;
+    private Service service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        clients = Config.getInt("bench.clients", 50);
+        productsPerClient = Config.getInt("bench.productsPerClient", 2000);
+
+        InMemoryDatabase db = new InMemoryDatabase();
+        for (int c = 0; c < clients; c++) {
+            int clientId = db.clients().upsertClient(clientCode(c), "Cliente " + c).id();
+            Product[] rows = new Product[productsPerClient];
+            for (int p = 0; p < productsPerClient; p++) {
+                rows[p] = new Product(0, clientId, productName(p));
+            }
+            db.products().upsertProducts(List.of(rows));
+        }
+        service = new Service(db.clients(), db.products(), db.equivalences());
+    }
+
+    @State(Scope.Thread)
+    public static class Rnd {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public String establecerEquivalencia(Rnd r) {
+        int ca = r.random.nextInt(clients);
+        int cb = (ca + 1 + r.random.nextInt(clients - 1)) % clients;
+
+        return service.establecerEquivalencia(
+            clientCode(ca), productName(r.random.nextInt(productsPerClient)),
+            clientCode(cb), productName(r.random.nextInt(productsPerClient))
+        );
+    }
+
+    @Benchmark
+    public List<Product> listarEquivalentes(Rnd r) {
+        return service.listarEquivalentes(clientCode(r.random.nextInt(clients)), productName(r.random.nextInt(productsPerClient)));
+    }
+
+    @Benchmark
+    public List<Product> posiblesMismosProductos(Rnd r) {
+        return service.posiblesMismosProductos(clientCode(r.random.nextInt(clients)), productName(r.random.nextInt(productsPerClient)));
+    }
+
+    private static String clientCode(int client) {
+        return String.format("B%05d", client + 1);
+    }
+
+    private static String productName(int product) {
+        return "Producto " + product;
+    }
+}
@@ -0,0 +1,57 @@
+package com.gestion.productos.bench;
+
+import com.gestion.productos.services.Service;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark del caso de uso completo establecerEquivalencia (resolución de clientes y productos,
+ * comprobación de duplicado e inserción con su grupo de equivalencia).
+ * Las parejas son aleatorias: al principio casi todas son nuevas y con el tiempo aparecen más "ya existe".
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+
+    private BenchmarkDatabase db;
+    private Service service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = BenchmarkDatabase.prepare();
+        service = new Service();
+    }
+
+    @State(Scope.Thread)
+    public static class Rnd {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public String establecerEquivalencia(Rnd r) {
+        int clients = db.getClients();
+        int ca = r.random.nextInt(clients);
+        int cb = (ca + 1 + r.random.nextInt(clients - 1)) % clients;
+
+        return service.establecerEquivalencia(
+            db.clientCode(ca), db.productName(r.random.nextInt(db.getProductsPerClient())),
+            db.clientCode(cb), db.productName(r.random.nextInt(db.getProductsPerClient()))
+        );
+    }
+}
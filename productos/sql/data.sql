@@ -75,3 +75,16 @@ INSERT INTO PRODUCTS (CLIENT_ID, NAME) VALUES
 INSERT INTO EQUIVALENCES (PRODUCT_ID_A, PRODUCT_ID_B) VALUES
 (1, 17),   -- Smart TV 55 4K (C001) <-> Smart TV 55 4K (C005)
 (3, 37);   -- Aspirador robot (C001) <-> Aspirador robot (C010)
+
+-- Las mismas equivalencias en los dos sentidos
+INSERT INTO EQUIVALENCE_LINKS (PRODUCT_ID, EQUIVALENT_ID)
+SELECT PRODUCT_ID_A, PRODUCT_ID_B FROM EQUIVALENCES
+UNION ALL
+SELECT PRODUCT_ID_B, PRODUCT_ID_A FROM EQUIVALENCES;
+
+-- Grupos de las equivalencias anteriores (el id del grupo es el menor id de producto)
+INSERT INTO PRODUCT_CLUSTERS (PRODUCT_ID, CLUSTER_ID) VALUES
+(1, 1), (17, 1),
+(3, 3), (37, 3);
+
+-- NAME_NORM y NAME_HASH de los productos se quedan a NULL: la aplicación los rellena al arrancar (backfill)
@@ -0,0 +1,13 @@
+-- Migración: grupos (clusters) de equivalencia transitiva.
+-- Después de ejecutarla, rellenar la tabla desde la aplicación con la opción
+-- "7. Recalcular grupos de equivalencia" (Service.recalcularGruposEquivalencia).
+USE MINDEREST;
+
+CREATE TABLE IF NOT EXISTS PRODUCT_CLUSTERS (
+    PRODUCT_ID INT PRIMARY KEY,
+    CLUSTER_ID INT NOT NULL,
+
+    INDEX IDX_PRODUCT_CLUSTERS_CLUSTER (CLUSTER_ID),
+
+    FOREIGN KEY (PRODUCT_ID) REFERENCES PRODUCTS(ID_PRODUCT)
+);
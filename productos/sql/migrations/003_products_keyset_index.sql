@@ -0,0 +1,4 @@
+-- Migración: índice para la paginación por clave (CLIENT_ID, ID_PRODUCT) de ProductDAO.findPage.
+USE MINDEREST;
+
+CREATE INDEX IDX_PRODUCTS_CLIENT_PRODUCT ON PRODUCTS (CLIENT_ID, ID_PRODUCT);
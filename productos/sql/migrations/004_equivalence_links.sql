@@ -0,0 +1,19 @@
+-- Migración: equivalencias en los dos sentidos (EQUIVALENCE_LINKS) para que
+-- EquivalenceDAO.findEquivalents busque por índice esté el producto en A o en B.
+-- Copia las equivalencias existentes; a partir de aquí la aplicación mantiene las dos tablas a la vez.
+USE MINDEREST;
+
+CREATE TABLE IF NOT EXISTS EQUIVALENCE_LINKS (
+    PRODUCT_ID INT NOT NULL,
+    EQUIVALENT_ID INT NOT NULL,
+
+    PRIMARY KEY (PRODUCT_ID, EQUIVALENT_ID),
+
+    FOREIGN KEY (PRODUCT_ID) REFERENCES PRODUCTS(ID_PRODUCT),
+    FOREIGN KEY (EQUIVALENT_ID) REFERENCES PRODUCTS(ID_PRODUCT)
+);
+
+INSERT IGNORE INTO EQUIVALENCE_LINKS (PRODUCT_ID, EQUIVALENT_ID)
+SELECT PRODUCT_ID_A, PRODUCT_ID_B FROM EQUIVALENCES
+UNION ALL
+SELECT PRODUCT_ID_B, PRODUCT_ID_A FROM EQUIVALENCES;
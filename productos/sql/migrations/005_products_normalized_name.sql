@@ -0,0 +1,9 @@
+-- Migración: nombre normalizado (NAME_NORM) y su hash (NAME_HASH) en PRODUCTS para las búsquedas por nombre exacto.
+-- Las filas existentes quedan a NULL: después hay que lanzar el backfill desde la aplicación
+-- (opción 13 del menú; también se lanza solo al arrancar si quedan filas sin rellenar).
+USE MINDEREST;
+
+ALTER TABLE PRODUCTS
+    ADD COLUMN NAME_NORM VARCHAR(125) NULL AFTER NAME,
+    ADD COLUMN NAME_HASH INT UNSIGNED NULL AFTER NAME_NORM,
+    ADD INDEX IDX_PRODUCTS_NAME_HASH (NAME_HASH, CLIENT_ID);
@@ -0,0 +1,12 @@
+-- Migración: tabla de trabajo EQUIVALENCE_CANDIDATES para el proceso nocturno de candidatos (CandidateMatchingJob).
+USE MINDEREST;
+
+CREATE TABLE EQUIVALENCE_CANDIDATES (
+    PRODUCT_ID_A INT NOT NULL,
+    PRODUCT_ID_B INT NOT NULL,
+    SCORE FLOAT NOT NULL,
+    CREATED_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    PRIMARY KEY (PRODUCT_ID_A, PRODUCT_ID_B),
+    INDEX IDX_EQUIVALENCE_CANDIDATES_SCORE (SCORE)
+);
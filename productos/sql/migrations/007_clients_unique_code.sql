@@ -0,0 +1,5 @@
+-- Migración: código de cliente único, necesario para el alta idempotente (ClientDAO.upsertClient).
+-- Si hay códigos repetidos el ALTER falla: hay que unificarlos antes.
+USE MINDEREST;
+
+ALTER TABLE CLIENTS ADD UNIQUE (CODE);
@@ -4,15 +4,24 @@ USE MINDEREST;
 CREATE TABLE CLIENTS (
     ID_CLIENT INT PRIMARY KEY AUTO_INCREMENT,
     CODE VARCHAR(50) NOT NULL,
-    NAME VARCHAR(50) NOT NULL
+    NAME VARCHAR(50) NOT NULL,
+
+    -- Alta idempotente de clientes (ClientDAO.upsertClient): el código identifica al cliente
+    UNIQUE (CODE)
 );
 
 CREATE TABLE PRODUCTS (
     ID_PRODUCT INT PRIMARY KEY AUTO_INCREMENT,
     CLIENT_ID INT,
     NAME VARCHAR(125) NOT NULL,
+    -- Nombre normalizado (sin tildes, en minúsculas y con los espacios juntados) y su CRC32.
+    -- Los rellena la aplicación (TextNormalizer); las filas cargadas por SQL se completan con el backfill.
+    NAME_NORM VARCHAR(125) NULL,
+    NAME_HASH INT UNSIGNED NULL,
 
     UNIQUE (CLIENT_ID, NAME),
+    -- Búsqueda por nombre exacto normalizado: ProductDAO.finByClientAndName y findSameNameInOtherClients
+    INDEX IDX_PRODUCTS_NAME_HASH (NAME_HASH, CLIENT_ID),
 
     FOREIGN KEY (CLIENT_ID) REFERENCES CLIENTS(ID_CLIENT)
 );
@@ -26,4 +35,42 @@ CREATE TABLE EQUIVALENCES (
 
     FOREIGN KEY (PRODUCT_ID_A) REFERENCES PRODUCTS(ID_PRODUCT),
     FOREIGN KEY (PRODUCT_ID_B) REFERENCES PRODUCTS(ID_PRODUCT)
-);
\ No newline at end of file
+);
+
+-- Cada equivalencia de EQUIVALENCES guardada en los dos sentidos (A→B y B→A).
+-- Así los equivalentes de un producto salen de un rango de la clave primaria, esté el producto en A o en B.
+CREATE TABLE EQUIVALENCE_LINKS (
+    PRODUCT_ID INT NOT NULL,
+    EQUIVALENT_ID INT NOT NULL,
+
+    PRIMARY KEY (PRODUCT_ID, EQUIVALENT_ID),
+
+    FOREIGN KEY (PRODUCT_ID) REFERENCES PRODUCTS(ID_PRODUCT),
+    FOREIGN KEY (EQUIVALENT_ID) REFERENCES PRODUCTS(ID_PRODUCT)
+);
+
+-- Grupo (cluster) de equivalencia de cada producto: si A≡B y B≡C, los tres comparten CLUSTER_ID.
+-- Un producto sin fila aquí no tiene equivalencias (es un grupo de un solo producto).
+CREATE TABLE PRODUCT_CLUSTERS (
+    PRODUCT_ID INT PRIMARY KEY,
+    CLUSTER_ID INT NOT NULL,
+
+    INDEX IDX_PRODUCT_CLUSTERS_CLUSTER (CLUSTER_ID),
+
+    FOREIGN KEY (PRODUCT_ID) REFERENCES PRODUCTS(ID_PRODUCT)
+);
+
+-- Parejas candidatas a equivalencia que genera el proceso nocturno (CandidateMatchingJob), con su puntuación.
+-- Es una tabla de trabajo que se vacía en cada ejecución: sin claves ajenas para que la carga sea rápida.
+CREATE TABLE EQUIVALENCE_CANDIDATES (
+    PRODUCT_ID_A INT NOT NULL,
+    PRODUCT_ID_B INT NOT NULL,
+    SCORE FLOAT NOT NULL,
+    CREATED_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    PRIMARY KEY (PRODUCT_ID_A, PRODUCT_ID_B),
+    INDEX IDX_EQUIVALENCE_CANDIDATES_SCORE (SCORE)
+);
+
+-- Paginación por clave (CLIENT_ID, ID_PRODUCT) de ProductDAO.findPage
+CREATE INDEX IDX_PRODUCTS_CLIENT_PRODUCT ON PRODUCTS (CLIENT_ID, ID_PRODUCT);
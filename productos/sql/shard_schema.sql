@@ -0,0 +1,43 @@
+-- Esquema de cada shard (db.shards, ver util/Shards.java): PRODUCTS y EQUIVALENCES de los clientes que le tocan.
+-- CLIENTS sigue en la base de datos principal (schema.sql), así que aquí no hay clave ajena hacia ella:
+-- la aplicación comprueba el cliente antes de insertar (ShardedProductStore).
+-- Los AUTO_INCREMENT de cada shard siguen su propia secuencia (auto_increment_increment / auto_increment_offset),
+-- que la aplicación fija en cada conexión: así los ids no se repiten entre shards y dicen en qué shard está la fila.
+-- No hay PRODUCT_CLUSTERS ni EQUIVALENCE_CANDIDATES: los grupos se calculan al pedirlos (ShardedEquivalenceStore).
+DROP DATABASE IF EXISTS MINDEREST;
+CREATE DATABASE IF NOT EXISTS MINDEREST;
+USE MINDEREST;
+
+CREATE TABLE PRODUCTS (
+    ID_PRODUCT INT PRIMARY KEY AUTO_INCREMENT,
+    CLIENT_ID INT,
+    NAME VARCHAR(125) NOT NULL,
+    NAME_NORM VARCHAR(125) NULL,
+    NAME_HASH INT UNSIGNED NULL,
+
+    UNIQUE (CLIENT_ID, NAME),
+    INDEX IDX_PRODUCTS_NAME_HASH (NAME_HASH, CLIENT_ID),
+    INDEX IDX_PRODUCTS_CLIENT_PRODUCT (CLIENT_ID, ID_PRODUCT)
+);
+
+-- Cada pareja (A < B) vive en el shard de A. B suele estar en otro shard: sin clave ajena hacia él
+CREATE TABLE EQUIVALENCES (
+    ID_EQUIVALENCE INT PRIMARY KEY AUTO_INCREMENT,
+    PRODUCT_ID_A INT,
+    PRODUCT_ID_B INT,
+
+    UNIQUE (PRODUCT_ID_A, PRODUCT_ID_B),
+
+    FOREIGN KEY (PRODUCT_ID_A) REFERENCES PRODUCTS(ID_PRODUCT)
+);
+
+-- Enlaces de los productos de este shard: A→B en el shard de A y B→A en el shard de B.
+-- EQUIVALENT_ID puede ser de otro shard: sin clave ajena hacia él
+CREATE TABLE EQUIVALENCE_LINKS (
+    PRODUCT_ID INT NOT NULL,
+    EQUIVALENT_ID INT NOT NULL,
+
+    PRIMARY KEY (PRODUCT_ID, EQUIVALENT_ID),
+
+    FOREIGN KEY (PRODUCT_ID) REFERENCES PRODUCTS(ID_PRODUCT)
+);
@@ -0,0 +1,318 @@
+package com.gestion.productos.app;
+
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.ProductMatch;
+import com.gestion.productos.services.AsyncService;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.Json;
+import com.gestion.productos.util.ReadSession;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Servidor HTTP embebido (com.sun.net.httpserver del JDK, sin frameworks) con los casos de uso en JSON:
+ *
+ * - POST /productos            {"clientCode": "C001", "name": "..."}                      → alta de producto
+ * - POST /equivalencias        {"clientCodeA", "productNameA", "clientCodeB", "productNameB"} → crear equivalencia
+ * - GET  /equivalencias?clientCode=C001&name=...                                          → equivalentes directos
+ * - GET  /candidatos?clientCode=C001&name=...                                             → posibles mismos productos
+ * - GET  /similares?clientCode=C001&name=...                                              → parecidos con puntuación
+ *
+ * Cada petición se atiende en su propio hilo virtual, así miles de peticiones a la vez no necesitan miles
+ * de hilos del sistema; el acceso a MySQL lo sigue limitando AsyncService (y el pool).
+ * Límites configurables: peticiones a la vez (el resto recibe 503) y tamaño máximo del cuerpo (413).
+ */
+public class ApiServer {
+
+    private final HttpServer server;
+    private final AsyncService service;
+    private final Semaphore inFlight;
+    private final int maxBodyBytes;
+
+    public ApiServer() throws IOException {
+        this(new AsyncService(),
+            Config.getInt("http.port", 8080),
+            Config.getInt("http.backlog", 1024),
+            Config.getInt("http.maxConcurrentRequests", 2000),
+            Config.getInt("http.maxBodyBytes", 65536));
+    }
+
+    /**
+     * @param service               casos de uso
+     * @param port                  puerto (0 = uno libre cualquiera)
+     * @param backlog               conexiones pendientes de aceptar que admite el sistema operativo
+     * @param maxConcurrentRequests peticiones atendiéndose a la vez; las que sobran reciben 503
+     * @param maxBodyBytes          tamaño máximo del cuerpo de una petición
+     */
+    public ApiServer(AsyncService service, int port, int backlog, int maxConcurrentRequests, int maxBodyBytes) throws IOException {
+        this.service = service;
+        this.inFlight = new Semaphore(maxConcurrentRequests);
+        this.maxBodyBytes = maxBodyBytes;
+
+        this.server = HttpServer.create(new InetSocketAddress(port), backlog);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+        server.createContext("/productos", exchange -> handle(exchange, "POST", this::altaProducto));
+        server.createContext("/equivalencias", exchange -> {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                handle(exchange, "GET", this::listarEquivalentes);
+            } else {
+                handle(exchange, "POST", this::establecerEquivalencia);
+            }
+        });
+        server.createContext("/candidatos", exchange -> handle(exchange, "GET", this::posiblesMismosProductos));
+        server.createContext("/similares", exchange -> handle(exchange, "GET", this::buscarProductosSimilares));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return puerto en el que escucha (útil si se arrancó con el puerto 0)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Deja de aceptar peticiones, espera hasta delaySec a que terminen las que están en curso y para el servicio.
+     */
+    public void stop(int delaySec) {
+        server.stop(delaySec);
+        service.close();
+    }
+
+    // ---- Endpoints ----
+
+    private Response altaProducto(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        String message = service.altaProducto(text(body, "clientCode"), text(body, "name")).join();
+        return Response.ofMessage(message);
+    }
+
+    private Response establecerEquivalencia(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = readBody(exchange);
+        String message = service.establecerEquivalencia(
+            text(body, "clientCodeA"), text(body, "productNameA"),
+            text(body, "clientCodeB"), text(body, "productNameB")).join();
+        return Response.ofMessage(message);
+    }
+
+    private Response listarEquivalentes(HttpExchange exchange) {
+        Map<String, String> query = query(exchange);
+        List<Product> products = service.listarEquivalentes(query.get("clientCode"), query.get("name")).join();
+        return new Response(200, Map.of("products", toJson(products)));
+    }
+
+    private Response posiblesMismosProductos(HttpExchange exchange) {
+        Map<String, String> query = query(exchange);
+        List<Product> products = service.posiblesMismosProductos(query.get("clientCode"), query.get("name")).join();
+        return new Response(200, Map.of("products", toJson(products)));
+    }
+
+    private Response buscarProductosSimilares(HttpExchange exchange) {
+        Map<String, String> query = query(exchange);
+        List<ProductMatch> matches = service.buscarProductosSimilares(query.get("clientCode"), query.get("name")).join();
+
+        List<Object> json = new ArrayList<>(matches.size());
+        for (ProductMatch m : matches) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("product", toJson(m.getProduct()));
+            item.put("score", m.getScore());
+            json.add(item);
+        }
+        return new Response(200, Map.of("matches", json));
+    }
+
+    // ---- Infraestructura común ----
+
+    @FunctionalInterface
+    private interface Endpoint {
+        Response handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        try (exchange) {
+            ReadSession.with(new ReadSession(lastWrite(exchange)), () -> {
+                dispatch(exchange, method, endpoint);
+                return null;
+            });
+        }
+    }
+
+    // Cada petición es una sesión de lectura: trae en X-Last-Write la última escritura que le devolvimos
+    private void dispatch(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        if (!inFlight.tryAcquire()) {
+            send(exchange, new Response(503, Map.of("error", "Servidor ocupado, reintentar más tarde.")));
+            return;
+        }
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                send(exchange, new Response(405, Map.of("error", "Método no permitido: " + exchange.getRequestMethod())));
+                return;
+            }
+            send(exchange, endpoint.handle(exchange));
+        } catch (RequestException e) {
+            send(exchange, new Response(e.status, Map.of("error", e.getMessage())));
+        } catch (CompletionException e) {
+            send(exchange, fromError(e.getCause() != null ? e.getCause() : e));
+        } catch (RuntimeException e) {
+            send(exchange, fromError(e));
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    // Un valor que no es un número se ignora, y uno futuro se recorta a ahora para no fijar la sesión a la principal
+    private static long lastWrite(HttpExchange exchange) {
+        String value = exchange.getRequestHeaders().getFirst("X-Last-Write");
+        if (value == null || value.isBlank()) return 0;
+        try {
+            return Math.min(Long.parseLong(value.trim()), System.currentTimeMillis());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Response fromError(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLIntegrityConstraintViolationException) {
+                return new Response(409, Map.of("error", "Ya existe: " + t.getMessage()));
+            }
+        }
+        return new Response(500, Map.of("error", String.valueOf(e.getMessage())));
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] bytes = Json.write(response.body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ReadSession session = ReadSession.current();
+        if (session != null && session.lastWriteMillis() > 0) {
+            exchange.getResponseHeaders().set("X-Last-Write", Long.toString(session.lastWriteMillis()));
+        }
+        exchange.sendResponseHeaders(response.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && parseLength(length) > maxBodyBytes) {
+            throw new RequestException(413, "Cuerpo demasiado grande (max " + maxBodyBytes + " bytes)");
+        }
+
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            // Leo como mucho un byte más del límite para saber si se ha pasado sin leerlo entero
+            bytes = in.readNBytes(maxBodyBytes + 1);
+        }
+        if (bytes.length > maxBodyBytes) {
+            throw new RequestException(413, "Cuerpo demasiado grande (max " + maxBodyBytes + " bytes)");
+        }
+
+        try {
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+    }
+
+    private static long parseLength(String header) {
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Content-Length no válido: " + header);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return params;
+
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String text(Map<String, Object> body, String key) {
+        Object value = body.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    private static List<Object> toJson(List<Product> products) {
+        List<Object> json = new ArrayList<>(products.size());
+        for (Product p : products) {
+            json.add(toJson(p));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> toJson(Product p) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", p.getId());
+        json.put("clientId", p.getClienteID());
+        json.put("name", p.getName());
+        return json;
+    }
+
+    /**
+     * Respuesta HTTP: código y cuerpo que se serializa a JSON.
+     */
+    private record Response(int status, Object body) {
+
+        static Response ofMessage(String message) {
+            return new Response(statusOf(message), Map.of("message", message));
+        }
+    }
+
+    /**
+     * Los casos de uso devuelven un mensaje de texto: de él saco el código HTTP.
+     * También lo usa LoadGenerator para contar como errores las llamadas que no han salido bien.
+     */
+    static int statusOf(String message) {
+        if (message.startsWith("Producto añadido") || message.startsWith("Equivalencia creada")) {
+            return 201;
+        } else if (message.equals("La equivalencia ya existe.") || message.startsWith("El producto ya existe")) {
+            return 409;
+        } else if (message.startsWith("No existe")) {
+            return 404;
+        } else if (message.startsWith("No se pudo")) {
+            return 500;
+        }
+        return 400;
+    }
+
+    private static final class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
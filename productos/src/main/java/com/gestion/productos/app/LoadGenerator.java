@@ -0,0 +1,397 @@
+package com.gestion.productos.app;
+
+import com.gestion.productos.dao.ClientDAO;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.dao.shard.ShardedProductStore;
+import com.gestion.productos.metrics.LatencyHistogram;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.UpsertResult;
+import com.gestion.productos.services.Service;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.DB;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generador de carga contra el Service, para reproducir antes de una versión la carga de producción
+ * (pruebas de larga duración o de "soak").
+ *
+ * Lanza una mezcla configurable (load.mix) de altaProducto, establecerEquivalencia, listarEquivalentes
+ * y posiblesMismosProductos desde hilos virtuales, de una de estas dos formas:
+ * - Bucle cerrado (load.rate=0): load.concurrency hilos, cada uno lanza la siguiente llamada al terminar la anterior.
+ * - Ritmo fijo (load.rate &gt; 0): se lanzan load.rate llamadas por segundo pase lo que pase, con como mucho
+ *   load.concurrency a la vez. La latencia se mide desde el momento en que tocaba lanzarla, así que si el sistema
+ *   no da abasto la espera se ve en los percentiles en vez de esconderse (coordinated omission).
+ *
+ * Con load.seed=true crea antes sus propios clientes (L0001...) y productos ("Producto carga 00001"...), el mismo
+ * nombre en todos los clientes para que haya equivalencias y posibles mismos productos. Son altas idempotentes
+ * (upsert), así que repetir la prueba sobre la misma base de datos no duplica nada.
+ *
+ * Cada load.reportIntervalSec segundos escribe por operación: llamadas, llamadas/s, % de errores (excepciones)
+ * y latencias p50/p99/p999/máx del intervalo; al final, lo mismo para toda la prueba sin el calentamiento.
+ *
+ * Uso: java -cp ... com.gestion.productos.app.LoadGenerator (las claves load.* se pueden pasar con -D).
+ */
+public class LoadGenerator {
+
+    private static final String[] OPERATIONS = {
+        "altaProducto", "establecerEquivalencia", "listarEquivalentes", "posiblesMismosProductos"
+    };
+    private static final int ALTA_PRODUCTO = 0;
+    private static final int ESTABLECER_EQUIVALENCIA = 1;
+    private static final int LISTAR_EQUIVALENTES = 2;
+    private static final int POSIBLES_MISMOS = 3;
+
+    private final Service service;
+    private final int clients;
+    private final int productsPerClient;
+    private final int concurrency;
+    private final double rate;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final long reportIntervalSec;
+    // Pesos acumulados de la mezcla: la operación i sale si el aleatorio cae en [cumulative[i-1], cumulative[i])
+    private final int[] cumulative;
+
+    private final OpStats[] stats = new OpStats[OPERATIONS.length];
+    // Para que los nombres de las altas no se repitan entre pruebas
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong altas = new AtomicLong();
+
+    private volatile long measureFrom;
+
+    public LoadGenerator(Service service) {
+        this.service = service;
+        this.clients = Config.getInt("load.clients", 20);
+        this.productsPerClient = Config.getInt("load.productsPerClient", 1000);
+        this.concurrency = Config.getInt("load.concurrency", 64);
+        this.rate = Double.parseDouble(Config.get("load.rate", "0"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Config.getLong("load.durationSec", 60));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Config.getLong("load.warmupSec", 10));
+        this.reportIntervalSec = Math.max(1, Config.getLong("load.reportIntervalSec", 10));
+        this.cumulative = parseMix(Config.get("load.mix",
+            "altaProducto=10,establecerEquivalencia=10,listarEquivalentes=40,posiblesMismosProductos=40"));
+
+        if (clients < 2 || productsPerClient < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("Hacen falta load.clients >= 2, load.productsPerClient >= 1 y load.concurrency >= 1");
+        }
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            stats[i] = new OpStats();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Service service = new Service();
+        try {
+            LoadGenerator generator = new LoadGenerator(service);
+            if (Config.getBoolean("load.seed", true)) {
+                generator.seed();
+            }
+            generator.run();
+            System.out.println(Metrics.report());
+        } finally {
+            service.close();
+            DB.shutdown();
+        }
+    }
+
+    /**
+     * Crea (si no estaban) los clientes y productos de la prueba, en bloques de una transacción.
+     */
+    public void seed() {
+        long start = System.nanoTime();
+        ClientDAO clientDAO = new ClientDAO();
+        // Con shards, cada cliente a su shard (igual que las altas del Service)
+        ProductStore productDAO = DB.shards().isEnabled() ? new ShardedProductStore(DB.shards(), clientDAO) : new ProductDAO();
+
+        int created = 0;
+        for (int c = 0; c < clients; c++) {
+            int clientId = clientDAO.upsertClient(clientCode(c), "CARGA " + (c + 1)).id();
+
+            List<Product> block = new ArrayList<>();
+            for (int p = 0; p < productsPerClient; p++) {
+                block.add(new Product(0, clientId, productName(p)));
+                if (block.size() == 500 || p == productsPerClient - 1) {
+                    created += (int) productDAO.upsertProducts(block).stream().filter(UpsertResult::created).count();
+                    block.clear();
+                }
+            }
+        }
+
+        System.out.printf("Datos de carga listos: %d clientes x %d productos (%d nuevos) en %d ms%n",
+            clients, productsPerClient, created, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Ejecuta la prueba durante load.durationSec (más el calentamiento) y escribe los informes.
+     */
+    public void run() throws InterruptedException {
+        System.out.printf("Carga: %s, %d a la vez, %d s (+%d s de calentamiento), mezcla %s%n",
+            rate > 0 ? String.format(Locale.ROOT, "%.0f llamadas/s", rate) : "bucle cerrado",
+            concurrency, TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos), mixText());
+
+        long start = System.nanoTime();
+        measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        ScheduledReporter reporter = new ScheduledReporter(start);
+        reporter.start();
+        try {
+            if (rate > 0) {
+                runAtRate(executor, end);
+            } else {
+                runClosedLoop(executor, end);
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+            reporter.stop();
+        }
+
+        System.out.println("=== Total (sin calentamiento) ===");
+        double seconds = durationNanos / 1e9;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (weight(i) == 0) continue;
+            System.out.println(format(OPERATIONS[i], stats[i].total, seconds));
+        }
+    }
+
+    private void runClosedLoop(ExecutorService executor, long end) {
+        for (int t = 0; t < concurrency; t++) {
+            executor.execute(() -> {
+                while (System.nanoTime() < end) {
+                    long started = System.nanoTime();
+                    execute(pick(), started);
+                }
+            });
+        }
+    }
+
+    private void runAtRate(ExecutorService executor, long end) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        long intervalNanos = (long) (1e9 / rate);
+        long next = System.nanoTime();
+
+        while (next < end) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            // Si ya hay load.concurrency en marcha se espera aquí, pero la llamada cuenta desde "next"
+            inFlight.acquire();
+            long intended = next;
+            executor.execute(() -> {
+                try {
+                    execute(pick(), intended);
+                } finally {
+                    inFlight.release();
+                }
+            });
+            next += intervalNanos;
+        }
+    }
+
+    private void execute(int op, long intendedStart) {
+        boolean failed;
+        try {
+            failed = !call(op);
+        } catch (RuntimeException e) {
+            failed = true;
+        }
+        long now = System.nanoTime();
+        stats[op].record(now - intendedStart, failed, intendedStart >= measureFrom);
+    }
+
+    // true si ha salido bien. Las altas devuelven un mensaje que se clasifica como en el servidor HTTP (creado o ya
+    // existente = bien; cliente o producto que no existe, datos no válidos o fallo = error). Los listados devuelven
+    // lista vacía también cuando no existe el producto: para ellos solo cuenta como error una excepción
+    private boolean call(int op) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int client = rnd.nextInt(clients);
+        String product = productName(rnd.nextInt(productsPerClient));
+
+        return switch (op) {
+            case ALTA_PRODUCTO -> succeeded(service.altaProducto(clientCode(client),
+                "Alta carga " + runId + "-" + altas.incrementAndGet()));
+            case ESTABLECER_EQUIVALENCIA -> {
+                // El mismo producto en otro cliente (nunca el mismo cliente)
+                int other = (client + 1 + rnd.nextInt(clients - 1)) % clients;
+                yield succeeded(service.establecerEquivalencia(clientCode(client), product, clientCode(other), product));
+            }
+            case LISTAR_EQUIVALENTES -> {
+                service.listarEquivalentes(clientCode(client), product);
+                yield true;
+            }
+            case POSIBLES_MISMOS -> {
+                service.posiblesMismosProductos(clientCode(client), product);
+                yield true;
+            }
+            default -> throw new IllegalStateException("Operación desconocida: " + op);
+        };
+    }
+
+    private static boolean succeeded(String message) {
+        int status = ApiServer.statusOf(message);
+        return status == 201 || status == 409;
+    }
+
+    private int pick() {
+        int r = ThreadLocalRandom.current().nextInt(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (r < cumulative[i]) return i;
+        }
+        return cumulative.length - 1;
+    }
+
+    // "altaProducto=10,listarEquivalentes=90": las que no aparecen tienen peso 0
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : mix.split(",")) {
+            if (part.isBlank()) continue;
+            String[] kv = part.split("=");
+            int op = List.of(OPERATIONS).indexOf(kv[0].trim());
+            if (op < 0 || kv.length != 2) {
+                throw new IllegalArgumentException("load.mix no válido: " + part);
+            }
+            weights[op] = Integer.parseInt(kv[1].trim());
+            if (weights[op] < 0) {
+                throw new IllegalArgumentException("load.mix no puede tener pesos negativos: " + part);
+            }
+        }
+
+        int[] cumulative = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("load.mix no tiene ninguna operación con peso");
+        }
+        return cumulative;
+    }
+
+    private int weight(int op) {
+        return cumulative[op] - (op == 0 ? 0 : cumulative[op - 1]);
+    }
+
+    private String mixText() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (weight(i) == 0) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(OPERATIONS[i]).append('=').append(weight(i));
+        }
+        return sb.toString();
+    }
+
+    private static String clientCode(int client) {
+        return String.format("L%04d", client + 1);
+    }
+
+    private static String productName(int product) {
+        return String.format("Producto carga %05d", product + 1);
+    }
+
+    private static String format(String name, Window w, double seconds) {
+        long calls = w.calls.sum();
+        long errors = w.errors.sum();
+        return String.format(Locale.ROOT,
+            "%-25s llamadas=%d llamadas/s=%.1f errores=%.2f%% p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms",
+            name, calls, calls / seconds, calls == 0 ? 0.0 : 100.0 * errors / calls,
+            millis(w, 0.50), millis(w, 0.99), millis(w, 0.999), w.maxNanos.get() / 1e6);
+    }
+
+    private static double millis(Window w, double quantile) {
+        return Math.min(w.histogram.percentile(quantile), w.maxNanos.get()) / 1e6;
+    }
+
+    /**
+     * Llamadas, errores y latencias de un periodo.
+     */
+    private static final class Window {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private void record(long nanos, boolean failed) {
+            calls.increment();
+            if (failed) errors.increment();
+            maxNanos.accumulate(nanos);
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * Estadísticas de una operación: el intervalo en curso (se cambia por uno vacío en cada informe)
+     * y el total desde que terminó el calentamiento.
+     */
+    private static final class OpStats {
+        private final AtomicReference<Window> interval = new AtomicReference<>(new Window());
+        private final Window total = new Window();
+
+        private void record(long nanos, boolean failed, boolean measured) {
+            interval.get().record(nanos, failed);
+            if (measured) total.record(nanos, failed);
+        }
+    }
+
+    /**
+     * Informe de cada intervalo por la salida estándar.
+     */
+    private final class ScheduledReporter {
+        private final long start;
+        private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "load-reporter");
+                t.setDaemon(true);
+                return t;
+            });
+        private long last;
+
+        private ScheduledReporter(long start) {
+            this.start = start;
+            this.last = start;
+        }
+
+        private void start() {
+            scheduler.scheduleAtFixedRate(this::report, reportIntervalSec, reportIntervalSec, TimeUnit.SECONDS);
+        }
+
+        private void stop() {
+            scheduler.shutdownNow();
+            report();
+        }
+
+        private synchronized void report() {
+            long now = System.nanoTime();
+            double seconds = Math.max(1e-9, (now - last) / 1e9);
+            last = now;
+
+            String phase = now <= measureFrom ? " (calentamiento)" : "";
+            System.out.printf("--- %ds%s ---%n", TimeUnit.NANOSECONDS.toSeconds(now - start), phase);
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                if (weight(i) == 0) continue;
+                Window w = stats[i].interval.getAndSet(new Window());
+                System.out.println(format(OPERATIONS[i], w, seconds));
+            }
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package com.gestion.productos.app;
 
+import com.gestion.productos.dao.ClientDAO;
+import com.gestion.productos.metrics.Metrics;
 import com.gestion.productos.model.Product;
+import com.gestion.productos.model.ProductMatch;
 import com.gestion.productos.services.Service;
 import com.gestion.productos.model.Client;
+import com.gestion.productos.util.CacheStats;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.PoolStats;
+import com.gestion.productos.util.ReadSession;
 
 import java.util.List;
 import java.util.Scanner;
@@ -14,13 +22,59 @@ import java.util.Scanner;
  * 2) Establecer equivalencia
  * 3) Posibles "mismos productos" en otros clientes (candidatos)
  * 4) Ver equivalencias ya establecidas de un producto
+ * 5) Estadísticas (pool de conexiones, cachés y métricas por operación)
+ * 6) Ver el grupo completo de equivalencias de un producto (transitivo)
+ * 7) Recalcular los grupos de equivalencia
+ * 8) Carga masiva de productos desde fichero (CSV / NDJSON)
+ * 9) Carga masiva de equivalencias desde fichero (CSV / NDJSON)
+ * 10) Productos con nombre parecido en otros clientes (búsqueda aproximada con puntuación)
+ * 11) Regenerar el snapshot del catálogo (arranque en caliente)
+ * 12) Productos relacionados hasta N saltos de equivalencia (grafo en memoria)
+ * 13) Recalcular los nombres normalizados de todos los productos
+ * 14) Generar candidatos a equivalencia de todo el catálogo (proceso nocturno)
+ *
+ * Con el argumento --http arranca en su lugar el servidor HTTP con los casos de uso en JSON (ver ApiServer).
+ * Con --candidates ejecuta la opción 14 y termina (para programarlo cada noche, por ejemplo con cron).
  */
 public class Main {
 
-    public static void main(String[] args) {
+    // Filas por página en los listados de clientes y productos
+    private static final int PAGE_SIZE = Config.getInt("ui.pageSize", 20);
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length > 0 && args[0].equals("--http")) {
+            arrancarServidorHttp();
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--candidates")) {
+            Service service = new Service();
+            completarNombresNormalizados(service);
+            System.out.println(service.generarCandidatos());
+            System.out.println(Metrics.report());
+            DB.shutdown();
+            return;
+        }
 
         Service service = new Service();
+        Metrics.startReporter();
+        completarNombresNormalizados(service);
         Scanner sc = new Scanner(System.in);
+
+        // El usuario del menú es una sesión: después de dar de alta algo lo vuelve a leer de la principal
+        ReadSession.with(new ReadSession(), () -> {
+            menu(sc, service);
+            return null;
+        });
+
+        sc.close();
+        service.close();
+        Metrics.stopReporter();
+        DB.shutdown();
+    }
+
+    private static void menu(Scanner sc, Service service) {
         int opcion;
 
         do {
@@ -32,13 +86,68 @@ public class Main {
                 case 2 -> casoEstablecerEquivalencia(sc, service);
                 case 3 -> casoVerPosiblesMismos(sc, service);
                 case 4 -> casoVerEquivalencias(sc, service);
+                case 5 -> mostrarEstadisticas(service);
+                case 6 -> casoVerGrupoEquivalencia(sc, service);
+                case 7 -> System.out.println(service.recalcularGruposEquivalencia());
+                case 8 -> casoImportarProductos(sc, service);
+                case 9 -> casoImportarEquivalencias(sc, service);
+                case 10 -> casoBuscarSimilares(sc, service);
+                case 11 -> System.out.println(service.regenerarSnapshot());
+                case 12 -> casoVerRelacionados(sc, service);
+                case 13 -> System.out.println(service.recalcularNombresNormalizados(true));
+                case 14 -> System.out.println(service.generarCandidatos());
                 case 0 -> System.out.println("Saliendo...");
                 default -> System.out.println("Opcion no valida.");
             }
 
         } while (opcion != 0);
+    }
 
-        sc.close();
+    /**
+     * Modo servidor: atiende peticiones HTTP hasta que se para el proceso (Ctrl+C).
+     */
+    private static void arrancarServidorHttp() throws Exception {
+        DB.warmUp();
+        Metrics.startReporter();
+        completarNombresNormalizados(new Service());
+
+        ApiServer server = new ApiServer();
+        server.start();
+        System.out.println("Servidor HTTP escuchando en el puerto " + server.getPort());
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(Config.getInt("http.shutdownDelaySec", 5));
+            Metrics.stopReporter();
+            DB.shutdown();
+        }));
+    }
+
+    /**
+     * Si hay productos sin NAME_NORM / NAME_HASH (datos de ejemplo, migración 005 o altas por SQL) los relleno
+     * antes de empezar, porque si no las búsquedas por nombre exacto no los encontrarían.
+     */
+    private static void completarNombresNormalizados(Service service) {
+        if (service.hayNombresSinNormalizar()) {
+            System.out.println(service.recalcularNombresNormalizados(false));
+        }
+    }
+
+    /**
+     * Gestiona la opción 12 del menú.
+     */
+    private static void casoVerRelacionados(Scanner sc, Service service) {
+        System.out.print("Codigo cliente (ej: C001): ");
+        String clientCode = sc.nextLine();
+
+        System.out.print("Nombre del producto: ");
+        String productName = sc.nextLine();
+
+        System.out.print("Maximo de saltos (1 = solo equivalentes directos): ");
+        int maxDepth = leerInt(sc);
+
+        List<Product> relacionados = service.listarRelacionados(clientCode, productName, maxDepth);
+
+        imprimirListaProductos(relacionados, "Productos relacionados");
     }
 
     /**
@@ -64,15 +173,26 @@ public class Main {
         System.out.println("\n=== CLIENTES ===");
         System.out.println("ID_CLIENT | CODE  | NAME");
         System.out.println("----------------------------------------");
-        for (Client c : service.listarClientes()) {
-            System.out.println(c.getId() + " | " + c.getCode() + " | " + c.getName());
+        List<Client> clientes = service.listarClientesPagina(0, PAGE_SIZE);
+        while (!clientes.isEmpty()) {
+            for (Client c : clientes) {
+                System.out.println(c.getId() + " | " + c.getCode() + " | " + c.getName());
+            }
+            if (clientes.size() < PAGE_SIZE || !pedirMas(sc)) break;
+            clientes = service.listarClientesPagina(clientes.get(clientes.size() - 1).getId(), PAGE_SIZE);
         }
 
+        // Los productos pueden ser millones: los enseño por páginas en vez de volcar la tabla entera
         System.out.println("\n=== PRODUCTOS ===");
         System.out.println("ID_PRODUCT | CLIENT_ID | NAME");
         System.out.println("----------------------------------------");
-        for (Product p : service.listarProductos()) {
-            System.out.println(p.getId() + " | " + p.getClienteID() + " | " + p.getName());
+        List<Product> productos = service.listarProductosPagina(null, PAGE_SIZE);
+        while (!productos.isEmpty()) {
+            for (Product p : productos) {
+                System.out.println(p.getId() + " | " + p.getClienteID() + " | " + p.getName());
+            }
+            if (productos.size() < PAGE_SIZE || !pedirMas(sc)) break;
+            productos = service.listarProductosPagina(productos.get(productos.size() - 1), PAGE_SIZE);
         }
         System.out.println();
 
@@ -124,12 +244,110 @@ public class Main {
         imprimirListaProductos(eq, "Productos equivalentes");
     }
 
+    /**
+     * Gestiona la opción 6 del menú.
+     * Muestra todos los productos equivalentes, también los transitivos (A≡B y B≡C ⇒ A≡C).
+     */
+    private static void casoVerGrupoEquivalencia(Scanner sc, Service service) {
+        System.out.print("Codigo cliente (ej: C001): ");
+        String clientCode = sc.nextLine();
+
+        System.out.print("Nombre del producto: ");
+        String productName = sc.nextLine();
+
+        List<Product> grupo = service.listarGrupoEquivalencia(clientCode, productName);
+
+        imprimirListaProductos(grupo, "Grupo de equivalencia");
+    }
+
+    /**
+     * Gestiona la opción 8 del menú.
+     * Carga masiva de productos desde un fichero CSV (codigoCliente,nombreProducto) o NDJSON.
+     */
+    private static void casoImportarProductos(Scanner sc, Service service) {
+        System.out.print("Ruta del fichero (.csv / .ndjson): ");
+        String ruta = sc.nextLine();
+
+        System.out.println(service.importarProductos(ruta));
+    }
+
+    /**
+     * Gestiona la opción 9 del menú.
+     * Carga masiva de equivalencias: codigoClienteA,nombreProductoA,codigoClienteB,nombreProductoB por línea.
+     */
+    private static void casoImportarEquivalencias(Scanner sc, Service service) {
+        System.out.print("Ruta del fichero (.csv / .ndjson): ");
+        String ruta = sc.nextLine();
+
+        System.out.println(service.importarEquivalencias(ruta));
+    }
+
+    /**
+     * Gestiona la opción 10 del menú.
+     * Búsqueda aproximada por nombre: muestra los candidatos de otros clientes con su puntuación.
+     */
+    private static void casoBuscarSimilares(Scanner sc, Service service) {
+        System.out.print("Codigo cliente (ej: C001): ");
+        String clientCode = sc.nextLine();
+
+        System.out.print("Nombre del producto: ");
+        String productName = sc.nextLine();
+
+        List<ProductMatch> similares = service.buscarProductosSimilares(clientCode, productName);
+
+        if (similares.isEmpty()) {
+            System.out.println("No se han encontrado resultados (o datos incorrectos).");
+        } else {
+            System.out.println("\n=== Productos parecidos (otros clientes) ===");
+            System.out.println("SCORE | ID_PRODUCT | CLIENT_ID | NAME");
+            System.out.println("----------------------------------------");
+            for (ProductMatch m : similares) {
+                Product p = m.getProduct();
+                System.out.println(String.format("%.3f", m.getScore()) + " | " + p.getId() + " | " + p.getClienteID() + " | " + p.getName());
+            }
+        }
+    }
+
+    /**
+     * Gestiona la opción 5 del menú.
+     * Estadísticas internas: pool de conexiones y cachés.
+     */
+    private static void mostrarEstadisticas(Service service) {
+        System.out.println(DB.getStats());
+        if (DB.hasReplicas()) {
+            for (PoolStats stats : DB.getReplicaStats()) {
+                System.out.println(stats);
+            }
+            System.out.println("Lecturas desviadas por réplica caída: " + DB.getReplicaFailovers());
+        }
+        for (PoolStats stats : DB.shards().getStats()) {
+            System.out.println(stats);
+        }
+        for (CacheStats stats : ClientDAO.getCacheStats()) {
+            System.out.println(stats);
+        }
+        for (CacheStats stats : service.getResultCacheStats()) {
+            System.out.println(stats);
+        }
+        System.out.print(Metrics.report());
+    }
+
     private static void mostrarMenu() {
         System.out.println("\n==== MENU MINDEREST ====");
         System.out.println("1. Alta producto");
         System.out.println("2. Establecer equivalencia");
         System.out.println("3. Ver posibles mismos productos (otros clientes)");
         System.out.println("4. Ver equivalencias de un producto");
+        System.out.println("5. Ver estadisticas (pool de conexiones, caches y metricas)");
+        System.out.println("6. Ver grupo completo de equivalencias de un producto");
+        System.out.println("7. Recalcular grupos de equivalencia");
+        System.out.println("8. Importar productos desde fichero (CSV / NDJSON)");
+        System.out.println("9. Importar equivalencias desde fichero (CSV / NDJSON)");
+        System.out.println("10. Buscar productos con nombre parecido (otros clientes)");
+        System.out.println("11. Regenerar snapshot del catalogo");
+        System.out.println("12. Ver productos relacionados hasta N saltos de equivalencia");
+        System.out.println("13. Recalcular nombres normalizados de los productos");
+        System.out.println("14. Generar candidatos a equivalencia de todo el catalogo");
         System.out.println("0. Salir");
         System.out.print("Elige una opcion: ");
     }
@@ -151,6 +369,16 @@ public class Main {
         }
     }
 
+    /**
+     * Pregunta si se quiere ver la siguiente página de un listado.
+     *
+     * @return true si el usuario pulsa Enter; false si escribe cualquier otra cosa
+     */
+    private static boolean pedirMas(Scanner sc) {
+        System.out.print("-- Enter para ver mas, cualquier otra tecla + Enter para seguir: ");
+        return sc.nextLine().isEmpty();
+    }
+
     /**
      * Lee un entero desde consola de forma segura.
      * Si el usuario introduce algo que no es número, vuelvo a pedirlo.
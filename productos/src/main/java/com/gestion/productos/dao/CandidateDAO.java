@@ -0,0 +1,70 @@
+package com.gestion.productos.dao;
+
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.util.DB;
+
+import java.sql.*;
+
+/**
+ * DAO de EQUIVALENCE_CANDIDATES: tabla de trabajo donde el proceso nocturno (CandidateMatchingJob)
+ * deja las parejas de productos que parecen el mismo, con su puntuación, para revisarlas después.
+ * Cada ejecución empieza vaciándola.
+*/
+public class CandidateDAO {
+
+    /**
+     * Vacía la tabla de candidatos (TRUNCATE: mucho más rápido que DELETE en tablas grandes).
+    */
+    public void clear() {
+        Metrics.run("CandidateDAO.clear", () -> {
+            try (Connection con = DB.getConnection();
+                 Statement stmt = con.createStatement()) {
+
+                stmt.executeUpdate("TRUNCATE TABLE EQUIVALENCE_CANDIDATES");
+                DB.markWrite();
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en CandidateDAO.clear: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Inserta un bloque de candidatos con un INSERT multi-fila (autocommit: cada bloque es su propia transacción).
+     * Se pasan en arrays paralelos para no crear un objeto por pareja. Las parejas repetidas se ignoran.
+     *
+     * @param productA  id del primer producto de cada pareja (el menor)
+     * @param productB  id del segundo producto de cada pareja
+     * @param scores    puntuación (0..1) de cada pareja
+     * @param count     número de parejas a insertar (las primeras count posiciones)
+     * @return número de filas insertadas
+    */
+    public int insertCandidates(int[] productA, int[] productB, float[] scores, int count) {
+        return Metrics.timed("CandidateDAO.insertCandidates", () -> {
+            if (count == 0) return 0;
+
+            StringBuilder sql = new StringBuilder("INSERT IGNORE INTO EQUIVALENCE_CANDIDATES (PRODUCT_ID_A, PRODUCT_ID_B, SCORE) VALUES ");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            }
+
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql.toString())) {
+
+                int idx = 1;
+                for (int i = 0; i < count; i++) {
+                    stmt.setInt(idx++, productA[i]);
+                    stmt.setInt(idx++, productB[i]);
+                    stmt.setFloat(idx++, scores[i]);
+                }
+                int inserted = stmt.executeUpdate();
+                DB.markWrite();
+                Metrics.addRows("CandidateDAO.insertCandidates", inserted);
+                return inserted;
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en CandidateDAO.insertCandidates: " + e.getMessage(), e);
+            }
+        });
+    }
+}
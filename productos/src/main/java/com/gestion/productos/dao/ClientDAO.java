@@ -1,18 +1,32 @@
 package com.gestion.productos.dao;
 
+import com.gestion.productos.metrics.Metrics;
 import com.gestion.productos.model.Client;
+import com.gestion.productos.model.UpsertResult;
+import com.gestion.productos.util.CacheStats;
 import com.gestion.productos.util.DB;
+import com.gestion.productos.util.LruCache;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * DAO de Client.
  * Aquí dejo todo lo relacionado con acceso a datos de la tabla CLIENTS.
  * Esta clase no imprime por consola: devuelve objetos para que Service/Main decidan qué mostrar.
+ *
+ * CLIENTS es una tabla pequeña que casi no cambia y todos los casos de uso empiezan resolviendo un cliente,
+ * así que findByCodigo y findById leen primero de una caché en memoria (compartida por todas las instancias).
+ * insertClient y upsertClient (si crea) la vacían para que nunca se sirva un dato viejo desde este proceso.
+ * Las búsquedas (find*) usan DB.getReadConnection(), así que con réplicas configuradas se leen de ellas.
 */
-public class ClientDAO {
+public class ClientDAO implements ClientStore {
+
+    // Cachés compartidas: Service, importadores, etc. crean su propio ClientDAO pero los datos son los mismos
+    private static final LruCache<String, Client> BY_CODE = LruCache.fromConfig("clients.byCode", "cache.clients", 1000, 300_000);
+    private static final LruCache<Integer, Client> BY_ID = LruCache.fromConfig("clients.byId", "cache.clients", 1000, 300_000);
 
     private Client buildClient(ResultSet rs) throws SQLException {
         return new Client(
@@ -29,10 +43,27 @@ public class ClientDAO {
      * @return Client si existe; null si no existe
     */
     public Client findByCodigo(String code) {
+        return Metrics.timed("ClientDAO.findByCodigo", () -> {
+            Client cached = BY_CODE.get(code);
+            if (cached != null) {
+                return copy(cached);
+            }
+
+            Client client = loadByCodigo(code);
+            if (client == null) return null;
+
+            // Lo guardo también con el código tal cual me lo han pedido (la collation no distingue mayúsculas)
+            remember(client);
+            BY_CODE.put(code, client);
+            return copy(client);
+        });
+    }
+
+    private Client loadByCodigo(String code) {
         
         String sql = "SELECT ID_CLIENT, CODE, NAME FROM CLIENTS WHERE CODE = ?";
 
-        try (Connection con = DB.getConnection();
+        try (Connection con = DB.getReadConnection();
              PreparedStatement stmt = con.prepareStatement(sql)) {
 
             stmt.setString(1, code);
@@ -57,10 +88,23 @@ public class ClientDAO {
      * @return Client si existe; null si no existe
     */
     public Client findById(int id) {
+        return Metrics.timed("ClientDAO.findById", () -> {
+            Client cached = BY_ID.get(id);
+            if (cached != null) {
+                return copy(cached);
+            }
+
+            Client client = loadById(id);
+            remember(client);
+            return client == null ? null : copy(client);
+        });
+    }
+
+    private Client loadById(int id) {
         
         String sql = "SELECT ID_CLIENT, CODE, NAME FROM CLIENTS WHERE ID_CLIENT = ?";
 
-        try (Connection con = DB.getConnection();
+        try (Connection con = DB.getReadConnection();
              PreparedStatement stmt = con.prepareStatement(sql)) {
 
             stmt.setInt(1, id);
@@ -85,23 +129,90 @@ public class ClientDAO {
      * @return lista de clientes (si no hay, devuelve lista vacía)
     */
     public List<Client> findAll() {
-        
-        String sql = "SELECT ID_CLIENT, CODE, NAME FROM CLIENTS ORDER BY ID_CLIENT";
-        List<Client> clients = new ArrayList<>();
+        return Metrics.timed("ClientDAO.findAll", () -> {
+            String sql = "SELECT ID_CLIENT, CODE, NAME FROM CLIENTS ORDER BY ID_CLIENT";
+            List<Client> clients = new ArrayList<>();
 
-        try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+
+                while (rs.next()) {
+                    clients.add(buildClient(rs));
+                }
 
-            while (rs.next()) {
-                clients.add(buildClient(rs));
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ClientDAO.findAll: " + e.getMessage(), e);
             }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en ClientDAO.findAll: " + e.getMessage(), e);
-        }
+            return clients;
+        });
+    }
+
+    /**
+     * Paginación por clave (keyset): clientes con ID mayor que afterId, en orden de ID.
+     *
+     * @param afterId último ID de la página anterior (0 para la primera página)
+     * @param limit   tamaño de página
+     * @return clientes de la página; lista vacía si ya no hay más
+    */
+    public List<Client> findPage(int afterId, int limit) {
+        return Metrics.timed("ClientDAO.findPage", () -> {
+            String sql = "SELECT ID_CLIENT, CODE, NAME FROM CLIENTS WHERE ID_CLIENT > ? ORDER BY ID_CLIENT LIMIT ?";
+            List<Client> clients = new ArrayList<>();
+
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql)) {
+
+                stmt.setInt(1, afterId);
+                stmt.setInt(2, limit);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        clients.add(buildClient(rs));
+                    }
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ClientDAO.findPage: " + e.getMessage(), e);
+            }
+
+            return clients;
+        });
+    }
+
+    /**
+     * Recorre todos los clientes en orden de ID sin construir ninguna lista.
+     *
+     * @param fetchSize filas por viaje al servidor (necesita useCursorFetch=true en la URL);
+     *                  0 o menos = streaming fila a fila del driver de MySQL
+     * @param consumer  código a ejecutar con cada cliente
+     * @return número de clientes recorridos
+    */
+    public long forEach(int fetchSize, Consumer<Client> consumer) {
+        return Metrics.timed("ClientDAO.forEach", () -> {
+            String sql = "SELECT ID_CLIENT, CODE, NAME FROM CLIENTS ORDER BY ID_CLIENT";
+            long count = 0;
+
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+                stmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
 
-        return clients;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(buildClient(rs));
+                        count++;
+                    }
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ClientDAO.forEach: " + e.getMessage(), e);
+            }
+
+            Metrics.addRows("ClientDAO.forEach", count);
+            return count;
+        });
     }
 
     /**
@@ -112,29 +223,96 @@ public class ClientDAO {
      * @return id generado si se inserta; -1 si no se insertó ninguna fila
     */
     public int insertClient(String code, String name) {
-        
-        String sql = "INSERT INTO CLIENTS (CODE, NAME) VALUES (?, ?)";
-        int generatedId = -1;
+        return Metrics.timed("ClientDAO.insertClient", () -> {
+            String sql = "INSERT INTO CLIENTS (CODE, NAME) VALUES (?, ?)";
+            int generatedId = -1;
 
-        try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
-            stmt.setString(1, code);
-            stmt.setString(2, name);
-
-            int rows = stmt.executeUpdate();
-            if (rows == 0) return -1;
-            
-            try (ResultSet keys = stmt.getGeneratedKeys()) {
-                if (keys.next()) {
-                    generatedId = keys.getInt(1);
+                stmt.setString(1, code);
+                stmt.setString(2, name);
+
+                int rows = stmt.executeUpdate();
+                if (rows == 0) return -1;
+                DB.markWrite();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        generatedId = keys.getInt(1);
+                    }
                 }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ClientDAO.insertClient: " + e.getMessage(), e);
+            } finally {
+                // CLIENTS ha cambiado (o puede haber cambiado): vacío las cachés
+                invalidateCache();
             }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en ClientDAO.insertClient: " + e.getMessage(), e);
-        }
+            return generatedId;
+        });
+    }
+
+    /**
+     * Alta idempotente: inserta el cliente o, si ya hay uno con ese código (UNIQUE(CODE)), devuelve su id
+     * sin tocarlo. Una sola sentencia (INSERT ... ON DUPLICATE KEY UPDATE con LAST_INSERT_ID).
+     * Necesita useAffectedRows=true en db.url (ver ProductDAO.upsertProduct).
+     *
+     * @param code código del cliente
+     * @param name nombre del cliente (solo se usa si se crea)
+     * @return id del cliente y si lo ha creado esta llamada
+    */
+    public UpsertResult upsertClient(String code, String name) {
+        return Metrics.timed("ClientDAO.upsertClient", () -> {
+            String sql = "INSERT INTO CLIENTS (CODE, NAME) VALUES (?, ?) "
+                + "ON DUPLICATE KEY UPDATE ID_CLIENT = LAST_INSERT_ID(ID_CLIENT)";
+            UpsertResult result;
+
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                stmt.setString(1, code);
+                stmt.setString(2, name);
+
+                boolean created = stmt.executeUpdate() == 1;
+                if (created) DB.markWrite();
+                result = new UpsertResult((int) DB.lastInsertId(stmt), created);
+
+            } catch (SQLException e) {
+                invalidateCache();
+                throw new RuntimeException("Error en ClientDAO.upsertClient: " + e.getMessage(), e);
+            }
+
+            // Si ya existía CLIENTS no ha cambiado y las cachés siguen valiendo
+            if (result.created()) invalidateCache();
+            return result;
+        });
+    }
+
+    /**
+     * Vacía las cachés de clientes. Lo llama insertClient; también sirve si CLIENTS se ha tocado por fuera.
+    */
+    public static void invalidateCache() {
+        BY_CODE.clear();
+        BY_ID.clear();
+    }
+
+    /**
+     * @return estadísticas de las cachés {por código, por id}
+    */
+    public static CacheStats[] getCacheStats() {
+        return new CacheStats[]{BY_CODE.getStats(), BY_ID.getStats()};
+    }
+
+    private static void remember(Client client) {
+        if (client == null) return;
+        BY_CODE.put(client.getCode(), client);
+        BY_ID.put(client.getId(), client);
+    }
 
-        return generatedId;
+    // Client tiene setters: devuelvo una copia para que nadie pueda modificar lo que hay en la caché
+    private static Client copy(Client c) {
+        return new Client(c.getId(), c.getCode(), c.getName());
     }
-}
\ No newline at end of file
+}
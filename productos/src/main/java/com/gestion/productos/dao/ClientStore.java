@@ -0,0 +1,65 @@
+package com.gestion.productos.dao;
+
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.UpsertResult;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Acceso a los clientes (tabla CLIENTS) sin atarse a un motor concreto.
+ * ClientDAO es la implementación sobre MySQL e InMemoryClientStore la de memoria.
+ *
+ * Reglas comunes a todas las implementaciones (las de schema.sql):
+ * CODE es único sin distinguir mayúsculas ni tildes, y CODE y NAME son obligatorios.
+*/
+public interface ClientStore {
+
+    /**
+     * @param code código del cliente (ej: C001)
+     * @return Client si existe; null si no existe
+    */
+    Client findByCodigo(String code);
+
+    /**
+     * @param id id del cliente
+     * @return Client si existe; null si no existe
+    */
+    Client findById(int id);
+
+    /**
+     * @return todos los clientes en orden de ID (lista vacía si no hay)
+    */
+    List<Client> findAll();
+
+    /**
+     * Paginación por clave: clientes con ID mayor que afterId, en orden de ID.
+     *
+     * @param afterId último ID de la página anterior (0 para la primera página)
+     * @param limit   tamaño de página
+    */
+    List<Client> findPage(int afterId, int limit);
+
+    /**
+     * Recorre todos los clientes en orden de ID sin construir ninguna lista.
+     *
+     * @param fetchSize filas por viaje (solo lo usan las implementaciones con base de datos)
+     * @param consumer  código a ejecutar con cada cliente
+     * @return número de clientes recorridos
+    */
+    long forEach(int fetchSize, Consumer<Client> consumer);
+
+    /**
+     * Inserta un cliente. Un código repetido es un error.
+     *
+     * @return id generado; -1 si no se insertó ninguna fila
+    */
+    int insertClient(String code, String name);
+
+    /**
+     * Alta idempotente: inserta el cliente o, si ya hay uno con ese código, devuelve su id sin tocarlo.
+     *
+     * @return id del cliente y si lo ha creado esta llamada
+    */
+    UpsertResult upsertClient(String code, String name);
+}
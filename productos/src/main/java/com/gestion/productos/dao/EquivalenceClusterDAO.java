@@ -0,0 +1,349 @@
+package com.gestion.productos.dao;
+
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.UnionFind;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DAO de los grupos (clusters) de equivalencia.
+ * La equivalencia es transitiva: si A≡B y B≡C entonces A≡C. En vez de recorrer el grafo de EQUIVALENCES
+ * con muchas consultas, guardo en PRODUCT_CLUSTERS a qué grupo pertenece cada producto.
+ *
+ * - Un producto sin fila en PRODUCT_CLUSTERS es un grupo de un solo elemento (su CLUSTER_ID sería su propio id).
+ * - Los grupos se mantienen al insertar equivalencias (mergeClusters, estilo union-find: el grupo pequeño pasa al grande
+ *   y se queda con el CLUSTER_ID del grande, así solo se reescriben las filas del pequeño).
+ * - rebuildClusters recalcula todo desde cero a partir de EQUIVALENCES. Un grupo que no ha cambiado conserva su CLUSTER_ID:
+ *   los ids se eligen comparando los miembros del grupo nuevo con los grupos de antes, no por el id de producto.
+ * - El CLUSTER_ID de un grupo es siempre el id de uno de sus productos (cada grupo empieza siendo un producto solo
+ *   y al unir se conserva el id de uno de los dos), así que dos grupos distintos nunca comparten CLUSTER_ID.
+*/
+public class EquivalenceClusterDAO {
+
+    // Tamaño máximo de las listas IN (...) y de los INSERT multi-fila
+    private static final int CHUNK = 1000;
+
+    /**
+     * Devuelve todos los productos del mismo grupo de equivalencia que el producto dado (sin incluirlo a él).
+     * Es una única consulta por índice: PK de PRODUCT_CLUSTERS + índice por CLUSTER_ID.
+     *
+     * @param productId id del producto
+     * @return productos equivalentes directa o transitivamente; lista vacía si no tiene
+    */
+    public List<Product> findClusterMembers(int productId) {
+        return Metrics.timed("EquivalenceClusterDAO.findClusterMembers", () -> {
+            String sql =
+                "SELECT P.ID_PRODUCT, P.CLIENT_ID, P.NAME \n" +
+                "FROM PRODUCT_CLUSTERS C \n" +
+                "JOIN PRODUCT_CLUSTERS M ON M.CLUSTER_ID = C.CLUSTER_ID \n" +
+                "JOIN PRODUCTS P ON P.ID_PRODUCT = M.PRODUCT_ID \n" +
+                "WHERE C.PRODUCT_ID = ? AND M.PRODUCT_ID <> ? \n" +
+                "ORDER BY P.CLIENT_ID, P.ID_PRODUCT";
+
+            List<Product> members = new ArrayList<>();
+
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql)) {
+
+                stmt.setInt(1, productId);
+                stmt.setInt(2, productId);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        members.add(new Product(
+                            rs.getInt("ID_PRODUCT"),
+                            rs.getInt("CLIENT_ID"),
+                            rs.getString("NAME")
+                        ));
+                    }
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en EquivalenceClusterDAO.findClusterMembers: " + e.getMessage(), e);
+            }
+
+            return members;
+        });
+    }
+
+    /**
+     * Une los grupos de cada pareja de productos. Se ejecuta dentro de la transacción del que llama
+     * (no hace commit), para que la equivalencia y su grupo se guarden juntos.
+     *
+     * Pasos:
+     * 1) leo el grupo actual de cada producto (bloqueando sus filas) y el tamaño de cada grupo
+     * 2) uno los grupos en memoria con union-find por tamaño
+     * 3) reasigno los grupos absorbidos al superviviente (un UPDATE por grupo, no por producto)
+     * 4) creo la fila de los productos que hasta ahora estaban solos
+     *
+     * @param con   conexión con la transacción abierta
+     * @param pairs parejas {productA, productB}
+    */
+    public void mergeClusters(Connection con, Collection<int[]> pairs) throws SQLException {
+        Metrics.run("EquivalenceClusterDAO.mergeClusters", () -> {
+            if (pairs.isEmpty()) return;
+
+            Set<Integer> productIds = new LinkedHashSet<>();
+            for (int[] pair : pairs) {
+                productIds.add(pair[0]);
+                productIds.add(pair[1]);
+            }
+
+            // 1) grupo actual de cada producto (si no tiene fila, es su propio grupo)
+            Map<Integer, Integer> clusterOf = findClusterIds(con, productIds);
+            Set<Integer> withRow = new LinkedHashSet<>(clusterOf.keySet());
+            for (int p : productIds) {
+                clusterOf.putIfAbsent(p, p);
+            }
+
+            Set<Integer> clusterIds = new LinkedHashSet<>(clusterOf.values());
+            Map<Integer, Integer> sizes = findClusterSizes(con, clusterIds);
+
+            // 2) union-find sobre índices densos de los grupos implicados
+            int[] ids = new int[clusterIds.size()];
+            int[] weights = new int[clusterIds.size()];
+            Map<Integer, Integer> index = new HashMap<>();
+            int i = 0;
+            for (int c : clusterIds) {
+                ids[i] = c;
+                weights[i] = sizes.getOrDefault(c, 1);
+                index.put(c, i++);
+            }
+
+            UnionFind uf = new UnionFind(weights);
+            for (int[] pair : pairs) {
+                uf.union(index.get(clusterOf.get(pair[0])), index.get(clusterOf.get(pair[1])));
+            }
+
+            // 3) los grupos absorbidos pasan al grupo superviviente
+            String update = "UPDATE PRODUCT_CLUSTERS SET CLUSTER_ID = ? WHERE CLUSTER_ID = ?";
+            try (PreparedStatement stmt = con.prepareStatement(update)) {
+                boolean pending = false;
+                for (int k = 0; k < ids.length; k++) {
+                    int root = ids[uf.find(k)];
+                    if (root != ids[k] && sizes.containsKey(ids[k])) {
+                        stmt.setInt(1, root);
+                        stmt.setInt(2, ids[k]);
+                        stmt.addBatch();
+                        pending = true;
+                    }
+                }
+                if (pending) {
+                    stmt.executeBatch();
+                    DB.markWrite();
+                }
+            }
+
+            // 4) productos que estaban solos: ahora sí necesitan fila
+            List<int[]> newRows = new ArrayList<>();
+            for (int p : productIds) {
+                if (!withRow.contains(p)) {
+                    newRows.add(new int[]{p, ids[uf.find(index.get(clusterOf.get(p)))]});
+                }
+            }
+            insertRows(con, newRows);
+        });
+    }
+
+    /**
+     * Recalcula todos los grupos desde cero a partir de EQUIVALENCES.
+     * Leo las parejas en streaming, hago union-find en memoria con arrays de int (sin objetos por fila)
+     * y reescribo PRODUCT_CLUSTERS en una transacción.
+     *
+     * El id de cada grupo nuevo sale de los grupos de antes que han acabado en él: de los CLUSTER_ID cuyo producto
+     * sigue en el grupo, el que tenían más miembros (a igualdad, el menor). Si no queda ninguno, el menor id de producto.
+     * Así un recálculo sin cambios deja todos los CLUSTER_ID como estaban, sea cual sea el grupo que ganó cada unión.
+     *
+     * @return número de productos que quedan en algún grupo (con al menos una equivalencia)
+    */
+    public int rebuildClusters() {
+        return Metrics.timed("EquivalenceClusterDAO.rebuildClusters", () -> {
+            try (Connection con = DB.getConnection()) {
+
+                int maxId = 0;
+                try (Statement stmt = con.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(ID_PRODUCT), 0) FROM PRODUCTS")) {
+                    if (rs.next()) maxId = rs.getInt(1);
+                }
+
+                UnionFind uf = new UnionFind(maxId + 1);
+                boolean[] linked = new boolean[maxId + 1];
+
+                // Integer.MIN_VALUE le indica al driver de MySQL que lea fila a fila sin cargar todo el resultado
+                try (Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    stmt.setFetchSize(Integer.MIN_VALUE);
+                    try (ResultSet rs = stmt.executeQuery("SELECT PRODUCT_ID_A, PRODUCT_ID_B FROM EQUIVALENCES")) {
+                        while (rs.next()) {
+                            int a = rs.getInt(1);
+                            int b = rs.getInt(2);
+                            uf.union(a, b);
+                            linked[a] = true;
+                            linked[b] = true;
+                        }
+                    }
+                }
+
+                // Grupo actual de cada producto (0 = sin fila)
+                int[] oldCluster = new int[maxId + 1];
+                try (Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    stmt.setFetchSize(Integer.MIN_VALUE);
+                    try (ResultSet rs = stmt.executeQuery("SELECT PRODUCT_ID, CLUSTER_ID FROM PRODUCT_CLUSTERS")) {
+                        while (rs.next()) {
+                            int p = rs.getInt(1);
+                            if (p <= maxId) oldCluster[p] = rs.getInt(2);
+                        }
+                    }
+                }
+
+                // Cuántos miembros de cada grupo nuevo venían de cada grupo de antes. Solo cuentan los CLUSTER_ID cuyo
+                // producto está en el mismo grupo nuevo: ese id no lo puede querer ningún otro grupo
+                int[] votes = new int[maxId + 1];
+                for (int p = 0; p <= maxId; p++) {
+                    int c = oldCluster[p];
+                    if (linked[p] && c > 0 && c <= maxId && linked[c] && uf.find(c) == uf.find(p)) {
+                        votes[c]++;
+                    }
+                }
+
+                // Id de cada grupo: el grupo de antes con más votos o, si no hay ninguno, el menor id de producto.
+                // Recorro en orden, así a igualdad gana el menor
+                int[] idOfRoot = new int[maxId + 1];
+                Arrays.fill(idOfRoot, -1);
+                int[] minOfRoot = new int[maxId + 1];
+                Arrays.fill(minOfRoot, -1);
+                for (int p = 0; p <= maxId; p++) {
+                    if (!linked[p]) continue;
+                    int root = uf.find(p);
+                    if (minOfRoot[root] == -1) minOfRoot[root] = p;
+                    if (votes[p] > 0 && (idOfRoot[root] == -1 || votes[p] > votes[idOfRoot[root]])) idOfRoot[root] = p;
+                }
+                for (int p = 0; p <= maxId; p++) {
+                    if (idOfRoot[p] == -1) idOfRoot[p] = minOfRoot[p];
+                }
+
+                con.setAutoCommit(false);
+                try {
+                    try (Statement stmt = con.createStatement()) {
+                        stmt.executeUpdate("DELETE FROM PRODUCT_CLUSTERS");
+                        DB.markWrite();
+                    }
+
+                    int count = 0;
+                    List<int[]> rows = new ArrayList<>(CHUNK);
+                    for (int p = 0; p <= maxId; p++) {
+                        if (!linked[p]) continue;
+                        rows.add(new int[]{p, idOfRoot[uf.find(p)]});
+                        count++;
+                        if (rows.size() == CHUNK) {
+                            insertRows(con, rows);
+                            rows.clear();
+                        }
+                    }
+                    insertRows(con, rows);
+
+                    con.commit();
+                    return count;
+
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en EquivalenceClusterDAO.rebuildClusters: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private Map<Integer, Integer> findClusterIds(Connection con, Collection<Integer> productIds) throws SQLException {
+        Map<Integer, Integer> clusterOf = new HashMap<>();
+
+        for (List<Integer> chunk : chunks(productIds)) {
+            String sql = "SELECT PRODUCT_ID, CLUSTER_ID FROM PRODUCT_CLUSTERS WHERE PRODUCT_ID IN ("
+                + placeholders(chunk.size()) + ") FOR UPDATE";
+
+            try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                bind(stmt, chunk);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        clusterOf.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+        }
+
+        return clusterOf;
+    }
+
+    private Map<Integer, Integer> findClusterSizes(Connection con, Collection<Integer> clusterIds) throws SQLException {
+        Map<Integer, Integer> sizes = new HashMap<>();
+
+        for (List<Integer> chunk : chunks(clusterIds)) {
+            String sql = "SELECT CLUSTER_ID, COUNT(*) FROM PRODUCT_CLUSTERS WHERE CLUSTER_ID IN ("
+                + placeholders(chunk.size()) + ") GROUP BY CLUSTER_ID";
+
+            try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                bind(stmt, chunk);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        sizes.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+        }
+
+        return sizes;
+    }
+
+    // INSERT multi-fila: una ida y vuelta por bloque en vez de una por producto
+    private void insertRows(Connection con, List<int[]> rows) throws SQLException {
+        for (int from = 0; from < rows.size(); from += CHUNK) {
+            List<int[]> chunk = rows.subList(from, Math.min(rows.size(), from + CHUNK));
+
+            StringBuilder sql = new StringBuilder("INSERT INTO PRODUCT_CLUSTERS (PRODUCT_ID, CLUSTER_ID) VALUES ");
+            for (int k = 0; k < chunk.size(); k++) {
+                sql.append(k == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+
+            try (PreparedStatement stmt = con.prepareStatement(sql.toString())) {
+                int idx = 1;
+                for (int[] row : chunk) {
+                    stmt.setInt(idx++, row[0]);
+                    stmt.setInt(idx++, row[1]);
+                }
+                stmt.executeUpdate();
+                DB.markWrite();
+            }
+        }
+    }
+
+    private static List<List<Integer>> chunks(Collection<Integer> values) {
+        List<Integer> all = new ArrayList<>(values);
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += CHUNK) {
+            chunks.add(all.subList(from, Math.min(all.size(), from + CHUNK)));
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    private static void bind(PreparedStatement stmt, List<Integer> values) throws SQLException {
+        for (int k = 0; k < values.size(); k++) {
+            stmt.setInt(k + 1, values.get(k));
+        }
+    }
+}
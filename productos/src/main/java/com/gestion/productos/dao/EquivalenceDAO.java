@@ -1,20 +1,44 @@
 package com.gestion.productos.dao;
 
+import com.gestion.productos.metrics.Metrics;
 import com.gestion.productos.model.Product;
+import com.gestion.productos.model.TableVersion;
+import com.gestion.productos.model.UpsertResult;
 import com.gestion.productos.util.DB;
+import com.gestion.productos.util.UnitOfWork;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * DAO de Equivalence.
  * Gestiona la tabla EQUIVALENCES y las consultas necesarias para:
  * - comprobar si existe una equivalencia
- * - insertar una equivalencia
+ * - insertar una equivalencia (o, con upsertEquivalence, devolver la que ya había)
  * - listar los productos equivalentes a uno dado
+ *
+ * EQUIVALENCES guarda cada pareja una sola vez (A < B). Para poder buscar por índice desde cualquiera de los dos
+ * productos, cada equivalencia se guarda además en EQUIVALENCE_LINKS en los dos sentidos (A→B y B→A),
+ * en la misma transacción. findEquivalents lee solo de EQUIVALENCE_LINKS.
+ * Los grupos transitivos (A≡B, B≡C ⇒ A≡C) se mantienen en EquivalenceClusterDAO.
 */
-public class EquivalenceDAO {
+public class EquivalenceDAO implements EquivalenceStore {
+
+    // Quien guarde datos derivados de EQUIVALENCES (por ejemplo un snapshot) y necesite saber que han cambiado
+    private static final List<Runnable> INSERT_LISTENERS = new CopyOnWriteArrayList<>();
+
+    private final EquivalenceClusterDAO clusterDAO = new EquivalenceClusterDAO();
+
+    /**
+     * Registra un listener que se llama después de insertar equivalencias (una o un bloque).
+     *
+     * @param listener código a ejecutar
+    */
+    public static void addInsertListener(Runnable listener) {
+        INSERT_LISTENERS.add(listener);
+    }
 
     /**
      * Comprueba si ya existe una equivalencia exacta entre dos productos.
@@ -26,28 +50,31 @@ public class EquivalenceDAO {
     */
 
     public boolean existsEquivalence(int productA, int productB) {
-        
-        String sql = "SELECT 1 FROM EQUIVALENCES WHERE PRODUCT_ID_A = ? AND PRODUCT_ID_B = ? LIMIT 1";
+        return Metrics.timed("EquivalenceDAO.existsEquivalence", () -> {
+            String sql = "SELECT 1 FROM EQUIVALENCES WHERE PRODUCT_ID_A = ? AND PRODUCT_ID_B = ? LIMIT 1";
 
-        try (Connection con = DB.getConnection();
-            
-            PreparedStatement stmt = con.prepareStatement(sql)) {
+            try (Connection con = DB.getConnection();
 
-            stmt.setInt(1, productA);
-            stmt.setInt(2, productB);
+                PreparedStatement stmt = con.prepareStatement(sql)) {
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
-            }
+                stmt.setInt(1, productA);
+                stmt.setInt(2, productB);
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en EquivalenceDAO.existsEquivalence: " + e.getMessage(), e);
-        }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en EquivalenceDAO.existsEquivalence: " + e.getMessage(), e);
+            }
+        });
     }
 
     /**
      * Inserta una equivalencia entre dos productos.
      * Yo la llamo desde el Service después de normalizar el orden (min/max) para evitar duplicados invertidos.
+     * En la misma transacción une los grupos de equivalencia de los dos productos (ver EquivalenceClusterDAO),
+     * así la equivalencia transitiva siempre está al día.
      *
      * @param productA id de producto A
      * @param productB id de producto B
@@ -55,67 +82,284 @@ public class EquivalenceDAO {
     */
 
     public boolean insertEquivalence(int productA, int productB) {
-        
-        String sql = "INSERT INTO EQUIVALENCES (PRODUCT_ID_A, PRODUCT_ID_B) VALUES (?, ?)";
+        return Metrics.timed("EquivalenceDAO.insertEquivalence", () -> {
+            String sql = "INSERT INTO EQUIVALENCES (PRODUCT_ID_A, PRODUCT_ID_B) VALUES (?, ?)";
 
-        try (Connection con = DB.getConnection();
-            
-            PreparedStatement stmt = con.prepareStatement(sql)) {
+            try (Connection con = DB.getConnection()) {
 
-            stmt.setInt(1, productA);
-            stmt.setInt(2, productB);
+                con.setAutoCommit(false);
 
-            return stmt.executeUpdate() > 0;
+                try (PreparedStatement stmt = con.prepareStatement(sql)) {
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en EquivalenceDAO.insertEquivalence: " + e.getMessage(), e);
-        }
+                    stmt.setInt(1, productA);
+                    stmt.setInt(2, productB);
+
+                    if (stmt.executeUpdate() == 0) {
+                        con.rollback();
+                        return false;
+                    }
+                    DB.markWrite();
+
+                    insertLinks(con, List.<int[]>of(new int[]{productA, productB}));
+                    clusterDAO.mergeClusters(con, List.<int[]>of(new int[]{productA, productB}));
+                    con.commit();
+                    notifyInsert();
+                    return true;
+
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en EquivalenceDAO.insertEquivalence: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Alta idempotente de una equivalencia (A < B): la inserta o, si ya existe, devuelve la que había.
+     * Es una sola sentencia (INSERT ... ON DUPLICATE KEY UPDATE con LAST_INSERT_ID) en vez de existsEquivalence
+     * + insertEquivalence, y sin la carrera entre las dos. Solo si la ha creado añade los enlaces y une los grupos,
+     * en la misma transacción. Necesita useAffectedRows=true en db.url (ver ProductDAO.upsertProduct).
+     *
+     * @param productA id de producto A
+     * @param productB id de producto B
+     * @return ID_EQUIVALENCE y si la ha creado esta llamada
+    */
+    public UpsertResult upsertEquivalence(int productA, int productB) {
+        return Metrics.timed("EquivalenceDAO.upsertEquivalence", () -> {
+            String sql = "INSERT INTO EQUIVALENCES (PRODUCT_ID_A, PRODUCT_ID_B) VALUES (?, ?) "
+                + "ON DUPLICATE KEY UPDATE ID_EQUIVALENCE = LAST_INSERT_ID(ID_EQUIVALENCE)";
+
+            try (Connection con = DB.getConnection()) {
+
+                con.setAutoCommit(false);
+
+                try (PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                    stmt.setInt(1, productA);
+                    stmt.setInt(2, productB);
+
+                    boolean created = stmt.executeUpdate() == 1;
+                    if (created) DB.markWrite();
+                    UpsertResult result = new UpsertResult((int) DB.lastInsertId(stmt), created);
+
+                    if (created) {
+                        insertLinks(con, List.<int[]>of(new int[]{productA, productB}));
+                        clusterDAO.mergeClusters(con, List.<int[]>of(new int[]{productA, productB}));
+                    }
+                    con.commit();
+                    if (created) notifyInsert();
+                    return result;
+
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en EquivalenceDAO.upsertEquivalence: " + e.getMessage(), e);
+            }
+        });
     }
 
     /**
      * Devuelve la lista de productos equivalentes a un producto.
-     * La consulta busca en EQUIVALENCES si el producto está en A o en B,
-     * y en base a eso devuelve el "otro" producto de la pareja.
+     * EQUIVALENCE_LINKS tiene las dos direcciones de cada pareja, así que basta un rango de su clave primaria
+     * (PRODUCT_ID, EQUIVALENT_ID) y un acceso por clave a PRODUCTS por cada equivalente, sin OR ni CASE.
      *
      * @param productId id del producto del que quiero obtener equivalencias
      * @return lista de productos equivalentes; si no hay, devuelve lista vacía
     */
    
     public List<Product> findEquivalents(int productId) {
+        return Metrics.timed("EquivalenceDAO.findEquivalents", () -> {
+            String sql =
+                "SELECT P.ID_PRODUCT, P.CLIENT_ID, P.NAME \n" +
+                "FROM EQUIVALENCE_LINKS L \n" +
+                "JOIN PRODUCTS P ON P.ID_PRODUCT = L.EQUIVALENT_ID \n" +
+                "WHERE L.PRODUCT_ID = ? \n" +
+                "ORDER BY L.EQUIVALENT_ID";
+
+            List<Product> equivalents = new ArrayList<>();
+
+            try (Connection con = DB.getReadConnection();
+
+                PreparedStatement stmt = con.prepareStatement(sql)) {
+
+                stmt.setInt(1, productId);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        equivalents.add(new Product(
+                            rs.getInt("ID_PRODUCT"),
+                            rs.getInt("CLIENT_ID"),
+                            rs.getString("NAME")
+                        ));
+                    }
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en EquivalenceDAO.findEquivalents: " + e.getMessage(), e);
+            }
+
+            return equivalents;
+        });
+    }
+
+    /**
+     * Inserta un bloque de equivalencias con un INSERT multi-fila usando la conexión (y transacción) del que llama.
+     * Las parejas que ya existen las salta la restricción UNIQUE(PRODUCT_ID_A, PRODUCT_ID_B) con INSERT IGNORE,
+     * así no hace falta un existsEquivalence por pareja. También une los grupos de equivalencia del bloque.
+     * Las parejas deben venir ya normalizadas (A < B) y validadas (productos existentes de clientes distintos).
+     *
+     * @param con   conexión con autocommit desactivado (el commit lo hace el que llama)
+     * @param pairs parejas {productA, productB}
+     * @return número de equivalencias nuevas insertadas
+    */
+    public int insertEquivalencesIgnoringDuplicates(Connection con, List<int[]> pairs) throws SQLException {
+        return Metrics.timed("EquivalenceDAO.insertEquivalencesIgnoringDuplicates", () -> {
+            if (pairs.isEmpty()) return 0;
+
+            StringBuilder sql = new StringBuilder("INSERT IGNORE INTO EQUIVALENCES (PRODUCT_ID_A, PRODUCT_ID_B) VALUES ");
+            for (int i = 0; i < pairs.size(); i++) {
+                sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+
+            int inserted;
+            try (PreparedStatement stmt = con.prepareStatement(sql.toString())) {
+                int idx = 1;
+                for (int[] pair : pairs) {
+                    stmt.setInt(idx++, pair[0]);
+                    stmt.setInt(idx++, pair[1]);
+                }
+                inserted = stmt.executeUpdate();
+                if (inserted > 0) DB.markWrite();
+            }
+
+            insertLinks(con, pairs);
+
+            // Si alguna ya existía sus productos ya están en el mismo grupo y la unión no cambia nada
+            clusterDAO.mergeClusters(con, pairs);
+            if (inserted > 0) notifyInsert();
+            return inserted;
+        });
+    }
+
+    /**
+     * Grupo de equivalencia del producto (PRODUCT_CLUSTERS), ver EquivalenceClusterDAO.findClusterMembers.
+    */
+    public List<Product> findClusterMembers(int productId) {
+        return clusterDAO.findClusterMembers(productId);
+    }
+
+    /**
+     * Recalcula PRODUCT_CLUSTERS desde EQUIVALENCES, ver EquivalenceClusterDAO.rebuildClusters.
+    */
+    public int rebuildClusters() {
+        return clusterDAO.rebuildClusters();
+    }
+
+    /**
+     * Recorre todas las parejas de EQUIVALENCES en streaming, sin construir ninguna lista.
+     *
+     * @param fetchSize filas por viaje al servidor (necesita useCursorFetch=true en la URL);
+     *                  0 o menos = streaming fila a fila del driver de MySQL
+     * @param consumer  código a ejecutar con cada pareja (A < B)
+     * @return número de parejas recorridas
+    */
+    public long forEachPair(int fetchSize, PairConsumer consumer) {
+        return Metrics.timed("EquivalenceDAO.forEachPair", () ->
+            streamPairs("SELECT PRODUCT_ID_A, PRODUCT_ID_B FROM EQUIVALENCES", null, fetchSize, consumer, "forEachPair"));
+    }
 
-        String sql =
-            "SELECT P.ID_PRODUCT, P.CLIENT_ID, P.NAME \n" +
-            "FROM EQUIVALENCES E \n" +
-            "JOIN PRODUCTS P ON P.ID_PRODUCT = CASE \n" +
-            "WHEN E.PRODUCT_ID_A = ? THEN E.PRODUCT_ID_B \n" +
-            "ELSE E.PRODUCT_ID_A \n" +
-            "END \n" +
-            "WHERE E.PRODUCT_ID_A = ? OR E.PRODUCT_ID_B = ?";
+    /**
+     * Igual que forEachPair pero solo con las filas con afterId < ID_EQUIVALENCE <= upToId (rango de la clave primaria).
+     * Sirve para leer la tabla en trozos desde varios hilos a la vez.
+    */
+    public long forEachPairInRange(long afterId, long upToId, int fetchSize, PairConsumer consumer) {
+        return Metrics.timed("EquivalenceDAO.forEachPairInRange", () ->
+            streamPairs("SELECT PRODUCT_ID_A, PRODUCT_ID_B FROM EQUIVALENCES WHERE ID_EQUIVALENCE > ? AND ID_EQUIVALENCE <= ?",
+                new long[]{afterId, upToId}, fetchSize, consumer, "forEachPairInRange"));
+    }
 
-        List<Product> equivalents = new ArrayList<>();
+    private long streamPairs(String sql, long[] params, int fetchSize, PairConsumer consumer, String method) {
+        long count = 0;
 
         try (Connection con = DB.getConnection();
-            
-            PreparedStatement stmt = con.prepareStatement(sql)) {
+             PreparedStatement stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
 
-            stmt.setInt(1, productId);
-            stmt.setInt(2, productId);
-            stmt.setInt(3, productId);
+            stmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+            if (params != null) {
+                for (int i = 0; i < params.length; i++) {
+                    stmt.setLong(i + 1, params[i]);
+                }
+            }
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    equivalents.add(new Product(
-                        rs.getInt("ID_PRODUCT"),
-                        rs.getInt("CLIENT_ID"),
-                        rs.getString("NAME")
-                    ));
+                    consumer.accept(rs.getInt(1), rs.getInt(2));
+                    count++;
                 }
             }
 
         } catch (SQLException e) {
-            throw new RuntimeException("Error en EquivalenceDAO.findEquivalents: " + e.getMessage(), e);
+            throw new RuntimeException("Error en EquivalenceDAO." + method + ": " + e.getMessage(), e);
         }
 
-        return equivalents;
+        Metrics.addRows("EquivalenceDAO." + method, count);
+        return count;
+    }
+
+    /**
+     * @return número de equivalencias y mayor ID_EQUIVALENCE, para saber si la tabla ha cambiado
+    */
+    public TableVersion getVersion() {
+        return Metrics.timed("EquivalenceDAO.getVersion", () -> {
+            String sql = "SELECT COUNT(*), COALESCE(MAX(ID_EQUIVALENCE), 0) FROM EQUIVALENCES";
+
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+
+                rs.next();
+                return new TableVersion(rs.getLong(1), rs.getLong(2));
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en EquivalenceDAO.getVersion: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Si hay una UnitOfWork abierta los listeners esperan a su commit (con rollback no se avisa a nadie)
+    private static void notifyInsert() {
+        UnitOfWork.afterCommit(() -> {
+            for (Runnable listener : INSERT_LISTENERS) {
+                listener.run();
+            }
+        });
+    }
+
+    /**
+     * Guarda las parejas en EQUIVALENCE_LINKS en los dos sentidos. Las que ya estaban se saltan (INSERT IGNORE),
+     * así se puede llamar con el mismo bloque que se ha insertado en EQUIVALENCES.
+    */
+    private void insertLinks(Connection con, List<int[]> pairs) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT IGNORE INTO EQUIVALENCE_LINKS (PRODUCT_ID, EQUIVALENT_ID) VALUES ");
+        for (int i = 0; i < pairs.size(); i++) {
+            sql.append(i == 0 ? "(?, ?), (?, ?)" : ", (?, ?), (?, ?)");
+        }
+
+        try (PreparedStatement stmt = con.prepareStatement(sql.toString())) {
+            int idx = 1;
+            for (int[] pair : pairs) {
+                stmt.setInt(idx++, pair[0]);
+                stmt.setInt(idx++, pair[1]);
+                stmt.setInt(idx++, pair[1]);
+                stmt.setInt(idx++, pair[0]);
+            }
+            if (stmt.executeUpdate() > 0) DB.markWrite();
+        }
     }
-}
\ No newline at end of file
+}
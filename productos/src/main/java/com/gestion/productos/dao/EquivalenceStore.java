@@ -0,0 +1,82 @@
+package com.gestion.productos.dao;
+
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.TableVersion;
+import com.gestion.productos.model.UpsertResult;
+
+import java.util.List;
+
+/**
+ * Acceso a las equivalencias (EQUIVALENCES y sus tablas derivadas EQUIVALENCE_LINKS y PRODUCT_CLUSTERS)
+ * sin atarse a un motor concreto. EquivalenceDAO es la implementación sobre MySQL, ShardedEquivalenceStore
+ * la de varias bases de datos (shards) e InMemoryEquivalenceStore la de memoria.
+ *
+ * Reglas comunes a todas las implementaciones (las de schema.sql): la pareja se guarda normalizada (A < B),
+ * es única y los dos productos tienen que existir.
+*/
+public interface EquivalenceStore {
+
+    /**
+     * Código que recibe cada pareja de EQUIVALENCES al recorrer la tabla.
+     */
+    @FunctionalInterface
+    interface PairConsumer {
+        void accept(int productA, int productB);
+    }
+
+    /**
+     * @return true si existe la equivalencia (A < B)
+    */
+    boolean existsEquivalence(int productA, int productB);
+
+    /**
+     * Inserta la equivalencia (A < B). Una pareja repetida es un error.
+     *
+     * @return true si se ha insertado
+    */
+    boolean insertEquivalence(int productA, int productB);
+
+    /**
+     * Alta idempotente de la equivalencia (A < B).
+     *
+     * @return id de la equivalencia y si la ha creado esta llamada
+    */
+    UpsertResult upsertEquivalence(int productA, int productB);
+
+    /**
+     * @return equivalentes directos del producto, en orden de id
+    */
+    List<Product> findEquivalents(int productId);
+
+    /**
+     * @return productos del mismo grupo de equivalencia (directos y transitivos, sin el propio producto),
+     *         en orden (CLIENT_ID, ID_PRODUCT)
+    */
+    List<Product> findClusterMembers(int productId);
+
+    /**
+     * Recalcula todos los grupos de equivalencia desde las parejas.
+     *
+     * @return número de productos que quedan en algún grupo
+    */
+    int rebuildClusters();
+
+    /**
+     * Recorre todas las parejas sin construir ninguna lista.
+     *
+     * @param fetchSize filas por viaje (solo lo usan las implementaciones con base de datos)
+     * @param consumer  código a ejecutar con cada pareja (A < B)
+     * @return número de parejas recorridas
+    */
+    long forEachPair(int fetchSize, PairConsumer consumer);
+
+    /**
+     * Igual que forEachPair pero solo con las parejas con afterId < ID_EQUIVALENCE <= upToId.
+    */
+    long forEachPairInRange(long afterId, long upToId, int fetchSize, PairConsumer consumer);
+
+    /**
+     * @return número de equivalencias y mayor id, para saber si han cambiado
+    */
+    TableVersion getVersion();
+}
@@ -1,18 +1,50 @@
 package com.gestion.productos.dao;
 
+import com.gestion.productos.metrics.Metrics;
 import com.gestion.productos.model.Product;
+import com.gestion.productos.model.UpsertResult;
 import com.gestion.productos.util.DB;
+import com.gestion.productos.util.TextNormalizer;
+import com.gestion.productos.util.UnitOfWork;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * DAO de Product.
  * Se encarga del acceso a datos de la tabla PRODUCTS.
  * Esta clase no imprime por consola: devuelve objetos/listas para que Service/Main decidan qué mostrar.
+ * Las búsquedas (find*) usan DB.getReadConnection(), así que con réplicas configuradas se leen de ellas.
 */
-public class ProductDAO {
+public class ProductDAO implements ProductStore {
+
+    // Máximo de claves por consulta en las búsquedas por lotes
+    private static final int KEYS_PER_QUERY = 500;
+
+    // Tamaño de la columna PRODUCTS.NAME en schema.sql (VARCHAR: caracteres, no unidades UTF-16)
+    public static final int MAX_NAME_LENGTH = 125;
+
+    // Quien necesite enterarse de los productos nuevos (por ejemplo el índice de nombres para buscar similares)
+    private static final List<Consumer<Product>> INSERT_LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registra un listener que se llama después de cada insertProduct correcto con el producto creado.
+     * Las cargas masivas no avisan fila a fila: quien mantenga datos derivados debe refrescarse después.
+     *
+     * @param listener código a ejecutar con cada producto insertado
+    */
+    public static void addInsertListener(Consumer<Product> listener) {
+        INSERT_LISTENERS.add(listener);
+    }
 
     // Método auxiliar para evitar repetir código 5 veces
     private Product buildProduct(ResultSet rs) throws SQLException {
@@ -30,56 +62,84 @@ public class ProductDAO {
      * @return Product si existe; null si no existe
     */
     public Product findById(int id) {
-        
-        String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE ID_PRODUCT = ?";
+        return Metrics.timed("ProductDAO.findById", () -> {
+            String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE ID_PRODUCT = ?";
 
-        try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql)) {
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql)) {
 
-            stmt.setInt(1, id);
+                stmt.setInt(1, id);
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return buildProduct(rs);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return buildProduct(rs);
+                    }
                 }
-            }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en ProductDAO.findById: " + e.getMessage(), e);
-        }
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.findById: " + e.getMessage(), e);
+            }
 
-        return null;
+            return null;
+        });
     }
 
     /**
      * Busca un producto por cliente + nombre.
      * Esto permite que el mismo nombre de producto exista en clientes distintos.
      *
+     * Primero por el nombre normalizado (NAME_NORM). La unicidad sin embargo es UNIQUE(CLIENT_ID, NAME), así que
+     * puede haber varios con el mismo NAME_NORM ("Leche  entera" y "Leche entera") y hay filas sin NAME_NORM hasta
+     * que pasa backfillNormalizedNames. Si no sale exactamente uno, se busca por NAME (la clave de las altas).
+     *
      * @param clientId id del cliente (CLIENT_ID)
      * @param name     nombre del producto
      * @return Product si existe; null si no existe
     */
     public Product finByClientAndName(int clientId, String name) {
-        
-        String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE CLIENT_ID = ? AND NAME = ?";
-
-        try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql)) {
-
-            stmt.setInt(1, clientId);
-            stmt.setString(2, name);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return buildProduct(rs);
+        return Metrics.timed("ProductDAO.finByClientAndName", () -> {
+            // Busco por el nombre normalizado (índice NAME_HASH); NAME_NORM descarta las colisiones del hash.
+            // LIMIT 2: basta para saber si hay más de uno
+            String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS " +
+                "WHERE NAME_HASH = ? AND CLIENT_ID = ? AND NAME_NORM = ? ORDER BY ID_PRODUCT LIMIT 2";
+            // Misma regla que UNIQUE(CLIENT_ID, NAME) y que upsertProduct
+            String exactSql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE CLIENT_ID = ? AND NAME = ?";
+            String normalized = TextNormalizer.normalizeName(name);
+
+            try (Connection con = DB.getReadConnection()) {
+
+                List<Product> found = new ArrayList<>(2);
+                try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                    stmt.setLong(1, TextNormalizer.nameHash(normalized));
+                    stmt.setInt(2, clientId);
+                    stmt.setString(3, normalized);
+
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            found.add(buildProduct(rs));
+                        }
+                    }
+                }
+                if (found.size() == 1) return found.get(0);
+
+                // Ninguno (o sin NAME_NORM todavía) o varios: decide el nombre tal cual
+                try (PreparedStatement stmt = con.prepareStatement(exactSql)) {
+                    stmt.setInt(1, clientId);
+                    stmt.setString(2, name);
+
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return buildProduct(rs);
+                        }
+                    }
                 }
-            }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en ProductDAO.finByClientAndName: " + e.getMessage(), e);
-        }
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.finByClientAndName: " + e.getMessage(), e);
+            }
 
-        return null;
+            return null;
+        });
     }
 
     /**
@@ -89,82 +149,185 @@ public class ProductDAO {
      * @return lista de productos del cliente; si no hay, lista vacía
     */
     public List<Product> finByClientId(int clientId) {
-        
-        String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE CLIENT_ID = ? ORDER BY ID_PRODUCT";
-        List<Product> products = new ArrayList<>();
+        return Metrics.timed("ProductDAO.finByClientId", () -> {
+            String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE CLIENT_ID = ? ORDER BY ID_PRODUCT";
+            List<Product> products = new ArrayList<>();
 
-        try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql)) {
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql)) {
 
-            stmt.setInt(1, clientId);
+                stmt.setInt(1, clientId);
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    products.add(buildProduct(rs));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        products.add(buildProduct(rs));
+                    }
                 }
-            }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en ProductDAO.finByClientId: " + e.getMessage(), e);
-        }
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.finByClientId: " + e.getMessage(), e);
+            }
 
-        return products;
+            return products;
+        });
     }
 
     /**
      * Devuelve todos los productos del sistema.
-     * Yo lo uso para mostrarlos por consola cuando quiero elegir productos sin abrir la base de datos.
+     * Ojo: carga la tabla entera en memoria. Para catálogos grandes usar findPage o forEach.
      *
      * @return lista de productos; si no hay, lista vacía
     */
     public List<Product> findAll() {
+        return Metrics.timed("ProductDAO.findAll", () -> {
+            String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS ORDER BY CLIENT_ID, ID_PRODUCT";
+            List<Product> products = new ArrayList<>();
 
-        String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS ORDER BY CLIENT_ID, ID_PRODUCT";
-        List<Product> products = new ArrayList<>();
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
 
-        try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(buildProduct(rs));
+                }
 
-            while (rs.next()) {
-                products.add(buildProduct(rs));
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.findAll: " + e.getMessage(), e);
             }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en ProductDAO.findAll: " + e.getMessage(), e);
-        }
+            return products;
+        });
+    }
 
-        return products;
+    /**
+     * Paginación por clave (keyset): devuelve los siguientes productos después de "after"
+     * en el orden de findAll (CLIENT_ID, ID_PRODUCT).
+     * A diferencia de LIMIT/OFFSET, cada página cuesta lo mismo aunque vaya por el millón de filas,
+     * porque sigue el índice (CLIENT_ID, ID_PRODUCT) desde la última fila vista.
+     *
+     * @param after último producto de la página anterior; null para la primera página
+     * @param limit tamaño de página
+     * @return productos de la página; lista vacía si ya no hay más
+    */
+    public List<Product> findPage(Product after, int limit) {
+        return Metrics.timed("ProductDAO.findPage", () -> {
+            String sql = after == null
+                ? "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS ORDER BY CLIENT_ID, ID_PRODUCT LIMIT ?"
+                : "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS " +
+                  "WHERE CLIENT_ID > ? OR (CLIENT_ID = ? AND ID_PRODUCT > ?) " +
+                  "ORDER BY CLIENT_ID, ID_PRODUCT LIMIT ?";
+
+            List<Product> products = new ArrayList<>();
+
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql)) {
+
+                int idx = 1;
+                if (after != null) {
+                    stmt.setInt(idx++, after.getClienteID());
+                    stmt.setInt(idx++, after.getClienteID());
+                    stmt.setInt(idx++, after.getId());
+                }
+                stmt.setInt(idx, limit);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        products.add(buildProduct(rs));
+                    }
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.findPage: " + e.getMessage(), e);
+            }
+
+            return products;
+        });
     }
 
-    //Buscará posibles productos similares en otros clientes.
-    public List<Product> findSameNameInOtherClients(int clientId, String name) {
+    /**
+     * Recorre todos los productos en el orden de findAll sin construir ninguna lista:
+     * cada fila se le pasa al consumer según llega del servidor.
+     *
+     * @param fetchSize filas por viaje al servidor (necesita useCursorFetch=true en la URL);
+     *                  0 o menos = streaming fila a fila del driver de MySQL
+     * @param consumer  código a ejecutar con cada producto (no debe usar esta misma conexión)
+     * @return número de productos recorridos
+    */
+    public long forEach(int fetchSize, Consumer<Product> consumer) {
+        return Metrics.timed("ProductDAO.forEach", () ->
+            stream("SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS ORDER BY CLIENT_ID, ID_PRODUCT",
+                null, fetchSize, consumer, "forEach"));
+    }
 
-        String sql =
-            "SELECT ID_PRODUCT, CLIENT_ID, NAME " +
-            "FROM PRODUCTS " +
-            "WHERE NAME = ? AND CLIENT_ID <> ? " +
-            "ORDER BY CLIENT_ID, ID_PRODUCT";
+    /**
+     * Igual que forEach pero solo con los productos con ID mayor que lastId, en orden de ID.
+     * Sirve para poner al día estructuras en memoria sin releer toda la tabla.
+    */
+    public long forEachWithIdGreaterThan(int lastId, int fetchSize, Consumer<Product> consumer) {
+        return Metrics.timed("ProductDAO.forEachWithIdGreaterThan", () ->
+            stream("SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE ID_PRODUCT > ? ORDER BY ID_PRODUCT",
+                lastId, fetchSize, consumer, "forEachWithIdGreaterThan"));
+    }
 
-        List<Product> products = new ArrayList<>();
+    private long stream(String sql, Integer param, int fetchSize, Consumer<Product> consumer, String method) {
+        long count = 0;
 
         try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql)) {
-            
-            stmt.setString(1, name);
-            stmt.setInt(2, clientId);
+             PreparedStatement stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            // Integer.MIN_VALUE es la forma de pedirle al driver de MySQL que no cargue todo el resultado en memoria
+            stmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+            if (param != null) {
+                stmt.setInt(1, param);
+            }
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    products.add(buildProduct(rs));
+                    consumer.accept(buildProduct(rs));
+                    count++;
                 }
             }
 
         } catch (SQLException e) {
-            throw new RuntimeException("Error en ProductDAO.findSameNameInOtherClients: " + e.getMessage(), e);
+            throw new RuntimeException("Error en ProductDAO." + method + ": " + e.getMessage(), e);
         }
-        
-        return products;
+
+        Metrics.addRows("ProductDAO." + method, count);
+        return count;
+    }
+
+    //Buscará posibles productos similares en otros clientes.
+    //Compara el nombre normalizado (sin tildes, mayúsculas ni espacios de más) usando el índice de NAME_HASH.
+    public List<Product> findSameNameInOtherClients(int clientId, String name) {
+        return Metrics.timed("ProductDAO.findSameNameInOtherClients", () -> {
+            String sql =
+                "SELECT ID_PRODUCT, CLIENT_ID, NAME " +
+                "FROM PRODUCTS " +
+                "WHERE NAME_HASH = ? AND NAME_NORM = ? AND CLIENT_ID <> ? " +
+                "ORDER BY CLIENT_ID, ID_PRODUCT";
+
+            List<Product> products = new ArrayList<>();
+            String normalized = TextNormalizer.normalizeName(name);
+
+            try (Connection con = DB.getReadConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql)) {
+
+                stmt.setLong(1, TextNormalizer.nameHash(normalized));
+                stmt.setString(2, normalized);
+                stmt.setInt(3, clientId);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        products.add(buildProduct(rs));
+                    }
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.findSameNameInOtherClients: " + e.getMessage(), e);
+            }
+
+            return products;
+        });
     }
 
 
@@ -176,30 +339,403 @@ public class ProductDAO {
      * @return id generado si se inserta; -1 si no se insertó ninguna fila
     */
     public int insertProduct(int idCliente, String name) {
-        
-        String sql = "INSERT INTO PRODUCTS (CLIENT_ID, NAME) VALUES (?, ?)";
-        int generatedId = -1;
+        return Metrics.timed("ProductDAO.insertProduct", () -> {
+            String sql = "INSERT INTO PRODUCTS (CLIENT_ID, NAME, NAME_NORM, NAME_HASH) VALUES (?, ?, ?, ?)";
+            int generatedId = -1;
+            String normalized = TextNormalizer.normalizeName(name);
+
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                stmt.setInt(1, idCliente);
+                stmt.setString(2, name);
+                stmt.setString(3, normalized);
+                stmt.setLong(4, TextNormalizer.nameHash(normalized));
+
+                int rows = stmt.executeUpdate();
+                if (rows == 0) return -1;
+                DB.markWrite();
+
+                // Cojo el ID autogenerado para poder devolverlo y mostrarlo en la consola si hace falta
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        generatedId = keys.getInt(1);
+                    }
+                }
 
-        try (Connection con = DB.getConnection();
-             PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.insertProduct: " + e.getMessage(), e);
+            }
+
+            if (generatedId != -1) {
+                // Con una UnitOfWork abierta espero a su commit para no indexar un producto que luego se deshace
+                Product created = new Product(generatedId, idCliente, name);
+                UnitOfWork.afterCommit(() -> {
+                    for (Consumer<Product> listener : INSERT_LISTENERS) {
+                        listener.accept(created);
+                    }
+                });
+            }
 
-            stmt.setInt(1, idCliente);
-            stmt.setString(2, name);
+            return generatedId;
+        });
+    }
 
-            int rows = stmt.executeUpdate();
-            if (rows == 0) return -1;
-            
-            // Cojo el ID autogenerado para poder devolverlo y mostrarlo en la consola si hace falta
-            try (ResultSet keys = stmt.getGeneratedKeys()) {
-                if (keys.next()) {
-                    generatedId = keys.getInt(1);
+    /**
+     * Alta idempotente: inserta el producto o, si ya existe para ese cliente (UNIQUE(CLIENT_ID, NAME)),
+     * devuelve el id del que había. Una sola sentencia (INSERT ... ON DUPLICATE KEY UPDATE con LAST_INSERT_ID),
+     * así que no hace falta buscarlo antes ni hay carrera entre la búsqueda y el INSERT.
+     * Necesita useAffectedRows=true en db.url para distinguir "creado" (1 fila) de "ya existía" (0 filas).
+     *
+     * @param idCliente id del cliente (CLIENT_ID)
+     * @param name      nombre del producto
+     * @return id del producto y si lo ha creado esta llamada
+    */
+    public UpsertResult upsertProduct(int idCliente, String name) {
+        return Metrics.timed("ProductDAO.upsertProduct", () -> {
+            String sql = "INSERT INTO PRODUCTS (CLIENT_ID, NAME, NAME_NORM, NAME_HASH) VALUES (?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE ID_PRODUCT = LAST_INSERT_ID(ID_PRODUCT)";
+            String normalized = TextNormalizer.normalizeName(name);
+            UpsertResult result;
+
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                stmt.setInt(1, idCliente);
+                stmt.setString(2, name);
+                stmt.setString(3, normalized);
+                stmt.setLong(4, TextNormalizer.nameHash(normalized));
+
+                boolean created = stmt.executeUpdate() == 1;
+                if (created) DB.markWrite();
+                result = new UpsertResult((int) DB.lastInsertId(stmt), created);
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.upsertProduct: " + e.getMessage(), e);
+            }
+
+            if (result.created()) {
+                Product created = new Product(result.id(), idCliente, name);
+                UnitOfWork.afterCommit(() -> {
+                    for (Consumer<Product> listener : INSERT_LISTENERS) {
+                        listener.accept(created);
+                    }
+                });
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Inserta un bloque de productos en una sola sentencia (INSERT multi-fila) usando la conexión del que llama,
+     * para que la carga masiva controle cuándo hace commit.
+     * Los que ya existen (UNIQUE(CLIENT_ID, NAME)) se saltan con INSERT IGNORE en vez de hacer fallar el bloque.
+     * Ojo: IGNORE también silencia otros errores (FK, longitud), por eso el que llama debe validar antes
+     * que el cliente exista y que el nombre quepa en la columna.
+     *
+     * @param con  conexión (normalmente con autocommit desactivado)
+     * @param rows productos a insertar (se usan clienteID y name)
+     * @return número de filas insertadas de verdad; rows.size() - resultado son duplicados saltados
+    */
+    public int insertProductsIgnoringDuplicates(Connection con, List<Product> rows) throws SQLException {
+        return insertIgnoring(con, rows);
+    }
+
+    /**
+     * Versión en bloque de upsertProduct, para las altas agrupadas (ProductWriteBehind): el id de cada fila,
+     * nueva o existente, con un INSERT multi-fila y dos lecturas en vez de una sentencia por producto.
+     *
+     * En REPEATABLE READ: 1) leo cuáles existen ya, 2) INSERT IGNORE multi-fila, 3) vuelvo a leer.
+     * La segunda lectura usa la misma foto que la primera más lo insertado por esta transacción, así que un id
+     * que no estaba en la primera es nuestro. Si otro proceso inserta el mismo producto entre medias, el IGNORE
+     * lo salta y no aparece en la foto: esas filas se leen con FOR SHARE (última versión confirmada) y salen como existentes.
+     *
+     * Sin UnitOfWork abierta va en una transacción propia; con ella se une a la de la unidad.
+     * Una fila que no se puede guardar no hace fallar el bloque (sería fallar las altas de todos los que van en él):
+     * sale con id -1 y status NOT_STORED, como los rechazados de insertProductsIgnoringDuplicates. Los nombres más largos
+     * que la columna ni se envían (el IGNORE los recortaría y guardaría otro nombre): salen con status NAME_TOO_LONG.
+     *
+     * @param rows productos (se usan clienteID y name; ya validados)
+     * @return resultado de cada fila, en el mismo orden. Si un producto se repite en el bloque,
+     *         solo la primera aparición sale como creada; id -1 = no se ha podido guardar (ver status)
+    */
+    public List<UpsertResult> upsertProducts(List<Product> rows) {
+        return Metrics.timed("ProductDAO.upsertProducts", () -> {
+            if (rows.isEmpty()) return List.of();
+
+            UpsertResult[] results = new UpsertResult[rows.size()];
+            List<Product> inserted = new ArrayList<>();
+
+            try (Connection con = DB.getConnection()) {
+
+                int isolation = con.getTransactionIsolation();
+                boolean autoCommit = con.getAutoCommit();
+                // MySQL ya trabaja en REPEATABLE READ por defecto: solo lo cambio (fuera de transacción) si no lo está
+                if (isolation != Connection.TRANSACTION_REPEATABLE_READ) {
+                    con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                }
+                con.setAutoCommit(false);
+
+                try {
+                    List<Product> valid = new ArrayList<>(rows.size());
+                    for (int i = 0; i < rows.size(); i++) {
+                        if (nameTooLong(rows.get(i).getName())) {
+                            results[i] = UpsertResult.failed(UpsertResult.Status.NAME_TOO_LONG);
+                        } else {
+                            valid.add(rows.get(i));
+                        }
+                    }
+
+                    Set<Integer> existing = new HashSet<>();
+                    for (Product p : findByClientAndNames(con, valid)) {
+                        existing.add(p.getId());
+                    }
+
+                    insertIgnoring(con, valid);
+
+                    Map<String, Integer> ids = new HashMap<>();
+                    for (Product p : findByClientAndNames(con, valid)) {
+                        ids.put(batchKey(p.getClienteID(), p.getName()), p.getId());
+                    }
+
+                    Set<Integer> seen = new HashSet<>();
+                    for (int i = 0; i < rows.size(); i++) {
+                        if (results[i] != null) continue;
+                        Product row = rows.get(i);
+                        Integer id = ids.get(batchKey(row.getClienteID(), row.getName()));
+                        if (id == null) continue;
+                        // seen: si el mismo producto viene dos veces en el bloque, solo el primero es el nuevo
+                        boolean created = !existing.contains(id) && seen.add(id);
+                        results[i] = new UpsertResult(id, created);
+                        if (created) inserted.add(new Product(id, row.getClienteID(), row.getName()));
+                    }
+
+                    // Los que insertó otro proceso entre la primera lectura y el INSERT no salen en la foto:
+                    // una lectura con bloqueo (FOR SHARE) lee la última versión confirmada
+                    List<Product> missing = new ArrayList<>();
+                    for (int i = 0; i < rows.size(); i++) {
+                        if (results[i] == null) missing.add(rows.get(i));
+                    }
+                    if (!missing.isEmpty()) {
+                        Map<String, Integer> committed = new HashMap<>();
+                        for (Product p : queryByClientAndNames(con, missing, true)) {
+                            committed.put(batchKey(p.getClienteID(), p.getName()), p.getId());
+                        }
+                        for (int i = 0; i < rows.size(); i++) {
+                            if (results[i] != null) continue;
+                            Integer id = committed.get(batchKey(rows.get(i).getClienteID(), rows.get(i).getName()));
+                            // Sin id tampoco está guardada: la fila sale como no guardada y el resto del bloque sigue
+                            results[i] = id == null ? UpsertResult.failed(UpsertResult.Status.NOT_STORED) : new UpsertResult(id, false);
+                        }
+                    }
+
+                    con.commit();
+
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                } finally {
+                    con.setAutoCommit(autoCommit);
+                    if (isolation != Connection.TRANSACTION_REPEATABLE_READ) {
+                        con.setTransactionIsolation(isolation);
+                    }
                 }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.upsertProducts: " + e.getMessage(), e);
             }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Error en ProductDAO.insertProduct: " + e.getMessage(), e);
+            Metrics.addRows("ProductDAO.upsertProducts", inserted.size());
+            UnitOfWork.afterCommit(() -> {
+                for (Product created : inserted) {
+                    for (Consumer<Product> listener : INSERT_LISTENERS) {
+                        listener.accept(created);
+                    }
+                }
+            });
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * @return true si el nombre no cabe en PRODUCTS.NAME (se cuentan caracteres, como VARCHAR, no chars de Java)
+     */
+    public static boolean nameTooLong(String name) {
+        return name.codePointCount(0, name.length()) > MAX_NAME_LENGTH;
+    }
+
+    // Clave para casar filas pedidas con filas leídas: la misma regla que UNIQUE(CLIENT_ID, NAME) (sin tildes ni mayúsculas)
+    private static String batchKey(int clientId, String name) {
+        return clientId + "|" + TextNormalizer.collationKey(name);
+    }
+
+    private int insertIgnoring(Connection con, List<Product> rows) throws SQLException {
+        return Metrics.timed("ProductDAO.insertProductsIgnoringDuplicates", () -> {
+            if (rows.isEmpty()) return 0;
+
+            StringBuilder sql = new StringBuilder("INSERT IGNORE INTO PRODUCTS (CLIENT_ID, NAME, NAME_NORM, NAME_HASH) VALUES ");
+            for (int i = 0; i < rows.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            }
+
+            try (PreparedStatement stmt = con.prepareStatement(sql.toString())) {
+                int idx = 1;
+                for (Product p : rows) {
+                    String normalized = TextNormalizer.normalizeName(p.getName());
+                    stmt.setInt(idx++, p.getClienteID());
+                    stmt.setString(idx++, p.getName());
+                    stmt.setString(idx++, normalized);
+                    stmt.setLong(idx++, TextNormalizer.nameHash(normalized));
+                }
+                int inserted = stmt.executeUpdate();
+                if (inserted > 0) DB.markWrite();
+                return inserted;
+            }
+        });
+    }
+
+    /**
+     * @return true si queda algún producto sin NAME_NORM / NAME_HASH (consulta barata: para en la primera fila)
+    */
+    public boolean hasMissingNormalizedNames() {
+        return Metrics.timed("ProductDAO.hasMissingNormalizedNames", () -> {
+            String sql = "SELECT 1 FROM PRODUCTS WHERE NAME_HASH IS NULL LIMIT 1";
+
+            try (Connection con = DB.getConnection();
+                 PreparedStatement stmt = con.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+
+                return rs.next();
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.hasMissingNormalizedNames: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Rellena NAME_NORM y NAME_HASH de los productos que no los tienen (filas anteriores a la columna,
+     * o cargadas por SQL a mano). Va por bloques en orden de ID con un UPDATE en batch y commit por bloque,
+     * así se puede lanzar sobre una tabla grande sin una transacción enorme.
+     *
+     * @param all       true = recalcular todas las filas (por ejemplo si cambian las reglas de normalización)
+     * @param batchSize filas por bloque
+     * @return número de filas actualizadas
+    */
+    public long backfillNormalizedNames(boolean all, int batchSize) {
+        return Metrics.timed("ProductDAO.backfillNormalizedNames", () -> {
+            String select = "SELECT ID_PRODUCT, NAME FROM PRODUCTS WHERE ID_PRODUCT > ?" +
+                (all ? "" : " AND NAME_HASH IS NULL") + " ORDER BY ID_PRODUCT LIMIT ?";
+            String update = "UPDATE PRODUCTS SET NAME_NORM = ?, NAME_HASH = ? WHERE ID_PRODUCT = ?";
+            long updated = 0;
+
+            try (Connection con = DB.getConnection()) {
+
+                con.setAutoCommit(false);
+
+                try (PreparedStatement read = con.prepareStatement(select);
+                     PreparedStatement write = con.prepareStatement(update)) {
+
+                    int lastId = 0;
+                    while (true) {
+                        read.setInt(1, lastId);
+                        read.setInt(2, batchSize);
+
+                        int rows = 0;
+                        try (ResultSet rs = read.executeQuery()) {
+                            while (rs.next()) {
+                                lastId = rs.getInt(1);
+                                String normalized = TextNormalizer.normalizeName(rs.getString(2));
+                                write.setString(1, normalized);
+                                write.setLong(2, TextNormalizer.nameHash(normalized));
+                                write.setInt(3, lastId);
+                                write.addBatch();
+                                rows++;
+                            }
+                        }
+                        if (rows == 0) break;
+
+                        write.executeBatch();
+                        DB.markWrite();
+                        con.commit();
+                        updated += rows;
+                    }
+
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.backfillNormalizedNames: " + e.getMessage(), e);
+            }
+
+            return updated;
+        });
+    }
+
+    /**
+     * Igual que findByClientAndNames(Connection, Collection) pero con una conexión de lectura propia (réplica si hay).
+     *
+     * @param keys productos a buscar (se usan clienteID y name; el id se ignora)
+     * @return productos encontrados; los que no existen simplemente no aparecen
+    */
+    public List<Product> findByClientAndNames(Collection<Product> keys) {
+        return Metrics.timed("ProductDAO.findByClientAndNames", () -> {
+            try (Connection con = DB.getReadConnection()) {
+                return queryByClientAndNames(con, keys, false);
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en ProductDAO.findByClientAndNames: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Resuelve muchos productos por (cliente + nombre) de una vez, en vez de una consulta por producto.
+     * Usa la conexión del que llama y trocea la lista para no generar sentencias gigantes.
+     * Ojo: aquí la comparación es sobre NAME y sigue la collation de la tabla (utf8mb4_0900_ai_ci: sin distinguir
+     * mayúsculas ni tildes, la regla de TextNormalizer.collationKey), así que no es la misma regla que
+     * finByClientAndName (NAME_NORM, que además junta espacios).
+     *
+     * @param con  conexión
+     * @param keys productos a buscar (se usan clienteID y name; el id se ignora)
+     * @return productos encontrados; los que no existen simplemente no aparecen
+    */
+    public List<Product> findByClientAndNames(Connection con, Collection<Product> keys) throws SQLException {
+        return Metrics.timed("ProductDAO.findByClientAndNames", () -> queryByClientAndNames(con, keys, false));
+    }
+
+    // Sin Metrics: lo mide quien la llama (findByClientAndNames o upsertProducts), así cada llamada cuenta una vez.
+    // lock = true: lectura con FOR SHARE, que ve lo último confirmado aunque la transacción tenga ya su foto
+    private List<Product> queryByClientAndNames(Connection con, Collection<Product> keys, boolean lock) throws SQLException {
+        List<Product> products = new ArrayList<>();
+        List<Product> all = new ArrayList<>(keys);
+
+        for (int from = 0; from < all.size(); from += KEYS_PER_QUERY) {
+            List<Product> chunk = all.subList(from, Math.min(all.size(), from + KEYS_PER_QUERY));
+
+            StringBuilder sql = new StringBuilder("SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE (CLIENT_ID, NAME) IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+            sql.append(lock ? ") FOR SHARE" : ")");
+
+            try (PreparedStatement stmt = con.prepareStatement(sql.toString())) {
+                int idx = 1;
+                for (Product key : chunk) {
+                    stmt.setInt(idx++, key.getClienteID());
+                    stmt.setString(idx++, key.getName());
+                }
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        products.add(buildProduct(rs));
+                    }
+                }
+            }
         }
 
-        return generatedId;
+        return products;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package com.gestion.productos.dao;
+
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.UpsertResult;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Acceso a los productos (tabla PRODUCTS) sin atarse a un motor concreto.
+ * ProductDAO es la implementación sobre MySQL, ShardedProductStore la de varias bases de datos (shards)
+ * e InMemoryProductStore la de memoria.
+ *
+ * Reglas comunes a todas las implementaciones (las de schema.sql): el cliente tiene que existir,
+ * NAME es obligatorio y (CLIENT_ID, NAME) es único sin distinguir mayúsculas ni tildes.
+ * Las búsquedas por nombre exacto comparan el nombre normalizado (TextNormalizer.normalizeName).
+*/
+public interface ProductStore {
+
+    /**
+     * @param id id del producto
+     * @return Product si existe; null si no existe
+    */
+    Product findById(int id);
+
+    /**
+     * Busca un producto por cliente + nombre normalizado. Si hay varios con ese nombre normalizado
+     * (UNIQUE es sobre NAME, no sobre NAME_NORM) o ninguno, decide el nombre tal cual, con la regla de UNIQUE(CLIENT_ID, NAME).
+     *
+     * @return el producto; null si no existe o si el nombre normalizado es ambiguo y ninguno coincide con el nombre
+    */
+    Product finByClientAndName(int clientId, String name);
+
+    /**
+     * @return productos del cliente en orden de ID (lista vacía si no hay)
+    */
+    List<Product> finByClientId(int clientId);
+
+    /**
+     * @return todos los productos en orden (CLIENT_ID, ID_PRODUCT)
+    */
+    List<Product> findAll();
+
+    /**
+     * Paginación por clave (CLIENT_ID, ID_PRODUCT).
+     *
+     * @param after último producto de la página anterior; null para la primera página
+     * @param limit tamaño de página
+    */
+    List<Product> findPage(Product after, int limit);
+
+    /**
+     * Recorre todos los productos en el orden de findAll sin construir ninguna lista.
+     *
+     * @param fetchSize filas por viaje (solo lo usan las implementaciones con base de datos)
+     * @param consumer  código a ejecutar con cada producto
+     * @return número de productos recorridos
+    */
+    long forEach(int fetchSize, Consumer<Product> consumer);
+
+    /**
+     * Igual que forEach pero solo con los productos con ID mayor que lastId, en orden de ID.
+    */
+    long forEachWithIdGreaterThan(int lastId, int fetchSize, Consumer<Product> consumer);
+
+    /**
+     * En cuántas secuencias independientes reparte el almacén los ids: el id n es de la secuencia (n - 1) % idSequences().
+     * Con una sola, el id más alto leído marca hasta dónde se ha leído. Con varias (los shards de ShardedProductStore)
+     * cada una avanza a su ritmo, así que quien lea por partes tiene que llevar un último id por secuencia.
+    */
+    default int idSequences() {
+        return 1;
+    }
+
+    /**
+     * Igual que forEachWithIdGreaterThan pero solo con los ids de una secuencia (ver idSequences).
+    */
+    default long forEachInSequenceWithIdGreaterThan(int sequence, int lastId, int fetchSize, Consumer<Product> consumer) {
+        return forEachWithIdGreaterThan(lastId, fetchSize, consumer);
+    }
+
+    /**
+     * @return productos de otros clientes con el mismo nombre normalizado, en orden (CLIENT_ID, ID_PRODUCT)
+    */
+    List<Product> findSameNameInOtherClients(int clientId, String name);
+
+    /**
+     * Resuelve muchos productos por (cliente + nombre) de una vez, con la regla de unicidad de NAME.
+     *
+     * @param keys productos a buscar (se usan clienteID y name; el id se ignora)
+     * @return productos encontrados; los que no existen simplemente no aparecen
+    */
+    List<Product> findByClientAndNames(Collection<Product> keys);
+
+    /**
+     * Inserta un producto. Un (cliente, nombre) repetido es un error.
+     *
+     * @return id generado; -1 si no se insertó ninguna fila
+    */
+    int insertProduct(int idCliente, String name);
+
+    /**
+     * Alta idempotente: inserta el producto o, si ya existe para ese cliente, devuelve el id del que había.
+     *
+     * @return id del producto y si lo ha creado esta llamada
+    */
+    UpsertResult upsertProduct(int idCliente, String name);
+
+    /**
+     * Versión en bloque de upsertProduct.
+     *
+     * @param rows productos (se usan clienteID y name)
+     * @return resultado de cada fila, en el mismo orden. Si un producto se repite en el bloque,
+     *         solo la primera aparición sale como creada; id -1 = esa fila no se ha podido guardar (el motivo en status)
+    */
+    List<UpsertResult> upsertProducts(List<Product> rows);
+
+    /**
+     * @return true si queda algún producto sin nombre normalizado
+    */
+    boolean hasMissingNormalizedNames();
+
+    /**
+     * Recalcula el nombre normalizado de los productos que no lo tienen (o de todos).
+     *
+     * @return número de productos actualizados
+    */
+    long backfillNormalizedNames(boolean all, int batchSize);
+}
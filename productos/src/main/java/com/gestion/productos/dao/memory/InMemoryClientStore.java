@@ -0,0 +1,133 @@
+package com.gestion.productos.dao.memory;
+
+import com.gestion.productos.dao.ClientStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.UpsertResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Clientes de InMemoryDatabase. Misma interfaz y mismas reglas que ClientDAO.
+ */
+public class InMemoryClientStore implements ClientStore {
+
+    private final InMemoryDatabase db;
+
+    InMemoryClientStore(InMemoryDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public Client findByCodigo(String code) {
+        return Metrics.timed("InMemoryClientStore.findByCodigo", () -> {
+            if (code == null) return null;
+
+            db.lock.readLock().lock();
+            try {
+                int id = db.findClientByCode(code);
+                return id == 0 ? null : db.client(id);
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public Client findById(int id) {
+        return Metrics.timed("InMemoryClientStore.findById", () -> {
+            db.lock.readLock().lock();
+            try {
+                return db.clientExists(id) ? db.client(id) : null;
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public List<Client> findAll() {
+        return Metrics.timed("InMemoryClientStore.findAll", () -> findPage(0, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public List<Client> findPage(int afterId, int limit) {
+        return Metrics.timed("InMemoryClientStore.findPage", () -> {
+            db.lock.readLock().lock();
+            try {
+                int from = Math.max(afterId, 0) + 1;
+                int to = (int) Math.min(db.clientMaxId, (long) from + limit - 1);
+                List<Client> clients = new ArrayList<>(Math.max(0, to - from + 1));
+                for (int id = from; id <= to; id++) {
+                    clients.add(db.client(id));
+                }
+                return clients;
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public long forEach(int fetchSize, Consumer<Client> consumer) {
+        return Metrics.timed("InMemoryClientStore.forEach", () -> {
+            long count = 0;
+            int lastId = 0;
+            // El consumer se llama sin el lock cogido: puede escribir en la base de datos sin bloquearse
+            while (true) {
+                List<Client> chunk = findPage(lastId, InMemoryDatabase.CHUNK);
+                if (chunk.isEmpty()) break;
+                for (Client c : chunk) {
+                    consumer.accept(c);
+                }
+                count += chunk.size();
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+            Metrics.addRows("InMemoryClientStore.forEach", count);
+            return count;
+        });
+    }
+
+    @Override
+    public int insertClient(String code, String name) {
+        return Metrics.timed("InMemoryClientStore.insertClient", () -> {
+            check("InMemoryClientStore.insertClient", code, name);
+
+            db.lock.writeLock().lock();
+            try {
+                if (db.findClientByCode(code) != 0) {
+                    throw InMemoryDatabase.constraintViolation("InMemoryClientStore.insertClient",
+                        "Duplicate entry '" + code + "' for key 'CLIENTS.CODE'");
+                }
+                return db.addClient(code, name);
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public UpsertResult upsertClient(String code, String name) {
+        return Metrics.timed("InMemoryClientStore.upsertClient", () -> {
+            check("InMemoryClientStore.upsertClient", code, name);
+
+            db.lock.writeLock().lock();
+            try {
+                int existing = db.findClientByCode(code);
+                if (existing != 0) {
+                    return new UpsertResult(existing, false);
+                }
+                return new UpsertResult(db.addClient(code, name), true);
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private static void check(String method, String code, String name) {
+        InMemoryDatabase.checkColumn(method, "CODE", code, InMemoryDatabase.CLIENT_CODE_LENGTH);
+        InMemoryDatabase.checkColumn(method, "NAME", name, InMemoryDatabase.CLIENT_NAME_LENGTH);
+    }
+}
@@ -0,0 +1,344 @@
+package com.gestion.productos.dao.memory;
+
+import com.gestion.productos.dao.ClientStore;
+import com.gestion.productos.dao.EquivalenceStore;
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.util.LongIntHashMap;
+import com.gestion.productos.util.TextNormalizer;
+
+import java.sql.SQLDataException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Catálogo completo (CLIENTS, PRODUCTS, EQUIVALENCES y sus grupos) en memoria, detrás de las mismas interfaces
+ * que los DAO de MySQL: clients(), products() y equivalences() se pasan tal cual al constructor de Service.
+ * Sirve para nodos sin base de datos, pruebas y benchmarks donde un viaje a MySQL es demasiado.
+ *
+ * Todo son arrays de int indexados por id (los ids son densos: 1, 2, 3... como un AUTO_INCREMENT sin huecos)
+ * y mapas LongIntHashMap de clave primitiva a id, sin Integer ni objetos por fila:
+ * - Clientes: código y nombre por id, y un índice hash(código) → id.
+ * - Productos: cliente, nombre y nombre normalizado por id; un índice (cliente, hash del nombre normalizado) → id,
+ *   otro hash del nombre normalizado → id, y la lista de ids de cada cliente en orden.
+ *   Los índices hash guardan el último id de cada clave y los anteriores van encadenados en un int[] (next[id]),
+ *   así que las colisiones y los nombres repetidos en distintos clientes no necesitan listas.
+ * - Equivalencias: producto A y B por id, un índice (A, B) → id y la lista de equivalentes de cada producto.
+ * - Grupos: union-find sobre los ids de producto, más un anillo (siguiente miembro) para recorrer el grupo entero.
+ *
+ * Las reglas son las de schema.sql: CODE único, (CLIENT_ID, NAME) único (los dos sin distinguir mayúsculas ni tildes,
+ * como la collation de MySQL), (PRODUCT_ID_A, PRODUCT_ID_B) única, claves ajenas y longitud de las columnas.
+ * Las violaciones lanzan RuntimeException con una SQLIntegrityConstraintViolationException (o SQLDataException)
+ * como causa, igual que los DAO de MySQL.
+ *
+ * Es seguro con varios hilos: un ReentrantReadWriteLock para todo el catálogo (muchas lecturas a la vez,
+ * una escritura cada vez). Cada operación es atómica, pero no hay transacciones de varias operaciones.
+ * Los objetos que devuelve son copias. No avisa a los listeners de los DAO de MySQL.
+ */
+public final class InMemoryDatabase {
+
+    // Longitudes de las columnas VARCHAR de schema.sql
+    static final int CLIENT_CODE_LENGTH = 50;
+    static final int CLIENT_NAME_LENGTH = 50;
+    static final int PRODUCT_NAME_LENGTH = 125;
+
+    // Filas que se copian con el lock de lectura cogido en cada vuelta de los recorridos (forEach...)
+    static final int CHUNK = 1024;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // ---- CLIENTS (posición = ID_CLIENT) ----
+    String[] clientCode = new String[16];
+    String[] clientName = new String[16];
+    int[] clientNextSameCode = new int[16];
+    final LongIntHashMap clientByCode = new LongIntHashMap();
+    int clientMaxId;
+
+    // ---- PRODUCTS (posición = ID_PRODUCT) ----
+    int[] productClient = new int[16];
+    String[] productName = new String[16];
+    String[] productNorm = new String[16];
+    int[] productNextSameClientName = new int[16];
+    int[] productNextSameName = new int[16];
+    final LongIntHashMap productByClientName = new LongIntHashMap();
+    final LongIntHashMap productByName = new LongIntHashMap();
+    int productMaxId;
+    // Productos de cada cliente en orden de id (posición = ID_CLIENT)
+    int[][] clientProducts = new int[16][];
+    int[] clientProductCount = new int[16];
+
+    // ---- EQUIVALENCES (posición = ID_EQUIVALENCE) ----
+    int[] equivalenceA = new int[16];
+    int[] equivalenceB = new int[16];
+    final LongIntHashMap equivalenceByPair = new LongIntHashMap();
+    int equivalenceMaxId;
+    // Equivalentes directos de cada producto, en los dos sentidos (posición = ID_PRODUCT)
+    int[][] links = new int[16][];
+    int[] linkCount = new int[16];
+
+    // ---- Grupos (posición = ID_PRODUCT; clusterParent 0 = el producto no tiene equivalencias) ----
+    int[] clusterParent = new int[16];
+    int[] clusterSize = new int[16];
+    int[] clusterNext = new int[16];
+
+    private final InMemoryClientStore clients;
+    private final InMemoryProductStore products;
+    private final InMemoryEquivalenceStore equivalences;
+
+    // Los almacenes se crean al final, con todos los arrays e índices ya inicializados
+    public InMemoryDatabase() {
+        this.clients = new InMemoryClientStore(this);
+        this.products = new InMemoryProductStore(this);
+        this.equivalences = new InMemoryEquivalenceStore(this);
+    }
+
+    public ClientStore clients() {
+        return clients;
+    }
+
+    public ProductStore products() {
+        return products;
+    }
+
+    public EquivalenceStore equivalences() {
+        return equivalences;
+    }
+
+    // ---- Lecturas sin lock (el que llama tiene cogido al menos el de lectura) ----
+
+    Client client(int id) {
+        return new Client(id, clientCode[id], clientName[id]);
+    }
+
+    Product product(int id) {
+        return new Product(id, productClient[id], productName[id]);
+    }
+
+    boolean clientExists(int id) {
+        return id > 0 && id <= clientMaxId;
+    }
+
+    boolean productExists(int id) {
+        return id > 0 && id <= productMaxId;
+    }
+
+    int findClientByCode(String code) {
+        String key = TextNormalizer.collationKey(code);
+        for (int id = clientByCode.get(codeHash(key)); id != 0; id = clientNextSameCode[id]) {
+            if (TextNormalizer.collationKey(clientCode[id]).equals(key)) return id;
+        }
+        return 0;
+    }
+
+    /**
+     * @return id del producto del cliente con ese nombre según la regla de UNIQUE(CLIENT_ID, NAME); 0 si no hay
+     */
+    int findProductByKey(int clientId, String name) {
+        String key = TextNormalizer.collationKey(name);
+        long hash = TextNormalizer.nameHash(TextNormalizer.normalizeName(name));
+        // Dos nombres iguales para la collation tienen el mismo nombre normalizado: están en la misma cadena
+        for (int id = productByClientName.get(clientNameKey(clientId, hash)); id != 0; id = productNextSameClientName[id]) {
+            if (productClient[id] == clientId && TextNormalizer.collationKey(productName[id]).equals(key)) return id;
+        }
+        return 0;
+    }
+
+    /**
+     * @return id del producto del cliente con ese nombre normalizado; 0 si no hay; -1 si hay varios
+     */
+    int findProductByNorm(int clientId, String normalized) {
+        long hash = TextNormalizer.nameHash(normalized);
+        int found = 0;
+        for (int id = productByClientName.get(clientNameKey(clientId, hash)); id != 0; id = productNextSameClientName[id]) {
+            if (productClient[id] == clientId && productNorm[id].equals(normalized)) {
+                if (found != 0) return -1;
+                found = id;
+            }
+        }
+        return found;
+    }
+
+    // ---- Escrituras (el que llama tiene cogido el lock de escritura) ----
+
+    int addClient(String code, String name) {
+        int id = clientMaxId + 1;
+        if (id >= clientCode.length) {
+            int capacity = clientCode.length * 2;
+            clientCode = Arrays.copyOf(clientCode, capacity);
+            clientName = Arrays.copyOf(clientName, capacity);
+            clientNextSameCode = Arrays.copyOf(clientNextSameCode, capacity);
+            clientProducts = Arrays.copyOf(clientProducts, capacity);
+            clientProductCount = Arrays.copyOf(clientProductCount, capacity);
+        }
+
+        clientCode[id] = code;
+        clientName[id] = name;
+        long hash = codeHash(TextNormalizer.collationKey(code));
+        clientNextSameCode[id] = clientByCode.get(hash);
+        clientByCode.put(hash, id);
+        clientMaxId = id;
+        return id;
+    }
+
+    int addProduct(int clientId, String name) {
+        int id = productMaxId + 1;
+        if (id >= productClient.length) {
+            int capacity = productClient.length * 2;
+            productClient = Arrays.copyOf(productClient, capacity);
+            productName = Arrays.copyOf(productName, capacity);
+            productNorm = Arrays.copyOf(productNorm, capacity);
+            productNextSameClientName = Arrays.copyOf(productNextSameClientName, capacity);
+            productNextSameName = Arrays.copyOf(productNextSameName, capacity);
+            links = Arrays.copyOf(links, capacity);
+            linkCount = Arrays.copyOf(linkCount, capacity);
+            clusterParent = Arrays.copyOf(clusterParent, capacity);
+            clusterSize = Arrays.copyOf(clusterSize, capacity);
+            clusterNext = Arrays.copyOf(clusterNext, capacity);
+        }
+
+        productClient[id] = clientId;
+        productName[id] = name;
+        productMaxId = id;
+        indexProductName(id);
+
+        int[] list = clientProducts[clientId];
+        int count = clientProductCount[clientId];
+        if (list == null || count == list.length) {
+            list = list == null ? new int[4] : Arrays.copyOf(list, count * 2);
+            clientProducts[clientId] = list;
+        }
+        list[count] = id;
+        clientProductCount[clientId] = count + 1;
+        return id;
+    }
+
+    /**
+     * Calcula el nombre normalizado del producto y lo añade a los dos índices por nombre.
+     */
+    void indexProductName(int id) {
+        String normalized = TextNormalizer.normalizeName(productName[id]);
+        long hash = TextNormalizer.nameHash(normalized);
+        productNorm[id] = normalized;
+
+        long key = clientNameKey(productClient[id], hash);
+        productNextSameClientName[id] = productByClientName.get(key);
+        productByClientName.put(key, id);
+
+        productNextSameName[id] = productByName.get(hash);
+        productByName.put(hash, id);
+    }
+
+    int addEquivalence(int a, int b) {
+        int id = equivalenceMaxId + 1;
+        if (id >= equivalenceA.length) {
+            int capacity = equivalenceA.length * 2;
+            equivalenceA = Arrays.copyOf(equivalenceA, capacity);
+            equivalenceB = Arrays.copyOf(equivalenceB, capacity);
+        }
+
+        equivalenceA[id] = a;
+        equivalenceB[id] = b;
+        equivalenceByPair.put(pairKey(a, b), id);
+        equivalenceMaxId = id;
+
+        addLink(a, b);
+        if (a != b) addLink(b, a);
+        union(a, b);
+        return id;
+    }
+
+    private void addLink(int from, int to) {
+        int[] list = links[from];
+        int count = linkCount[from];
+        if (list == null || count == list.length) {
+            list = list == null ? new int[2] : Arrays.copyOf(list, count * 2);
+            links[from] = list;
+        }
+        list[count] = to;
+        linkCount[from] = count + 1;
+    }
+
+    // ---- Grupos ----
+
+    int findRoot(int p) {
+        int root = p;
+        while (clusterParent[root] != root) {
+            root = clusterParent[root];
+        }
+        while (clusterParent[p] != root) {
+            int next = clusterParent[p];
+            clusterParent[p] = root;
+            p = next;
+        }
+        return root;
+    }
+
+    void union(int a, int b) {
+        joinCluster(a);
+        joinCluster(b);
+
+        int ra = findRoot(a);
+        int rb = findRoot(b);
+        if (ra == rb) return;
+
+        if (clusterSize[ra] < clusterSize[rb]) {
+            int t = ra;
+            ra = rb;
+            rb = t;
+        }
+        clusterParent[rb] = ra;
+        clusterSize[ra] += clusterSize[rb];
+
+        // Unir dos anillos es intercambiar el siguiente de un miembro de cada uno
+        int next = clusterNext[a];
+        clusterNext[a] = clusterNext[b];
+        clusterNext[b] = next;
+    }
+
+    // Un producto entra en los grupos con su primera equivalencia, como un grupo de un solo miembro
+    private void joinCluster(int p) {
+        if (clusterParent[p] == 0) {
+            clusterParent[p] = p;
+            clusterSize[p] = 1;
+            clusterNext[p] = p;
+        }
+    }
+
+    void resetClusters() {
+        Arrays.fill(clusterParent, 0);
+        Arrays.fill(clusterSize, 0);
+        Arrays.fill(clusterNext, 0);
+    }
+
+    // ---- Errores con la misma forma que los de MySQL ----
+
+    static RuntimeException constraintViolation(String method, String message) {
+        return new RuntimeException("Error en " + method + ": " + message,
+            new SQLIntegrityConstraintViolationException(message));
+    }
+
+    static void checkColumn(String method, String column, String value, int maxLength) {
+        if (value == null) {
+            throw constraintViolation(method, "Column '" + column + "' cannot be null");
+        }
+        // VARCHAR cuenta caracteres, no chars de Java (un emoji son dos)
+        if (value.codePointCount(0, value.length()) > maxLength) {
+            String message = "Data too long for column '" + column + "'";
+            throw new RuntimeException("Error en " + method + ": " + message, new SQLDataException(message));
+        }
+    }
+
+    static long clientNameKey(int clientId, long nameHash) {
+        return ((long) clientId << 32) | nameHash;
+    }
+
+    static long pairKey(int a, int b) {
+        return ((long) a << 32) | (b & 0xffffffffL);
+    }
+
+    private static long codeHash(String key) {
+        return TextNormalizer.nameHash(key);
+    }
+}
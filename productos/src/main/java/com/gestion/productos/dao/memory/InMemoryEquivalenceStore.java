@@ -0,0 +1,202 @@
+package com.gestion.productos.dao.memory;
+
+import com.gestion.productos.dao.EquivalenceStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.TableVersion;
+import com.gestion.productos.model.UpsertResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Equivalencias de InMemoryDatabase. Misma interfaz y mismas reglas que EquivalenceDAO:
+ * cada alta actualiza en la misma operación los equivalentes directos de los dos productos y sus grupos.
+ */
+public class InMemoryEquivalenceStore implements EquivalenceStore {
+
+    private final InMemoryDatabase db;
+
+    InMemoryEquivalenceStore(InMemoryDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public boolean existsEquivalence(int productA, int productB) {
+        return Metrics.timed("InMemoryEquivalenceStore.existsEquivalence", () -> {
+            db.lock.readLock().lock();
+            try {
+                return db.equivalenceByPair.get(InMemoryDatabase.pairKey(productA, productB)) != 0;
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public boolean insertEquivalence(int productA, int productB) {
+        return Metrics.timed("InMemoryEquivalenceStore.insertEquivalence", () -> {
+            db.lock.writeLock().lock();
+            try {
+                checkProducts("InMemoryEquivalenceStore.insertEquivalence", productA, productB);
+                if (db.equivalenceByPair.get(InMemoryDatabase.pairKey(productA, productB)) != 0) {
+                    throw InMemoryDatabase.constraintViolation("InMemoryEquivalenceStore.insertEquivalence",
+                        "Duplicate entry '" + productA + "-" + productB + "' for key 'EQUIVALENCES.PRODUCT_ID_A'");
+                }
+                db.addEquivalence(productA, productB);
+                return true;
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public UpsertResult upsertEquivalence(int productA, int productB) {
+        return Metrics.timed("InMemoryEquivalenceStore.upsertEquivalence", () -> {
+            db.lock.writeLock().lock();
+            try {
+                checkProducts("InMemoryEquivalenceStore.upsertEquivalence", productA, productB);
+                int existing = db.equivalenceByPair.get(InMemoryDatabase.pairKey(productA, productB));
+                if (existing != 0) {
+                    return new UpsertResult(existing, false);
+                }
+                return new UpsertResult(db.addEquivalence(productA, productB), true);
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public List<Product> findEquivalents(int productId) {
+        return Metrics.timed("InMemoryEquivalenceStore.findEquivalents", () -> {
+            int[] ids;
+            List<Product> equivalents;
+
+            db.lock.readLock().lock();
+            try {
+                if (!db.productExists(productId) || db.links[productId] == null) return new ArrayList<>();
+
+                ids = Arrays.copyOf(db.links[productId], db.linkCount[productId]);
+                Arrays.sort(ids);
+                equivalents = new ArrayList<>(ids.length);
+                for (int id : ids) {
+                    equivalents.add(db.product(id));
+                }
+            } finally {
+                db.lock.readLock().unlock();
+            }
+
+            return equivalents;
+        });
+    }
+
+    @Override
+    public List<Product> findClusterMembers(int productId) {
+        return Metrics.timed("InMemoryEquivalenceStore.findClusterMembers", () -> {
+            List<Product> members = new ArrayList<>();
+
+            // El grupo se recorre por el anillo de miembros, sin pasar por la raíz del union-find
+            db.lock.readLock().lock();
+            try {
+                if (!db.productExists(productId) || db.clusterParent[productId] == 0) return members;
+
+                for (int id = db.clusterNext[productId]; id != productId; id = db.clusterNext[id]) {
+                    members.add(db.product(id));
+                }
+            } finally {
+                db.lock.readLock().unlock();
+            }
+
+            members.sort((a, b) -> {
+                int c = Integer.compare(a.getClienteID(), b.getClienteID());
+                return c != 0 ? c : Integer.compare(a.getId(), b.getId());
+            });
+            return members;
+        });
+    }
+
+    @Override
+    public int rebuildClusters() {
+        return Metrics.timed("InMemoryEquivalenceStore.rebuildClusters", () -> {
+            db.lock.writeLock().lock();
+            try {
+                db.resetClusters();
+                for (int id = 1; id <= db.equivalenceMaxId; id++) {
+                    db.union(db.equivalenceA[id], db.equivalenceB[id]);
+                }
+
+                int grouped = 0;
+                for (int p = 1; p <= db.productMaxId; p++) {
+                    if (db.clusterParent[p] != 0) grouped++;
+                }
+                return grouped;
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public long forEachPair(int fetchSize, PairConsumer consumer) {
+        return Metrics.timed("InMemoryEquivalenceStore.forEachPair", () ->
+            forEachPairInRange(0, Long.MAX_VALUE, fetchSize, consumer));
+    }
+
+    @Override
+    public long forEachPairInRange(long afterId, long upToId, int fetchSize, PairConsumer consumer) {
+        return Metrics.timed("InMemoryEquivalenceStore.forEachPairInRange", () -> {
+            long count = 0;
+            int from = (int) Math.min(Integer.MAX_VALUE, Math.max(afterId, 0) + 1);
+            int[] a = new int[InMemoryDatabase.CHUNK];
+            int[] b = new int[InMemoryDatabase.CHUNK];
+
+            // Por bloques con el lock de lectura; el consumer se llama sin lock
+            while (true) {
+                int n;
+                db.lock.readLock().lock();
+                try {
+                    int to = (int) Math.min(Math.min(upToId, db.equivalenceMaxId), (long) from + InMemoryDatabase.CHUNK - 1);
+                    n = Math.max(0, to - from + 1);
+                    System.arraycopy(db.equivalenceA, from, a, 0, n);
+                    System.arraycopy(db.equivalenceB, from, b, 0, n);
+                } finally {
+                    db.lock.readLock().unlock();
+                }
+
+                if (n == 0) break;
+                for (int i = 0; i < n; i++) {
+                    consumer.accept(a[i], b[i]);
+                }
+                count += n;
+                from += n;
+            }
+
+            Metrics.addRows("InMemoryEquivalenceStore.forEachPairInRange", count);
+            return count;
+        });
+    }
+
+    /**
+     * Sin borrados los ids no tienen huecos: el número de filas es el mayor id.
+     */
+    @Override
+    public TableVersion getVersion() {
+        db.lock.readLock().lock();
+        try {
+            return new TableVersion(db.equivalenceMaxId, db.equivalenceMaxId);
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    private void checkProducts(String method, int productA, int productB) {
+        if (!db.productExists(productA) || !db.productExists(productB)) {
+            throw InMemoryDatabase.constraintViolation(method,
+                "Cannot add or update a child row: a foreign key constraint fails (PRODUCT_ID_A="
+                    + productA + ", PRODUCT_ID_B=" + productB + ")");
+        }
+    }
+}
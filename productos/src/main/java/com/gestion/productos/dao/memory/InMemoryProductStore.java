@@ -0,0 +1,321 @@
+package com.gestion.productos.dao.memory;
+
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.UpsertResult;
+import com.gestion.productos.util.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Productos de InMemoryDatabase. Misma interfaz y mismas reglas que ProductDAO.
+ * El nombre normalizado se calcula siempre al insertar, así que nunca falta.
+ */
+public class InMemoryProductStore implements ProductStore {
+
+    private final InMemoryDatabase db;
+
+    InMemoryProductStore(InMemoryDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public Product findById(int id) {
+        return Metrics.timed("InMemoryProductStore.findById", () -> {
+            db.lock.readLock().lock();
+            try {
+                return db.productExists(id) ? db.product(id) : null;
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public Product finByClientAndName(int clientId, String name) {
+        return Metrics.timed("InMemoryProductStore.finByClientAndName", () -> {
+            String normalized = TextNormalizer.normalizeName(name);
+
+            db.lock.readLock().lock();
+            try {
+                int id = db.findProductByNorm(clientId, normalized);
+                // Ninguno o varios: el nombre tal cual, como ProductDAO
+                if (id <= 0) id = db.findProductByKey(clientId, name);
+                return id == 0 ? null : db.product(id);
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public List<Product> finByClientId(int clientId) {
+        return Metrics.timed("InMemoryProductStore.finByClientId", () -> {
+            db.lock.readLock().lock();
+            try {
+                if (!db.clientExists(clientId)) return new ArrayList<>();
+
+                int count = db.clientProductCount[clientId];
+                List<Product> products = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    products.add(db.product(db.clientProducts[clientId][i]));
+                }
+                return products;
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return Metrics.timed("InMemoryProductStore.findAll", () -> {
+            List<Product> products = new ArrayList<>();
+            forEach(0, products::add);
+            return products;
+        });
+    }
+
+    @Override
+    public List<Product> findPage(Product after, int limit) {
+        return Metrics.timed("InMemoryProductStore.findPage", () -> {
+            List<Product> products = new ArrayList<>(Math.min(limit, InMemoryDatabase.CHUNK));
+
+            db.lock.readLock().lock();
+            try {
+                int clientId = after == null ? 1 : Math.max(1, after.getClienteID());
+                // Dentro del primer cliente, el primer id mayor que el de la última fila vista
+                int start = 0;
+                if (after != null && clientId == after.getClienteID() && db.clientExists(clientId)) {
+                    int count = db.clientProductCount[clientId];
+                    int pos = count == 0 ? -1 : Arrays.binarySearch(db.clientProducts[clientId], 0, count, after.getId());
+                    start = pos >= 0 ? pos + 1 : -pos - 1;
+                }
+
+                for (; clientId <= db.clientMaxId && products.size() < limit; clientId++, start = 0) {
+                    int count = db.clientProductCount[clientId];
+                    for (int i = start; i < count && products.size() < limit; i++) {
+                        products.add(db.product(db.clientProducts[clientId][i]));
+                    }
+                }
+            } finally {
+                db.lock.readLock().unlock();
+            }
+
+            return products;
+        });
+    }
+
+    @Override
+    public long forEach(int fetchSize, Consumer<Product> consumer) {
+        return Metrics.timed("InMemoryProductStore.forEach", () -> {
+            long count = 0;
+            Product last = null;
+            // Por bloques con el lock de lectura; el consumer se llama sin lock (puede escribir sin bloquearse)
+            while (true) {
+                List<Product> chunk = findPage(last, InMemoryDatabase.CHUNK);
+                if (chunk.isEmpty()) break;
+                for (Product p : chunk) {
+                    consumer.accept(p);
+                }
+                count += chunk.size();
+                last = chunk.get(chunk.size() - 1);
+            }
+            Metrics.addRows("InMemoryProductStore.forEach", count);
+            return count;
+        });
+    }
+
+    @Override
+    public long forEachWithIdGreaterThan(int lastId, int fetchSize, Consumer<Product> consumer) {
+        return Metrics.timed("InMemoryProductStore.forEachWithIdGreaterThan", () -> {
+            long count = 0;
+            int from = Math.max(lastId, 0) + 1;
+            while (true) {
+                List<Product> chunk = new ArrayList<>(InMemoryDatabase.CHUNK);
+                db.lock.readLock().lock();
+                try {
+                    int to = Math.min(db.productMaxId, from + InMemoryDatabase.CHUNK - 1);
+                    for (int id = from; id <= to; id++) {
+                        chunk.add(db.product(id));
+                    }
+                } finally {
+                    db.lock.readLock().unlock();
+                }
+
+                if (chunk.isEmpty()) break;
+                for (Product p : chunk) {
+                    consumer.accept(p);
+                }
+                count += chunk.size();
+                from += chunk.size();
+            }
+            Metrics.addRows("InMemoryProductStore.forEachWithIdGreaterThan", count);
+            return count;
+        });
+    }
+
+    @Override
+    public List<Product> findSameNameInOtherClients(int clientId, String name) {
+        return Metrics.timed("InMemoryProductStore.findSameNameInOtherClients", () -> {
+            String normalized = TextNormalizer.normalizeName(name);
+            List<Product> products = new ArrayList<>();
+
+            db.lock.readLock().lock();
+            try {
+                for (int id = db.productByName.get(TextNormalizer.nameHash(normalized)); id != 0; id = db.productNextSameName[id]) {
+                    if (db.productClient[id] != clientId && db.productNorm[id].equals(normalized)) {
+                        products.add(db.product(id));
+                    }
+                }
+            } finally {
+                db.lock.readLock().unlock();
+            }
+
+            products.sort(InMemoryProductStore::compareByClientAndId);
+            return products;
+        });
+    }
+
+    @Override
+    public List<Product> findByClientAndNames(Collection<Product> keys) {
+        return Metrics.timed("InMemoryProductStore.findByClientAndNames", () -> {
+            List<Product> products = new ArrayList<>(keys.size());
+
+            db.lock.readLock().lock();
+            try {
+                for (Product key : keys) {
+                    if (key.getName() == null) continue;
+                    int id = db.findProductByKey(key.getClienteID(), key.getName());
+                    if (id != 0) products.add(db.product(id));
+                }
+            } finally {
+                db.lock.readLock().unlock();
+            }
+
+            return products;
+        });
+    }
+
+    @Override
+    public int insertProduct(int idCliente, String name) {
+        return Metrics.timed("InMemoryProductStore.insertProduct", () -> {
+            check("InMemoryProductStore.insertProduct", name);
+
+            db.lock.writeLock().lock();
+            try {
+                checkClient("InMemoryProductStore.insertProduct", idCliente);
+                if (db.findProductByKey(idCliente, name) != 0) {
+                    throw InMemoryDatabase.constraintViolation("InMemoryProductStore.insertProduct",
+                        "Duplicate entry '" + idCliente + "-" + name + "' for key 'PRODUCTS.CLIENT_ID'");
+                }
+                return db.addProduct(idCliente, name);
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    @Override
+    public UpsertResult upsertProduct(int idCliente, String name) {
+        return Metrics.timed("InMemoryProductStore.upsertProduct", () -> {
+            check("InMemoryProductStore.upsertProduct", name);
+
+            db.lock.writeLock().lock();
+            try {
+                checkClient("InMemoryProductStore.upsertProduct", idCliente);
+                return upsert(idCliente, name);
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Todo el bloque con un solo lock de escritura: o entran todas las filas o (si alguna no es válida) ninguna.
+     */
+    @Override
+    public List<UpsertResult> upsertProducts(List<Product> rows) {
+        return Metrics.timed("InMemoryProductStore.upsertProducts", () -> {
+            if (rows.isEmpty()) return List.of();
+
+            for (Product p : rows) {
+                check("InMemoryProductStore.upsertProducts", p.getName());
+            }
+
+            List<UpsertResult> results = new ArrayList<>(rows.size());
+            db.lock.writeLock().lock();
+            try {
+                for (Product p : rows) {
+                    checkClient("InMemoryProductStore.upsertProducts", p.getClienteID());
+                }
+                for (Product p : rows) {
+                    results.add(upsert(p.getClienteID(), p.getName()));
+                }
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+
+            Metrics.addRows("InMemoryProductStore.upsertProducts", rows.size());
+            return results;
+        });
+    }
+
+    @Override
+    public boolean hasMissingNormalizedNames() {
+        return false;
+    }
+
+    /**
+     * Los nombres normalizados se calculan al insertar. Con all = true se recalculan todos
+     * (por ejemplo si cambian las reglas de TextNormalizer) y se rehacen los índices por nombre.
+     */
+    @Override
+    public long backfillNormalizedNames(boolean all, int batchSize) {
+        return Metrics.timed("InMemoryProductStore.backfillNormalizedNames", () -> {
+            if (!all) return 0L;
+
+            db.lock.writeLock().lock();
+            try {
+                db.productByClientName.clear();
+                db.productByName.clear();
+                for (int id = 1; id <= db.productMaxId; id++) {
+                    db.indexProductName(id);
+                }
+                return (long) db.productMaxId;
+            } finally {
+                db.lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // Con el lock de escritura cogido y el cliente ya comprobado
+    private UpsertResult upsert(int clientId, String name) {
+        int existing = db.findProductByKey(clientId, name);
+        if (existing != 0) {
+            return new UpsertResult(existing, false);
+        }
+        return new UpsertResult(db.addProduct(clientId, name), true);
+    }
+
+    private void checkClient(String method, int clientId) {
+        if (!db.clientExists(clientId)) {
+            throw InMemoryDatabase.constraintViolation(method,
+                "Cannot add or update a child row: a foreign key constraint fails (CLIENT_ID=" + clientId + ")");
+        }
+    }
+
+    private static void check(String method, String name) {
+        InMemoryDatabase.checkColumn(method, "NAME", name, InMemoryDatabase.PRODUCT_NAME_LENGTH);
+    }
+
+    private static int compareByClientAndId(Product a, Product b) {
+        int c = Integer.compare(a.getClienteID(), b.getClienteID());
+        return c != 0 ? c : Integer.compare(a.getId(), b.getId());
+    }
+}
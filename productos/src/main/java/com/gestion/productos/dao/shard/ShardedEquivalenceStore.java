@@ -0,0 +1,302 @@
+package com.gestion.productos.dao.shard;
+
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.EquivalenceStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.TableVersion;
+import com.gestion.productos.model.UpsertResult;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.Shards;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Equivalencias con los productos repartidos en shards (ver ShardedProductStore).
+ * Una equivalencia une productos de dos clientes distintos, que casi siempre están en shards distintos:
+ *
+ * - La fila de EQUIVALENCES (A < B) vive en el shard de A, igual que el enlace A→B de EQUIVALENCE_LINKS.
+ *   El enlace B→A vive en el shard de B. Así cada pareja se recorre una sola vez (forEachPair)
+ *   y findEquivalents lee un rango de EQUIVALENCE_LINKS en el shard del producto.
+ * - Los productos equivalentes se buscan después por id, cada uno en su shard y en paralelo.
+ * - El alta escribe primero en el shard de A (fila y enlace en una transacción) y después el enlace B→A.
+ *   Entre shards no hay transacción: si el segundo paso falla, la equivalencia existe pero B todavía no la ve.
+ *   upsertEquivalence vuelve a escribir siempre el enlace B→A (INSERT IGNORE), así que repetir el alta lo completa.
+ * - Los shards no guardan grupos (PRODUCT_CLUSTERS): findClusterMembers recorre los enlaces por niveles,
+ *   con una consulta por shard y nivel.
+ *
+ * La comprobación de que los dos productos existen se hace aquí (los shards no tienen clave ajena hacia el otro).
+ */
+public class ShardedEquivalenceStore implements EquivalenceStore {
+
+    // Máximo de ids por consulta IN (...)
+    private static final int IDS_PER_QUERY = 500;
+
+    private final Shards shards;
+    private final ShardedProductStore products;
+    private final EquivalenceDAO dao = new EquivalenceDAO();
+
+    /**
+     * @param shards   shards configurados (DB.shards())
+     * @param products productos de los mismos shards
+     */
+    public ShardedEquivalenceStore(Shards shards, ShardedProductStore products) {
+        this.shards = shards;
+        this.products = products;
+    }
+
+    @Override
+    public boolean existsEquivalence(int productA, int productB) {
+        return Metrics.timed("ShardedEquivalenceStore.existsEquivalence", () -> {
+            int shard = shards.shardOfId(productA);
+            return shard >= 0 && shards.on(shard, () -> dao.existsEquivalence(productA, productB));
+        });
+    }
+
+    @Override
+    public boolean insertEquivalence(int productA, int productB) {
+        return Metrics.timed("ShardedEquivalenceStore.insertEquivalence", () -> {
+            checkProducts("ShardedEquivalenceStore.insertEquivalence", productA, productB);
+
+            UpsertResult result = shards.on(shards.shardOfId(productA), () -> writeOwner(productA, productB, false));
+            writeReverseLink("ShardedEquivalenceStore.insertEquivalence", productA, productB);
+            return result.created();
+        });
+    }
+
+    @Override
+    public UpsertResult upsertEquivalence(int productA, int productB) {
+        return Metrics.timed("ShardedEquivalenceStore.upsertEquivalence", () -> {
+            checkProducts("ShardedEquivalenceStore.upsertEquivalence", productA, productB);
+
+            UpsertResult result = shards.on(shards.shardOfId(productA), () -> writeOwner(productA, productB, true));
+            // También si ya existía: completa un alta anterior que se quedara sin este enlace
+            writeReverseLink("ShardedEquivalenceStore.upsertEquivalence", productA, productB);
+            return result;
+        });
+    }
+
+    @Override
+    public List<Product> findEquivalents(int productId) {
+        return Metrics.timed("ShardedEquivalenceStore.findEquivalents", () -> {
+            int shard = shards.shardOfId(productId);
+            if (shard < 0) return new ArrayList<>();
+
+            List<Integer> ids = shards.on(shard, () -> findLinks(List.of(productId)));
+            return ids.isEmpty() ? new ArrayList<>() : products.findByIds(ids);
+        });
+    }
+
+    /**
+     * Grupo calculado al pedirlo: en cada nivel se piden a la vez, a cada shard, los enlaces de los productos nuevos
+     * que viven en él, hasta que no aparece ninguno más.
+     */
+    @Override
+    public List<Product> findClusterMembers(int productId) {
+        return Metrics.timed("ShardedEquivalenceStore.findClusterMembers", () -> {
+            if (shards.shardOfId(productId) < 0) return new ArrayList<>();
+
+            Set<Integer> seen = new HashSet<>();
+            seen.add(productId);
+            List<Integer> frontier = List.of(productId);
+
+            while (!frontier.isEmpty()) {
+                Map<Integer, List<Integer>> byShard = new LinkedHashMap<>();
+                for (int id : frontier) {
+                    int shard = shards.shardOfId(id);
+                    if (shard >= 0) byShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(id);
+                }
+
+                List<Integer> next = new ArrayList<>();
+                for (List<Integer> linked : shards.onEach(new ArrayList<>(byShard.keySet()), shard -> findLinks(byShard.get(shard)))) {
+                    for (int id : linked) {
+                        if (seen.add(id)) next.add(id);
+                    }
+                }
+                frontier = next;
+            }
+
+            seen.remove(productId);
+            List<Product> members = seen.isEmpty() ? new ArrayList<>() : products.findByIds(seen);
+            members.sort(ShardedProductStore.BY_CLIENT_AND_ID);
+            return members;
+        });
+    }
+
+    /**
+     * No hay grupos guardados que recalcular (findClusterMembers los calcula al pedirlos): solo cuenta
+     * los productos que tienen alguna equivalencia, que es lo que devuelve el recálculo en los demás almacenes.
+     */
+    @Override
+    public int rebuildClusters() {
+        return Metrics.timed("ShardedEquivalenceStore.rebuildClusters", () -> {
+            BitSet linked = new BitSet();
+            forEachPair(0, (a, b) -> {
+                linked.set(a);
+                linked.set(b);
+            });
+            return linked.cardinality();
+        });
+    }
+
+    /**
+     * Shard a shard (cada pareja está en uno solo), en el hilo que llama.
+     */
+    @Override
+    public long forEachPair(int fetchSize, PairConsumer consumer) {
+        return Metrics.timed("ShardedEquivalenceStore.forEachPair", () -> {
+            long count = 0;
+            for (int shard = 0; shard < shards.size(); shard++) {
+                count += shards.on(shard, () -> dao.forEachPair(fetchSize, consumer));
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Los ID_EQUIVALENCE también siguen la secuencia de cada shard, así que un rango de ids
+     * es el mismo rango en cada shard.
+     */
+    @Override
+    public long forEachPairInRange(long afterId, long upToId, int fetchSize, PairConsumer consumer) {
+        return Metrics.timed("ShardedEquivalenceStore.forEachPairInRange", () -> {
+            long count = 0;
+            for (int shard = 0; shard < shards.size(); shard++) {
+                count += shards.on(shard, () -> dao.forEachPairInRange(afterId, upToId, fetchSize, consumer));
+            }
+            return count;
+        });
+    }
+
+    /**
+     * @return suma de las filas de todos los shards y el mayor id de todos
+     */
+    @Override
+    public TableVersion getVersion() {
+        return Metrics.timed("ShardedEquivalenceStore.getVersion", () -> {
+            long rows = 0;
+            long maxId = 0;
+            for (TableVersion v : shards.onAll(shard -> dao.getVersion())) {
+                rows += v.rows();
+                maxId = Math.max(maxId, v.maxId());
+            }
+            return new TableVersion(rows, maxId);
+        });
+    }
+
+    /**
+     * Fila de EQUIVALENCES y enlace A→B en el shard de A (el del hilo), en una transacción.
+     * Si B está en el mismo shard también va su enlace B→A.
+     */
+    private UpsertResult writeOwner(int productA, int productB, boolean upsert) {
+        String sql = "INSERT INTO EQUIVALENCES (PRODUCT_ID_A, PRODUCT_ID_B) VALUES (?, ?)"
+            + (upsert ? " ON DUPLICATE KEY UPDATE ID_EQUIVALENCE = LAST_INSERT_ID(ID_EQUIVALENCE)" : "");
+        String method = upsert ? "upsertEquivalence" : "insertEquivalence";
+        boolean sameShard = shards.shardOfId(productA) == shards.shardOfId(productB);
+
+        try (Connection con = DB.getConnection()) {
+
+            con.setAutoCommit(false);
+
+            try (PreparedStatement stmt = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                stmt.setInt(1, productA);
+                stmt.setInt(2, productB);
+
+                boolean created = stmt.executeUpdate() == 1;
+                if (created) DB.markWrite();
+                UpsertResult result = new UpsertResult((int) DB.lastInsertId(stmt), created);
+
+                if (created) {
+                    insertLink(con, productA, productB);
+                    if (sameShard) insertLink(con, productB, productA);
+                }
+                con.commit();
+                return result;
+
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en ShardedEquivalenceStore." + method + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Enlace B→A en el shard de B, si es otro que el de A
+    private void writeReverseLink(String method, int productA, int productB) {
+        int shardB = shards.shardOfId(productB);
+        if (shardB == shards.shardOfId(productA)) return;
+
+        shards.on(shardB, () -> {
+            try (Connection con = DB.getConnection()) {
+                insertLink(con, productB, productA);
+                return null;
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en " + method + ": equivalencia " + productA + "-" + productB
+                    + " guardada sin el enlace en el shard del producto " + productB + " (repetir el alta lo completa): "
+                    + e.getMessage(), e);
+            }
+        });
+    }
+
+    private static void insertLink(Connection con, int productId, int equivalentId) throws SQLException {
+        String sql = "INSERT IGNORE INTO EQUIVALENCE_LINKS (PRODUCT_ID, EQUIVALENT_ID) VALUES (?, ?)";
+        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+            stmt.setInt(1, productId);
+            stmt.setInt(2, equivalentId);
+            if (stmt.executeUpdate() > 0) DB.markWrite();
+        }
+    }
+
+    // Equivalentes directos (EQUIVALENT_ID) de los productos, leídos del shard del hilo
+    private List<Integer> findLinks(List<Integer> productIds) {
+        List<Integer> ids = new ArrayList<>();
+
+        try (Connection con = DB.getReadConnection()) {
+            for (int from = 0; from < productIds.size(); from += IDS_PER_QUERY) {
+                List<Integer> chunk = productIds.subList(from, Math.min(productIds.size(), from + IDS_PER_QUERY));
+                String sql = "SELECT EQUIVALENT_ID FROM EQUIVALENCE_LINKS WHERE PRODUCT_ID IN ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") ORDER BY EQUIVALENT_ID";
+
+                try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                    for (int k = 0; k < chunk.size(); k++) {
+                        stmt.setInt(k + 1, chunk.get(k));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getInt(1));
+                        }
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en ShardedEquivalenceStore.findLinks: " + e.getMessage(), e);
+        }
+
+        return ids;
+    }
+
+    private void checkProducts(String method, int productA, int productB) {
+        if (products.findByIds(List.of(productA, productB)).size() < 2) {
+            String message = "Cannot add or update a child row: a foreign key constraint fails (PRODUCT_ID_A="
+                + productA + ", PRODUCT_ID_B=" + productB + ")";
+            throw new RuntimeException("Error en " + method + ": " + message, new SQLIntegrityConstraintViolationException(message));
+        }
+    }
+}
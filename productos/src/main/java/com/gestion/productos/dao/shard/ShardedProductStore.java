@@ -0,0 +1,381 @@
+package com.gestion.productos.dao.shard;
+
+import com.gestion.productos.dao.ClientStore;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.UpsertResult;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.Shards;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Productos repartidos en shards por CLIENT_ID (ver Shards). Cada shard tiene su tabla PRODUCTS y las consultas
+ * son las de ProductDAO, ejecutadas con las conexiones del shard que toca:
+ *
+ * - Lo que va por cliente (finByClientAndName, finByClientId, altas) o por id (findById) va a un solo shard.
+ * - Lo que cruza clientes (findAll, findPage, findSameNameInOtherClients) se lanza en todos los shards a la vez
+ *   y se mezclan los resultados, que ya vienen ordenados de cada uno, en el mismo orden que ProductDAO.
+ * - forEach y forEachWithIdGreaterThan recorren por páginas de cada shard mezcladas en orden, sin cargar todo.
+ *
+ * CLIENTS sigue en la principal y los shards no tienen clave ajena hacia ella: el cliente se comprueba aquí antes de insertar.
+ * upsertProducts es atómico dentro de cada shard, no entre shards.
+ */
+public class ShardedProductStore implements ProductStore {
+
+    // Filas por página al recorrer los shards
+    private static final int PAGE = 1000;
+    // Máximo de ids por consulta IN (...)
+    private static final int IDS_PER_QUERY = 500;
+
+    static final Comparator<Product> BY_CLIENT_AND_ID =
+        Comparator.comparingInt(Product::getClienteID).thenComparingInt(Product::getId);
+    static final Comparator<Product> BY_ID = Comparator.comparingInt(Product::getId);
+
+    private final Shards shards;
+    private final ClientStore clients;
+    private final ProductDAO dao = new ProductDAO();
+
+    /**
+     * @param shards  shards configurados (DB.shards())
+     * @param clients clientes de la principal, para comprobar que existen antes de insertar
+     */
+    public ShardedProductStore(Shards shards, ClientStore clients) {
+        this.shards = shards;
+        this.clients = clients;
+    }
+
+    @Override
+    public Product findById(int id) {
+        return Metrics.timed("ShardedProductStore.findById", () -> {
+            int shard = shards.shardOfId(id);
+            return shard < 0 ? null : shards.on(shard, () -> dao.findById(id));
+        });
+    }
+
+    @Override
+    public Product finByClientAndName(int clientId, String name) {
+        return Metrics.timed("ShardedProductStore.finByClientAndName", () ->
+            shards.on(shards.shardOfClient(clientId), () -> dao.finByClientAndName(clientId, name)));
+    }
+
+    @Override
+    public List<Product> finByClientId(int clientId) {
+        return Metrics.timed("ShardedProductStore.finByClientId", () ->
+            shards.on(shards.shardOfClient(clientId), () -> dao.finByClientId(clientId)));
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return Metrics.timed("ShardedProductStore.findAll", () ->
+            merge(shards.onAll(shard -> dao.findAll()), BY_CLIENT_AND_ID, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Cada shard devuelve su página desde "after" y de la mezcla se quedan los primeros limit.
+     */
+    @Override
+    public List<Product> findPage(Product after, int limit) {
+        return Metrics.timed("ShardedProductStore.findPage", () ->
+            merge(shards.onAll(shard -> dao.findPage(after, limit)), BY_CLIENT_AND_ID, limit));
+    }
+
+    @Override
+    public long forEach(int fetchSize, Consumer<Product> consumer) {
+        return Metrics.timed("ShardedProductStore.forEach", () -> {
+            int pageSize = fetchSize > 0 ? fetchSize : PAGE;
+            long count = 0;
+            Product last = null;
+            // El consumer se llama en el hilo que recorre, sin ninguna conexión prestada
+            while (true) {
+                List<Product> page = findPage(last, pageSize);
+                if (page.isEmpty()) break;
+                for (Product p : page) {
+                    consumer.accept(p);
+                }
+                count += page.size();
+                last = page.get(page.size() - 1);
+            }
+            Metrics.addRows("ShardedProductStore.forEach", count);
+            return count;
+        });
+    }
+
+    /**
+     * En orden de ID de todos los shards: una página de cada uno y se va sacando el menor,
+     * pidiendo la siguiente página de un shard cuando se acaba la suya.
+     */
+    @Override
+    public long forEachWithIdGreaterThan(int lastId, int fetchSize, Consumer<Product> consumer) {
+        return Metrics.timed("ShardedProductStore.forEachWithIdGreaterThan", () -> {
+            int pageSize = fetchSize > 0 ? fetchSize : PAGE;
+            List<List<Product>> first = shards.onAll(shard -> findPageById(lastId, pageSize));
+
+            int n = first.size();
+            List<ArrayDeque<Product>> buffers = new ArrayList<>(n);
+            boolean[] exhausted = new boolean[n];
+            PriorityQueue<Integer> heads = new PriorityQueue<>(Comparator.comparingInt(s -> buffers.get(s).peek().getId()));
+            for (int s = 0; s < n; s++) {
+                buffers.add(new ArrayDeque<>(first.get(s)));
+                exhausted[s] = first.get(s).size() < pageSize;
+                if (!buffers.get(s).isEmpty()) heads.add(s);
+            }
+
+            long count = 0;
+            while (!heads.isEmpty()) {
+                int s = heads.poll();
+                ArrayDeque<Product> buffer = buffers.get(s);
+                Product p = buffer.poll();
+                consumer.accept(p);
+                count++;
+
+                if (buffer.isEmpty() && !exhausted[s]) {
+                    List<Product> next = shards.on(s, () -> findPageById(p.getId(), pageSize));
+                    buffer.addAll(next);
+                    exhausted[s] = next.size() < pageSize;
+                }
+                if (!buffer.isEmpty()) heads.add(s);
+            }
+
+            Metrics.addRows("ShardedProductStore.forEachWithIdGreaterThan", count);
+            return count;
+        });
+    }
+
+    /**
+     * Una secuencia de ids por posición de shard (Shards.idStride).
+     */
+    @Override
+    public int idSequences() {
+        return shards.idStride();
+    }
+
+    @Override
+    public long forEachInSequenceWithIdGreaterThan(int sequence, int lastId, int fetchSize, Consumer<Product> consumer) {
+        return Metrics.timed("ShardedProductStore.forEachInSequenceWithIdGreaterThan", () -> {
+            if (sequence >= shards.size()) return 0L;
+            return shards.on(sequence, () -> dao.forEachWithIdGreaterThan(lastId, fetchSize, consumer));
+        });
+    }
+
+    @Override
+    public List<Product> findSameNameInOtherClients(int clientId, String name) {
+        return Metrics.timed("ShardedProductStore.findSameNameInOtherClients", () ->
+            merge(shards.onAll(shard -> dao.findSameNameInOtherClients(clientId, name)), BY_CLIENT_AND_ID, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public List<Product> findByClientAndNames(Collection<Product> keys) {
+        return Metrics.timed("ShardedProductStore.findByClientAndNames", () -> {
+            Map<Integer, List<Product>> byShard = new LinkedHashMap<>();
+            for (Product key : keys) {
+                byShard.computeIfAbsent(shards.shardOfClient(key.getClienteID()), s -> new ArrayList<>()).add(key);
+            }
+            if (byShard.isEmpty()) return new ArrayList<>();
+
+            List<Product> products = new ArrayList<>(keys.size());
+            for (List<Product> found : shards.onEach(new ArrayList<>(byShard.keySet()), shard -> dao.findByClientAndNames(byShard.get(shard)))) {
+                products.addAll(found);
+            }
+            return products;
+        });
+    }
+
+    @Override
+    public int insertProduct(int idCliente, String name) {
+        return Metrics.timed("ShardedProductStore.insertProduct", () -> {
+            checkClient("ShardedProductStore.insertProduct", idCliente);
+            return shards.on(shards.shardOfClient(idCliente), () -> dao.insertProduct(idCliente, name));
+        });
+    }
+
+    @Override
+    public UpsertResult upsertProduct(int idCliente, String name) {
+        return Metrics.timed("ShardedProductStore.upsertProduct", () -> {
+            checkClient("ShardedProductStore.upsertProduct", idCliente);
+            return shards.on(shards.shardOfClient(idCliente), () -> dao.upsertProduct(idCliente, name));
+        });
+    }
+
+    /**
+     * Cada shard recibe sus filas en un bloque (en paralelo) y los resultados se devuelven en el orden de rows.
+     */
+    @Override
+    public List<UpsertResult> upsertProducts(List<Product> rows) {
+        return Metrics.timed("ShardedProductStore.upsertProducts", () -> {
+            if (rows.isEmpty()) return List.of();
+
+            Map<Integer, List<Integer>> positions = new LinkedHashMap<>();
+            Set<Integer> clientIds = new HashSet<>();
+            for (int i = 0; i < rows.size(); i++) {
+                int clientId = rows.get(i).getClienteID();
+                positions.computeIfAbsent(shards.shardOfClient(clientId), s -> new ArrayList<>()).add(i);
+                clientIds.add(clientId);
+            }
+            for (int clientId : clientIds) {
+                checkClient("ShardedProductStore.upsertProducts", clientId);
+            }
+
+            List<Integer> shardList = new ArrayList<>(positions.keySet());
+            List<List<UpsertResult>> partial = shards.onEach(shardList, shard -> {
+                List<Product> shardRows = new ArrayList<>();
+                for (int i : positions.get(shard)) {
+                    shardRows.add(rows.get(i));
+                }
+                return dao.upsertProducts(shardRows);
+            });
+
+            UpsertResult[] results = new UpsertResult[rows.size()];
+            for (int k = 0; k < shardList.size(); k++) {
+                List<Integer> idx = positions.get(shardList.get(k));
+                for (int j = 0; j < idx.size(); j++) {
+                    results[idx.get(j)] = partial.get(k).get(j);
+                }
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    @Override
+    public boolean hasMissingNormalizedNames() {
+        return Metrics.timed("ShardedProductStore.hasMissingNormalizedNames", () ->
+            shards.onAll(shard -> dao.hasMissingNormalizedNames()).contains(true));
+    }
+
+    @Override
+    public long backfillNormalizedNames(boolean all, int batchSize) {
+        return Metrics.timed("ShardedProductStore.backfillNormalizedNames", () -> {
+            long updated = 0;
+            for (long n : shards.onAll(shard -> dao.backfillNormalizedNames(all, batchSize))) {
+                updated += n;
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Productos por id, cada uno buscado en su shard (en paralelo si hay varios).
+     *
+     * @param ids ids de producto
+     * @return productos encontrados en orden de ID; los que no existen no aparecen
+     */
+    List<Product> findByIds(Collection<Integer> ids) {
+        Map<Integer, List<Integer>> byShard = new LinkedHashMap<>();
+        for (int id : ids) {
+            int shard = shards.shardOfId(id);
+            if (shard >= 0) byShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(id);
+        }
+        if (byShard.isEmpty()) return new ArrayList<>();
+
+        List<List<Product>> found = shards.onEach(new ArrayList<>(byShard.keySet()), shard -> findByIdsOnShard(byShard.get(shard)));
+        return merge(found, BY_ID, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Mezcla listas ya ordenadas por order (una por shard) en una sola, hasta limit elementos.
+     */
+    static List<Product> merge(List<List<Product>> sorted, Comparator<Product> order, int limit) {
+        if (sorted.size() == 1) {
+            List<Product> only = sorted.get(0);
+            return only.size() <= limit ? only : new ArrayList<>(only.subList(0, limit));
+        }
+
+        int total = 0;
+        for (List<Product> list : sorted) {
+            total += list.size();
+        }
+        List<Product> merged = new ArrayList<>(Math.min(total, limit));
+        int[] pos = new int[sorted.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> order.compare(sorted.get(a).get(pos[a]), sorted.get(b).get(pos[b])));
+        for (int s = 0; s < sorted.size(); s++) {
+            if (!sorted.get(s).isEmpty()) heads.add(s);
+        }
+
+        while (!heads.isEmpty() && merged.size() < limit) {
+            int s = heads.poll();
+            merged.add(sorted.get(s).get(pos[s]++));
+            if (pos[s] < sorted.get(s).size()) heads.add(s);
+        }
+        return merged;
+    }
+
+    // Página por ID dentro del shard en el que está el hilo (Shards.on)
+    private List<Product> findPageById(int afterId, int limit) {
+        String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE ID_PRODUCT > ? ORDER BY ID_PRODUCT LIMIT ?";
+        List<Product> products = new ArrayList<>();
+
+        try (Connection con = DB.getReadConnection();
+             PreparedStatement stmt = con.prepareStatement(sql)) {
+
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, limit);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(new Product(rs.getInt("ID_PRODUCT"), rs.getInt("CLIENT_ID"), rs.getString("NAME")));
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en ShardedProductStore.forEachWithIdGreaterThan: " + e.getMessage(), e);
+        }
+
+        return products;
+    }
+
+    private List<Product> findByIdsOnShard(List<Integer> ids) {
+        List<Product> products = new ArrayList<>(ids.size());
+
+        try (Connection con = DB.getReadConnection()) {
+            for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + IDS_PER_QUERY));
+                String sql = "SELECT ID_PRODUCT, CLIENT_ID, NAME FROM PRODUCTS WHERE ID_PRODUCT IN ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") ORDER BY ID_PRODUCT";
+
+                try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                    for (int k = 0; k < chunk.size(); k++) {
+                        stmt.setInt(k + 1, chunk.get(k));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            products.add(new Product(rs.getInt("ID_PRODUCT"), rs.getInt("CLIENT_ID"), rs.getString("NAME")));
+                        }
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en ShardedProductStore.findByIds: " + e.getMessage(), e);
+        }
+
+        products.sort(BY_ID);
+        return products;
+    }
+
+    // Los shards no tienen la clave ajena a CLIENTS (está en la principal): se comprueba aquí con el mismo error que daría MySQL
+    private void checkClient(String method, int clientId) {
+        if (clients.findById(clientId) == null) {
+            String message = "Cannot add or update a child row: a foreign key constraint fails (CLIENT_ID=" + clientId + ")";
+            throw new RuntimeException("Error en " + method + ": " + message, new SQLIntegrityConstraintViolationException(message));
+        }
+    }
+}
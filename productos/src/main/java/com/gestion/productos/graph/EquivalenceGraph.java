@@ -0,0 +1,319 @@
+package com.gestion.productos.graph;
+
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.EquivalenceStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.TableVersion;
+import com.gestion.productos.util.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Grafo de equivalencias en memoria en formato CSR (compressed sparse row), solo con arrays de int.
+ *
+ * Los vecinos del producto p son neighbors[offsets[p] .. offsets[p + 1]), ordenados por id.
+ * El id de producto se usa directamente como índice (los ids son autoincrementales y densos),
+ * así que vecinos y grado son dos lecturas de array, sin Integer ni Product.
+ *
+ * Es inmutable: para incorporar equivalencias nuevas se construye otro con build().
+ * La construcción lee EQUIVALENCES en trozos por rango de ID_EQUIVALENCE desde varios hilos (cada uno con su
+ * conexión del pool) y después cuenta grados, rellena y ordena las filas en paralelo.
+ */
+public final class EquivalenceGraph {
+
+    private static volatile EquivalenceGraph shared;
+    private static volatile boolean sharedStale;
+
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final TableVersion version;
+
+    // Marcas de "visitado" para los recorridos, reutilizadas entre llamadas (se invalidan subiendo la marca, sin limpiar).
+    // Van en un pool y no en un ThreadLocal porque con hilos virtuales cada petición sería un hilo nuevo
+    private final ConcurrentLinkedQueue<Visited> visitedPool = new ConcurrentLinkedQueue<>();
+
+    private EquivalenceGraph(int[] offsets, int[] neighbors, TableVersion version) {
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.version = version;
+    }
+
+    /**
+     * Grafo compartido de la aplicación. Se construye la primera vez y se vuelve a construir si desde entonces
+     * este proceso ha insertado equivalencias.
+     */
+    public static EquivalenceGraph shared() {
+        EquivalenceGraph graph = shared;
+        if (graph == null || sharedStale) {
+            synchronized (EquivalenceGraph.class) {
+                graph = shared;
+                if (graph == null || sharedStale) {
+                    if (graph == null) {
+                        EquivalenceDAO.addInsertListener(() -> sharedStale = true);
+                    }
+                    sharedStale = false;
+                    graph = build(new EquivalenceDAO(), Config.getInt("graph.parallelism",
+                        Math.min(Runtime.getRuntime().availableProcessors(), Config.getInt("db.pool.maxSize", 10))));
+                    shared = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Construye el grafo leyendo EQUIVALENCES entera.
+     *
+     * @param dao         DAO de equivalencias
+     * @param parallelism hilos (y conexiones) leyendo a la vez
+     * @return grafo listo para consultar
+     */
+    public static EquivalenceGraph build(EquivalenceStore dao, int parallelism) {
+        return Metrics.timed("EquivalenceGraph.build", () -> {
+            TableVersion version = dao.getVersion();
+            int fetchSize = Config.getInt("db.fetchSize", 0);
+
+            // 1) Lectura en paralelo por rangos de la clave primaria
+            int parts = (int) Math.max(1, Math.min(parallelism, version.maxId()));
+            long step = (version.maxId() + parts - 1) / Math.max(1, parts);
+            List<PairBuffer> buffers = new ArrayList<>(parts);
+
+            ExecutorService executor = Executors.newFixedThreadPool(parts);
+            try {
+                List<Future<PairBuffer>> futures = new ArrayList<>(parts);
+                for (int i = 0; i < parts; i++) {
+                    long from = i * step;
+                    long to = (i == parts - 1) ? version.maxId() : Math.min(version.maxId(), from + step);
+                    futures.add(executor.submit(() -> {
+                        PairBuffer buffer = new PairBuffer();
+                        dao.forEachPairInRange(from, to, fetchSize, buffer::add);
+                        return buffer;
+                    }));
+                }
+                for (Future<PairBuffer> f : futures) {
+                    buffers.add(f.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Construcción del grafo interrumpida", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+
+            return fromPairs(buffers, version);
+        });
+    }
+
+    /**
+     * Construye el grafo a partir de parejas ya leídas (una lista por trozo leído).
+     */
+    static EquivalenceGraph fromPairs(List<PairBuffer> buffers, TableVersion version) {
+        int maxProductId = 0;
+        for (PairBuffer b : buffers) {
+            maxProductId = Math.max(maxProductId, b.maxValue);
+        }
+        int n = maxProductId + 1;
+
+        // 2) Grados: cada trozo en paralelo, con contadores atómicos compartidos
+        AtomicIntegerArray degree = new AtomicIntegerArray(n);
+        buffers.parallelStream().forEach(b -> {
+            for (int i = 0; i < b.size; i++) {
+                degree.incrementAndGet(b.values[i]);
+            }
+        });
+
+        // 3) Offsets = suma acumulada de grados
+        int[] offsets = new int[n + 1];
+        for (int p = 0; p < n; p++) {
+            offsets[p + 1] = degree.get(p);
+        }
+        Arrays.parallelPrefix(offsets, Integer::sum);
+
+        // 4) Relleno en paralelo: cada extremo reserva su hueco con un cursor atómico por producto
+        int[] neighbors = new int[offsets[n]];
+        AtomicIntegerArray cursor = new AtomicIntegerArray(Arrays.copyOf(offsets, n));
+        buffers.parallelStream().forEach(b -> {
+            for (int i = 0; i < b.size; i += 2) {
+                int a = b.values[i];
+                int c = b.values[i + 1];
+                neighbors[cursor.getAndIncrement(a)] = c;
+                neighbors[cursor.getAndIncrement(c)] = a;
+            }
+        });
+
+        // 5) Cada fila ordenada (y así los recorridos son deterministas)
+        IntStream.range(0, n).parallel().forEach(p -> {
+            if (offsets[p + 1] - offsets[p] > 1) {
+                Arrays.sort(neighbors, offsets[p], offsets[p + 1]);
+            }
+        });
+
+        return new EquivalenceGraph(offsets, neighbors, version);
+    }
+
+    /**
+     * @return número de equivalencias directas del producto (0 si no tiene o no existe)
+     */
+    public int degree(int productId) {
+        if (productId < 0 || productId >= offsets.length - 1) return 0;
+        return offsets[productId + 1] - offsets[productId];
+    }
+
+    /**
+     * @return ids de los equivalentes directos, ordenados (copia; array vacío si no tiene)
+     */
+    public int[] neighbors(int productId) {
+        if (degree(productId) == 0) return new int[0];
+        return Arrays.copyOfRange(neighbors, offsets[productId], offsets[productId + 1]);
+    }
+
+    /**
+     * @return true si los dos productos tienen una equivalencia directa (búsqueda binaria en la fila, sin crear nada)
+     */
+    public boolean contains(int productA, int productB) {
+        if (degree(productA) == 0) return false;
+        return Arrays.binarySearch(neighbors, offsets[productA], offsets[productA + 1], productB) >= 0;
+    }
+
+    /**
+     * Recorre los equivalentes directos sin crear ningún array.
+     */
+    public void forEachNeighbor(int productId, IntConsumer consumer) {
+        if (degree(productId) == 0) return;
+        for (int i = offsets[productId]; i < offsets[productId + 1]; i++) {
+            consumer.accept(neighbors[i]);
+        }
+    }
+
+    /**
+     * Recorrido en anchura hasta maxDepth saltos (1 = equivalentes directos).
+     *
+     * @param productId producto de partida
+     * @param maxDepth  máximo de saltos
+     * @param maxResults máximo de productos a devolver (para no recorrer un grupo enorme entero)
+     * @return ids alcanzables sin el de partida, por distancia y después por id
+     */
+    public int[] reachable(int productId, int maxDepth, int maxResults) {
+        if (degree(productId) == 0 || maxDepth <= 0 || maxResults <= 0) return new int[0];
+
+        Visited v = visitedPool.poll();
+        if (v == null) v = new Visited(offsets.length - 1);
+        try {
+            return traverse(v, productId, maxDepth, maxResults);
+        } finally {
+            visitedPool.offer(v);
+        }
+    }
+
+    private int[] traverse(Visited v, int productId, int maxDepth, int maxResults) {
+        int mark = v.next();
+        v.stamps[productId] = mark;
+
+        int[] queue = v.queue;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = productId;
+
+        int[] result = new int[Math.min(maxResults, 16)];
+        int found = 0;
+
+        for (int depth = 0; depth < maxDepth && head < tail && found < maxResults; depth++) {
+            int levelEnd = tail;
+            while (head < levelEnd && found < maxResults) {
+                int p = queue[head++];
+                for (int i = offsets[p]; i < offsets[p + 1] && found < maxResults; i++) {
+                    int q = neighbors[i];
+                    if (v.stamps[q] == mark) continue;
+                    v.stamps[q] = mark;
+                    queue[tail++] = q;
+                    if (found == result.length) {
+                        result = Arrays.copyOf(result, Math.min(maxResults, found * 2));
+                    }
+                    result[found++] = q;
+                }
+            }
+        }
+        return found == result.length ? result : Arrays.copyOf(result, found);
+    }
+
+    /**
+     * @return número de productos con al menos una equivalencia
+     */
+    public int linkedProducts() {
+        int count = 0;
+        for (int p = 0; p < offsets.length - 1; p++) {
+            if (offsets[p + 1] > offsets[p]) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return número de equivalencias (cada una aparece dos veces en neighbors, una por sentido)
+     */
+    public int edgeCount() {
+        return neighbors.length / 2;
+    }
+
+    /**
+     * @return versión de EQUIVALENCES con la que se construyó
+     */
+    public TableVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * @return bytes aproximados que ocupan los arrays del grafo
+     */
+    public long memoryBytes() {
+        return 4L * (offsets.length + neighbors.length);
+    }
+
+    /**
+     * Parejas leídas de un trozo, seguidas en un int[] (a0, b0, a1, b1...).
+     */
+    static final class PairBuffer {
+        private int[] values = new int[1024];
+        private int size;
+        private int maxValue;
+
+        void add(int a, int b) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = a;
+            values[size++] = b;
+            maxValue = Math.max(maxValue, Math.max(a, b));
+        }
+    }
+
+    private static final class Visited {
+        private final int[] stamps;
+        private final int[] queue;
+        private int mark;
+
+        private Visited(int n) {
+            stamps = new int[n];
+            queue = new int[n];
+        }
+
+        private int next() {
+            if (++mark == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                mark = 1;
+            }
+            return mark;
+        }
+    }
+}
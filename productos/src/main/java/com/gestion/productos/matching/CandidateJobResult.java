@@ -0,0 +1,77 @@
+package com.gestion.productos.matching;
+
+/**
+ * Resumen de una ejecución de CandidateMatchingJob: contadores de cada fase y rendimiento.
+ */
+public class CandidateJobResult {
+
+    private final int parallelism;
+    private long products;
+    private int blocks;
+    private int skippedBlocks;
+    private long readNanos;
+    private long comparisons;
+    private long alreadyEquivalent;
+    private long candidates;
+    private long compareNanos;
+    private long elapsedNanos;
+
+    CandidateJobResult(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    void setRead(long products, int blocks, int skippedBlocks, long readNanos) {
+        this.products = products;
+        this.blocks = blocks;
+        this.skippedBlocks = skippedBlocks;
+        this.readNanos = readNanos;
+    }
+
+    void setCompared(long comparisons, long alreadyEquivalent, long candidates, long compareNanos) {
+        this.comparisons = comparisons;
+        this.alreadyEquivalent = alreadyEquivalent;
+        this.candidates = candidates;
+        this.compareNanos = compareNanos;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getParallelism() {return parallelism;}
+    public long getProducts() {return products;}
+    public int getBlocks() {return blocks;}
+    public int getSkippedBlocks() {return skippedBlocks;}
+    public long getComparisons() {return comparisons;}
+    public long getAlreadyEquivalent() {return alreadyEquivalent;}
+    public long getCandidates() {return candidates;}
+    public long getElapsedMillis() {return elapsedNanos / 1_000_000;}
+
+    /**
+     * @return productos leídos por segundo (lectura en streaming + bloques)
+     */
+    public double getProductsPerSecond() {
+        return readNanos == 0 ? 0 : products * 1_000_000_000.0 / readNanos;
+    }
+
+    /**
+     * @return parejas comparadas por segundo (fase de comparación y escritura)
+     */
+    public double getComparisonsPerSecond() {
+        return compareNanos == 0 ? 0 : comparisons * 1_000_000_000.0 / compareNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Productos=" + products
+            + ", bloques=" + blocks
+            + ", palabras demasiado comunes (sin bloque)=" + skippedBlocks
+            + ", comparaciones=" + comparisons
+            + ", ya equivalentes (saltadas)=" + alreadyEquivalent
+            + ", candidatos guardados=" + candidates
+            + ", hilos=" + parallelism
+            + "\n  lectura: " + readNanos / 1_000_000 + " ms (" + String.format("%.0f", getProductsPerSecond()) + " productos/s)"
+            + ", comparacion: " + compareNanos / 1_000_000 + " ms (" + String.format("%.0f", getComparisonsPerSecond()) + " comparaciones/s)"
+            + ", total: " + getElapsedMillis() + " ms";
+    }
+}
@@ -0,0 +1,479 @@
+package com.gestion.productos.matching;
+
+import com.gestion.productos.dao.CandidateDAO;
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.graph.EquivalenceGraph;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.TextNormalizer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Proceso por lotes (pensado para lanzarlo cada noche) que busca candidatos a equivalencia en todo el catálogo,
+ * en vez de producto a producto como Service.posiblesMismosProductos.
+ *
+ * 1) Lee PRODUCTS en streaming y guarda de cada producto solo id, cliente y sus palabras normalizadas
+ *    (TextNormalizer.tokens) como ids de int ordenados.
+ * 2) Agrupa los productos en bloques por palabra: solo se comparan productos que comparten alguna.
+ *    Las palabras demasiado comunes (bloques de más de maxBlockSize productos, tipo "de" o "ml") no forman bloque,
+ *    porque compararlo todo con todo ahí es cuadrático y casi nunca aporta.
+ * 3) Compara dentro de cada bloque los productos de clientes distintos en paralelo con fork/join. Cada pareja se
+ *    puntúa una sola vez (en el bloque de su primera palabra común) con Dice sobre las palabras:
+ *    2·comunes / (palabras A + palabras B).
+ * 4) Las parejas con puntuación >= minScore que no sean ya una equivalencia se escriben en EQUIVALENCE_CANDIDATES
+ *    por bloques de batchSize filas desde writers hilos. Si la escritura no da abasto, el hilo que compara
+ *    escribe él mismo (así la memoria no crece sin límite).
+ */
+public class CandidateMatchingJob {
+
+    // Comparaciones a partir de las cuales una tarea se divide en dos
+    private static final long LEAF_COMPARISONS = 1 << 16;
+
+    private final ProductDAO productDAO;
+    private final EquivalenceDAO equivalenceDAO;
+    private final CandidateDAO candidateDAO;
+    private final int parallelism;
+    private final int writers;
+    private final int batchSize;
+    private final int maxBlockSize;
+    private final double minScore;
+
+    public CandidateMatchingJob() {
+        this(Config.getInt("matching.job.parallelism", Runtime.getRuntime().availableProcessors()),
+            Config.getInt("matching.job.writers", 2),
+            Config.getInt("matching.job.batchSize", 1000),
+            Config.getInt("matching.job.maxBlockSize", 5000),
+            Double.parseDouble(Config.get("matching.job.minScore", "0.6")));
+    }
+
+    /**
+     * @param parallelism  hilos comparando a la vez
+     * @param writers      hilos escribiendo candidatos a la vez (cada uno con su conexión)
+     * @param batchSize    filas por INSERT multi-fila
+     * @param maxBlockSize productos máximos de un bloque; las palabras más comunes no se usan para agrupar
+     * @param minScore     puntuación mínima (0..1) para guardar una pareja
+     */
+    public CandidateMatchingJob(int parallelism, int writers, int batchSize, int maxBlockSize, double minScore) {
+        if (parallelism <= 0 || writers <= 0 || batchSize <= 0 || maxBlockSize < 2) {
+            throw new IllegalArgumentException("parallelism, writers y batchSize deben ser mayores que 0 y maxBlockSize al menos 2");
+        }
+        this.productDAO = new ProductDAO();
+        this.equivalenceDAO = new EquivalenceDAO();
+        this.candidateDAO = new CandidateDAO();
+        this.parallelism = parallelism;
+        this.writers = writers;
+        this.batchSize = batchSize;
+        this.maxBlockSize = maxBlockSize;
+        this.minScore = minScore;
+    }
+
+    /**
+     * Ejecuta el proceso completo. Vacía EQUIVALENCE_CANDIDATES antes de empezar a escribir.
+     *
+     * @return resumen con contadores y rendimiento
+     */
+    public CandidateJobResult run() {
+        return Metrics.timed("CandidateMatchingJob.run", () -> {
+            CandidateJobResult result = new CandidateJobResult(parallelism);
+            long start = System.nanoTime();
+
+            try {
+                Catalog catalog = readCatalog();
+                Blocks blocks = new Blocks(catalog, maxBlockSize);
+                result.setRead(catalog.size, blocks.count, blocks.skipped, System.nanoTime() - start);
+
+                EquivalenceGraph existing = EquivalenceGraph.build(equivalenceDAO,
+                    Math.min(parallelism, Config.getInt("db.pool.maxSize", 10)));
+
+                candidateDAO.clear();
+                new MatchingRun(catalog, blocks, existing, result).execute();
+
+            } finally {
+                result.setElapsedNanos(System.nanoTime() - start);
+            }
+            return result;
+        });
+    }
+
+    private Catalog readCatalog() {
+        Catalog catalog = new Catalog();
+        Map<String, Integer> dictionary = new HashMap<>();
+
+        productDAO.forEach(Config.getInt("db.fetchSize", 0), p ->
+            catalog.add(p.getId(), p.getClienteID(), tokenIds(p.getName(), dictionary)));
+
+        catalog.tokenCount = dictionary.size();
+        return catalog;
+    }
+
+    /**
+     * Palabras del nombre como ids del diccionario, ordenadas y sin repetir.
+     */
+    private static int[] tokenIds(String name, Map<String, Integer> dictionary) {
+        List<String> tokens = TextNormalizer.tokens(name);
+        int[] ids = new int[tokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dictionary.computeIfAbsent(tokens.get(i), t -> dictionary.size());
+        }
+        Arrays.sort(ids);
+
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) ids[distinct++] = ids[i];
+        }
+        return distinct == ids.length ? ids : Arrays.copyOf(ids, distinct);
+    }
+
+    /**
+     * Estado de una ejecución: las tareas de comparación, los hilos que escriben y los contadores compartidos.
+     */
+    private final class MatchingRun {
+
+        private final Catalog catalog;
+        private final Blocks blocks;
+        private final EquivalenceGraph existing;
+        private final CandidateJobResult result;
+
+        private final LongAdder comparisons = new LongAdder();
+        private final LongAdder alreadyEquivalent = new LongAdder();
+        private final LongAdder written = new LongAdder();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private final ThreadPoolExecutor writerPool;
+
+        private MatchingRun(Catalog catalog, Blocks blocks, EquivalenceGraph existing, CandidateJobResult result) {
+            this.catalog = catalog;
+            this.blocks = blocks;
+            this.existing = existing;
+            this.result = result;
+            this.writerPool = new ThreadPoolExecutor(writers, writers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(writers * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+        private void execute() {
+            long start = System.nanoTime();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                if (blocks.count > 0) {
+                    pool.invoke(task(0, blocks.count));
+                }
+            } finally {
+                pool.shutdown();
+                writerPool.shutdown();
+                try {
+                    writerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                result.setCompared(comparisons.sum(), alreadyEquivalent.sum(), written.sum(), System.nanoTime() - start);
+            }
+
+            RuntimeException e = failure.get();
+            if (e != null) throw e;
+        }
+
+        private CompareTask task(int from, int to) {
+            // Un solo bloque: empiezo con todas sus filas
+            return new CompareTask(from, to, 0, to - from == 1 ? blocks.size(from) : 0);
+        }
+
+        private void write(Batch batch) {
+            writerPool.execute(() -> {
+                if (failure.get() != null) return;
+                try {
+                    written.add(candidateDAO.insertCandidates(batch.productA, batch.productB, batch.scores, batch.size));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        /**
+         * Compara los bloques [blockFrom, blockTo). Si es un solo bloque, solo las filas [rowFrom, rowTo)
+         * como primer producto de la pareja, para poder repartir también un bloque grande entre varios hilos.
+         */
+        private final class CompareTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int blockFrom;
+            private final int blockTo;
+            private final int rowFrom;
+            private final int rowTo;
+
+            private CompareTask(int blockFrom, int blockTo, int rowFrom, int rowTo) {
+                this.blockFrom = blockFrom;
+                this.blockTo = blockTo;
+                this.rowFrom = rowFrom;
+                this.rowTo = rowTo;
+            }
+
+            @Override
+            protected void compute() {
+                if (failure.get() != null) return;
+
+                if (blockTo - blockFrom > 1) {
+                    if (blocks.cost(blockFrom, blockTo) > LEAF_COMPARISONS) {
+                        int mid = blocks.split(blockFrom, blockTo);
+                        invokeAll(task(blockFrom, mid), task(mid, blockTo));
+                        return;
+                    }
+                    Worker worker = new Worker();
+                    for (int b = blockFrom; b < blockTo; b++) {
+                        worker.compare(b, 0, blocks.size(b));
+                    }
+                    worker.finish();
+                    return;
+                }
+
+                int size = blocks.size(blockFrom);
+                if (rowTo - rowFrom > 1 && (long) (rowTo - rowFrom) * size > 2 * LEAF_COMPARISONS) {
+                    int mid = (rowFrom + rowTo) >>> 1;
+                    invokeAll(new CompareTask(blockFrom, blockTo, rowFrom, mid), new CompareTask(blockFrom, blockTo, mid, rowTo));
+                    return;
+                }
+                Worker worker = new Worker();
+                worker.compare(blockFrom, rowFrom, rowTo);
+                worker.finish();
+            }
+
+        }
+
+        /**
+         * Comparaciones de una tarea: contadores locales y el bloque de candidatos pendiente de escribir.
+         */
+        private final class Worker {
+
+            private long compared;
+            private long skipped;
+            private Batch batch = new Batch(batchSize);
+
+            private void compare(int block, int rowFrom, int rowTo) {
+                int token = blocks.tokens[block];
+                int start = blocks.offsets[block];
+                int end = blocks.offsets[block + 1];
+
+                for (int i = start + rowFrom; i < start + rowTo; i++) {
+                    int p = blocks.members[i];
+                    int lengthP = catalog.tokenOffsets[p + 1] - catalog.tokenOffsets[p];
+
+                    for (int j = i + 1; j < end; j++) {
+                        int q = blocks.members[j];
+                        if (catalog.clients[p] == catalog.clients[q]) continue;
+
+                        int lengthQ = catalog.tokenOffsets[q + 1] - catalog.tokenOffsets[q];
+                        // Aunque coincidieran todas las palabras del más corto no llegaría al mínimo
+                        if (2.0 * Math.min(lengthP, lengthQ) / (lengthP + lengthQ) < minScore) continue;
+
+                        double score = score(p, q, token, lengthP + lengthQ);
+                        if (score < 0) continue;
+                        compared++;
+                        if (score < minScore) continue;
+
+                        int a = Math.min(catalog.ids[p], catalog.ids[q]);
+                        int b = Math.max(catalog.ids[p], catalog.ids[q]);
+                        if (existing.contains(a, b)) {
+                            skipped++;
+                            continue;
+                        }
+
+                        batch.add(a, b, (float) score);
+                        if (batch.size == batchSize) {
+                            write(batch);
+                            batch = new Batch(batchSize);
+                        }
+                    }
+                }
+            }
+
+            /**
+             * Dice sobre las palabras de los dos productos (listas ordenadas, se recorren a la vez).
+             *
+             * @return puntuación; -1 si la pareja no toca en este bloque (su primera palabra común es otra)
+             */
+            private double score(int p, int q, int blockToken, int totalTokens) {
+                int[] tokens = catalog.tokens;
+                int i = catalog.tokenOffsets[p];
+                int iEnd = catalog.tokenOffsets[p + 1];
+                int j = catalog.tokenOffsets[q];
+                int jEnd = catalog.tokenOffsets[q + 1];
+                int common = 0;
+                int firstBlock = -1;
+
+                while (i < iEnd && j < jEnd) {
+                    int a = tokens[i];
+                    int b = tokens[j];
+                    if (a == b) {
+                        if (firstBlock < 0 && blocks.isBlock(a)) firstBlock = a;
+                        common++;
+                        i++;
+                        j++;
+                    } else if (a < b) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+
+                if (firstBlock != blockToken) return -1;
+                return 2.0 * common / totalTokens;
+            }
+
+            private void finish() {
+                if (batch.size > 0) write(batch);
+                comparisons.add(compared);
+                alreadyEquivalent.add(skipped);
+            }
+        }
+    }
+
+    /**
+     * Productos leídos: id, cliente y palabras (CSR: las de la posición p son tokens[tokenOffsets[p] .. tokenOffsets[p + 1])).
+     */
+    private static final class Catalog {
+        private int size;
+        private int[] ids = new int[1024];
+        private int[] clients = new int[1024];
+        private int[] tokenOffsets = new int[1025];
+        private int[] tokens = new int[4096];
+        private int tokenCount;
+
+        private void add(int id, int clientId, int[] productTokens) {
+            if (size + 1 == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                clients = Arrays.copyOf(clients, clients.length * 2);
+                tokenOffsets = Arrays.copyOf(tokenOffsets, tokenOffsets.length * 2);
+            }
+            int from = tokenOffsets[size];
+            if (from + productTokens.length > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(from + productTokens.length, tokens.length * 2));
+            }
+            System.arraycopy(productTokens, 0, tokens, from, productTokens.length);
+
+            ids[size] = id;
+            clients[size] = clientId;
+            tokenOffsets[size + 1] = from + productTokens.length;
+            size++;
+        }
+    }
+
+    /**
+     * Bloques por palabra en CSR: los productos (posiciones de Catalog) del bloque b son
+     * members[offsets[b] .. offsets[b + 1]), en orden. Solo hay bloque para las palabras con 2..maxBlockSize productos.
+     */
+    private static final class Blocks {
+        private final int count;
+        private final int skipped;
+        private final int[] tokens;
+        private final int[] offsets;
+        private final int[] members;
+        private final int[] blockOfToken;
+        // Comparaciones acumuladas hasta cada bloque, para repartir el trabajo por coste y no por número de bloques
+        private final long[] costPrefix;
+
+        private Blocks(Catalog catalog, int maxBlockSize) {
+            int[] frequency = new int[catalog.tokenCount];
+            for (int i = 0; i < catalog.tokenOffsets[catalog.size]; i++) {
+                frequency[catalog.tokens[i]]++;
+            }
+
+            blockOfToken = new int[catalog.tokenCount];
+            int blockCount = 0;
+            int tooCommon = 0;
+            for (int t = 0; t < frequency.length; t++) {
+                if (frequency[t] >= 2 && frequency[t] <= maxBlockSize) {
+                    blockOfToken[t] = blockCount++;
+                } else {
+                    blockOfToken[t] = -1;
+                    if (frequency[t] > maxBlockSize) tooCommon++;
+                }
+            }
+            count = blockCount;
+            skipped = tooCommon;
+
+            tokens = new int[blockCount];
+            offsets = new int[blockCount + 1];
+            for (int t = 0; t < frequency.length; t++) {
+                int b = blockOfToken[t];
+                if (b >= 0) {
+                    tokens[b] = t;
+                    offsets[b + 1] = frequency[t];
+                }
+            }
+            for (int b = 0; b < blockCount; b++) {
+                offsets[b + 1] += offsets[b];
+            }
+
+            members = new int[offsets[blockCount]];
+            int[] cursor = Arrays.copyOf(offsets, blockCount);
+            for (int p = 0; p < catalog.size; p++) {
+                for (int i = catalog.tokenOffsets[p]; i < catalog.tokenOffsets[p + 1]; i++) {
+                    int b = blockOfToken[catalog.tokens[i]];
+                    if (b >= 0) members[cursor[b]++] = p;
+                }
+            }
+
+            costPrefix = new long[blockCount + 1];
+            for (int b = 0; b < blockCount; b++) {
+                long n = size(b);
+                costPrefix[b + 1] = costPrefix[b] + n * (n - 1) / 2;
+            }
+        }
+
+        private int size(int block) {
+            return offsets[block + 1] - offsets[block];
+        }
+
+        private boolean isBlock(int token) {
+            return blockOfToken[token] >= 0;
+        }
+
+        private long cost(int from, int to) {
+            return costPrefix[to] - costPrefix[from];
+        }
+
+        /**
+         * @return bloque donde partir [from, to) para que las dos mitades tengan un coste parecido
+         */
+        private int split(int from, int to) {
+            long half = costPrefix[from] + cost(from, to) / 2;
+            int mid = Arrays.binarySearch(costPrefix, from, to + 1, half);
+            if (mid < 0) mid = -mid - 1;
+            return Math.max(from + 1, Math.min(to - 1, mid));
+        }
+    }
+
+    /**
+     * Candidatos pendientes de escribir, en arrays paralelos.
+     */
+    private static final class Batch {
+        private final int[] productA;
+        private final int[] productB;
+        private final float[] scores;
+        private int size;
+
+        private Batch(int capacity) {
+            productA = new int[capacity];
+            productB = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        private void add(int a, int b, float score) {
+            productA[size] = a;
+            productB[size] = b;
+            scores[size] = score;
+            size++;
+        }
+    }
+}
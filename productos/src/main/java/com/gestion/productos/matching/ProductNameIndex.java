@@ -0,0 +1,467 @@
+package com.gestion.productos.matching;
+
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.ProductMatch;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.LongIntHashMap;
+import com.gestion.productos.util.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria de los nombres de producto para encontrar productos "parecidos".
+ *
+ * Cada nombre se normaliza (TextNormalizer) y se parte en trigramas por palabra ("^ta", "tal", ..., "ro$").
+ * Como los trigramas son por palabra, el orden de las palabras no importa, y al estar normalizados
+ * tampoco importan mayúsculas, tildes o "50ml" vs "50 ml".
+ *
+ * Para buscar: recorro las listas de los trigramas del nombre buscado, cuento cuántos comparte cada producto
+ * y puntúo con Dice (2·comunes / (trigramas A + trigramas B)). Los k mejores salen de un heap acotado,
+ * así no hace falta ordenar todos los candidatos.
+ *
+ * Todo va en arrays de int (ids, clientes, listas de cada trigrama) y el trigrama lleva a su lista con un
+ * LongIntHashMap, sin Long por clave; solo el nombre se guarda como String.
+ * Es seguro para varios hilos: lecturas en paralelo y escrituras (altas) con bloqueo exclusivo.
+ *
+ * refresh lee los productos que falten sin fiarse del id más alto indexado: un id bajo que se confirma tarde
+ * (AUTO_INCREMENT se reparte al insertar, no al hacer commit) deja un hueco, y mientras el hueco tenga menos de
+ * matching.index.gapTimeoutMs cada refresh vuelve a leer desde él. Pasado ese tiempo se da por perdido
+ * (una transacción deshecha también gasta su id).
+ */
+public class ProductNameIndex {
+
+    private static volatile ProductNameIndex shared;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Documento = posición interna del producto en estos arrays
+    private int size;
+    private int[] ids = new int[1024];
+    private int[] clients = new int[1024];
+    private int[] gramCounts = new int[1024];
+    private String[] names = new String[1024];
+
+    // Trigrama -> posición + 1 de su lista en postingLists
+    private final LongIntHashMap postingIndex = new LongIntHashMap(1 << 12);
+    private IntList[] postingLists = new IntList[1024];
+    private int postingCount;
+    private final BitSet indexedIds = new BitSet();
+
+    // Por cada secuencia de ids del almacén (ProductStore.idSequences; normalmente solo una):
+    // mayor id indexado, id hasta el que no falta nada (floor) y, si hay huecos por encima del floor, desde cuándo
+    // se ven: los que falten hasta gapUpTo (el mayor id indexado cuando apareció el primero) llevan abiertos desde gapSince
+    private int[] maxIdBySequence = new int[1];
+    private int[] floorBySequence = new int[1];
+    private int[] gapUpToBySequence = new int[1];
+    private long[] gapSinceBySequence = new long[1];
+    private final long gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Config.getLong("matching.index.gapTimeoutMs", 60_000));
+
+    private final long refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Config.getLong("matching.index.refreshIntervalMs", 1_000));
+    private final AtomicLong lastRefresh = new AtomicLong(System.nanoTime());
+
+    // Acumulador de coincidencias por documento, reutilizado por cada hilo para no reservar memoria en cada búsqueda
+    private final ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(Accumulator::new);
+
+    /**
+     * Índice compartido de la aplicación. La primera llamada lo construye leyendo PRODUCTS
+     * y lo engancha a ProductDAO para que cada insertProduct lo actualice.
+     *
+     * @return índice listo para buscar
+     */
+    public static ProductNameIndex shared() {
+        ProductNameIndex index = shared;
+        if (index == null) {
+            synchronized (ProductNameIndex.class) {
+                index = shared;
+                if (index == null) {
+                    index = new ProductNameIndex();
+                    ProductDAO.addInsertListener(index::add);
+                    index.refresh(new ProductDAO());
+                    shared = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return el índice compartido si ya se ha construido; null si nadie lo ha usado todavía
+     */
+    public static ProductNameIndex sharedIfBuilt() {
+        return shared;
+    }
+
+    /**
+     * Añade un producto al índice. Si ya estaba, no hace nada.
+     *
+     * @param product producto (id, cliente y nombre)
+     */
+    public void add(Product product) {
+        long[] grams = grams(product.getName());
+
+        lock.writeLock().lock();
+        try {
+            if (indexedIds.get(product.getId())) return;
+
+            int doc = size;
+            ensureCapacity(doc + 1);
+            ids[doc] = product.getId();
+            clients[doc] = product.getClienteID();
+            gramCounts[doc] = grams.length;
+            names[doc] = product.getName();
+            size++;
+
+            for (long gram : grams) {
+                postingList(gram).add(doc);
+            }
+
+            indexedIds.set(product.getId());
+            int sequence = (product.getId() - 1) % maxIdBySequence.length;
+            maxIdBySequence[sequence] = Math.max(maxIdBySequence[sequence], product.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Añade al índice los productos que se hayan creado sin pasar por insertProduct (por ejemplo una carga masiva
+     * o las altas de otros procesos). Lee en streaming los productos con id mayor que el primer hueco todavía
+     * abierto de cada secuencia (ver la cabecera); los que ya estaban se saltan.
+     *
+     * @param productDAO DAO de productos (o cualquier ProductStore)
+     * @return número de productos añadidos
+     */
+    public int refresh(ProductStore productDAO) {
+        int sequences = Math.max(1, productDAO.idSequences());
+        int[] floors;
+        lock.writeLock().lock();
+        try {
+            if (maxIdBySequence.length != sequences) {
+                maxIdBySequence = new int[sequences];
+                for (int doc = 0; doc < size; doc++) {
+                    int sequence = (ids[doc] - 1) % sequences;
+                    maxIdBySequence[sequence] = Math.max(maxIdBySequence[sequence], ids[doc]);
+                }
+                floorBySequence = new int[sequences];
+                gapUpToBySequence = new int[sequences];
+                gapSinceBySequence = new long[sequences];
+                for (int sequence = 0; sequence < sequences; sequence++) {
+                    advanceFloor(sequence, sequences, System.nanoTime());
+                }
+            }
+            floors = floorBySequence.clone();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        int before = size();
+        int fetchSize = Config.getInt("db.fetchSize", 0);
+        if (sequences == 1) {
+            productDAO.forEachWithIdGreaterThan(floors[0], fetchSize, this::add);
+        } else {
+            // Con varias secuencias (shards) cada una sigue desde su último id: el id más alto de todas dejaría fuera
+            // los productos nuevos de las que van por detrás
+            for (int sequence = 0; sequence < sequences; sequence++) {
+                productDAO.forEachInSequenceWithIdGreaterThan(sequence, floors[sequence], fetchSize, this::add);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (floorBySequence.length == sequences) {
+                long now = System.nanoTime();
+                for (int sequence = 0; sequence < sequences; sequence++) {
+                    advanceFloor(sequence, sequences, now);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return size() - before;
+    }
+
+    /**
+     * refresh como mucho una vez cada matching.index.refreshIntervalMs, para ver los productos que otros procesos
+     * insertan en la misma base de datos sin hacer una consulta por búsqueda. Si le toca a otro hilo, no espera.
+     *
+     * @return número de productos añadidos (0 si no tocaba)
+     */
+    public int refreshIfDue(ProductStore productDAO) {
+        long last = lastRefresh.get();
+        long now = System.nanoTime();
+        if (now - last < refreshIntervalNanos || !lastRefresh.compareAndSet(last, now)) return 0;
+        return refresh(productDAO);
+    }
+
+    /**
+     * Busca los k productos de otros clientes con el nombre más parecido.
+     *
+     * @param clientId  cliente del producto buscado (sus productos se excluyen)
+     * @param name      nombre a buscar
+     * @param k         máximo de resultados
+     * @param minScore  puntuación mínima (0..1) para aparecer
+     * @return candidatos ordenados de más a menos parecido
+     */
+    public List<ProductMatch> findSimilar(int clientId, String name, int k, double minScore) {
+        long[] query = grams(name);
+        if (query.length == 0 || k <= 0) return List.of();
+
+        Accumulator acc = accumulators.get();
+
+        lock.readLock().lock();
+        try {
+            acc.ensureCapacity(size);
+
+            // 1) cuento trigramas comunes por documento
+            for (long gram : query) {
+                int list0 = postingIndex.get(gram);
+                if (list0 == 0) continue;
+                IntList list = postingLists[list0 - 1];
+                for (int i = 0; i < list.size; i++) {
+                    int doc = list.values[i];
+                    if (acc.counts[doc]++ == 0) {
+                        acc.touched.add(doc);
+                    }
+                }
+            }
+
+            // 2) puntúo y me quedo con los k mejores en un heap acotado
+            TopK top = new TopK(k);
+            for (int i = 0; i < acc.touched.size; i++) {
+                int doc = acc.touched.values[i];
+                int common = acc.counts[doc];
+                acc.counts[doc] = 0;
+
+                if (clients[doc] == clientId) continue;
+
+                double score = 2.0 * common / (query.length + gramCounts[doc]);
+                if (score >= minScore) {
+                    top.offer(doc, score, ids[doc]);
+                }
+            }
+            acc.touched.size = 0;
+
+            // 3) paso los documentos a productos
+            List<ProductMatch> result = new ArrayList<>(top.size);
+            for (int pos : top.sortedPositions()) {
+                int doc = top.docs[pos];
+                result.add(new ProductMatch(new Product(ids[doc], clients[doc], names[doc]), top.scores[pos]));
+            }
+            return result;
+
+        } finally {
+            // Si algo ha fallado a mitad dejo el acumulador limpio para la siguiente búsqueda del hilo
+            for (int i = 0; i < acc.touched.size; i++) {
+                acc.counts[acc.touched.values[i]] = 0;
+            }
+            acc.touched.size = 0;
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return número de productos indexados
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Trigramas distintos del nombre, por palabra y con marcas de inicio/fin ("^" y "$").
+     * Cada trigrama se codifica en un long (3 caracteres de 16 bits) para no crear Strings.
+     */
+    static long[] grams(String name) {
+        List<String> tokens = TextNormalizer.tokens(name);
+        int capacity = 0;
+        for (String token : tokens) {
+            capacity += token.length();
+        }
+
+        // Cada palabra de n letras da n trigramas ("^" + palabra + "$" tiene n + 2 caracteres)
+        long[] grams = new long[capacity];
+        int count = 0;
+        for (String token : tokens) {
+            String padded = "^" + token + "$";
+            if (padded.length() < 3) continue;
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                grams[count++] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+            }
+        }
+
+        // Quito repetidos ordenando: sin HashSet ni Long
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct == grams.length ? grams : Arrays.copyOf(grams, distinct);
+    }
+
+    // Con el lock de escritura cogido
+    private IntList postingList(long gram) {
+        int list0 = postingIndex.get(gram);
+        if (list0 != 0) return postingLists[list0 - 1];
+
+        if (postingCount == postingLists.length) {
+            postingLists = Arrays.copyOf(postingLists, postingCount * 2);
+        }
+        IntList list = new IntList();
+        postingLists[postingCount++] = list;
+        postingIndex.put(gram, postingCount);
+        return list;
+    }
+
+    /**
+     * Sube el floor de la secuencia por los ids ya indexados. En el primer id que falta: si no hay nada indexado
+     * por encima no es un hueco (aún no existe); si lo hay, espera a que aparezca hasta gapTimeoutNanos y luego lo salta,
+     * junto con los demás huecos que ya estaban abiertos desde entonces. Con el lock de escritura cogido.
+     */
+    private void advanceFloor(int sequence, int sequences, long now) {
+        int floor = floorBySequence[sequence];
+        while (true) {
+            int next = floor == 0 ? sequence + 1 : floor + sequences;
+            if (indexedIds.get(next)) {
+                floor = next;
+                continue;
+            }
+            if (next > maxIdBySequence[sequence]) {
+                gapUpToBySequence[sequence] = 0;
+                break;
+            }
+            if (next > gapUpToBySequence[sequence]) {
+                gapUpToBySequence[sequence] = maxIdBySequence[sequence];
+                gapSinceBySequence[sequence] = now;
+                break;
+            }
+            if (now - gapSinceBySequence[sequence] < gapTimeoutNanos) break;
+            floor = next;
+        }
+        floorBySequence[sequence] = floor;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) return;
+        int capacity = Math.max(needed, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        clients = Arrays.copyOf(clients, capacity);
+        gramCounts = Arrays.copyOf(gramCounts, capacity);
+        names = Arrays.copyOf(names, capacity);
+    }
+
+    /**
+     * Lista creciente de int sin objetos Integer.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class Accumulator {
+        private int[] counts = new int[0];
+        private final IntList touched = new IntList();
+
+        private void ensureCapacity(int n) {
+            if (counts.length < n) {
+                counts = Arrays.copyOf(counts, Math.max(n, counts.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Min-heap de tamaño k: la cima es el peor de los k mejores, así cada candidato cuesta O(log k).
+     * En empate de puntuación gana el id de producto más bajo.
+     */
+    private static final class TopK {
+        private final int[] docs;
+        private final double[] scores;
+        private final int[] productIds;
+        private int size;
+
+        private TopK(int k) {
+            docs = new int[k];
+            scores = new double[k];
+            productIds = new int[k];
+        }
+
+        private void offer(int doc, double score, int productId) {
+            if (size < docs.length) {
+                docs[size] = doc;
+                scores[size] = score;
+                productIds[size] = productId;
+                siftUp(size++);
+            } else if (better(score, productId, scores[0], productIds[0])) {
+                docs[0] = doc;
+                scores[0] = score;
+                productIds[0] = productId;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * @return posiciones del heap ordenadas de mejor a peor
+         */
+        private int[] sortedPositions() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, (x, y) -> better(scores[x], productIds[x], scores[y], productIds[y]) ? -1 : 1);
+
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) sorted[i] = order[i];
+            return sorted;
+        }
+
+        private static boolean better(double s1, int id1, double s2, int id2) {
+            return s1 > s2 || (s1 == s2 && id1 < id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!better(scores[parent], productIds[parent], scores[i], productIds[i])) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                int right = left + 1;
+                int worst = i;
+                if (left < size && better(scores[worst], productIds[worst], scores[left], productIds[left])) worst = left;
+                if (right < size && better(scores[worst], productIds[worst], scores[right], productIds[right])) worst = right;
+                if (worst == i) return;
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int d = docs[a]; docs[a] = docs[b]; docs[b] = d;
+            double s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+            int p = productIds[a]; productIds[a] = productIds[b]; productIds[b] = p;
+        }
+    }
+}
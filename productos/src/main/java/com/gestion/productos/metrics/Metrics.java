@@ -0,0 +1,296 @@
+package com.gestion.productos.metrics;
+
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.PoolStats;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Registro de métricas por operación: llamadas, errores, filas devueltas y latencias (p50/p99/p999).
+ *
+ * Cada método de DAO y cada caso de uso del Service se envuelve con {@link #timed(String, Call)}:
+ * <pre>
+ *     return Metrics.timed("ClientDAO.findByCodigo", () -> { ... });
+ * </pre>
+ * Las métricas se publican por JMX (com.gestion.productos:type=Operation,name=...) y, si se configura
+ * metrics.reportIntervalSec, se vuelcan como texto cada cierto tiempo.
+ *
+ * Coste por llamada: dos System.nanoTime(), una búsqueda en un ConcurrentHashMap y unos incrementos sin bloqueo.
+ * Con metrics.enabled=false la llamada se ejecuta tal cual.
+ */
+public final class Metrics {
+
+    private static final String DOMAIN = "com.gestion.productos";
+
+    private static final boolean ENABLED = Config.getBoolean("metrics.enabled", true);
+    private static final boolean JMX_ENABLED = Config.getBoolean("metrics.jmx.enabled", true);
+
+    private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService reporter;
+
+    static {
+        if (ENABLED && JMX_ENABLED) {
+            register("type=ConnectionPool,name=primary", new PoolMetrics(DB::getStats));
+            for (String replica : Config.get("db.replicas", "").split(",")) {
+                String name = replica.trim();
+                if (name.isEmpty()) continue;
+                register("type=ConnectionPool,name=" + name, new PoolMetrics(() -> poolStats(DB.getReplicaStats(), name)));
+            }
+            for (String shard : Config.get("db.shards", "").split(",")) {
+                String name = shard.trim();
+                if (name.isEmpty()) continue;
+                register("type=ConnectionPool,name=" + name, new PoolMetrics(() -> poolStats(DB.shards().getStats(), name)));
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Código medido. Puede lanzar la excepción comprobada que necesite (por ejemplo SQLException).
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Código medido sin resultado.
+     */
+    @FunctionalInterface
+    public interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Ejecuta la llamada midiendo su duración. Si devuelve una colección o un mapa se cuentan sus elementos
+     * como filas; un objeto cuenta como 1 fila y null como 0. Números, booleanos y textos no cuentan filas.
+     * Si lanza una excepción se cuenta como error y se relanza sin tocarla.
+     *
+     * @param name nombre de la operación ("Clase.metodo")
+     * @param call código a medir
+     * @return lo que devuelva la llamada
+     */
+    public static <T, E extends Exception> T timed(String name, Call<T, E> call) throws E {
+        if (!ENABLED) return call.call();
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        T result = null;
+        try {
+            result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            operation(name).record(System.nanoTime() - start, failed ? -1 : rowsOf(result), failed);
+        }
+    }
+
+    /**
+     * Igual que {@link #timed(String, Call)} para código sin resultado.
+     */
+    public static <E extends Exception> void run(String name, Action<E> action) throws E {
+        timed(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Igual que {@link #timed(String, Call)} para operaciones asíncronas: mide hasta que el futuro termina
+     * (no solo hasta que se crea).
+     *
+     * @param name nombre de la operación
+     * @param call código que arranca la operación y devuelve su futuro
+     * @return el mismo resultado que el futuro original
+     */
+    public static <T> CompletableFuture<T> timedAsync(String name, Supplier<CompletableFuture<T>> call) {
+        if (!ENABLED) return call.get();
+
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            operation(name).record(System.nanoTime() - start, -1, true);
+            throw e;
+        }
+        return future.whenComplete((result, error) ->
+            operation(name).record(System.nanoTime() - start, error == null ? rowsOf(result) : -1, error != null));
+    }
+
+    /**
+     * Suma filas a una operación sin contar una llamada (para lecturas en streaming que no devuelven colección).
+     */
+    public static void addRows(String name, long rows) {
+        if (!ENABLED || rows <= 0) return;
+        operation(name).addRows(rows);
+    }
+
+    /**
+     * @return métricas de la operación (se crean la primera vez)
+     */
+    public static OperationMetrics operation(String name) {
+        OperationMetrics m = OPERATIONS.get(name);
+        if (m != null) return m;
+
+        return OPERATIONS.computeIfAbsent(name, n -> {
+            OperationMetrics created = new OperationMetrics(n);
+            if (JMX_ENABLED) {
+                register("type=Operation,name=" + ObjectName.quote(n), created);
+            }
+            return created;
+        });
+    }
+
+    /**
+     * @return métricas de todas las operaciones llamadas alguna vez, ordenadas por nombre
+     */
+    public static List<OperationMetrics> getAll() {
+        List<OperationMetrics> all = new ArrayList<>(OPERATIONS.values());
+        all.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return all;
+    }
+
+    public static void resetAll() {
+        OPERATIONS.values().forEach(OperationMetrics::reset);
+    }
+
+    /**
+     * @return volcado de texto con una línea por operación
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== Métricas ").append(LocalDateTime.now().withNano(0)).append(" ===").append(System.lineSeparator());
+        for (OperationMetrics m : getAll()) {
+            if (m.getCalls() == 0) continue;
+            sb.append(m).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Arranca el volcado periódico si metrics.reportIntervalSec > 0. Se escribe en metrics.reportFile
+     * (se añade al final) o, si no hay fichero, por la salida estándar.
+     */
+    public static synchronized void startReporter() {
+        long interval = Config.getLong("metrics.reportIntervalSec", 0);
+        if (!ENABLED || interval <= 0 || reporter != null) return;
+
+        String file = Config.get("metrics.reportFile", "");
+
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> write(file), interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Para el volcado periódico (si estaba arrancado) haciendo un último volcado.
+     */
+    public static synchronized void stopReporter() {
+        if (reporter == null) return;
+        reporter.shutdownNow();
+        reporter = null;
+        write(Config.get("metrics.reportFile", ""));
+    }
+
+    private static void write(String file) {
+        String text = report();
+        if (file.isBlank()) {
+            System.out.print(text);
+            return;
+        }
+        try {
+            Files.writeString(Path.of(file), text, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("No se pudieron escribir las métricas en " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static long rowsOf(Object result) {
+        if (result == null) return 0;
+        if (result instanceof Collection<?> c) return c.size();
+        if (result instanceof Map<?, ?> m) return m.size();
+        if (result instanceof Number || result instanceof Boolean || result instanceof CharSequence) return -1;
+        return 1;
+    }
+
+    private static void register(String properties, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(bean, name);
+            }
+        } catch (Exception e) {
+            // JMX es opcional: si no se puede registrar, las métricas siguen en report()
+            System.err.println("No se pudo registrar el MBean " + properties + ": " + e.getMessage());
+        }
+    }
+
+    private static PoolStats poolStats(List<PoolStats> pools, String name) {
+        for (PoolStats stats : pools) {
+            if (stats.name().equals(name)) return stats;
+        }
+        throw new IllegalStateException("No hay ningún pool " + name);
+    }
+
+    private static final class PoolMetrics implements PoolMetricsMXBean {
+
+        private final Supplier<PoolStats> source;
+
+        private PoolMetrics(Supplier<PoolStats> source) {
+            this.source = source;
+        }
+
+        private PoolStats stats() {
+            return source.get();
+        }
+
+        @Override
+        public int getTotal() {return stats().total();}
+
+        @Override
+        public int getActive() {return stats().active();}
+
+        @Override
+        public int getIdle() {return stats().idle();}
+
+        @Override
+        public int getWaiting() {return stats().waiting();}
+
+        @Override
+        public long getBorrowed() {return stats().borrowed();}
+
+        @Override
+        public long getTimeouts() {return stats().timeouts();}
+
+        @Override
+        public long getAvgWaitMicros() {return stats().avgWaitMicros();}
+    }
+}
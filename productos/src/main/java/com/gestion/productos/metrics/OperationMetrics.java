@@ -0,0 +1,93 @@
+package com.gestion.productos.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores y latencias de una operación.
+ * LongAdder reparte los incrementos entre celdas por hilo, así no hay contención aunque muchos hilos
+ * llamen a la vez a la misma operación.
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param nanos duración de la llamada
+     * @param rowCount filas devueltas (-1 si la operación no devuelve filas)
+     * @param failed true si la llamada lanzó una excepción
+     */
+    void record(long nanos, long rowCount, boolean failed) {
+        calls.increment();
+        if (failed) errors.increment();
+        if (rowCount > 0) rows.add(rowCount);
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.record(nanos);
+    }
+
+    void addRows(long rowCount) {
+        rows.add(rowCount);
+    }
+
+    @Override
+    public String getName() {return name;}
+
+    @Override
+    public long getCalls() {return calls.sum();}
+
+    @Override
+    public long getErrors() {return errors.sum();}
+
+    @Override
+    public long getRows() {return rows.sum();}
+
+    @Override
+    public double getMeanMicros() {
+        long n = calls.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public double getMaxMicros() {return maxNanos.get() / 1000.0;}
+
+    @Override
+    public double getP50Micros() {return percentileMicros(0.50);}
+
+    @Override
+    public double getP99Micros() {return percentileMicros(0.99);}
+
+    @Override
+    public double getP999Micros() {return percentileMicros(0.999);}
+
+    // El histograma devuelve el límite superior del tramo: nunca puede pasar del máximo real
+    private double percentileMicros(double quantile) {
+        return Math.min(histogram.percentile(quantile), maxNanos.get()) / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        calls.reset();
+        errors.reset();
+        rows.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        histogram.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-45s llamadas=%d errores=%d filas=%d media=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+            name, getCalls(), getErrors(), getRows(), getMeanMicros(), getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+}
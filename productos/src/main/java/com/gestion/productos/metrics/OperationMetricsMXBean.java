@@ -0,0 +1,28 @@
+package com.gestion.productos.metrics;
+
+/**
+ * Vista JMX de las métricas de una operación (un método de DAO o un caso de uso del Service).
+ * Se ve desde jconsole / VisualVM en com.gestion.productos:type=Operation.
+ */
+public interface OperationMetricsMXBean {
+
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRows();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    void reset();
+}
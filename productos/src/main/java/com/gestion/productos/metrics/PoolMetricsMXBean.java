@@ -0,0 +1,21 @@
+package com.gestion.productos.metrics;
+
+/**
+ * Vista JMX del pool de conexiones (com.gestion.productos:type=ConnectionPool).
+ */
+public interface PoolMetricsMXBean {
+
+    int getTotal();
+
+    int getActive();
+
+    int getIdle();
+
+    int getWaiting();
+
+    long getBorrowed();
+
+    long getTimeouts();
+
+    long getAvgWaitMicros();
+}
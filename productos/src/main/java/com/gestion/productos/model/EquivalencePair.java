@@ -0,0 +1,31 @@
+package com.gestion.productos.model;
+
+/**
+ * Pareja de productos (cliente + nombre de cada lado) para crear una equivalencia.
+ * La uso en la carga masiva de equivalencias, donde llegan miles de parejas de golpe.
+ */
+public class EquivalencePair {
+
+    private final String clientCodeA;
+    private final String productNameA;
+    private final String clientCodeB;
+    private final String productNameB;
+
+    public EquivalencePair(String clientCodeA, String productNameA, String clientCodeB, String productNameB) {
+        this.clientCodeA = clientCodeA;
+        this.productNameA = productNameA;
+        this.clientCodeB = clientCodeB;
+        this.productNameB = productNameB;
+    }
+
+    public String getClientCodeA() {return clientCodeA;}
+    public String getProductNameA() {return productNameA;}
+    public String getClientCodeB() {return clientCodeB;}
+    public String getProductNameB() {return productNameB;}
+
+    // Para imprimir bonito en consola
+    @Override
+    public String toString() {
+        return "EquivalencePair{" + clientCodeA + "/'" + productNameA + "' <-> " + clientCodeB + "/'" + productNameB + "'}";
+    }
+}
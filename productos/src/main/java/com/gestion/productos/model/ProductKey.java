@@ -0,0 +1,11 @@
+package com.gestion.productos.model;
+
+/**
+ * Clave "de negocio" de un producto: código del cliente + nombre del producto.
+ * Es como llegan los productos desde fuera (las integraciones no conocen los ID internos).
+ *
+ * @param clientCode  código del cliente (ej: C001)
+ * @param productName nombre del producto
+ */
+public record ProductKey(String clientCode, String productName) {
+}
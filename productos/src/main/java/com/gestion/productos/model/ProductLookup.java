@@ -0,0 +1,45 @@
+package com.gestion.productos.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resultado de resolver muchas claves (cliente + nombre) de una vez.
+ * Cada clave pedida acaba o en "encontrados" o en "no encontrados", nunca se pierde ninguna.
+ */
+public class ProductLookup {
+
+    private final Map<ProductKey, Product> found = new LinkedHashMap<>();
+    private final List<ProductKey> missing = new ArrayList<>();
+
+    public void addFound(ProductKey key, Product product) {
+        found.put(key, product);
+    }
+
+    public void addMissing(ProductKey key) {
+        missing.add(key);
+    }
+
+    /**
+     * @return el producto de la clave; null si no se encontró
+     */
+    public Product get(ProductKey key) {
+        return found.get(key);
+    }
+
+    public boolean isMissing(ProductKey key) {
+        return !found.containsKey(key);
+    }
+
+    public Map<ProductKey, Product> getFound() {return Collections.unmodifiableMap(found);}
+    public List<ProductKey> getMissing() {return Collections.unmodifiableList(missing);}
+
+    // Para imprimir bonito en consola
+    @Override
+    public String toString() {
+        return "ProductLookup{encontrados=" + found.size() + ", noEncontrados=" + missing.size() + "}";
+    }
+}
@@ -0,0 +1,25 @@
+package com.gestion.productos.model;
+
+/**
+ * Producto candidato junto con lo parecido que es su nombre al buscado.
+ * La puntuación va de 0 (nada en común) a 1 (mismo nombre normalizado).
+ */
+public class ProductMatch {
+
+    private final Product product;
+    private final double score;
+
+    public ProductMatch(Product product, double score) {
+        this.product = product;
+        this.score = score;
+    }
+
+    public Product getProduct() {return product;}
+    public double getScore() {return score;}
+
+    // Para imprimir bonito en consola
+    @Override
+    public String toString() {
+        return "ProductMatch{" + product + ", score=" + String.format("%.3f", score) + "}";
+    }
+}
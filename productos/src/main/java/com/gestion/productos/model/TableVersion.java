@@ -0,0 +1,11 @@
+package com.gestion.productos.model;
+
+/**
+ * "Versión" de una tabla en un momento dado: número de filas y mayor id.
+ * Si cualquiera de los dos cambia, la tabla ha cambiado (la aplicación no borra ni modifica filas, solo añade).
+ *
+ * @param rows  número de filas
+ * @param maxId mayor id (0 si la tabla está vacía)
+ */
+public record TableVersion(long rows, long maxId) {
+}
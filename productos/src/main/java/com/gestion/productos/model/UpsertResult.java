@@ -0,0 +1,40 @@
+package com.gestion.productos.model;
+
+/**
+ * Resultado de un alta idempotente (upsert): el id de la fila y si la ha creado esta llamada o ya existía.
+ * En las altas por bloques una fila puede no guardarse sin que falle el resto: entonces id = -1 y status dice por qué.
+ *
+ * @param id      id de la fila (nueva o la que ya estaba); -1 si no se ha guardado
+ * @param created true si la ha insertado esta llamada
+ * @param status  qué ha pasado con la fila
+ */
+public record UpsertResult(int id, boolean created, Status status) {
+
+    public enum Status {
+        CREATED,
+        EXISTING,
+        // El nombre no cabe en la columna: ni se envía
+        NAME_TOO_LONG,
+        // Enviada pero ni se ha insertado ni aparece después (por ejemplo la ha rechazado el INSERT IGNORE)
+        NOT_STORED
+    }
+
+    public UpsertResult(int id, boolean created) {
+        this(id, created, created ? Status.CREATED : Status.EXISTING);
+    }
+
+    /**
+     * @param status NAME_TOO_LONG o NOT_STORED
+     * @return resultado de una fila que no se ha guardado
+     */
+    public static UpsertResult failed(Status status) {
+        return new UpsertResult(-1, false, status);
+    }
+
+    /**
+     * @return true si la fila está en la tabla (creada ahora o ya existía)
+     */
+    public boolean stored() {
+        return status == Status.CREATED || status == Status.EXISTING;
+    }
+}
@@ -0,0 +1,253 @@
+package com.gestion.productos.services;
+
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.EquivalencePair;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.ProductKey;
+import com.gestion.productos.model.ProductLookup;
+import com.gestion.productos.model.ProductMatch;
+import com.gestion.productos.snapshot.CatalogLookup;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.ReadSession;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Versión asíncrona de los casos de uso del Service: cada método devuelve un CompletableFuture.
+ *
+ * Las consultas que no dependen unas de otras se lanzan a la vez. Por ejemplo, en establecerEquivalencia
+ * los dos clientes se buscan en paralelo, después los dos productos en paralelo y al final la comprobación
+ * e inserción: tres viajes a la base de datos seguidos en vez de seis.
+ * Los casos de uso que son una cadena de pasos dependientes se ejecutan enteros con el Service síncrono.
+ *
+ * Todo corre en hilos virtuales (uno por tarea), pero un semáforo limita cuántas tareas tocan la base
+ * de datos a la vez (async.maxConcurrency, por defecto el tamaño máximo del pool) para no saturarla.
+ * Las reglas de validación y los mensajes son exactamente los del Service.
+ *
+ * Cada tarea corre con la ReadSession de quien llamó al método (la petición HTTP, por ejemplo), aunque vaya
+ * en otro hilo: así con réplicas de lectura una petición lee lo que ha escrito ella y no lo que escriben las demás.
+ */
+public class AsyncService implements AutoCloseable {
+
+    private final Service service;
+    private final CatalogLookup catalog;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+
+    public AsyncService() {
+        this(new Service(), Config.getInt("async.maxConcurrency", Config.getInt("db.pool.maxSize", 10)));
+    }
+
+    /**
+     * @param service        Service síncrono para los casos de uso sin pasos independientes
+     * @param maxConcurrency máximo de tareas ejecutándose a la vez contra la base de datos
+     */
+    public AsyncService(Service service, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency debe ser mayor que 0");
+        }
+        this.service = service;
+        // Las búsquedas del Service: con shards o con otros almacenes no son las de la base de datos principal
+        this.catalog = service.catalog();
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * Igual que {@link Service#altaProducto(String, String)}.
+     */
+    public CompletableFuture<String> altaProducto(String clientCode, String productName) {
+        if (service.altasAgrupadas()) {
+            // El turno solo cubre la búsqueda del cliente y el encolado: la espera al bloque no ocupa permiso
+            return Metrics.timedAsync("AsyncService.altaProducto", () ->
+                call(() -> service.encolarAltaProducto(clientCode, productName)).thenCompose(Function.identity()));
+        }
+        return Metrics.timedAsync("AsyncService.altaProducto", () ->
+            call(() -> service.altaProducto(clientCode, productName)));
+    }
+
+    /**
+     * Igual que {@link Service#establecerEquivalencia(String, String, String, String)}, buscando a la vez
+     * los dos clientes y después a la vez los dos productos.
+     */
+    public CompletableFuture<String> establecerEquivalencia(String clientCodeA, String productNameA, String clientCodeB, String productNameB) {
+        // Los pasos siguientes se lanzan desde los hilos de las tareas anteriores: la sesión se coge ahora
+        ReadSession session = ReadSession.current();
+        return Metrics.timedAsync("AsyncService.establecerEquivalencia", () -> {
+            if (isEmpty(clientCodeA) || isEmpty(productNameA) || isEmpty(clientCodeB) || isEmpty(productNameB)) {
+                return CompletableFuture.completedFuture("Error: faltan datos.");
+            }
+
+            CompletableFuture<Client> futureClientA = call(session, () -> catalog.findByCodigo(clientCodeA.trim()));
+            CompletableFuture<Client> futureClientB = call(session, () -> catalog.findByCodigo(clientCodeB.trim()));
+
+            return futureClientA.thenCombine(futureClientB, (clientA, clientB) -> {
+
+                if (clientA == null) return done("No existe el cliente A con código: " + clientCodeA);
+                if (clientB == null) return done("No existe el cliente B con código: " + clientCodeB);
+
+                if (clientA.getId() == clientB.getId()) {
+                    return done("No se puede establecer equivalencia entre productos del mismo cliente.");
+                }
+
+                CompletableFuture<Product> futureProductA = call(session, () -> catalog.finByClientAndName(clientA.getId(), productNameA.trim()));
+                CompletableFuture<Product> futureProductB = call(session, () -> catalog.finByClientAndName(clientB.getId(), productNameB.trim()));
+
+                return futureProductA.thenCombine(futureProductB, (productA, productB) -> {
+
+                    if (productA == null) return done("No existe el producto A para ese cliente.");
+                    if (productB == null) return done("No existe el producto B para ese cliente.");
+
+                    int a = Math.min(productA.getId(), productB.getId());
+                    int b = Math.max(productA.getId(), productB.getId());
+
+                    // Comprobar e insertar dependen uno del otro: van en la misma tarea y la misma unidad de trabajo
+                    return call(session, () -> service.crearEquivalencia(a, b));
+                }).thenCompose(step -> step);
+
+            }).thenCompose(step -> step);
+        });
+    }
+
+    /**
+     * Igual que {@link Service#listarEquivalentes(String, String)}.
+     */
+    public CompletableFuture<List<Product>> listarEquivalentes(String clientCode, String productName) {
+        return Metrics.timedAsync("AsyncService.listarEquivalentes", () ->
+            call(() -> service.listarEquivalentes(clientCode, productName)));
+    }
+
+    /**
+     * Igual que {@link Service#listarGrupoEquivalencia(String, String)}.
+     */
+    public CompletableFuture<List<Product>> listarGrupoEquivalencia(String clientCode, String productName) {
+        return Metrics.timedAsync("AsyncService.listarGrupoEquivalencia", () ->
+            call(() -> service.listarGrupoEquivalencia(clientCode, productName)));
+    }
+
+    /**
+     * Igual que {@link Service#posiblesMismosProductos(String, String)}.
+     */
+    public CompletableFuture<List<Product>> posiblesMismosProductos(String clientCode, String productName) {
+        return Metrics.timedAsync("AsyncService.posiblesMismosProductos", () ->
+            call(() -> service.posiblesMismosProductos(clientCode, productName)));
+    }
+
+    /**
+     * Igual que {@link Service#buscarProductosSimilares(String, String)}.
+     */
+    public CompletableFuture<List<ProductMatch>> buscarProductosSimilares(String clientCode, String productName) {
+        return Metrics.timedAsync("AsyncService.buscarProductosSimilares", () ->
+            call(() -> service.buscarProductosSimilares(clientCode, productName)));
+    }
+
+    /**
+     * Igual que {@link Service#resolverProductos(Collection)}.
+     */
+    public CompletableFuture<ProductLookup> resolverProductos(Collection<ProductKey> keys) {
+        return Metrics.timedAsync("AsyncService.resolverProductos", () ->
+            call(() -> service.resolverProductos(keys)));
+    }
+
+    /**
+     * Igual que {@link Service#establecerEquivalencias(List)}.
+     */
+    public CompletableFuture<ImportResult> establecerEquivalencias(List<EquivalencePair> pairs) {
+        return Metrics.timedAsync("AsyncService.establecerEquivalencias", () ->
+            call(() -> service.establecerEquivalencias(pairs)));
+    }
+
+    /**
+     * Igual que {@link Service#importarProductos(String)}.
+     */
+    public CompletableFuture<String> importarProductos(String ruta) {
+        return Metrics.timedAsync("AsyncService.importarProductos", () ->
+            call(() -> service.importarProductos(ruta)));
+    }
+
+    /**
+     * Igual que {@link Service#importarEquivalencias(String)}.
+     */
+    public CompletableFuture<String> importarEquivalencias(String ruta) {
+        return Metrics.timedAsync("AsyncService.importarEquivalencias", () ->
+            call(() -> service.importarEquivalencias(ruta)));
+    }
+
+    /**
+     * Igual que {@link Service#recalcularGruposEquivalencia()}.
+     */
+    public CompletableFuture<String> recalcularGruposEquivalencia() {
+        return Metrics.timedAsync("AsyncService.recalcularGruposEquivalencia", () ->
+            call(service::recalcularGruposEquivalencia));
+    }
+
+    /**
+     * Igual que {@link Service#listarClientesPagina(int, int)}.
+     */
+    public CompletableFuture<List<Client>> listarClientesPagina(int afterId, int limit) {
+        return Metrics.timedAsync("AsyncService.listarClientesPagina", () ->
+            call(() -> service.listarClientesPagina(afterId, limit)));
+    }
+
+    /**
+     * Igual que {@link Service#listarProductosPagina(Product, int)}.
+     */
+    public CompletableFuture<List<Product>> listarProductosPagina(Product after, int limit) {
+        return Metrics.timedAsync("AsyncService.listarProductosPagina", () ->
+            call(() -> service.listarProductosPagina(after, limit)));
+    }
+
+    /**
+     * @return tareas que pueden empezar ahora mismo sin esperar turno
+     */
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Deja de aceptar tareas, interrumpe las que estén esperando turno y escribe las altas agrupadas pendientes.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        service.close();
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> task) {
+        return call(ReadSession.current(), task);
+    }
+
+    // Cada tarea espera turno en el semáforo dentro de su hilo virtual: esperar ahí no bloquea ningún hilo de plataforma
+    private <T> CompletableFuture<T> call(ReadSession session, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException("Interrumpido esperando turno para acceder a la base de datos", e);
+            }
+            try {
+                return session == null ? task.get() : ReadSession.with(session, task::get);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    private static <T> CompletableFuture<T> done(T value) {
+        return CompletableFuture.completedFuture(value);
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+}
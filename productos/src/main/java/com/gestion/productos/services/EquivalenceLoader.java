@@ -0,0 +1,340 @@
+package com.gestion.productos.services;
+
+import com.gestion.productos.dao.ClientDAO;
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.EquivalencePair;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.Csv;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.Json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Carga masiva de equivalencias (ficheros del equipo de matching con millones de parejas).
+ *
+ * En vez de hacer por cada pareja 4 búsquedas + existsEquivalence + insertEquivalence como establecerEquivalencia,
+ * trabaja por bloques de batchSize parejas:
+ * 1) valida datos y la regla de clientes distintos (los códigos de cliente se resuelven una vez al empezar)
+ * 2) resuelve todos los productos del bloque con una sola consulta
+ * 3) normaliza cada pareja (min/max) igual que el Service
+ * 4) inserta el bloque con un INSERT IGNORE multi-fila: las que ya existen las salta UNIQUE(PRODUCT_ID_A, PRODUCT_ID_B)
+ *
+ * Formatos de fichero (se decide por la extensión, igual que en ProductImporter):
+ * - CSV: "codigoClienteA,nombreProductoA,codigoClienteB,nombreProductoB" (cabecera opcional)
+ * - NDJSON: {"clientCodeA": "...", "productNameA": "...", "clientCodeB": "...", "productNameB": "..."}
+ */
+public class EquivalenceLoader {
+
+    private static final Set<String> HEADER_NAMES = Set.of("clientcodea", "codea", "codigoa", "codigoclientea", "clientea");
+
+    private final ClientDAO clientDAO;
+    private final ProductDAO productDAO;
+    private final EquivalenceDAO equivalenceDAO;
+    private final int batchSize;
+    private final int commitInterval;
+
+    public EquivalenceLoader() {
+        this(Config.getInt("import.batchSize", 1000), Config.getInt("import.commitInterval", 10000));
+    }
+
+    /**
+     * @param batchSize      parejas por bloque (una consulta de resolución + un INSERT por bloque)
+     * @param commitInterval parejas entre commits (se redondea al bloque)
+     */
+    public EquivalenceLoader(int batchSize, int commitInterval) {
+        if (batchSize <= 0 || commitInterval <= 0) {
+            throw new IllegalArgumentException("batchSize y commitInterval deben ser mayores que 0");
+        }
+        this.clientDAO = new ClientDAO();
+        this.productDAO = new ProductDAO();
+        this.equivalenceDAO = new EquivalenceDAO();
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Crea todas las equivalencias de la lista.
+     * En los rechazos, el número de "línea" es la posición de la pareja en la lista (empezando en 1).
+     *
+     * @param pairs parejas a crear
+     * @return resumen (creadas, ya existentes, rechazadas)
+     */
+    public ImportResult load(List<EquivalencePair> pairs) {
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+
+        try (Connection con = DB.getConnection()) {
+            Loader loader = new Loader(con, result);
+            try {
+                long n = 0;
+                for (EquivalencePair pair : pairs) {
+                    result.addRead();
+                    loader.add(++n, pair);
+                }
+                loader.finish();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en EquivalenceLoader.load: " + e.getMessage(), e);
+        } finally {
+            result.setElapsedNanos(System.nanoTime() - start);
+        }
+
+        return result;
+    }
+
+    /**
+     * Carga las equivalencias de un fichero CSV o NDJSON leyéndolo en streaming.
+     *
+     * @param file fichero .csv, .ndjson o .jsonl
+     * @return resumen (creadas, ya existentes, rechazadas, filas/s)
+     * @throws IOException si no se puede leer el fichero
+     */
+    public ImportResult loadFile(Path file) throws IOException {
+        boolean ndjson = ProductImporter.isNdjson(file);
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             Connection con = DB.getConnection()) {
+
+            Loader loader = new Loader(con, result);
+            try {
+                long lineNumber = 0;
+                boolean firstRow = true;
+                String line;
+
+                while ((line = in.readLine()) != null) {
+                    lineNumber++;
+                    if (line.isBlank()) continue;
+
+                    EquivalencePair pair;
+                    try {
+                        pair = ndjson ? parseJsonRow(line) : parseCsvRow(line);
+                    } catch (IllegalArgumentException e) {
+                        result.addRead();
+                        result.reject(lineNumber, e.getMessage());
+                        firstRow = false;
+                        continue;
+                    }
+
+                    if (firstRow && !ndjson && pair.getClientCodeA() != null
+                            && HEADER_NAMES.contains(pair.getClientCodeA().replaceAll("[^A-Za-z]", "").toLowerCase())) {
+                        firstRow = false;
+                        continue;
+                    }
+                    firstRow = false;
+
+                    result.addRead();
+                    loader.add(lineNumber, pair);
+                }
+                loader.finish();
+
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en EquivalenceLoader.loadFile: " + e.getMessage(), e);
+        } finally {
+            result.setElapsedNanos(System.nanoTime() - start);
+        }
+
+        return result;
+    }
+
+    /**
+     * Acumula parejas en bloques y los procesa sobre una misma conexión/transacción.
+     */
+    private final class Loader {
+
+        private final Connection con;
+        private final ImportResult result;
+        private final Map<String, Integer> clientIds = new HashMap<>();
+        private final List<EquivalencePair> block = new ArrayList<>();
+        private final List<Long> lines = new ArrayList<>();
+        private long sinceCommit;
+        // Parejas desde el último commit, para invalidar sus productos en la caché de resultados cuando se confirmen
+        // (no sé cuáles ha saltado el IGNORE: invalidar una que ya existía solo cuesta un fallo de caché)
+        private final ResultCache results = ResultCache.sharedIfBuilt();
+        private final List<int[]> uncommitted = new ArrayList<>();
+
+        private Loader(Connection con, ImportResult result) throws SQLException {
+            this.con = con;
+            this.result = result;
+            con.setAutoCommit(false);
+
+            // CLIENTS es pequeña: la leo una vez y no hay consulta de cliente por pareja
+            for (Client c : clientDAO.findAll()) {
+                clientIds.put(c.getCode(), c.getId());
+            }
+        }
+
+        private void add(long line, EquivalencePair pair) throws SQLException {
+            block.add(pair);
+            lines.add(line);
+            if (block.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private void finish() throws SQLException {
+            flush();
+            con.commit();
+            committed();
+        }
+
+        private void flush() throws SQLException {
+            if (block.isEmpty()) return;
+
+            int processed = block.size();
+            processBlock();
+            block.clear();
+            lines.clear();
+
+            sinceCommit += processed;
+            if (sinceCommit >= commitInterval) {
+                con.commit();
+                committed();
+                sinceCommit = 0;
+            }
+        }
+
+        private void committed() {
+            for (int[] pair : uncommitted) {
+                results.equivalenceCreated(pair[0], pair[1]);
+            }
+            uncommitted.clear();
+        }
+
+        private void processBlock() throws SQLException {
+
+            // 1) validación y regla de clientes distintos
+            int[][] clients = new int[block.size()][];
+            Map<String, Product> keys = new LinkedHashMap<>();
+
+            for (int i = 0; i < block.size(); i++) {
+                EquivalencePair p = block.get(i);
+
+                if (isEmpty(p.getClientCodeA()) || isEmpty(p.getProductNameA())
+                        || isEmpty(p.getClientCodeB()) || isEmpty(p.getProductNameB())) {
+                    result.reject(lines.get(i), "faltan datos");
+                    continue;
+                }
+
+                Integer clientA = clientIds.get(p.getClientCodeA().trim());
+                Integer clientB = clientIds.get(p.getClientCodeB().trim());
+
+                if (clientA == null) {
+                    result.reject(lines.get(i), "No existe el cliente A con código: " + p.getClientCodeA());
+                    continue;
+                }
+                if (clientB == null) {
+                    result.reject(lines.get(i), "No existe el cliente B con código: " + p.getClientCodeB());
+                    continue;
+                }
+                if (clientA.intValue() == clientB.intValue()) {
+                    result.reject(lines.get(i), "No se puede establecer equivalencia entre productos del mismo cliente.");
+                    continue;
+                }
+
+                clients[i] = new int[]{clientA, clientB};
+                keys.putIfAbsent(key(clientA, p.getProductNameA()), new Product(0, clientA, p.getProductNameA().trim()));
+                keys.putIfAbsent(key(clientB, p.getProductNameB()), new Product(0, clientB, p.getProductNameB().trim()));
+            }
+
+            // 2) todos los productos del bloque en una consulta
+            Map<String, Integer> productIds = new HashMap<>();
+            for (Product found : productDAO.findByClientAndNames(con, keys.values())) {
+                productIds.put(key(found.getClienteID(), found.getName()), found.getId());
+            }
+
+            // 3) normalizo (min/max) y quito repetidas dentro del propio bloque
+            List<int[]> pairs = new ArrayList<>();
+            Set<Long> seen = new HashSet<>();
+            long repeated = 0;
+
+            for (int i = 0; i < block.size(); i++) {
+                if (clients[i] == null) continue;
+                EquivalencePair p = block.get(i);
+
+                Integer productA = productIds.get(key(clients[i][0], p.getProductNameA()));
+                Integer productB = productIds.get(key(clients[i][1], p.getProductNameB()));
+
+                if (productA == null) {
+                    result.reject(lines.get(i), "No existe el producto A para ese cliente.");
+                    continue;
+                }
+                if (productB == null) {
+                    result.reject(lines.get(i), "No existe el producto B para ese cliente.");
+                    continue;
+                }
+
+                int a = Math.min(productA, productB);
+                int b = Math.max(productA, productB);
+
+                if (seen.add(((long) a << 32) | b)) {
+                    pairs.add(new int[]{a, b});
+                } else {
+                    repeated++;
+                }
+            }
+
+            // 4) INSERT IGNORE del bloque: lo que no se inserta ya existía
+            int inserted = equivalenceDAO.insertEquivalencesIgnoringDuplicates(con, pairs);
+            if (inserted > 0 && results != null && results.isEnabled()) uncommitted.addAll(pairs);
+            result.addInserted(inserted);
+            result.addDuplicates(pairs.size() - inserted + repeated);
+        }
+    }
+
+    // La collation de NAME no distingue mayúsculas, así que la clave tampoco
+    private static String key(int clientId, String name) {
+        return clientId + "|" + name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private static EquivalencePair parseCsvRow(String line) {
+        List<String> f = Csv.parseLine(line);
+        if (f.size() < 4) {
+            throw new IllegalArgumentException("se esperaban 4 columnas (codigoClienteA,nombreProductoA,codigoClienteB,nombreProductoB)");
+        }
+        return new EquivalencePair(f.get(0), f.get(1), f.get(2), f.get(3));
+    }
+
+    private static EquivalencePair parseJsonRow(String line) {
+        Map<String, Object> obj = Json.parseObject(line);
+        return new EquivalencePair(
+            text(obj.get("clientCodeA")), text(obj.get("productNameA")),
+            text(obj.get("clientCodeB")), text(obj.get("productNameB"))
+        );
+    }
+
+    private static String text(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.gestion.productos.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resumen de una carga masiva desde fichero.
+ * Guarda contadores y los primeros motivos de rechazo (no todos, para no llenar la memoria con ficheros enormes).
+ */
+public class ImportResult {
+
+    private static final int MAX_REJECTIONS = 50;
+
+    private long read;
+    private long inserted;
+    private long duplicates;
+    private long rejected;
+    private long elapsedNanos;
+    private final List<String> rejections = new ArrayList<>();
+
+    void addRead() {
+        read++;
+    }
+
+    void addInserted(long n) {
+        inserted += n;
+    }
+
+    void addDuplicates(long n) {
+        duplicates += n;
+    }
+
+    void reject(long lineNumber, String reason) {
+        rejected++;
+        if (rejections.size() < MAX_REJECTIONS) {
+            rejections.add("Linea " + lineNumber + ": " + reason);
+        }
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRead() {return read;}
+    public long getInserted() {return inserted;}
+    public long getDuplicates() {return duplicates;}
+    public long getRejected() {return rejected;}
+    public long getElapsedMillis() {return elapsedNanos / 1_000_000;}
+    public List<String> getRejections() {return Collections.unmodifiableList(rejections);}
+
+    /**
+     * @return filas procesadas (leídas) por segundo
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : read * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Leidas=").append(read)
+          .append(", insertadas=").append(inserted)
+          .append(", duplicadas (saltadas)=").append(duplicates)
+          .append(", rechazadas=").append(rejected)
+          .append(", tiempo=").append(getElapsedMillis()).append(" ms")
+          .append(", filas/s=").append(String.format("%.0f", getRowsPerSecond()));
+
+        for (String r : rejections) {
+            sb.append("\n  - ").append(r);
+        }
+        if (rejected > rejections.size()) {
+            sb.append("\n  ... y ").append(rejected - rejections.size()).append(" rechazos más");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package com.gestion.productos.services;
+
+import com.gestion.productos.dao.ClientDAO;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.matching.ProductNameIndex;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.Csv;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.Json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Carga masiva de productos desde fichero (alta de catálogos enteros de un cliente).
+ *
+ * Formatos (se decide por la extensión):
+ * - CSV (.csv): una línea por producto "codigoCliente,nombreProducto"; la cabecera es opcional.
+ * - NDJSON (.ndjson / .jsonl): un objeto por línea {"clientCode": "C001", "name": "..."}.
+ *
+ * El fichero se lee en streaming (línea a línea, nunca entero en memoria). Los códigos de cliente
+ * se resuelven una sola vez al empezar y los productos se insertan por bloques de batchSize filas
+ * con un INSERT multi-fila, haciendo commit cada commitInterval filas.
+ * Los productos que ya existen se cuentan como duplicados y no paran la carga.
+ */
+public class ProductImporter {
+
+    static final int MAX_NAME_LENGTH = ProductDAO.MAX_NAME_LENGTH;
+
+    private static final Set<String> HEADER_NAMES = Set.of("clientcode", "code", "codigo", "codigocliente", "cliente");
+
+    private final ClientDAO clientDAO;
+    private final ProductDAO productDAO;
+    private final int batchSize;
+    private final int commitInterval;
+
+    public ProductImporter() {
+        this(Config.getInt("import.batchSize", 1000), Config.getInt("import.commitInterval", 10000));
+    }
+
+    /**
+     * @param batchSize      filas por INSERT multi-fila
+     * @param commitInterval filas entre commits (se redondea al bloque)
+     */
+    public ProductImporter(int batchSize, int commitInterval) {
+        if (batchSize <= 0 || commitInterval <= 0) {
+            throw new IllegalArgumentException("batchSize y commitInterval deben ser mayores que 0");
+        }
+        this.clientDAO = new ClientDAO();
+        this.productDAO = new ProductDAO();
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Importa todos los productos del fichero.
+     *
+     * @param file fichero .csv, .ndjson o .jsonl
+     * @return resumen de la carga (insertados, duplicados, rechazados, filas/s)
+     * @throws IOException si no se puede leer el fichero
+     */
+    public ImportResult importFile(Path file) throws IOException {
+
+        boolean ndjson = isNdjson(file);
+        Map<String, Integer> clientIds = loadClientIds();
+
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+        // Nombres insertados desde el último commit, para invalidarlos en la caché de resultados cuando se confirmen
+        ResultCache results = ResultCache.sharedIfBuilt();
+        Set<String> uncommitted = results != null && results.isEnabled() ? new HashSet<>() : null;
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             Connection con = DB.getConnection()) {
+
+            con.setAutoCommit(false);
+
+            try {
+                List<Product> batch = new ArrayList<>(batchSize);
+                long sinceCommit = 0;
+                long lineNumber = 0;
+                boolean firstRow = true;
+                String line;
+
+                while ((line = in.readLine()) != null) {
+                    lineNumber++;
+                    if (line.isBlank()) continue;
+
+                    String code;
+                    String name;
+                    try {
+                        String[] row = ndjson ? parseJsonRow(line) : parseCsvRow(line);
+                        code = row[0];
+                        name = row[1];
+                    } catch (IllegalArgumentException e) {
+                        result.addRead();
+                        result.reject(lineNumber, e.getMessage());
+                        firstRow = false;
+                        continue;
+                    }
+
+                    // La cabecera del CSV es opcional: solo la busco en la primera fila con datos
+                    if (firstRow && !ndjson && code != null && HEADER_NAMES.contains(code.replaceAll("[^A-Za-z]", "").toLowerCase())) {
+                        firstRow = false;
+                        continue;
+                    }
+                    firstRow = false;
+                    result.addRead();
+
+                    String reason = validate(code, name, clientIds);
+                    if (reason != null) {
+                        result.reject(lineNumber, reason);
+                        continue;
+                    }
+
+                    batch.add(new Product(0, clientIds.get(code.trim()), name.trim()));
+
+                    if (batch.size() >= batchSize) {
+                        flush(con, batch, result, uncommitted);
+                        sinceCommit += batchSize;
+                        if (sinceCommit >= commitInterval) {
+                            con.commit();
+                            committed(results, uncommitted);
+                            sinceCommit = 0;
+                        }
+                    }
+                }
+
+                flush(con, batch, result, uncommitted);
+                con.commit();
+                committed(results, uncommitted);
+
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en ProductImporter.importFile: " + e.getMessage(), e);
+        } finally {
+            result.setElapsedNanos(System.nanoTime() - start);
+        }
+
+        // La carga no pasa por insertProduct: pongo al día el índice de nombres si ya estaba construido
+        ProductNameIndex index = ProductNameIndex.sharedIfBuilt();
+        if (index != null) {
+            index.refresh(productDAO);
+        }
+
+        return result;
+    }
+
+    private void flush(Connection con, List<Product> batch, ImportResult result, Set<String> uncommitted) throws SQLException {
+        if (batch.isEmpty()) return;
+
+        if (uncommitted != null) {
+            for (Product p : batch) {
+                uncommitted.add(p.getName());
+            }
+        }
+
+        int inserted = productDAO.insertProductsIgnoringDuplicates(con, batch);
+        result.addInserted(inserted);
+        result.addDuplicates(batch.size() - inserted);
+        batch.clear();
+    }
+
+    // La carga no pasa por los avisos de ProductDAO: invalido en la caché de resultados los nombres ya confirmados
+    private static void committed(ResultCache results, Set<String> uncommitted) {
+        if (uncommitted == null) return;
+        for (String name : uncommitted) {
+            results.productCreated(name);
+        }
+        uncommitted.clear();
+    }
+
+    // La tabla CLIENTS es pequeña: la leo una vez y así no hay una consulta por fila
+    private Map<String, Integer> loadClientIds() {
+        Map<String, Integer> ids = new HashMap<>();
+        for (Client c : clientDAO.findAll()) {
+            ids.put(c.getCode(), c.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @return motivo del rechazo; null si la fila es válida
+     */
+    private static String validate(String code, String name, Map<String, Integer> clientIds) {
+        if (code == null || code.isBlank() || name == null || name.isBlank()) {
+            return "faltan datos";
+        }
+        if (!clientIds.containsKey(code.trim())) {
+            return "no existe el cliente con código " + code.trim();
+        }
+        if (ProductDAO.nameTooLong(name.trim())) {
+            return "nombre de producto demasiado largo (max " + MAX_NAME_LENGTH + ")";
+        }
+        return null;
+    }
+
+    private static String[] parseCsvRow(String line) {
+        List<String> fields = Csv.parseLine(line);
+        if (fields.size() < 2) {
+            throw new IllegalArgumentException("se esperaban 2 columnas (codigoCliente,nombreProducto)");
+        }
+        return new String[]{fields.get(0), fields.get(1)};
+    }
+
+    private static String[] parseJsonRow(String line) {
+        Map<String, Object> obj = Json.parseObject(line);
+        Object code = obj.get("clientCode");
+        Object name = obj.containsKey("name") ? obj.get("name") : obj.get("productName");
+        return new String[]{code == null ? null : code.toString(), name == null ? null : name.toString()};
+    }
+
+    static boolean isNdjson(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase();
+        return fileName.endsWith(".ndjson") || fileName.endsWith(".jsonl") || fileName.endsWith(".json");
+    }
+}
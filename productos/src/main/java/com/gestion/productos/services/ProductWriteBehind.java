@@ -0,0 +1,217 @@
+package com.gestion.productos.services;
+
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.UpsertResult;
+import com.gestion.productos.util.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Altas de producto agrupadas (group commit): en vez de un INSERT y un commit por alta, las altas se encolan
+ * y unos pocos hilos escritores las juntan en bloques que se insertan con un INSERT multi-fila y un solo commit
+ * (ProductStore.upsertProducts).
+ *
+ * Un bloque se escribe cuando llega a writeBehind.batchSize altas o cuando la más antigua lleva
+ * writeBehind.maxDelayMs esperando, lo que pase antes. Con poca carga cada alta espera como mucho ese retardo;
+ * con mucha, los bloques salen llenos y el coste del commit se reparte entre todas.
+ *
+ * Cada alta recibe su propio CompletableFuture con el id del producto y si lo ha creado ella o ya existía.
+ * Si falla el bloque entero, fallan todos sus futures con la misma excepción.
+ *
+ * La cola está acotada (writeBehind.queueSize): si está llena, submit espera hasta writeBehind.offerTimeoutMs
+ * y después rechaza el alta, así que un pico de carga frena a quien da las altas en vez de llenar la memoria.
+ * close() deja de aceptar altas, escribe todo lo que quede en la cola y espera a los escritores. Nunca interrumpe
+ * a un escritor: un bloque que ya ha salido de la cola se escribe siempre, así ninguna alta se pierde a medias.
+ */
+public class ProductWriteBehind implements AutoCloseable {
+
+    private final ProductStore productDAO;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final long offerTimeoutMs;
+    private final long shutdownTimeoutMs;
+    private final List<Thread> writers = new ArrayList<>();
+
+    private volatile boolean closed;
+    // Pasado shutdownTimeoutMs: los escritores acaban el bloque que tienen y ya no cogen más de la cola
+    private volatile boolean abandoned;
+
+    public ProductWriteBehind(ProductStore productDAO) {
+        this(productDAO,
+            Config.getInt("writeBehind.queueSize", 10000),
+            Config.getInt("writeBehind.batchSize", 500),
+            Config.getLong("writeBehind.maxDelayMs", 5),
+            Config.getLong("writeBehind.offerTimeoutMs", 1000),
+            Config.getInt("writeBehind.writers", 1),
+            Config.getLong("writeBehind.shutdownTimeoutMs", 30000));
+    }
+
+    /**
+     * @param productDAO        DAO con el que se insertan los bloques
+     * @param queueSize         máximo de altas esperando en la cola
+     * @param batchSize         máximo de altas por bloque
+     * @param maxDelayMs        máximo que espera la primera alta de un bloque a que se llene
+     * @param offerTimeoutMs    máximo que espera submit si la cola está llena
+     * @param writers           hilos escritores (cada uno usa una conexión mientras escribe)
+     * @param shutdownTimeoutMs máximo que espera close() a que se vacíe la cola
+     */
+    public ProductWriteBehind(ProductStore productDAO, int queueSize, int batchSize, long maxDelayMs,
+                              long offerTimeoutMs, int writers, long shutdownTimeoutMs) {
+        if (queueSize <= 0 || batchSize <= 0 || writers <= 0) {
+            throw new IllegalArgumentException("queueSize, batchSize y writers deben ser mayores que 0");
+        }
+        this.productDAO = productDAO;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+        this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+
+        for (int i = 0; i < writers; i++) {
+            Thread t = new Thread(this::writeLoop, "product-write-behind-" + i);
+            t.setDaemon(true);
+            t.start();
+            this.writers.add(t);
+        }
+    }
+
+    /**
+     * Encola un alta.
+     *
+     * @param clientId id del cliente
+     * @param name     nombre del producto (ya validado y recortado)
+     * @return future con el id del producto y si se ha creado o ya existía para ese cliente.
+     *         Falla con RejectedExecutionException si la cola sigue llena pasado offerTimeoutMs o si ya se cerró.
+     */
+    public CompletableFuture<UpsertResult> submit(int clientId, String name) {
+        CompletableFuture<UpsertResult> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new RejectedExecutionException("Altas agrupadas cerradas"));
+            return future;
+        }
+
+        Pending pending = new Pending(new Product(0, clientId, name), future, System.nanoTime());
+        try {
+            if (!queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                future.completeExceptionally(new RejectedExecutionException("Cola de altas llena"));
+            } else if (closed && queue.remove(pending)) {
+                // Se cerró mientras encolaba: puede que ya nadie vacíe la cola
+                future.completeExceptionally(new RejectedExecutionException("Altas agrupadas cerradas"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new RejectedExecutionException("Interrumpido esperando hueco en la cola de altas", e));
+        }
+        return future;
+    }
+
+    /**
+     * @return altas esperando a ser escritas
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Deja de aceptar altas, escribe las que quedan en la cola y espera a los escritores (hasta shutdownTimeoutMs).
+     * Lo que siga en la cola pasado ese tiempo falla con RejectedExecutionException; los bloques que los escritores
+     * ya habían sacado de la cola se terminan de escribir (close espera a que acaben).
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        for (Thread t : writers) {
+            try {
+                t.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        abandoned = true;
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Pending p : left) {
+            p.future.completeExceptionally(new RejectedExecutionException("Altas agrupadas cerradas antes de escribir el alta"));
+        }
+
+        // Sin interrumpir: un escritor a medias de upsertProducts termina su bloque y completa sus futures
+        for (Thread t : writers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Cada escritor: espera la primera alta, junta las que lleguen hasta llenar el bloque o agotar el retardo y lo escribe.
+    // Al cerrar sigue hasta vaciar la cola, sin esperar más a que se llenen los bloques; si close() se cansa de esperar
+    // (abandoned), escribe el bloque que ya tiene y sale
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            while (!abandoned && (!closed || !queue.isEmpty())) {
+                Pending first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = first.enqueuedAt + maxDelayNanos;
+                while (batch.size() < batchSize && !abandoned) {
+                    long wait = closed ? 0 : deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Solo si alguien de fuera interrumpe el hilo: close() no lo hace
+            Thread.currentThread().interrupt();
+            for (Pending p : batch) {
+                p.future.completeExceptionally(new RejectedExecutionException("Altas agrupadas interrumpidas", e));
+            }
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        List<Product> rows = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            rows.add(p.product);
+        }
+
+        List<UpsertResult> results;
+        try {
+            results = Metrics.timed("ProductWriteBehind.flush", () -> productDAO.upsertProducts(rows));
+        } catch (RuntimeException e) {
+            for (Pending p : batch) {
+                p.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        Metrics.addRows("ProductWriteBehind.flush", batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(results.get(i));
+        }
+    }
+
+    private record Pending(Product product, CompletableFuture<UpsertResult> future, long enqueuedAt) {
+    }
+}
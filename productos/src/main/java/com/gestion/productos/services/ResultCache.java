@@ -0,0 +1,246 @@
+package com.gestion.productos.services;
+
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.util.CacheStats;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.LruCache;
+import com.gestion.productos.util.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Caché de resultados de las consultas que más se repiten en las fichas de producto:
+ * listarEquivalentes (equivalentes directos de un producto) y posiblesMismosProductos sin fuzzy
+ * (productos de otros clientes con el mismo nombre normalizado).
+ *
+ * - Equivalentes: una entrada por ID_PRODUCT. Solo cambian cuando se crea una equivalencia del producto,
+ *   así que equivalenceCreated(a, b) borra justo las entradas de a y de b.
+ * - Mismo nombre: una entrada por nombre normalizado con los productos de todos los clientes; a cada producto
+ *   se le quita su propio cliente al leerla. Todos los productos con ese nombre comparten la entrada y el alta de un
+ *   producto (productCreated) borra solo la de su nombre.
+ *
+ * No hay caducidad por tiempo: las entradas duran hasta que una escritura las invalida o se expulsan por tamaño (LRU).
+ * Para que una lectura que ha empezado antes de una escritura no guarde el resultado viejo después de invalidarlo,
+ * cada invalidación lleva un número de versión: quien lee coge stamp() antes de abrir su transacción y su resultado
+ * solo se guarda si desde entonces no se ha invalidado esa clave (con las claves repartidas en franjas: una colisión
+ * solo hace que no se guarde). Con réplicas de lectura, además, una clave no se vuelve a guardar hasta pasado
+ * db.replicas.readYourWritesMs desde su última invalidación, porque la réplica puede no tener todavía la escritura.
+ *
+ * Solo ve las escrituras de este proceso que le avisan: con MySQL las del Service, las cargas y las altas de ProductDAO;
+ * con otros almacenes (new Service(clients, products, equivalences)) solo las que pasan por ese Service.
+ * Si otros procesos escriben en la misma base de datos la caché tiene que quedarse desactivada: no se entera
+ * de sus escrituras y serviría resultados viejos hasta que la entrada se expulsara por tamaño.
+ */
+public class ResultCache {
+
+    // Franjas de versiones (potencia de 2)
+    private static final int STRIPES = 1024;
+
+    private static volatile ResultCache shared;
+
+    private final boolean enabled;
+    private final long settleNanos;
+    private final LruCache<Integer, List<Product>> equivalents;
+    private final LruCache<String, List<Product>> sameName;
+
+    // Versiones: invalidations cuenta todas las invalidaciones; cada franja guarda la última que la tocó y cuándo
+    private final Object lock = new Object();
+    private long invalidations;
+    private final long[] stripeVersions = new long[STRIPES];
+    private final long[] stripeNanos = new long[STRIPES];
+
+    /**
+     * Caché configurada con cache.results.enabled, cache.equivalents.* y cache.sameName.* (maxSize y eviction).
+     * El ttlMs de esas claves no se usa: las entradas no caducan por tiempo.
+     *
+     * @param settleMs tiempo tras invalidar una clave en el que no se vuelve a guardar (0 = ninguno)
+     */
+    public ResultCache(long settleMs) {
+        this.enabled = Config.getBoolean("cache.results.enabled", false);
+        this.settleNanos = settleMs * 1_000_000;
+        this.equivalents = enabled ? newCache("equivalents", "cache.equivalents") : null;
+        this.sameName = enabled ? newCache("sameName", "cache.sameName") : null;
+    }
+
+    private static <K> LruCache<K, List<Product>> newCache(String name, String prefix) {
+        return new LruCache<>(
+            name,
+            Config.getInt(prefix + ".maxSize", 10_000),
+            0,
+            LruCache.Eviction.valueOf(Config.get(prefix + ".eviction", "LRU").toUpperCase()),
+            ResultCache::footprint
+        );
+    }
+
+    /**
+     * Caché de los Service sobre MySQL (con o sin shards). ProductDAO le avisa de cada producto nuevo,
+     * también de las altas que no pasan por el Service (altas agrupadas, generador de carga).
+     */
+    public static ResultCache shared() {
+        ResultCache cache = shared;
+        if (cache == null) {
+            synchronized (ResultCache.class) {
+                cache = shared;
+                if (cache == null) {
+                    cache = new ResultCache(DB.hasReplicas() ? DB.readYourWritesMs() : 0);
+                    ResultCache listener = cache;
+                    ProductDAO.addInsertListener(p -> listener.productCreated(p.getName()));
+                    shared = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return la caché compartida si ya se ha creado; null si nadie la ha usado todavía
+     */
+    public static ResultCache sharedIfBuilt() {
+        return shared;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return versión actual; cogerla antes de empezar a leer y pasarla a equivalents / sameName
+     */
+    public long stamp() {
+        synchronized (lock) {
+            return invalidations;
+        }
+    }
+
+    /**
+     * @param productId ID_PRODUCT
+     * @param stamp     stamp() de antes de empezar la lectura
+     * @param query     consulta de los equivalentes si no están en caché
+     * @return equivalentes del producto (copias: se pueden modificar)
+     */
+    public List<Product> equivalents(int productId, long stamp, Supplier<List<Product>> query) {
+        if (!enabled) return query.get();
+
+        List<Product> cached = equivalents.get(productId);
+        if (cached == null) {
+            cached = List.copyOf(query.get());
+            store(equivalents, productId, cached, stamp);
+        }
+        return copy(cached, 0);
+    }
+
+    /**
+     * @param clientId cliente del producto (sus productos no salen)
+     * @param name     nombre del producto
+     * @param stamp    stamp() de antes de empezar la lectura
+     * @param query    findSameNameInOtherClients con el cliente a excluir; con la caché se llama con 0 (ningún cliente)
+     * @return productos de otros clientes con el mismo nombre normalizado (copias), en el orden de la consulta
+     */
+    public List<Product> sameName(int clientId, String name, long stamp, IntFunction<List<Product>> query) {
+        if (!enabled) return query.apply(clientId);
+
+        String key = TextNormalizer.normalizeName(name);
+        List<Product> cached = sameName.get(key);
+        if (cached == null) {
+            cached = List.copyOf(query.apply(0));
+            store(sameName, key, cached, stamp);
+        }
+        return copy(cached, clientId);
+    }
+
+    /**
+     * Una equivalencia nueva cambia los equivalentes de sus dos productos. Llamar después del commit.
+     */
+    public void equivalenceCreated(int productA, int productB) {
+        if (!enabled) return;
+        invalidate(equivalents, productA);
+        invalidate(equivalents, productB);
+    }
+
+    /**
+     * Un producto nuevo aparece en las búsquedas por su nombre normalizado. Llamar después del commit.
+     *
+     * @param name nombre del producto
+     */
+    public void productCreated(String name) {
+        if (!enabled) return;
+        invalidate(sameName, TextNormalizer.normalizeName(name));
+    }
+
+    /**
+     * Vacía las dos cachés (por ejemplo después de recalcular los nombres normalizados).
+     */
+    public void clear() {
+        if (!enabled) return;
+        synchronized (lock) {
+            long version = ++invalidations;
+            long now = System.nanoTime();
+            for (int i = 0; i < STRIPES; i++) {
+                stripeVersions[i] = version;
+                stripeNanos[i] = now;
+            }
+            equivalents.clear();
+            sameName.clear();
+        }
+    }
+
+    /**
+     * @return estadísticas de las dos cachés (ninguna si está desactivada)
+     */
+    public CacheStats[] getStats() {
+        if (!enabled) return new CacheStats[0];
+        return new CacheStats[]{equivalents.getStats(), sameName.getStats()};
+    }
+
+    // La comprobación de versión y el put van juntos bajo el mismo lock que invalidate
+    private <K> void store(LruCache<K, List<Product>> cache, K key, List<Product> value, long stamp) {
+        synchronized (lock) {
+            int stripe = stripe(key);
+            if (stripeVersions[stripe] > stamp) return;
+            if (settleNanos > 0 && stripeVersions[stripe] != 0 && System.nanoTime() - stripeNanos[stripe] < settleNanos) return;
+            cache.put(key, value);
+        }
+    }
+
+    private <K> void invalidate(LruCache<K, List<Product>> cache, K key) {
+        synchronized (lock) {
+            int stripe = stripe(key);
+            stripeVersions[stripe] = ++invalidations;
+            stripeNanos[stripe] = System.nanoTime();
+            cache.invalidate(key);
+        }
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    // Los Product de la caché no salen de aquí: se devuelven copias sin los del cliente excluido (0 = ninguno)
+    private static List<Product> copy(List<Product> cached, int excludedClientId) {
+        List<Product> products = new ArrayList<>(cached.size());
+        for (Product p : cached) {
+            if (p.getClienteID() != excludedClientId) {
+                products.add(new Product(p.getId(), p.getClienteID(), p.getName()));
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Bytes aproximados de una entrada en una JVM de 64 bits con referencias comprimidas:
+     * nodo del LinkedHashMap, clave, entrada y lista (~120) y por producto el objeto, su String y el array (~64 + nombre).
+     */
+    private static int footprint(List<Product> products) {
+        int bytes = 120 + 4 * products.size();
+        for (Product p : products) {
+            bytes += 64 + p.getName().length();
+        }
+        return bytes;
+    }
+}
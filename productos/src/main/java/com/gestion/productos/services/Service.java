@@ -1,28 +1,134 @@
 package com.gestion.productos.services;
 
 import com.gestion.productos.dao.ClientDAO;
+import com.gestion.productos.dao.ClientStore;
 import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.EquivalenceStore;
 import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.dao.shard.ShardedEquivalenceStore;
+import com.gestion.productos.dao.shard.ShardedProductStore;
+import com.gestion.productos.graph.EquivalenceGraph;
 import com.gestion.productos.model.Client;
+import com.gestion.productos.model.EquivalencePair;
 import com.gestion.productos.model.Product;
-
+import com.gestion.productos.model.ProductKey;
+import com.gestion.productos.model.ProductLookup;
+import com.gestion.productos.model.ProductMatch;
+import com.gestion.productos.model.UpsertResult;
+import com.gestion.productos.matching.CandidateJobResult;
+import com.gestion.productos.matching.CandidateMatchingJob;
+import com.gestion.productos.matching.ProductNameIndex;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.snapshot.CatalogLookup;
+import com.gestion.productos.snapshot.CatalogSnapshot;
+import com.gestion.productos.util.CacheStats;
+import com.gestion.productos.util.Config;
+import com.gestion.productos.util.DB;
+import com.gestion.productos.util.ReadSession;
+import com.gestion.productos.util.Shards;
+import com.gestion.productos.util.TextNormalizer;
+import com.gestion.productos.util.UnitOfWork;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Capa Service: aquí centralizo la lógica de negocio.
  * Los DAO se encargan de acceder a la base de datos y este Service decide reglas,
  * validaciones y el flujo de cada caso de uso.
+ *
+ * Los DAO entran por sus interfaces (ClientStore, ProductStore, EquivalenceStore): new Service() usa los de MySQL
+ * (o, con db.shards, los productos y equivalencias repartidos en shards: ShardedProductStore y ShardedEquivalenceStore)
+ * y new Service(clients, products, equivalences) cualquier otro almacén, por ejemplo el de memoria (InMemoryDatabase).
  */
 public class Service {
 
-    private final ClientDAO clientDAO;
-    private final ProductDAO productDAO;
-    private final EquivalenceDAO equivalenceDAO;
+    private static final String SOLO_MYSQL = "Operación disponible solo con una única base de datos MySQL (sin shards).";
+
+    private final ClientStore clientDAO;
+    private final ProductStore productDAO;
+    private final EquivalenceStore equivalenceDAO;
+    // true = los DAO de MySQL: casos de uso en UnitOfWork, y grafo e índice de nombres compartidos por toda la aplicación
+    private final boolean jdbc;
+    // Búsquedas de clientes, productos y equivalencias: snapshot en memoria mapeada si está activado, si no los DAO
+    private final CatalogLookup catalog;
+    // Resultados de listarEquivalentes y posiblesMismosProductos: con MySQL la caché compartida, a la que ProductDAO
+    // avisa de los productos nuevos; con otros almacenes una propia a la que avisa este Service (ownResults)
+    private final ResultCache results;
+    private final boolean ownResults;
+
+    // Búsqueda de candidatos por parecido de nombre (índice en memoria) en vez de nombre exacto en SQL
+    private final boolean fuzzyMatching = Config.getBoolean("matching.fuzzy.enabled", false);
+    private final int matchingTopK = Config.getInt("matching.topK", 10);
+    private final double matchingMinScore = Double.parseDouble(Config.get("matching.minScore", "0.5"));
+    // Máximo de productos que devuelve un recorrido del grafo de equivalencias
+    private final int graphMaxResults = Config.getInt("graph.maxResults", 1000);
+    // Filas por bloque (UPDATE en batch + commit) al rellenar NAME_NORM / NAME_HASH
+    private final int normalizeBatchSize = Config.getInt("products.normalize.batchSize", 1000);
+    // Altas agrupadas en bloques (ver ProductWriteBehind); los escritores se arrancan con la primera alta
+    private final boolean writeBehindEnabled = Config.getBoolean("writeBehind.enabled", false);
+    private volatile ProductWriteBehind writeBehind;
+
+    // Con otros almacenes el grafo y el índice de nombres son de este Service (los compartidos leen de MySQL)
+    private volatile EquivalenceGraph graph;
+    private volatile ProductNameIndex nameIndex;
+    // Grafo propio: crearEquivalencia lo marca como viejo; las altas de otros (otro Service, otro proceso) se ven
+    // comparando la versión de EQUIVALENCES como mucho cada graph.checkIntervalMs (con shards es una consulta por shard)
+    private volatile boolean graphStale;
+    private volatile long graphCheckedAt;
+    private final long graphCheckIntervalMs = Config.getLong("graph.checkIntervalMs", 1_000);
 
+    /**
+     * Service sobre MySQL. Con shards (db.shards) los clientes siguen en la principal y los productos y equivalencias
+     * van a ShardedProductStore / ShardedEquivalenceStore; en ese caso funciona como con otros almacenes
+     * (sin UnitOfWork, que no puede abarcar varios shards, y sin cargas desde fichero ni proceso de candidatos).
+     */
     public Service() {
         this.clientDAO = new ClientDAO();
-        this.productDAO = new ProductDAO();
-        this.equivalenceDAO = new EquivalenceDAO();
+        Shards shards = DB.shards();
+        if (shards.isEnabled()) {
+            ShardedProductStore products = new ShardedProductStore(shards, clientDAO);
+            this.productDAO = products;
+            this.equivalenceDAO = new ShardedEquivalenceStore(shards, products);
+            this.catalog = new CatalogLookup(clientDAO, productDAO, equivalenceDAO);
+            this.jdbc = false;
+        } else {
+            this.productDAO = new ProductDAO();
+            this.equivalenceDAO = new EquivalenceDAO();
+            this.catalog = CatalogLookup.shared();
+            this.jdbc = true;
+        }
+        this.results = ResultCache.shared();
+        this.ownResults = false;
+    }
+
+    /**
+     * Service sobre otros almacenes (por ejemplo los de InMemoryDatabase).
+     * Los casos de uso no abren UnitOfWork: cada operación del almacén ya es atómica por sí misma.
+     * Las cargas desde fichero, el snapshot y el proceso de candidatos siguen necesitando MySQL.
+     *
+     * @param clientDAO      clientes
+     * @param productDAO     productos
+     * @param equivalenceDAO equivalencias
+     */
+    public Service(ClientStore clientDAO, ProductStore productDAO, EquivalenceStore equivalenceDAO) {
+        this.clientDAO = clientDAO;
+        this.productDAO = productDAO;
+        this.equivalenceDAO = equivalenceDAO;
+        this.catalog = new CatalogLookup(clientDAO, productDAO, equivalenceDAO);
+        this.jdbc = false;
+        this.results = new ResultCache(0);
+        this.ownResults = true;
     }
 
     /**
@@ -33,25 +139,103 @@ public class Service {
      * @return mensaje con el resultado de la operación (éxito o motivo del fallo)
      */
     public String altaProducto(String clientCode, String productName) {
+        if (writeBehindEnabled) {
+            // La espera al bloque va fuera de cualquier UnitOfWork para no tener una conexión cogida sin usarla
+            return Metrics.timed("Service.altaProducto", () -> encolarAltaProducto(clientCode, productName).join());
+        }
+
+        return operation("Service.altaProducto", () -> {
+            if (isEmpty(clientCode) || isEmpty(productName)) {
+                return "Error: faltan datos.";
+            }
 
+            Client client = catalog.findByCodigo(clientCode.trim());
+            if (client == null) {
+                return "No existe el cliente con código: " + clientCode;
+            }
+
+            // Aquí casteo a int porque en mi tabla el ID es int y mi DAO trabaja con int
+            int clientId = (int) client.getId();
+
+            // Upsert: si ya existe me devuelve su id en la misma sentencia, sin buscarlo antes
+            return altaMessage(productStored(productDAO.upsertProduct(clientId, productName.trim()), productName.trim()));
+        });
+    }
+
+    /**
+     * Igual que altaProducto, pero el INSERT se hace en el siguiente bloque de altas agrupadas (ProductWriteBehind)
+     * en vez de en una transacción propia. Valida y busca el cliente ahora; el future se completa al hacer commit el bloque.
+     *
+     * @param clientCode  código del cliente
+     * @param productName nombre del producto
+     * @return future con el mensaje del resultado (los mismos que altaProducto)
+     */
+    public CompletableFuture<String> encolarAltaProducto(String clientCode, String productName) {
         if (isEmpty(clientCode) || isEmpty(productName)) {
-            return "Error: faltan datos.";
+            return CompletableFuture.completedFuture("Error: faltan datos.");
         }
 
-        Client client = clientDAO.findByCodigo(clientCode.trim());
+        Client client = catalog.findByCodigo(clientCode.trim());
         if (client == null) {
-            return "No existe el cliente con código: " + clientCode;
+            return CompletableFuture.completedFuture("No existe el cliente con código: " + clientCode);
         }
 
-        // Aquí casteo a int porque en mi tabla el ID es int y mi DAO trabaja con int
-        int clientId = (int) client.getId();
+        String name = productName.trim();
+        // El bloque lo escribe otro hilo: la escritura se apunta a la sesión de quien encola cuando se confirma
+        ReadSession session = ReadSession.current();
+        return writeBehind().submit(client.getId(), name).thenApply(result -> {
+            if (jdbc && result.created()) DB.markWrite(session);
+            return altaMessage(productStored(result, name));
+        });
+    }
 
-        int newId = productDAO.insertProduct(clientId, productName.trim());
-        if (newId == -1) {
-            return "No se pudo insertar el producto.";
+    // Con una caché de resultados propia la aviso yo del producto nuevo (después del commit, si hay UnitOfWork)
+    private UpsertResult productStored(UpsertResult result, String name) {
+        if (ownResults && result.created()) {
+            UnitOfWork.afterCommit(() -> results.productCreated(name));
+        }
+        return result;
+    }
+
+    private static String altaMessage(UpsertResult result) {
+        if (result.status() == UpsertResult.Status.NAME_TOO_LONG) {
+            return "Error: nombre de producto demasiado largo (max " + ProductDAO.MAX_NAME_LENGTH + ").";
+        }
+        if (!result.stored()) {
+            return "Error: no se ha podido guardar el producto.";
         }
+        return result.created()
+            ? "Producto añadido correctamente (ID_PRODUCT=" + result.id() + ")."
+            : "El producto ya existe para ese cliente (ID_PRODUCT=" + result.id() + ").";
+    }
+
+    /**
+     * @return true si las altas de producto van agrupadas en bloques (writeBehind.enabled)
+     */
+    public boolean altasAgrupadas() {
+        return writeBehindEnabled;
+    }
 
-        return "Producto añadido correctamente (ID_PRODUCT=" + newId + ").";
+    // Búsquedas de este Service, para que AsyncService resuelva clientes y productos en los mismos almacenes
+    CatalogLookup catalog() {
+        return catalog;
+    }
+
+    /**
+     * @return estadísticas de la caché de resultados (ResultCache); ninguna si está desactivada
+     */
+    public CacheStats[] getResultCacheStats() {
+        return results.getStats();
+    }
+
+    /**
+     * Escribe las altas agrupadas que estén pendientes y para sus hilos. Llamar antes de DB.shutdown().
+     */
+    public void close() {
+        ProductWriteBehind writer = writeBehind;
+        if (writer != null) {
+            writer.close();
+        }
     }
 
     /**
@@ -66,13 +250,17 @@ public class Service {
      * @return mensaje con el resultado de la operación
      */
     public String establecerEquivalencia(String clientCodeA, String productNameA, String clientCodeB, String productNameB) {
+        return operation("Service.establecerEquivalencia", () ->
+            equivalencia(clientCodeA, productNameA, clientCodeB, productNameB));
+    }
 
+    private String equivalencia(String clientCodeA, String productNameA, String clientCodeB, String productNameB) {
         if (isEmpty(clientCodeA) || isEmpty(productNameA) || isEmpty(clientCodeB) || isEmpty(productNameB)) {
             return "Error: faltan datos.";
         }
 
-        Client clientA = clientDAO.findByCodigo(clientCodeA.trim());
-        Client clientB = clientDAO.findByCodigo(clientCodeB.trim());
+        Client clientA = catalog.findByCodigo(clientCodeA.trim());
+        Client clientB = catalog.findByCodigo(clientCodeB.trim());
 
         if (clientA == null) return "No existe el cliente A con código: " + clientCodeA;
         if (clientB == null) return "No existe el cliente B con código: " + clientCodeB;
@@ -86,8 +274,8 @@ public class Service {
         int clientIdB = (int) clientB.getId();
 
         // Yo busco el producto por cliente + nombre para que el nombre pueda repetirse en distintos clientes
-        Product productA = productDAO.finByClientAndName(clientIdA, productNameA.trim());
-        Product productB = productDAO.finByClientAndName(clientIdB, productNameB.trim());
+        Product productA = catalog.finByClientAndName(clientIdA, productNameA.trim());
+        Product productB = catalog.finByClientAndName(clientIdB, productNameB.trim());
 
         if (productA == null) return "No existe el producto A para ese cliente.";
         if (productB == null) return "No existe el producto B para ese cliente.";
@@ -96,79 +284,520 @@ public class Service {
         int a = Math.min(productA.getId(), productB.getId());
         int b = Math.max(productA.getId(), productB.getId());
 
-        if (equivalenceDAO.existsEquivalence(a, b)) {
-            return "La equivalencia ya existe.";
-        }
-
-        boolean inserted = equivalenceDAO.insertEquivalence(a, b);
-        if (!inserted) {
-            return "No se pudo crear la equivalencia.";
-        }
+        return crearEquivalencia(a, b);
+    }
 
-        return "Equivalencia creada correctamente.";
+    /**
+     * Crea la equivalencia (A < B) si no existe, en una unidad de trabajo.
+     * Es un upsert: la comprobación y el INSERT son la misma sentencia, así que no hay consulta previa
+     * ni carrera con otra petición que la inserte a la vez (la UNIQUE(PRODUCT_ID_A, PRODUCT_ID_B) decide).
+     *
+     * @return mensaje con el resultado de la operación
+     */
+    String crearEquivalencia(int a, int b) {
+        return inTransaction(() -> {
+            if (!equivalenceDAO.upsertEquivalence(a, b).created()) {
+                return "La equivalencia ya existe.";
+            }
+            UnitOfWork.afterCommit(() -> {
+                results.equivalenceCreated(a, b);
+                graphStale = true;
+            });
+            return "Equivalencia creada correctamente.";
+        });
     }
 
     /**
      * Lista los productos equivalentes a un producto concreto (identificado por cliente + nombre).
+     * Con cache.results.enabled el resultado sale de ResultCache mientras no se cree una equivalencia del producto.
      *
      * @param clientCode  código del cliente
      * @param productName nombre del producto
      * @return lista de productos equivalentes; si algo falla devuelve lista vacía
      */
     public List<Product> listarEquivalentes(String clientCode, String productName) {
+        // Antes de abrir la transacción: lo que se invalide desde aquí no se queda guardado en la caché
+        long stamp = results.stamp();
+        return query("Service.listarEquivalentes", () -> {
+            if (isEmpty(clientCode) || isEmpty(productName)) {
+                return List.of();
+            }
+
+            Client client = catalog.findByCodigo(clientCode.trim());
+            if (client == null) {
+                return List.of();
+            }
+
+            int clientId = (int) client.getId();
+
+            Product product = catalog.finByClientAndName(clientId, productName.trim());
+            if (product == null) {
+                return List.of();
+            }
+
+            // Devuelvo la lista y que el Main decida cómo mostrarla (separo lógica de presentación)
+            return results.equivalents(product.getId(), stamp, () -> catalog.findEquivalents(product.getId()));
+        });
+    }
 
-        if (isEmpty(clientCode) || isEmpty(productName)) {
-            return List.of();
-        }
+    /**
+     * Lista todo el grupo de equivalencia de un producto: equivalentes directos y transitivos
+     * (si A≡B y B≡C, para A devuelve B y C). El grupo sale de una sola consulta por índice.
+     *
+     * @param clientCode  código del cliente
+     * @param productName nombre del producto
+     * @return productos del mismo grupo (sin el propio producto); si algo falla devuelve lista vacía
+     */
+    public List<Product> listarGrupoEquivalencia(String clientCode, String productName) {
+        return query("Service.listarGrupoEquivalencia", () -> {
+            if (isEmpty(clientCode) || isEmpty(productName)) {
+                return List.of();
+            }
+
+            Client client = catalog.findByCodigo(clientCode.trim());
+            if (client == null) {
+                return List.of();
+            }
+
+            Product product = catalog.finByClientAndName(client.getId(), productName.trim());
+            if (product == null) {
+                return List.of();
+            }
+
+            return equivalenceDAO.findClusterMembers(product.getId());
+        });
+    }
 
-        Client client = clientDAO.findByCodigo(clientCode.trim());
-        if (client == null) {
-            return List.of();
-        }
+    /**
+     * Lista los productos a los que se llega desde uno siguiendo equivalencias, hasta maxDepth saltos
+     * (1 = equivalentes directos, 2 = también los equivalentes de esos, ...).
+     * El recorrido se hace sobre el grafo en memoria (EquivalenceGraph), sin una consulta por salto.
+     *
+     * @param clientCode  código del cliente
+     * @param productName nombre del producto
+     * @param maxDepth    máximo de saltos
+     * @return productos alcanzados, del más cercano al más lejano; si algo falla devuelve lista vacía
+     */
+    public List<Product> listarRelacionados(String clientCode, String productName, int maxDepth) {
+        return query("Service.listarRelacionados", () -> {
+            if (isEmpty(clientCode) || isEmpty(productName) || maxDepth <= 0) {
+                return List.of();
+            }
+
+            Client client = catalog.findByCodigo(clientCode.trim());
+            if (client == null) {
+                return List.of();
+            }
+
+            Product product = catalog.finByClientAndName(client.getId(), productName.trim());
+            if (product == null) {
+                return List.of();
+            }
+
+            List<Product> related = new ArrayList<>();
+            for (int id : graph().reachable(product.getId(), maxDepth, graphMaxResults)) {
+                Product p = catalog.findProductById(id);
+                if (p != null) related.add(p);
+            }
+            return related;
+        });
+    }
+
+    /**
+     * Recalcula desde cero todos los grupos de equivalencia a partir de EQUIVALENCES.
+     * Sirve para migrar datos existentes o reparar los grupos si se han tocado las tablas a mano.
+     *
+     * @return mensaje con el resultado de la operación
+     */
+    public String recalcularGruposEquivalencia() {
+        return Metrics.timed("Service.recalcularGruposEquivalencia", () -> {
+            int products = equivalenceDAO.rebuildClusters();
+            return "Grupos de equivalencia recalculados (" + products + " productos agrupados).";
+        });
+    }
+
+    /**
+     * Busca candidatos a equivalencia en todo el catálogo (ver CandidateMatchingJob) y los deja en
+     * EQUIVALENCE_CANDIDATES. Es el proceso nocturno; tarda según el tamaño del catálogo.
+     *
+     * @return mensaje con el resumen (contadores y rendimiento)
+     */
+    public String generarCandidatos() {
+        return Metrics.timed("Service.generarCandidatos", () -> {
+            if (!jdbc) return SOLO_MYSQL;
+            CandidateJobResult result = new CandidateMatchingJob().run();
+            return "Candidatos generados. " + result;
+        });
+    }
+
+    /**
+     * Rellena el nombre normalizado (NAME_NORM) y su hash (NAME_HASH) de los productos,
+     * que es lo que usan las búsquedas por nombre exacto.
+     *
+     * @param todos true = recalcular todos los productos; false = solo los que no lo tienen
+     * @return mensaje con el resultado de la operación
+     */
+    public String recalcularNombresNormalizados(boolean todos) {
+        return Metrics.timed("Service.recalcularNombresNormalizados", () -> {
+            long updated = productDAO.backfillNormalizedNames(todos, normalizeBatchSize);
+            // Cambia el nombre normalizado de productos que ya estaban: las búsquedas por nombre guardadas no valen
+            if (updated > 0) results.clear();
+            return "Nombres normalizados recalculados (" + updated + " productos).";
+        });
+    }
+
+    /**
+     * @return true si hay productos sin nombre normalizado (por ejemplo tras la migración 005 o una carga por SQL)
+     */
+    public boolean hayNombresSinNormalizar() {
+        return productDAO.hasMissingNormalizedNames();
+    }
 
-        int clientId = (int) client.getId();
+    /**
+     * Regenera el snapshot del catálogo (CLIENTS, PRODUCTS y EQUIVALENCES) y pasa a usarlo.
+     *
+     * @return mensaje con el resultado de la operación
+     */
+    public String regenerarSnapshot() {
+        return Metrics.timed("Service.regenerarSnapshot", () -> {
+            if (!catalog.isEnabled()) {
+                return "El snapshot está desactivado (snapshot.enabled=false).";
+            }
+            try {
+                CatalogSnapshot snapshot = catalog.refresh();
+                return "Snapshot regenerado en " + snapshot.getFile() + " (" + snapshot.getClientCount() + " clientes, "
+                    + snapshot.getProductCount() + " productos, " + snapshot.getEquivalencesVersion().rows() + " equivalencias).";
+            } catch (IOException e) {
+                return "Error escribiendo el snapshot: " + e.getMessage();
+            }
+        });
+    }
+
+    /**
+     * Carga masiva de productos desde un fichero CSV o NDJSON (ver ProductImporter).
+     *
+     * @param ruta ruta del fichero
+     * @return mensaje con el resumen de la carga o el motivo del fallo
+     */
+    public String importarProductos(String ruta) {
+        return Metrics.timed("Service.importarProductos", () -> {
+            if (isEmpty(ruta)) {
+                return "Error: faltan datos.";
+            }
+
+            Path file = Path.of(ruta.trim());
+            if (!Files.isRegularFile(file)) {
+                return "No existe el fichero: " + ruta;
+            }
+
+            if (!jdbc) return SOLO_MYSQL;
+
+            try {
+                ImportResult result = new ProductImporter().importFile(file);
+                return "Importacion terminada. " + result;
+            } catch (IOException e) {
+                return "Error leyendo el fichero: " + e.getMessage();
+            }
+        });
+    }
+
+    /**
+     * Crea muchas equivalencias de una vez (mismas reglas que establecerEquivalencia).
+     * Resuelve los productos por bloques y confía en UNIQUE(PRODUCT_ID_A, PRODUCT_ID_B) para saltar las que ya existen,
+     * en lugar de comprobar cada pareja antes de insertarla.
+     *
+     * @param pairs parejas a crear
+     * @return resumen: creadas, ya existentes y rechazadas (con motivo)
+     */
+    public ImportResult establecerEquivalencias(List<EquivalencePair> pairs) {
+        return Metrics.timed("Service.establecerEquivalencias", () ->
+            jdbc ? new EquivalenceLoader().load(pairs) : establecerEquivalenciasUnaAUna(pairs));
+    }
 
-        Product product = productDAO.finByClientAndName(clientId, productName.trim());
-        if (product == null) {
-            return List.of();
+    // Sin MySQL no hay carga por bloques: una a una con las reglas de establecerEquivalencia (en memoria es barato)
+    private ImportResult establecerEquivalenciasUnaAUna(List<EquivalencePair> pairs) {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        long line = 0;
+
+        for (EquivalencePair p : pairs) {
+            line++;
+            result.addRead();
+            String message = equivalencia(p.getClientCodeA(), p.getProductNameA(), p.getClientCodeB(), p.getProductNameB());
+            switch (message) {
+                case "Equivalencia creada correctamente." -> result.addInserted(1);
+                case "La equivalencia ya existe." -> result.addDuplicates(1);
+                default -> result.reject(line, message);
+            }
         }
 
-        // Devuelvo la lista y que el Main decida cómo mostrarla (separo lógica de presentación)
-        return equivalenceDAO.findEquivalents(product.getId());
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Carga masiva de equivalencias desde un fichero CSV o NDJSON (ver EquivalenceLoader).
+     *
+     * @param ruta ruta del fichero
+     * @return mensaje con el resumen de la carga o el motivo del fallo
+     */
+    public String importarEquivalencias(String ruta) {
+        return Metrics.timed("Service.importarEquivalencias", () -> {
+            if (isEmpty(ruta)) {
+                return "Error: faltan datos.";
+            }
+
+            Path file = Path.of(ruta.trim());
+            if (!Files.isRegularFile(file)) {
+                return "No existe el fichero: " + ruta;
+            }
+
+            if (!jdbc) return SOLO_MYSQL;
+
+            try {
+                ImportResult result = new EquivalenceLoader().loadFile(file);
+                return "Importacion terminada. " + result;
+            } catch (IOException e) {
+                return "Error leyendo el fichero: " + e.getMessage();
+            }
+        });
     }
 
     public List<Product> posiblesMismosProductos(String clientCode, String productName) {
+        long stamp = results.stamp();
+        return query("Service.posiblesMismosProductos", () -> {
+            if (isEmpty(clientCode) || isEmpty(productName)) {
+                return List.of();
+            }
 
-        if (isEmpty(clientCode) || isEmpty(productName)) {
-            return List.of();
-        }
+            Client client = catalog.findByCodigo(clientCode.trim());
 
-        Client client = clientDAO.findByCodigo(clientCode.trim());
-        
-        if (client == null) {
-            return List.of();
-        }
+            if (client == null) {
+                return List.of();
+            }
 
-        int clientId = (int) client.getId();
+            int clientId = (int) client.getId();
 
-        Product product = productDAO.finByClientAndName(clientId, productName.trim());
-        
-        if (product == null) {
-            return List.of();
-        }
+            Product product = catalog.finByClientAndName(clientId, productName.trim());
 
-        return productDAO.findSameNameInOtherClients(clientId, product.getName());
+            if (product == null) {
+                return List.of();
+            }
+
+            if (fuzzyMatching) {
+                List<Product> candidatos = new ArrayList<>();
+                for (ProductMatch m : nameIndex().findSimilar(clientId, product.getName(), matchingTopK, matchingMinScore)) {
+                    candidatos.add(m.getProduct());
+                }
+                return candidatos;
+            }
+
+            return results.sameName(clientId, product.getName(), stamp,
+                excluded -> productDAO.findSameNameInOtherClients(excluded, product.getName()));
+        });
+    }
+
+    /**
+     * Busca en otros clientes los productos con el nombre más parecido, con su puntuación.
+     * A diferencia de la búsqueda exacta, encuentra el mismo producto aunque cambien mayúsculas,
+     * tildes, orden de palabras o cómo se escriben las unidades. Usa el índice en memoria (ProductNameIndex).
+     *
+     * @param clientCode  código del cliente
+     * @param productName nombre del producto
+     * @return hasta matching.topK candidatos con puntuación >= matching.minScore, de más a menos parecido
+     */
+    public List<ProductMatch> buscarProductosSimilares(String clientCode, String productName) {
+        return query("Service.buscarProductosSimilares", () -> {
+            if (isEmpty(clientCode) || isEmpty(productName)) {
+                return List.of();
+            }
+
+            Client client = catalog.findByCodigo(clientCode.trim());
+            if (client == null) {
+                return List.of();
+            }
+
+            // Aquí no exijo que el producto exista: también sirve para buscar antes de dar de alta
+            return nameIndex().findSimilar(client.getId(), productName.trim(), matchingTopK, matchingMinScore);
+        });
     }
 
 
+    /**
+     * Resuelve muchos productos (código de cliente + nombre) de una vez, para integraciones que
+     * consultan cientos de productos por petición.
+     * Los códigos de cliente salen de la caché de ClientDAO y los productos de una sola consulta
+     * por bloque de claves contra el índice UNIQUE(CLIENT_ID, NAME), en vez de dos consultas por producto.
+     *
+     * @param keys claves a resolver
+     * @return cada clave como encontrada (con su producto) o como no encontrada
+     */
+    public ProductLookup resolverProductos(Collection<ProductKey> keys) {
+        return query("Service.resolverProductos", () -> {
+            ProductLookup lookup = new ProductLookup();
+            Map<ProductKey, Integer> clientIds = new HashMap<>();
+            Map<String, Product> toFind = new HashMap<>();
+
+            for (ProductKey key : keys) {
+                if (key == null || isEmpty(key.clientCode()) || isEmpty(key.productName())) {
+                    continue;
+                }
+                Client client = catalog.findByCodigo(key.clientCode().trim());
+                if (client == null) {
+                    continue;
+                }
+                clientIds.put(key, client.getId());
+                toFind.putIfAbsent(lookupKey(client.getId(), key.productName()), new Product(0, client.getId(), key.productName().trim()));
+            }
+
+            Map<String, Product> found = new HashMap<>();
+            if (!toFind.isEmpty()) {
+                for (Product p : productDAO.findByClientAndNames(toFind.values())) {
+                    found.put(lookupKey(p.getClienteID(), p.getName()), p);
+                }
+            }
+
+            Set<ProductKey> missing = new HashSet<>();
+            for (ProductKey key : keys) {
+                if (key == null) continue;
+
+                Integer clientId = clientIds.get(key);
+                Product product = clientId == null ? null : found.get(lookupKey(clientId, key.productName()));
+                if (product != null) {
+                    lookup.addFound(key, product);
+                } else if (missing.add(key)) {
+                    lookup.addMissing(key);
+                }
+            }
+
+            return lookup;
+        });
+    }
+
     public List<Client> listarClientes() {
-        return clientDAO.findAll();
+        return Metrics.timed("Service.listarClientes", () ->
+            clientDAO.findAll());
     }
 
     public List<Product> listarProductos() {
-        return productDAO.findAll();
+        return Metrics.timed("Service.listarProductos", () ->
+            productDAO.findAll());
+    }
+
+    /**
+     * Página de clientes en orden de ID (paginación por clave).
+     *
+     * @param afterId último ID de la página anterior (0 para empezar)
+     * @param limit   tamaño de página
+     */
+    public List<Client> listarClientesPagina(int afterId, int limit) {
+        return Metrics.timed("Service.listarClientesPagina", () ->
+            clientDAO.findPage(afterId, limit));
+    }
+
+    /**
+     * Página de productos en orden (cliente, id) (paginación por clave).
+     * Para catálogos grandes, en vez de listarProductos que carga la tabla entera.
+     *
+     * @param after último producto de la página anterior (null para empezar)
+     * @param limit tamaño de página
+     */
+    public List<Product> listarProductosPagina(Product after, int limit) {
+        return Metrics.timed("Service.listarProductosPagina", () ->
+            productDAO.findPage(after, limit));
+    }
+
+
+    // Para emparejar resultados, la misma regla que la collation de NAME: sin mayúsculas ni tildes (como ProductDAO.batchKey)
+    private static String lookupKey(int clientId, String name) {
+        return clientId + "|" + TextNormalizer.collationKey(name.trim());
+    }
+
+    private ProductWriteBehind writeBehind() {
+        ProductWriteBehind writer = writeBehind;
+        if (writer == null) {
+            synchronized (this) {
+                writer = writeBehind;
+                if (writer == null) {
+                    writer = new ProductWriteBehind(productDAO);
+                    writeBehind = writer;
+                }
+            }
+        }
+        return writer;
     }
 
+    // Grafo de equivalencias: el compartido con MySQL; con otros almacenes uno propio que se rehace si han cambiado
+    private EquivalenceGraph graph() {
+        if (jdbc) return EquivalenceGraph.shared();
+
+        EquivalenceGraph g = graph;
+        if (g != null && !graphStale && System.currentTimeMillis() - graphCheckedAt < graphCheckIntervalMs) {
+            return g;
+        }
+        synchronized (this) {
+            g = graph;
+            long now = System.currentTimeMillis();
+            if (g != null && !graphStale && now - graphCheckedAt < graphCheckIntervalMs) {
+                return g;
+            }
+            // Se limpia antes de leer la versión: un alta de mientras se construye deja el grafo marcado otra vez
+            graphStale = false;
+            if (g == null || !g.getVersion().equals(equivalenceDAO.getVersion())) {
+                g = EquivalenceGraph.build(equivalenceDAO, 1);
+                graph = g;
+            }
+            graphCheckedAt = now;
+            return g;
+        }
+    }
+
+    // Índice de nombres: con MySQL el compartido, que mira PRODUCTS cada matching.index.refreshIntervalMs para ver
+    // las altas de otros procesos; con otros almacenes uno propio que se pone al día antes de cada búsqueda
+    private ProductNameIndex nameIndex() {
+        if (jdbc) {
+            ProductNameIndex index = ProductNameIndex.shared();
+            index.refreshIfDue(productDAO);
+            return index;
+        }
+
+        ProductNameIndex index = nameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = nameIndex;
+                if (index == null) {
+                    index = new ProductNameIndex();
+                    nameIndex = index;
+                }
+            }
+        }
+        index.refresh(productDAO);
+        return index;
+    }
+
+    /**
+     * Caso de uso completo en una UnitOfWork: una sola conexión (con sus sentencias preparadas en caché)
+     * y una transacción para todas las llamadas a los DAO, con commit al terminar o rollback si falla.
+     */
+    private <T> T operation(String name, UnitOfWork.Work<T, RuntimeException> body) {
+        return Metrics.timed(name, () -> inTransaction(body));
+    }
+
+    /**
+     * Caso de uso de solo lectura. Con réplicas de lectura no abre UnitOfWork (su conexión sería de la principal):
+     * cada consulta de los DAO va a una réplica. Sin réplicas es igual que operation.
+     */
+    private <T> T query(String name, UnitOfWork.Work<T, RuntimeException> body) {
+        if (jdbc && DB.hasReplicas()) {
+            return Metrics.timed(name, body::run);
+        }
+        return operation(name, body);
+    }
+
+    // Sin MySQL no hay conexión que compartir: cada operación del almacén es atómica por sí misma
+    private <T> T inTransaction(UnitOfWork.Work<T, RuntimeException> body) {
+        return jdbc ? UnitOfWork.inTransaction(body) : body.run();
+    }
 
     /**
      * Validación simple para entradas de consola.
@@ -0,0 +1,212 @@
+package com.gestion.productos.snapshot;
+
+import com.gestion.productos.dao.ClientDAO;
+import com.gestion.productos.dao.ClientStore;
+import com.gestion.productos.dao.EquivalenceDAO;
+import com.gestion.productos.dao.EquivalenceStore;
+import com.gestion.productos.dao.ProductDAO;
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.metrics.Metrics;
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.util.Config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Búsquedas del catálogo que se sirven desde el snapshot mapeado (CatalogSnapshot) y van a los DAO
+ * cuando el snapshot no sirve.
+ *
+ * - Clientes y productos: la aplicación nunca los modifica ni los borra, así que lo que está en el snapshot es válido
+ *   aunque sea antiguo. Si algo no está (por ejemplo un producto creado después) se busca en la base de datos.
+ * - Equivalencias: sí cambian. Se comparan el número de filas y el mayor id de EQUIVALENCES con los guardados en el
+ *   snapshot (al cargarlo y cada snapshot.checkIntervalMs); si no coinciden, o este proceso inserta una equivalencia,
+ *   findEquivalents va a la base de datos hasta que se regenere el snapshot.
+ * - Sin fichero, con un fichero ilegible o más antiguo que snapshot.maxAgeMs, todo va a los DAO.
+ *
+ * Con snapshot.enabled=false se comporta exactamente como los DAO. Con otros almacenes (por ejemplo InMemoryDatabase)
+ * no hay snapshot: todo va a ellos.
+ */
+public class CatalogLookup {
+
+    private static volatile CatalogLookup shared;
+
+    private final ClientStore clientDAO;
+    private final ProductStore productDAO;
+    private final EquivalenceStore equivalenceDAO;
+
+    private final boolean enabled;
+    private final Path file;
+    private final long checkIntervalMs;
+    private final long maxAgeMs;
+
+    private final Object checkLock = new Object();
+
+    private volatile CatalogSnapshot snapshot;
+    private volatile boolean equivalencesFresh;
+    private volatile long lastCheck;
+
+    /**
+     * Instancia compartida de la aplicación. La primera llamada intenta cargar el snapshot configurado.
+     */
+    public static CatalogLookup shared() {
+        CatalogLookup lookup = shared;
+        if (lookup == null) {
+            synchronized (CatalogLookup.class) {
+                lookup = shared;
+                if (lookup == null) {
+                    lookup = new CatalogLookup(
+                        Config.getBoolean("snapshot.enabled", false),
+                        Path.of(Config.get("snapshot.file", "catalog.snapshot")),
+                        Config.getLong("snapshot.checkIntervalMs", 60_000),
+                        Config.getLong("snapshot.maxAgeMs", 0));
+                    shared = lookup;
+                }
+            }
+        }
+        return lookup;
+    }
+
+    /**
+     * @param enabled         false = ir siempre a los DAO
+     * @param file            fichero del snapshot
+     * @param checkIntervalMs cada cuánto se comprueba si EQUIVALENCES ha cambiado
+     * @param maxAgeMs        edad máxima del snapshot para usarlo (0 = sin límite)
+     */
+    public CatalogLookup(boolean enabled, Path file, long checkIntervalMs, long maxAgeMs) {
+        this(new ClientDAO(), new ProductDAO(), new EquivalenceDAO(), enabled, file, checkIntervalMs, maxAgeMs);
+    }
+
+    /**
+     * Búsquedas directas sobre otros almacenes, sin snapshot.
+     */
+    public CatalogLookup(ClientStore clientDAO, ProductStore productDAO, EquivalenceStore equivalenceDAO) {
+        this(clientDAO, productDAO, equivalenceDAO, false, null, 0, 0);
+    }
+
+    private CatalogLookup(ClientStore clientDAO, ProductStore productDAO, EquivalenceStore equivalenceDAO,
+                          boolean enabled, Path file, long checkIntervalMs, long maxAgeMs) {
+        this.clientDAO = clientDAO;
+        this.productDAO = productDAO;
+        this.equivalenceDAO = equivalenceDAO;
+        this.enabled = enabled;
+        this.file = file;
+        this.checkIntervalMs = checkIntervalMs;
+        this.maxAgeMs = maxAgeMs;
+
+        if (enabled) {
+            // Una equivalencia nueva en este proceso deja viejas las del snapshot al momento
+            EquivalenceDAO.addInsertListener(() -> equivalencesFresh = false);
+            load();
+        }
+    }
+
+    public Client findByCodigo(String code) {
+        CatalogSnapshot s = current();
+        if (s != null) {
+            Client client = s.findClientByCode(code);
+            if (client != null) return client;
+        }
+        return clientDAO.findByCodigo(code);
+    }
+
+    public Product findProductById(int id) {
+        CatalogSnapshot s = current();
+        if (s != null) {
+            Product product = s.findProductById(id);
+            if (product != null) return product;
+        }
+        return productDAO.findById(id);
+    }
+
+    public Product finByClientAndName(int clientId, String name) {
+        CatalogSnapshot s = current();
+        if (s != null) {
+            Product product = s.findProduct(clientId, name);
+            if (product != null) return product;
+        }
+        return productDAO.finByClientAndName(clientId, name);
+    }
+
+    public List<Product> findEquivalents(int productId) {
+        CatalogSnapshot s = current();
+        if (s != null && equivalencesAreFresh(s)) {
+            // Si el producto no está en el snapshot es nuevo: sus equivalencias (si tiene) están en la base de datos
+            if (s.findProductById(productId) != null) {
+                return s.findEquivalents(productId);
+            }
+        }
+        return equivalenceDAO.findEquivalents(productId);
+    }
+
+    /**
+     * Genera un snapshot nuevo desde la base de datos y pasa a usarlo.
+     *
+     * @return el snapshot nuevo
+     * @throws IOException si no se puede escribir o leer el fichero
+     */
+    public synchronized CatalogSnapshot refresh() throws IOException {
+        return Metrics.timed("CatalogLookup.refresh", () -> {
+            new CatalogSnapshotWriter(clientDAO, productDAO, equivalenceDAO, Config.getInt("db.fetchSize", 0)).write(file);
+            CatalogSnapshot fresh = CatalogSnapshot.open(file);
+            // Ojo al orden: primero marco si está al día y después publico el snapshot
+            equivalencesFresh = equivalenceDAO.getVersion().equals(fresh.getEquivalencesVersion());
+            lastCheck = System.currentTimeMillis();
+            snapshot = fresh;
+            return fresh;
+        });
+    }
+
+    /**
+     * @return el snapshot en uso; null si no hay ninguno (desactivado, no existe o caducado)
+     */
+    public CatalogSnapshot current() {
+        CatalogSnapshot s = snapshot;
+        if (s == null) return null;
+        if (maxAgeMs > 0 && System.currentTimeMillis() - s.getCreatedAt() > maxAgeMs) return null;
+        return s;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true si las equivalencias del snapshot coinciden con la base de datos (según la última comprobación)
+     */
+    public boolean isEquivalencesFresh() {
+        return equivalencesFresh;
+    }
+
+    private synchronized void load() {
+        if (!Files.isRegularFile(file)) return;
+        try {
+            CatalogSnapshot loaded = CatalogSnapshot.open(file);
+            equivalencesFresh = equivalenceDAO.getVersion().equals(loaded.getEquivalencesVersion());
+            lastCheck = System.currentTimeMillis();
+            snapshot = loaded;
+        } catch (IOException | RuntimeException e) {
+            // Un snapshot roto o una base de datos caída al arrancar no deben impedir funcionar: se usan los DAO
+            System.err.println("No se pudo cargar el snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    private boolean equivalencesAreFresh(CatalogSnapshot s) {
+        if (!equivalencesFresh) return false;
+
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < checkIntervalMs) return true;
+
+        // Solo un hilo hace la comprobación; el resto sigue con el último resultado
+        synchronized (checkLock) {
+            if (now - lastCheck >= checkIntervalMs) {
+                equivalencesFresh = equivalenceDAO.getVersion().equals(s.getEquivalencesVersion());
+                lastCheck = now;
+            }
+        }
+        return equivalencesFresh;
+    }
+}
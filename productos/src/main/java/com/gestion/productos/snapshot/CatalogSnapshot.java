@@ -0,0 +1,247 @@
+package com.gestion.productos.snapshot;
+
+import com.gestion.productos.model.Client;
+import com.gestion.productos.model.Product;
+import com.gestion.productos.model.TableVersion;
+import com.gestion.productos.util.TextNormalizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Foto binaria de CLIENTS, PRODUCTS y EQUIVALENCES leída con memory mapping.
+ *
+ * El fichero no se deserializa: las búsquedas leen directamente los bytes mapeados (el sistema operativo
+ * carga las páginas que se tocan y las comparte entre procesos), y solo se crea el Client/Product que se devuelve.
+ * - por id: búsqueda binaria sobre los registros de tamaño fijo, ordenados por id
+ * - por (cliente, nombre) y por código de cliente: tabla hash con direccionamiento abierto guardada en el fichero
+ * - equivalentes: lista de adyacencia (CSR) con las posiciones de los productos equivalentes
+ *
+ * Formato (big endian, ver CatalogSnapshotWriter):
+ * <pre>
+ *  cabecera (HEADER_SIZE bytes): magic, versión de formato, fecha, contadores, versión de EQUIVALENCES, offsets
+ *  clientes        id, codeOff, codeLen, nameOff, nameLen, codeHash              (CLIENT_RECORD bytes c/u)
+ *  hash de códigos posición del cliente + 1 por hueco (0 = vacío)
+ *  productos       id, clientId, nameOff, nameLen, nameHash, adjStart, adjCount   (PRODUCT_RECORD bytes c/u)
+ *  hash de claves  posición del producto + 1 por hueco (0 = vacío)
+ *  adyacencia      posiciones de los productos equivalentes, por producto
+ *  textos          UTF-8
+ * </pre>
+ * Es inmutable y segura para varios hilos (solo lecturas absolutas sobre el buffer).
+ */
+public final class CatalogSnapshot {
+
+    static final int MAGIC = 0x4D434154; // "MCAT"
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 80;
+    static final int CLIENT_RECORD = 24;
+    static final int PRODUCT_RECORD = 28;
+
+    private final Path file;
+    private final ByteBuffer buf;
+
+    private final long createdAt;
+    private final int clientCount;
+    private final int productCount;
+    private final TableVersion equivalencesVersion;
+    private final int clientsOff;
+    private final int clientIndexOff;
+    private final int clientIndexSize;
+    private final int productsOff;
+    private final int productIndexOff;
+    private final int productIndexSize;
+    private final int adjacencyOff;
+    private final int stringsOff;
+
+    private CatalogSnapshot(Path file, ByteBuffer buf) throws IOException {
+        this.file = file;
+        this.buf = buf;
+
+        if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("No es un snapshot de catálogo: " + file);
+        }
+        int format = buf.getInt(4);
+        if (format != FORMAT_VERSION) {
+            throw new IOException("Versión de snapshot " + format + " no soportada (se esperaba " + FORMAT_VERSION + ")");
+        }
+
+        createdAt = buf.getLong(8);
+        clientCount = buf.getInt(16);
+        productCount = buf.getInt(20);
+        equivalencesVersion = new TableVersion(buf.getLong(24), buf.getLong(32));
+        clientsOff = buf.getInt(40);
+        clientIndexOff = buf.getInt(44);
+        clientIndexSize = buf.getInt(48);
+        productsOff = buf.getInt(52);
+        productIndexOff = buf.getInt(56);
+        productIndexSize = buf.getInt(60);
+        adjacencyOff = buf.getInt(64);
+        stringsOff = buf.getInt(68);
+
+        if (stringsOff > buf.capacity()) {
+            throw new IOException("Snapshot truncado: " + file);
+        }
+    }
+
+    /**
+     * Mapea el fichero en memoria (solo lectura) y valida la cabecera.
+     *
+     * @param file fichero escrito por CatalogSnapshotWriter
+     * @return snapshot listo para consultar
+     * @throws IOException si no existe, no se puede leer o no tiene el formato esperado
+     */
+    public static CatalogSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot demasiado grande para mapearlo de una vez: " + file);
+            }
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return new CatalogSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path getFile() {return file;}
+    public long getCreatedAt() {return createdAt;}
+    public int getClientCount() {return clientCount;}
+    public int getProductCount() {return productCount;}
+    public TableVersion getEquivalencesVersion() {return equivalencesVersion;}
+
+    /**
+     * @return el cliente con ese id; null si no está en el snapshot
+     */
+    public Client findClientById(int id) {
+        int lo = 0;
+        int hi = clientCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midId = buf.getInt(clientsOff + mid * CLIENT_RECORD);
+            if (midId < id) lo = mid + 1;
+            else if (midId > id) hi = mid - 1;
+            else return clientAt(mid);
+        }
+        return null;
+    }
+
+    /**
+     * @return el cliente con ese código (sin distinguir mayúsculas); null si no está en el snapshot
+     */
+    public Client findClientByCode(String code) {
+        if (code == null || clientIndexSize == 0) return null;
+        String key = key(code);
+        int hash = key.hashCode();
+        int mask = clientIndexSize - 1;
+
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = buf.getInt(clientIndexOff + slot * 4);
+            if (entry == 0) return null;
+            int rec = clientsOff + (entry - 1) * CLIENT_RECORD;
+            if (buf.getInt(rec + 20) == hash && key(string(buf.getInt(rec + 4), buf.getInt(rec + 8))).equals(key)) {
+                return clientAt(entry - 1);
+            }
+        }
+    }
+
+    /**
+     * @return el producto con ese id; null si no está en el snapshot
+     */
+    public Product findProductById(int id) {
+        int pos = productPosition(id);
+        return pos < 0 ? null : productAt(pos);
+    }
+
+    /**
+     * @return el producto de ese cliente con ese nombre normalizado; null si no está en el snapshot o si hay
+     *         varios con ese nombre normalizado (lo decide ProductDAO con el nombre tal cual)
+     */
+    public Product findProduct(int clientId, String name) {
+        if (name == null || productIndexSize == 0) return null;
+        String key = nameKey(name);
+        int hash = key.hashCode();
+        int mask = productIndexSize - 1;
+
+        int found = 0;
+        for (int slot = mix(31 * clientId + hash) & mask; ; slot = (slot + 1) & mask) {
+            int entry = buf.getInt(productIndexOff + slot * 4);
+            if (entry == 0) break;
+            int rec = productsOff + (entry - 1) * PRODUCT_RECORD;
+            if (buf.getInt(rec + 4) == clientId && buf.getInt(rec + 16) == hash
+                && nameKey(string(buf.getInt(rec + 8), buf.getInt(rec + 12))).equals(key)) {
+                if (found != 0) return null;
+                found = entry;
+            }
+        }
+        return found == 0 ? null : productAt(found - 1);
+    }
+
+    /**
+     * @return equivalentes directos del producto (lista vacía si no tiene o no está en el snapshot)
+     */
+    public List<Product> findEquivalents(int productId) {
+        int pos = productPosition(productId);
+        if (pos < 0) return List.of();
+
+        int rec = productsOff + pos * PRODUCT_RECORD;
+        int start = buf.getInt(rec + 20);
+        int count = buf.getInt(rec + 24);
+
+        List<Product> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(productAt(buf.getInt(adjacencyOff + (start + i) * 4)));
+        }
+        return result;
+    }
+
+    private int productPosition(int id) {
+        int lo = 0;
+        int hi = productCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midId = buf.getInt(productsOff + mid * PRODUCT_RECORD);
+            if (midId < id) lo = mid + 1;
+            else if (midId > id) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private Client clientAt(int pos) {
+        int rec = clientsOff + pos * CLIENT_RECORD;
+        return new Client(buf.getInt(rec), string(buf.getInt(rec + 4), buf.getInt(rec + 8)), string(buf.getInt(rec + 12), buf.getInt(rec + 16)));
+    }
+
+    private Product productAt(int pos) {
+        int rec = productsOff + pos * PRODUCT_RECORD;
+        return new Product(buf.getInt(rec), buf.getInt(rec + 4), string(buf.getInt(rec + 8), buf.getInt(rec + 12)));
+    }
+
+    private String string(int off, int len) {
+        byte[] bytes = new byte[len];
+        buf.get(stringsOff + off, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Misma regla que la collation de MySQL para CODE y NAME (sin distinguir mayúsculas)
+    static String key(String s) {
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Misma regla que la búsqueda por NAME_NORM de ProductDAO (sin tildes, mayúsculas ni espacios de más)
+    static String nameKey(String s) {
+        return TextNormalizer.normalizeName(s);
+    }
+
+    // Reparte mejor los hashes de String (que se parecen mucho entre nombres parecidos) por la tabla
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
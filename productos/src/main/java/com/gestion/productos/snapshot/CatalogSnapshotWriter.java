@@ -0,0 +1,217 @@
+package com.gestion.productos.snapshot;
+
+import com.gestion.productos.dao.ClientStore;
+import com.gestion.productos.dao.EquivalenceStore;
+import com.gestion.productos.dao.ProductStore;
+import com.gestion.productos.model.TableVersion;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Escribe un CatalogSnapshot leyendo las tablas en streaming desde los DAO.
+ *
+ * Todo se acumula en arrays de int (un producto no es un objeto, son unas cuantas posiciones de arrays)
+ * y se escribe primero a un fichero temporal que luego sustituye al anterior con un move atómico:
+ * un proceso que tenga mapeado el snapshot viejo sigue leyéndolo sin problemas.
+ */
+public class CatalogSnapshotWriter {
+
+    private final ClientStore clientDAO;
+    private final ProductStore productDAO;
+    private final EquivalenceStore equivalenceDAO;
+    private final int fetchSize;
+
+    public CatalogSnapshotWriter(ClientStore clientDAO, ProductStore productDAO, EquivalenceStore equivalenceDAO, int fetchSize) {
+        this.clientDAO = clientDAO;
+        this.productDAO = productDAO;
+        this.equivalenceDAO = equivalenceDAO;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Genera el snapshot completo y lo deja en file (sustituyendo el que hubiera).
+     *
+     * @param file destino
+     * @throws IOException si no se puede escribir o el catálogo no cabe en el formato (2 GB)
+     */
+    public void write(Path file) throws IOException {
+
+        // La versión se lee antes que los datos: si algo cambia mientras leo, el snapshot ya nace "viejo"
+        // y se detectará como tal, nunca al revés
+        TableVersion version = equivalenceDAO.getVersion();
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream(1 << 16);
+
+        // ---- Clientes (ClientDAO.forEach los da en orden de id) ----
+        IntArray clientIds = new IntArray();
+        IntArray clientFields = new IntArray(); // codeOff, codeLen, nameOff, nameLen, codeHash por cliente
+        clientDAO.forEach(fetchSize, c -> {
+            clientIds.add(c.getId());
+            addString(strings, c.getCode(), clientFields);
+            addString(strings, c.getName(), clientFields);
+            clientFields.add(CatalogSnapshot.key(c.getCode()).hashCode());
+        });
+
+        // ---- Productos (en orden de id) ----
+        IntArray productIds = new IntArray();
+        IntArray productClients = new IntArray();
+        IntArray productFields = new IntArray(); // nameOff, nameLen, nameHash por producto
+        productDAO.forEachWithIdGreaterThan(0, fetchSize, p -> {
+            productIds.add(p.getId());
+            productClients.add(p.getClienteID());
+            addString(strings, p.getName(), productFields);
+            productFields.add(CatalogSnapshot.nameKey(p.getName()).hashCode());
+        });
+
+        int productCount = productIds.size;
+        int[] ids = productIds.values;
+
+        // ---- Equivalencias: lista de adyacencia en los dos sentidos, por posición de producto ----
+        IntArray pairs = new IntArray();
+        int[] degree = new int[productCount];
+        equivalenceDAO.forEachPair(fetchSize, (a, b) -> {
+            int pa = Arrays.binarySearch(ids, 0, productCount, a);
+            int pb = Arrays.binarySearch(ids, 0, productCount, b);
+            // Productos creados después de leer PRODUCTS: se quedan fuera (el snapshot será "viejo")
+            if (pa < 0 || pb < 0) return;
+            pairs.add(pa);
+            pairs.add(pb);
+            degree[pa]++;
+            degree[pb]++;
+        });
+
+        int[] adjStart = new int[productCount + 1];
+        for (int i = 0; i < productCount; i++) {
+            adjStart[i + 1] = adjStart[i] + degree[i];
+        }
+        int[] adjacency = new int[adjStart[productCount]];
+        int[] fill = Arrays.copyOf(adjStart, productCount);
+        for (int i = 0; i < pairs.size; i += 2) {
+            int pa = pairs.values[i];
+            int pb = pairs.values[i + 1];
+            adjacency[fill[pa]++] = pb;
+            adjacency[fill[pb]++] = pa;
+        }
+        for (int i = 0; i < productCount; i++) {
+            Arrays.sort(adjacency, adjStart[i], adjStart[i + 1]);
+        }
+
+        // ---- Tablas hash (posición + 1; 0 = hueco vacío) ----
+        int clientCount = clientIds.size;
+        int[] clientIndex = new int[tableSize(clientCount)];
+        for (int i = 0; i < clientCount; i++) {
+            insert(clientIndex, CatalogSnapshot.mix(clientFields.values[i * 5 + 4]), i);
+        }
+        int[] productIndex = new int[tableSize(productCount)];
+        for (int i = 0; i < productCount; i++) {
+            insert(productIndex, CatalogSnapshot.mix(31 * productClients.values[i] + productFields.values[i * 3 + 2]), i);
+        }
+
+        // ---- Offsets ----
+        long clientsOff = CatalogSnapshot.HEADER_SIZE;
+        long clientIndexOff = clientsOff + (long) clientCount * CatalogSnapshot.CLIENT_RECORD;
+        long productsOff = clientIndexOff + clientIndex.length * 4L;
+        long productIndexOff = productsOff + (long) productCount * CatalogSnapshot.PRODUCT_RECORD;
+        long adjacencyOff = productIndexOff + productIndex.length * 4L;
+        long stringsOff = adjacencyOff + adjacency.length * 4L;
+        if (stringsOff + strings.size() > Integer.MAX_VALUE) {
+            throw new IOException("El catálogo no cabe en un snapshot (máximo 2 GB)");
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+
+            out.writeInt(CatalogSnapshot.MAGIC);
+            out.writeInt(CatalogSnapshot.FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(clientCount);
+            out.writeInt(productCount);
+            out.writeLong(version.rows());
+            out.writeLong(version.maxId());
+            out.writeInt((int) clientsOff);
+            out.writeInt((int) clientIndexOff);
+            out.writeInt(clientIndex.length);
+            out.writeInt((int) productsOff);
+            out.writeInt((int) productIndexOff);
+            out.writeInt(productIndex.length);
+            out.writeInt((int) adjacencyOff);
+            out.writeInt((int) stringsOff);
+            out.writeInt(adjacency.length);
+            out.writeInt(strings.size());
+
+            for (int i = 0; i < clientCount; i++) {
+                out.writeInt(clientIds.values[i]);
+                for (int f = 0; f < 5; f++) {
+                    out.writeInt(clientFields.values[i * 5 + f]);
+                }
+            }
+            for (int slot : clientIndex) {
+                out.writeInt(slot);
+            }
+            for (int i = 0; i < productCount; i++) {
+                out.writeInt(ids[i]);
+                out.writeInt(productClients.values[i]);
+                out.writeInt(productFields.values[i * 3]);
+                out.writeInt(productFields.values[i * 3 + 1]);
+                out.writeInt(productFields.values[i * 3 + 2]);
+                out.writeInt(adjStart[i]);
+                out.writeInt(degree[i]);
+            }
+            for (int slot : productIndex) {
+                out.writeInt(slot);
+            }
+            for (int pos : adjacency) {
+                out.writeInt(pos);
+            }
+            strings.writeTo(out);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void addString(ByteArrayOutputStream strings, String s, IntArray fields) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        fields.add(strings.size());
+        fields.add(bytes.length);
+        strings.writeBytes(bytes);
+    }
+
+    // Potencia de 2 con la tabla como mucho medio llena: las búsquedas casi nunca pasan del primer hueco
+    private static int tableSize(int n) {
+        int size = 2;
+        while (size < n * 2) size <<= 1;
+        return size;
+    }
+
+    private static void insert(int[] table, int hash, int pos) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = pos + 1;
+    }
+
+    /**
+     * Array de int que crece, sin objetos Integer.
+     */
+    private static final class IntArray {
+        private int[] values = new int[1024];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.gestion.productos.util;
+
+/**
+ * Foto de las estadísticas de una caché.
+ *
+ * @param name      nombre de la caché
+ * @param size      entradas actuales
+ * @param maxSize   máximo de entradas
+ * @param hits      aciertos
+ * @param misses    fallos (no estaba o había caducado)
+ * @param evictions entradas expulsadas por falta de sitio
+ * @param bytes     memoria aproximada de las entradas (0 = la caché no la estima)
+ */
+public record CacheStats(String name, int size, int maxSize, long hits, long misses, long evictions, long bytes) {
+
+    /**
+     * @return porcentaje de aciertos (0..1)
+     */
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "Cache " + name + ": entradas=" + size + "/" + maxSize
+            + ", aciertos=" + hits + ", fallos=" + misses
+            + ", ratio=" + String.format("%.1f%%", hitRatio() * 100)
+            + ", expulsadas=" + evictions
+            + (bytes > 0 ? ", memoria(aprox)=" + (bytes + 1023) / 1024 + " KB" : "");
+    }
+}
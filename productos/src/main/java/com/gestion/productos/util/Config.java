@@ -0,0 +1,80 @@
+package com.gestion.productos.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Configuración de la aplicación.
+ * Lee database.properties una sola vez al arrancar y deja los valores en memoria,
+ * así ni DB ni el resto de clases vuelven a tocar el classpath en cada llamada.
+ * Cualquier clave se puede sobreescribir con una propiedad de sistema (-Ddb.url=...).
+ */
+public final class Config {
+
+    private static final String FILE = "database.properties";
+    private static final Properties PROPS = load();
+
+    private Config() {
+    }
+
+    private static Properties load() {
+        Properties props = new Properties();
+
+        try (InputStream is = Config.class.getClassLoader().getResourceAsStream(FILE)) {
+            if (is == null) {
+                throw new IllegalStateException("No se encuentra el archivo " + FILE);
+            }
+            props.load(is);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error al leer el archivo de configuración: " + e.getMessage(), e);
+        }
+
+        return props;
+    }
+
+    /**
+     * @param key clave de la propiedad
+     * @return valor de la propiedad (la de sistema tiene prioridad); null si no existe
+     */
+    public static String get(String key) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = PROPS.getProperty(key);
+        }
+        return value == null ? null : value.trim();
+    }
+
+    public static String get(String key, String def) {
+        String value = get(key);
+        return value == null || value.isEmpty() ? def : value;
+    }
+
+    public static int getInt(String key, int def) {
+        String value = get(key);
+        if (value == null || value.isEmpty()) return def;
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Valor no numérico para " + key + ": " + value, e);
+        }
+    }
+
+    public static long getLong(String key, long def) {
+        String value = get(key);
+        if (value == null || value.isEmpty()) return def;
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Valor no numérico para " + key + ": " + value, e);
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean def) {
+        String value = get(key);
+        if (value == null || value.isEmpty()) return def;
+        return Boolean.parseBoolean(value);
+    }
+}
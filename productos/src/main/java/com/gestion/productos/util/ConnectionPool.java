@@ -0,0 +1,612 @@
+package com.gestion.productos.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de conexiones JDBC acotado.
+ * Mantiene entre minSize y maxSize conexiones físicas abiertas contra la base de datos.
+ * Las conexiones que devuelve son envoltorios: al hacer close() la conexión vuelve al pool
+ * en vez de cerrarse, así los DAO pueden seguir usando try-with-resources igual que antes.
+ *
+ * - Validación al prestar: si la conexión lleva más de validationIntervalMs sin usarse se comprueba con isValid().
+ * - Timeout al pedir: si no hay conexión libre en acquireTimeoutMs se lanza SQLException.
+ * - Expulsión por inactividad: un hilo en segundo plano cierra las que llevan idleTimeoutMs sin usarse
+ *   (sin bajar nunca de minSize).
+ * - Caché de sentencias por conexión física: prepareStatement(sql) y prepareStatement(sql, autoGeneratedKeys)
+ *   devuelven la misma PreparedStatement cada vez que se pide el mismo SQL en esa conexión (hasta
+ *   statementCacheSize distintas, LRU). El close() de la sentencia solo limpia los parámetros.
+ *   Con useServerPrepStmts=true en la URL el servidor tampoco vuelve a analizar el SQL.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String name;
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMs;
+    private final long acquireTimeoutMs;
+    private final int validationTimeoutSec;
+    private final long validationIntervalMs;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // Uso la cola como pila (LIFO): la última conexión devuelta es la que más probabilidad tiene de seguir viva
+    private final ArrayDeque<PooledEntry> idle = new ArrayDeque<>();
+    private int total;
+    private int waiting;
+    private boolean closed;
+
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    private final ScheduledExecutorService evictor;
+
+    // El hilo de mantenimiento lo arranca fromConfig cuando el pool ya está construido
+    private ConnectionPool(String name, String url, String user, String password,
+                          int minSize, int maxSize, long idleTimeoutMs, long acquireTimeoutMs,
+                          int validationTimeoutSec, long validationIntervalMs, int statementCacheSize) {
+
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("Falta la URL de conexión del pool " + name);
+        }
+        if (maxSize <= 0 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Tamaños de pool incorrectos: min=" + minSize + ", max=" + maxSize);
+        }
+
+        this.name = name;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.validationIntervalMs = validationIntervalMs;
+        this.statementCacheSize = statementCacheSize;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-" + name + "-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Crea un pool leyendo las claves prefix.url, prefix.user, prefix.password y prefix.pool.*
+     * de la configuración (las que falten, salvo la URL, se toman de db.*).
+     *
+     * @param name   nombre del pool (solo para logs y estadísticas)
+     * @param prefix prefijo de las claves (por ejemplo "db")
+     * @return pool configurado (todavía sin conexiones abiertas)
+     */
+    public static ConnectionPool fromConfig(String name, String prefix) {
+        return fromConfig(name, prefix, Config.get(prefix + ".url"));
+    }
+
+    /**
+     * Igual que fromConfig(name, prefix) pero con la URL ya resuelta (por ejemplo con parámetros añadidos por la aplicación).
+     */
+    public static ConnectionPool fromConfig(String name, String prefix, String url) {
+        ConnectionPool pool = new ConnectionPool(
+            name,
+            url,
+            Config.get(prefix + ".user", Config.get("db.user")),
+            Config.get(prefix + ".password", Config.get("db.password")),
+            Config.getInt(prefix + ".pool.minSize", Config.getInt("db.pool.minSize", 2)),
+            Config.getInt(prefix + ".pool.maxSize", Config.getInt("db.pool.maxSize", 10)),
+            Config.getLong(prefix + ".pool.idleTimeoutMs", Config.getLong("db.pool.idleTimeoutMs", 300_000)),
+            Config.getLong(prefix + ".pool.acquireTimeoutMs", Config.getLong("db.pool.acquireTimeoutMs", 5_000)),
+            Config.getInt(prefix + ".pool.validationTimeoutSec", Config.getInt("db.pool.validationTimeoutSec", 2)),
+            Config.getLong(prefix + ".pool.validationIntervalMs", Config.getLong("db.pool.validationIntervalMs", 1_000)),
+            Config.getInt(prefix + ".pool.statementCacheSize", Config.getInt("db.pool.statementCacheSize", 64))
+        );
+        pool.startMaintenance();
+        return pool;
+    }
+
+    private void startMaintenance() {
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre conexiones hasta llegar a minSize.
+     * No es obligatorio llamarlo: si no, el pool crea las conexiones según se van pidiendo.
+     */
+    public void warmUp() throws SQLException {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || total >= minSize) return;
+                total++;
+            } finally {
+                lock.unlock();
+            }
+
+            PooledEntry entry = createEntry();
+            lock.lock();
+            try {
+                idle.push(entry);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Presta una conexión del pool. Hay que cerrarla (close) para devolverla.
+     *
+     * @return conexión lista para usar
+     * @throws SQLException si no hay conexión libre dentro del timeout o no se puede abrir una nueva
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+
+        while (true) {
+            PooledEntry entry = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("El pool " + name + " está cerrado");
+                    }
+                    entry = idle.poll();
+                    if (entry != null) break;
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts.incrementAndGet();
+                        throw new SQLException("Timeout esperando conexión del pool " + name
+                            + " (" + acquireTimeoutMs + " ms, max=" + maxSize + ")");
+                    }
+
+                    waiting++;
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrumpido esperando conexión del pool " + name, e);
+                    } finally {
+                        waiting--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                entry = createEntry();
+            } else if (!validate(entry)) {
+                validationFailures.incrementAndGet();
+                discard(entry);
+                continue;
+            }
+
+            borrowed.incrementAndGet();
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+            return entry.lease();
+        }
+    }
+
+    /**
+     * @return foto de las estadísticas actuales del pool
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return new PoolStats(
+                name, total, idle.size(), total - idle.size(), waiting, minSize, maxSize,
+                borrowed.get(), created.get(), destroyed.get(), timeouts.get(), validationFailures.get(),
+                borrowed.get() == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get()) / borrowed.get(),
+                statementHits.get(), statementMisses.get()
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return conexiones prestadas ahora mismo (más barato que getStats, para repartir carga entre pools)
+     */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return total - idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Cierra el pool: cierra las conexiones libres y las prestadas se cierran al devolverse.
+     */
+    @Override
+    public void close() {
+        List<PooledEntry> toClose;
+
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        evictor.shutdownNow();
+        for (PooledEntry entry : toClose) {
+            discard(entry);
+        }
+    }
+
+    private PooledEntry createEntry() throws SQLException {
+        try {
+            Connection physical = DriverManager.getConnection(url, user, password);
+            created.incrementAndGet();
+            return new PooledEntry(physical);
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                total--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean validate(PooledEntry entry) {
+        if (System.currentTimeMillis() - entry.lastUsed < validationIntervalMs) {
+            return true;
+        }
+        try {
+            return entry.physical.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Cierra la conexión física y libera su hueco en el pool.
+     */
+    private void discard(PooledEntry entry) {
+        try {
+            entry.physical.close();
+        } catch (SQLException | RuntimeException ignored) {
+            // Si ya estaba rota no hay nada más que hacer; el hueco se libera igual
+        }
+        destroyed.incrementAndGet();
+
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devuelve una conexión al pool dejándola en estado limpio (autocommit activado, sin transacción abierta).
+     */
+    private void release(PooledEntry entry) {
+        boolean broken = false;
+        try {
+            if (entry.physical.isClosed()) {
+                broken = true;
+            } else {
+                if (!entry.physical.getAutoCommit()) {
+                    entry.physical.rollback();
+                    entry.physical.setAutoCommit(true);
+                }
+                if (entry.physical.isReadOnly()) {
+                    entry.physical.setReadOnly(false);
+                }
+                entry.releaseStatements();
+            }
+        } catch (SQLException e) {
+            broken = true;
+        }
+
+        if (broken) {
+            discard(entry);
+            return;
+        }
+
+        entry.lastUsed = System.currentTimeMillis();
+
+        boolean close;
+        lock.lock();
+        try {
+            close = closed;
+            if (!close) {
+                idle.push(entry);
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (close) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * Tarea periódica: expulsa conexiones inactivas por encima de minSize y repone hasta minSize.
+     * No deja escapar ninguna excepción: si una llega a scheduleWithFixedDelay la tarea se cancela sin avisar
+     * y el pool se queda sin mantenimiento para siempre.
+     */
+    private void maintain() {
+        try {
+            evictIdleAndRefill();
+        } catch (SQLException e) {
+            System.err.println("Pool " + name + ": no se pudo reponer el mínimo de conexiones (" + e.getMessage() + ")");
+        } catch (RuntimeException e) {
+            System.err.println("Pool " + name + ": error en el mantenimiento del pool (" + e + ")");
+        }
+    }
+
+    private void evictIdleAndRefill() throws SQLException {
+        List<PooledEntry> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            // Recorro desde la más antigua (final de la pila)
+            Iterator<PooledEntry> it = idle.descendingIterator();
+            int removable = total - minSize;
+            while (it.hasNext() && removable > 0) {
+                PooledEntry entry = it.next();
+                if (now - entry.lastUsed >= idleTimeoutMs) {
+                    it.remove();
+                    expired.add(entry);
+                    removable--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledEntry entry : expired) {
+            discard(entry);
+        }
+
+        warmUp();
+    }
+
+    /**
+     * Conexión física y la información que necesita el pool para gestionarla.
+     */
+    private final class PooledEntry {
+
+        private final Connection physical;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        // Solo la usa el hilo que tiene la conexión prestada, no hace falta sincronizar.
+        // accessOrder=true: la primera es la menos usada, que es la que se cierra al pasarse de tamaño
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > statementCacheSize && !eldest.getValue().inUse) {
+                    eldest.getValue().closeQuietly();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        private PooledEntry(Connection physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Sentencia de la caché para ese SQL. Si la que hay está en uso (dos sentencias iguales abiertas a la vez)
+         * se prepara una normal, sin caché.
+         */
+        private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return physical.prepareStatement(sql, autoGeneratedKeys);
+            }
+
+            String key = autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached != null && !cached.inUse) {
+                statementHits.incrementAndGet();
+                cached.inUse = true;
+                return cached.proxy;
+            }
+
+            statementMisses.incrementAndGet();
+            PreparedStatement stmt = physical.prepareStatement(sql, autoGeneratedKeys);
+            if (cached != null) {
+                return stmt;
+            }
+
+            cached = new CachedStatement(stmt);
+            cached.inUse = true;
+            statements.put(key, cached);
+            return cached.proxy;
+        }
+
+        /**
+         * Al devolver la conexión: las sentencias que alguien no cerró quedan libres para el siguiente.
+         */
+        private void releaseStatements() {
+            for (CachedStatement cached : statements.values()) {
+                cached.inUse = false;
+            }
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Lease(this)
+            );
+        }
+    }
+
+    /**
+     * Envoltorio que se entrega a los DAO. Todo se delega en la conexión física salvo close(),
+     * que devuelve la conexión al pool (solo la primera vez).
+     */
+    private final class Lease implements InvocationHandler {
+
+        private PooledEntry entry;
+
+        private Lease(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String m = method.getName();
+
+            if (m.equals("close")) {
+                PooledEntry e = entry;
+                entry = null;
+                if (e != null) release(e);
+                return null;
+            }
+            if (m.equals("isClosed")) {
+                return entry == null || entry.physical.isClosed();
+            }
+            if (m.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (m.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (m.equals("toString")) {
+                return "PooledConnection[" + name + "]";
+            }
+
+            PooledEntry e = entry;
+            if (e == null) {
+                throw new SQLException("La conexión ya se ha devuelto al pool " + name);
+            }
+
+            if (m.equals("prepareStatement")) {
+                Class<?>[] types = method.getParameterTypes();
+                if (types.length == 1) {
+                    return e.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (types.length == 2 && types[1] == int.class) {
+                    return e.prepare((String) args[0], (Integer) args[1]);
+                }
+            }
+
+            try {
+                return method.invoke(e.physical, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * PreparedStatement de la caché. Todo se delega en la sentencia real salvo close(), que solo limpia
+     * los parámetros y el batch y la deja libre para el siguiente prepareStatement del mismo SQL.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                this
+            );
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String m = method.getName();
+
+            if (m.equals("close")) {
+                if (inUse) {
+                    inUse = false;
+                    statement.clearParameters();
+                    statement.clearBatch();
+                }
+                return null;
+            }
+            if (m.equals("isClosed")) {
+                return !inUse || statement.isClosed();
+            }
+            if (m.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (m.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // Se cierra al salir de la caché; si falla no hay nada que hacer
+            }
+        }
+    }
+}
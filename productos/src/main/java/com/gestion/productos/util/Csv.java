@@ -0,0 +1,56 @@
+package com.gestion.productos.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lectura de líneas CSV separadas por comas.
+ * Soporta campos entre comillas con comas dentro y comillas escapadas como "".
+ */
+public final class Csv {
+
+    private Csv() {
+    }
+
+    /**
+     * @param line línea del fichero
+     * @return campos de la línea (sin recortar espacios)
+     * @throws IllegalArgumentException si hay comillas sin cerrar
+     */
+    public static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Comillas sin cerrar");
+        }
+
+        fields.add(current.toString());
+        return fields;
+    }
+}
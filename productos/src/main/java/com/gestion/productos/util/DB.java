@@ -1,40 +1,190 @@
 package com.gestion.productos.util;
 
-import java.io.IOException;
-import java.io.InputStream;
+import com.mysql.cj.jdbc.StatementImpl;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.sql.Statement;
+import java.util.List;
 
+/**
+ * Punto único de acceso a la base de datos.
+ * La configuración se lee una vez (Config) y las conexiones salen de un pool acotado,
+ * así que cada DAO ya no paga un handshake nuevo con MySQL en cada llamada.
+ * Los DAO siguen cerrando la conexión con try-with-resources: eso la devuelve al pool.
+ * Si el hilo tiene una UnitOfWork abierta, todos reciben la conexión de la unidad (una sola transacción).
+ *
+ * Con réplicas de lectura (db.replicas, ver ReadReplicas) las consultas de solo lectura piden getReadConnection()
+ * y van a una réplica, salvo que la sesión del hilo (ReadSession) haya escrito hace menos de db.replicas.readYourWritesMs:
+ * así quien acaba de escribir lee lo que ha escrito aunque la réplica vaya con retraso, y los demás siguen en las réplicas.
+ * Solo cuentan las escrituras que los DAO marcan con markWrite(), no cualquier uso de la principal.
+ * Si no hay ninguna réplica disponible se lee de la principal.
+ *
+ * Con shards (db.shards, ver Shards) el código que corre dentro de shards().on(...) recibe siempre conexiones
+ * de ese shard, tanto en getConnection como en getReadConnection.
+ */
 public class DB {
 
-    public static Connection getConnection() {
-        Connection con = null;
-        Properties props = new Properties();
+    private DB() {
+    }
+
+    // Holder perezoso: el pool se crea la primera vez que alguien pide una conexión
+    private static final class Holder {
+        private static final ConnectionPool POOL = ConnectionPool.fromConfig("primary", "db");
+    }
+
+    private static final class Replicas {
+        private static final ReadReplicas REPLICAS = ReadReplicas.fromConfig();
+        private static final long READ_YOUR_WRITES_MS = Config.getLong("db.replicas.readYourWritesMs", 5_000);
+    }
+
+    private static final class Sharding {
+        private static final Shards SHARDS = Shards.fromConfig();
+    }
+
+    /**
+     * @return conexión del shard si el hilo está dentro de Shards.on; si no, la de la UnitOfWork del hilo
+     *         si hay una abierta; si no, conexión del pool (cerrarla la devuelve al pool)
+     * @throws SQLException si no se puede obtener una conexión dentro del timeout configurado
+     */
+    public static Connection getConnection() throws SQLException {
+        Connection shard = Shards.currentConnection();
+        if (shard != null) {
+            return shard;
+        }
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            return uow.connection();
+        }
+        return pooledConnection();
+    }
 
-        try {
+    /**
+     * Conexión para consultas de solo lectura: una réplica si las hay y la sesión del hilo no ha escrito hace poco;
+     * si no, lo mismo que getConnection() (la UnitOfWork abierta o la principal).
+     *
+     * @return conexión (cerrarla la devuelve a su pool)
+     * @throws SQLException si no se puede obtener una conexión dentro del timeout configurado
+     */
+    public static Connection getReadConnection() throws SQLException {
+        Connection shard = Shards.currentConnection();
+        if (shard != null) {
+            return shard;
+        }
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            return uow.connection();
+        }
 
-            InputStream is = DB.class.getClassLoader().getResourceAsStream("database.properties");
-            if (is == null) {
-                throw new RuntimeException("No se encuentra el archivo database.properties");
+        ReadSession session = ReadSession.current();
+        if (Replicas.REPLICAS.isEnabled()
+            && (session == null || !session.wroteWithin(Replicas.READ_YOUR_WRITES_MS))) {
+            Connection replica = Replicas.REPLICAS.getConnection();
+            if (replica != null) {
+                return replica;
             }
-            props.load(is);
+        }
+        return Holder.POOL.getConnection();
+    }
+
+    /**
+     * @return true si hay réplicas de lectura configuradas
+     */
+    public static boolean hasReplicas() {
+        return Replicas.REPLICAS.isEnabled();
+    }
+
+    /**
+     * @return ms que las lecturas de una sesión siguen yendo a la principal después de escribir (db.replicas.readYourWritesMs)
+     */
+    public static long readYourWritesMs() {
+        return Replicas.READ_YOUR_WRITES_MS;
+    }
 
-            con = DriverManager.getConnection(
-                props.getProperty("db.url"),
-                props.getProperty("db.user"),
-                props.getProperty("db.password")
-            );
-            
-        } catch (IOException e) {
-            System.out.println("Error al leer el archivo de configuración.");
-            e.printStackTrace();
-        } catch (SQLException e) {
-            System.out.println("Error de SQL al conectar.");
-            e.printStackTrace();
+    /**
+     * @return shards de db.shards (isEnabled() = false si no hay)
+     */
+    public static Shards shards() {
+        return Sharding.SHARDS;
+    }
+
+    /**
+     * Id que ha dejado MySQL en la respuesta de la última sentencia (LAST_INSERT_ID), para los upserts con
+     * ON DUPLICATE KEY UPDATE ID = LAST_INSERT_ID(ID). Si la fila ya existía no hay filas afectadas
+     * (useAffectedRows=true) y el driver no devuelve generated keys, pero el id sí viene en la respuesta.
+     *
+     * @param stmt sentencia ya ejecutada (preparada con RETURN_GENERATED_KEYS)
+     * @return id insertado o existente; -1 si el driver no lo da
+     */
+    public static long lastInsertId(Statement stmt) throws SQLException {
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            if (keys.next()) return keys.getLong(1);
+        }
+        if (stmt.isWrapperFor(StatementImpl.class)) {
+            return stmt.unwrap(StatementImpl.class).getLastInsertID();
+        }
+        return -1;
+    }
+
+    /**
+     * Lo llaman los DAO después de cada sentencia que escribe: la sesión del hilo lee de la principal durante
+     * readYourWritesMs. Con una UnitOfWork abierta cuenta desde su commit (con rollback no cuenta).
+     */
+    public static void markWrite() {
+        markWrite(ReadSession.current());
+    }
+
+    /**
+     * Igual, para una escritura hecha en otro hilo en nombre de session (por ejemplo las altas agrupadas).
+     */
+    public static void markWrite(ReadSession session) {
+        if (session != null && Replicas.REPLICAS.isEnabled()) {
+            UnitOfWork.afterCommit(session::wrote);
         }
+    }
+
+    // Conexión directa de la principal, sin mirar la unidad de trabajo (la usan getConnection y UnitOfWork para abrirse)
+    static Connection pooledConnection() throws SQLException {
+        return Holder.POOL.getConnection();
+    }
+
+    /**
+     * @return estadísticas del pool principal
+     */
+    public static PoolStats getStats() {
+        return Holder.POOL.getStats();
+    }
+
+    /**
+     * @return estadísticas del pool de cada réplica (lista vacía si no hay)
+     */
+    public static List<PoolStats> getReplicaStats() {
+        return Replicas.REPLICAS.getStats();
+    }
+
+    /**
+     * @return veces que una lectura no ha podido usar una réplica y ha pasado a otra o a la principal
+     */
+    public static long getReplicaFailovers() {
+        return Replicas.REPLICAS.getFailovers();
+    }
+
+    /**
+     * Abre las conexiones mínimas del pool al arrancar para que la primera petición no pague el coste.
+     */
+    public static void warmUp() throws SQLException {
+        Holder.POOL.warmUp();
+        Replicas.REPLICAS.warmUp();
+        Sharding.SHARDS.warmUp();
+    }
 
-        return con;
+    /**
+     * Cierra el pool y todas sus conexiones. Se llama al salir de la aplicación.
+     */
+    public static void shutdown() {
+        Holder.POOL.close();
+        Replicas.REPLICAS.close();
+        Sharding.SHARDS.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package com.gestion.productos.util;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de long a int con direccionamiento abierto (sondeo lineal) sobre dos arrays, sin objetos por entrada:
+ * ni Long ni Integer ni nodos. Pensado para índices de ids (siempre mayores que 0), así que el valor 0
+ * significa "no está" y no se puede guardar.
+ *
+ * No se pueden borrar entradas (los índices que lo usan solo crecen) y no es thread-safe:
+ * quien lo comparta entre hilos tiene que protegerlo con su propio lock.
+ */
+public class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expected número de entradas esperado (para no redimensionar mientras se llena)
+     */
+    public LongIntHashMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return valor guardado para key; 0 si no está
+     */
+    public int get(long key) {
+        int i = slot(key);
+        while (values[i] != 0) {
+            if (keys[i] == key) return values[i];
+            i = (i + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Guarda (o sustituye) el valor de key.
+     *
+     * @param value valor distinto de 0
+     * @return valor anterior; 0 si no estaba
+     */
+    public int put(long key, int value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("El valor 0 está reservado para 'no está'");
+        }
+
+        int i = slot(key);
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) {
+            resize(keys.length << 1);
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    /**
+     * @return memoria aproximada de los arrays, en bytes
+     */
+    public long estimatedBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] == 0) continue;
+            int i = slot(oldKeys[j]);
+            while (values[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // Mezcla los bits (finalizador de MurmurHash3) para que claves consecutivas no caigan en huecos consecutivos
+    private int slot(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
@@ -0,0 +1,173 @@
+package com.gestion.productos.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Caché en memoria acotada y segura para varios hilos.
+ *
+ * - Tamaño máximo: al pasarse se expulsa la entrada más antigua según la política
+ *   (LRU = la menos usada recientemente, FIFO = la primera que entró).
+ * - TTL opcional: una entrada con más de ttlMs se considera caducada y cuenta como fallo.
+ * - Contadores de aciertos, fallos y expulsiones para ver si la caché está sirviendo de algo.
+ * - Memoria aproximada opcional: si se le da un weigher, suma lo que estima de cada entrada.
+ *
+ * @param <K> tipo de la clave
+ * @param <V> tipo del valor (no se admiten null)
+ */
+public class LruCache<K, V> {
+
+    public enum Eviction { LRU, FIFO }
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ToIntFunction<? super V> weigher;
+    private final LinkedHashMap<K, Entry<V>> map;
+    // Suma de los pesos de las entradas (bytes aproximados); protegido por map
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param name     nombre (para las estadísticas)
+     * @param maxSize  número máximo de entradas
+     * @param ttlMs    caducidad de cada entrada en ms (0 = sin caducidad)
+     * @param eviction política de expulsión
+     */
+    public LruCache(String name, int maxSize, long ttlMs, Eviction eviction) {
+        this(name, maxSize, ttlMs, eviction, null);
+    }
+
+    /**
+     * @param weigher bytes aproximados que ocupa cada valor con su entrada (null = no se estima la memoria)
+     */
+    public LruCache(String name, int maxSize, long ttlMs, Eviction eviction, ToIntFunction<? super V> weigher) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo de la caché debe ser mayor que 0");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMs <= 0 ? 0 : ttlMs * 1_000_000;
+        this.weigher = weigher;
+
+        // accessOrder=true hace que get() mueva la entrada al final: así la primera es siempre la menos usada
+        this.map = new LinkedHashMap<>(16, 0.75f, eviction == Eviction.LRU) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    weight -= eldest.getValue().weight;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Crea una caché leyendo prefix.maxSize, prefix.ttlMs y prefix.eviction de la configuración.
+     */
+    public static <K, V> LruCache<K, V> fromConfig(String name, String prefix, int defMaxSize, long defTtlMs) {
+        return fromConfig(name, prefix, defMaxSize, defTtlMs, null);
+    }
+
+    /**
+     * Igual, estimando la memoria de cada valor con weigher.
+     */
+    public static <K, V> LruCache<K, V> fromConfig(String name, String prefix, int defMaxSize, long defTtlMs,
+                                                   ToIntFunction<? super V> weigher) {
+        return new LruCache<>(
+            name,
+            Config.getInt(prefix + ".maxSize", defMaxSize),
+            Config.getLong(prefix + ".ttlMs", defTtlMs),
+            Eviction.valueOf(Config.get(prefix + ".eviction", "LRU").toUpperCase()),
+            weigher
+        );
+    }
+
+    /**
+     * @return el valor si está y no ha caducado; null en otro caso
+     */
+    public V get(K key) {
+        synchronized (map) {
+            Entry<V> e = map.get(key);
+            if (e != null && ttlNanos > 0 && System.nanoTime() - e.createdAt > ttlNanos) {
+                map.remove(key);
+                weight -= e.weight;
+                e = null;
+            }
+            if (e == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return e.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        if (value == null) return;
+        synchronized (map) {
+            Entry<V> e = new Entry<>(value, System.nanoTime(), weigher == null ? 0 : weigher.applyAsInt(value));
+            weight += e.weight;
+            Entry<V> previous = map.put(key, e);
+            if (previous != null) weight -= previous.weight;
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (map) {
+            Entry<V> removed = map.remove(key);
+            if (removed != null) weight -= removed.weight;
+        }
+    }
+
+    /**
+     * Borra las entradas cuyo valor cumpla la condición.
+     */
+    public void invalidateIf(Predicate<V> condition) {
+        synchronized (map) {
+            Iterator<Entry<V>> it = map.values().iterator();
+            while (it.hasNext()) {
+                Entry<V> e = it.next();
+                if (condition.test(e.value)) {
+                    it.remove();
+                    weight -= e.weight;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+            weight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public CacheStats getStats() {
+        int size;
+        long bytes;
+        synchronized (map) {
+            size = map.size();
+            bytes = weight;
+        }
+        return new CacheStats(name, size, maxSize, hits.get(), misses.get(), evictions.get(), bytes);
+    }
+
+    private record Entry<V>(V value, long createdAt, int weight) {
+    }
+}
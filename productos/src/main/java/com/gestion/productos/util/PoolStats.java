@@ -0,0 +1,49 @@
+package com.gestion.productos.util;
+
+/**
+ * Foto de las estadísticas de un ConnectionPool en un momento dado.
+ *
+ * @param name               nombre del pool
+ * @param total              conexiones físicas abiertas
+ * @param idle               conexiones libres
+ * @param active             conexiones prestadas ahora mismo
+ * @param waiting            hilos esperando conexión
+ * @param minSize            tamaño mínimo configurado
+ * @param maxSize            tamaño máximo configurado
+ * @param borrowed           préstamos totales desde el arranque
+ * @param created            conexiones físicas abiertas desde el arranque
+ * @param destroyed          conexiones físicas cerradas desde el arranque
+ * @param timeouts           peticiones que agotaron el timeout de espera
+ * @param validationFailures conexiones descartadas al validarlas
+ * @param avgWaitMicros      tiempo medio para obtener una conexión (microsegundos)
+ * @param statementHits      prepareStatement servidos desde la caché de sentencias
+ * @param statementMisses    prepareStatement que han tenido que preparar la sentencia
+ */
+public record PoolStats(
+    String name,
+    int total,
+    int idle,
+    int active,
+    int waiting,
+    int minSize,
+    int maxSize,
+    long borrowed,
+    long created,
+    long destroyed,
+    long timeouts,
+    long validationFailures,
+    long avgWaitMicros,
+    long statementHits,
+    long statementMisses
+) {
+
+    @Override
+    public String toString() {
+        return "Pool " + name + ": total=" + total + " (min=" + minSize + ", max=" + maxSize + ")"
+            + ", activas=" + active + ", libres=" + idle + ", esperando=" + waiting
+            + ", prestamos=" + borrowed + ", creadas=" + created + ", cerradas=" + destroyed
+            + ", timeouts=" + timeouts + ", fallosValidacion=" + validationFailures
+            + ", esperaMedia=" + avgWaitMicros + "us"
+            + ", sentenciasCache=" + statementHits + "/" + (statementHits + statementMisses);
+    }
+}
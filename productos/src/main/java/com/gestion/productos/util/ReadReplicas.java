@@ -0,0 +1,150 @@
+package com.gestion.productos.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Réplicas de lectura de la base de datos principal, cada una con su propio ConnectionPool.
+ * DB.getReadConnection() pide aquí la conexión para las consultas de solo lectura.
+ *
+ * - Reparto: ROUND_ROBIN (una réplica detrás de otra) o LEAST_BUSY (la que tiene menos conexiones prestadas).
+ * - Caídas: si una réplica no da conexión (no se puede conectar o se agota su acquireTimeoutMs) se marca
+ *   como caída durante db.replicas.retryMs y se prueba la siguiente. Si no queda ninguna, getConnection
+ *   devuelve null y DB lee de la principal.
+ *
+ * Se configuran con db.replicas=nombre1,nombre2 y, por cada una, las claves nombre.url, nombre.user,
+ * nombre.password y nombre.pool.* (las que falten se toman de db.*).
+ */
+public class ReadReplicas implements AutoCloseable {
+
+    public enum Balance {ROUND_ROBIN, LEAST_BUSY}
+
+    private final List<ConnectionPool> pools;
+    private final Balance balance;
+    private final long retryMs;
+
+    // Hasta cuándo (currentTimeMillis) se considera caída cada réplica; 0 = disponible
+    private final AtomicLongArray downUntil;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong failovers = new AtomicLong();
+
+    /**
+     * @param pools   un pool por réplica
+     * @param balance cómo se reparten las lecturas
+     * @param retryMs tiempo que se deja de usar una réplica después de un fallo
+     */
+    public ReadReplicas(List<ConnectionPool> pools, Balance balance, long retryMs) {
+        this.pools = List.copyOf(pools);
+        this.balance = balance;
+        this.retryMs = retryMs;
+        this.downUntil = new AtomicLongArray(pools.size());
+    }
+
+    /**
+     * Crea las réplicas de db.replicas (ninguna si la clave está vacía).
+     */
+    public static ReadReplicas fromConfig() {
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (String name : Config.get("db.replicas", "").split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) continue;
+            pools.add(ConnectionPool.fromConfig(name, name));
+        }
+
+        Balance balance = Balance.valueOf(Config.get("db.replicas.balance", "ROUND_ROBIN").trim().toUpperCase(Locale.ROOT));
+        return new ReadReplicas(pools, balance, Config.getLong("db.replicas.retryMs", 10_000));
+    }
+
+    /**
+     * @return true si hay alguna réplica configurada
+     */
+    public boolean isEnabled() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * Presta una conexión de una réplica disponible (cerrarla la devuelve a su pool).
+     *
+     * @return conexión; null si no hay réplicas o están todas caídas
+     */
+    public Connection getConnection() {
+        int n = pools.size();
+        if (n == 0) return null;
+
+        long now = System.currentTimeMillis();
+        int first = balance == Balance.LEAST_BUSY ? leastBusy(now) : Math.floorMod(next.getAndIncrement(), n);
+
+        for (int i = 0; i < n; i++) {
+            int idx = (first + i) % n;
+            if (downUntil.get(idx) > now) continue;
+            try {
+                return pools.get(idx).getConnection();
+            } catch (SQLException e) {
+                downUntil.set(idx, now + retryMs);
+                failovers.incrementAndGet();
+                System.err.println("Réplica " + pools.get(idx).getName() + " no disponible durante " + retryMs + " ms: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Abre las conexiones mínimas de cada réplica. Una réplica caída al arrancar solo se marca como caída.
+     */
+    public void warmUp() {
+        for (int i = 0; i < pools.size(); i++) {
+            try {
+                pools.get(i).warmUp();
+            } catch (SQLException e) {
+                downUntil.set(i, System.currentTimeMillis() + retryMs);
+                System.err.println("Réplica " + pools.get(i).getName() + " no disponible al arrancar: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return estadísticas del pool de cada réplica
+     */
+    public List<PoolStats> getStats() {
+        List<PoolStats> stats = new ArrayList<>(pools.size());
+        for (ConnectionPool pool : pools) {
+            stats.add(pool.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * @return veces que una réplica no ha dado conexión y se ha pasado a otra (o a la principal)
+     */
+    public long getFailovers() {
+        return failovers.get();
+    }
+
+    @Override
+    public void close() {
+        for (ConnectionPool pool : pools) {
+            pool.close();
+        }
+    }
+
+    // La réplica disponible con menos conexiones prestadas (si están todas caídas, la primera)
+    private int leastBusy(long now) {
+        int best = 0;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < pools.size(); i++) {
+            if (downUntil.get(i) > now) continue;
+            int active = pools.get(i).getActiveCount();
+            if (active < bestActive) {
+                best = i;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+}
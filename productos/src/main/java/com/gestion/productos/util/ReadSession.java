@@ -0,0 +1,81 @@
+package com.gestion.productos.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sesión para leer lo propio con réplicas de lectura (db.replicas.readYourWritesMs): recuerda cuándo escribió
+ * por última vez quien la usa. Mientras no haya pasado readYourWritesMs desde entonces, DB.getReadConnection()
+ * manda sus lecturas a la principal; las de las demás sesiones siguen yendo a las réplicas.
+ *
+ * Una sesión es quien espera ver lo que escribe, no un hilo: el usuario del menú (Main), una petición HTTP
+ * (ApiServer la reconstruye con la cabecera X-Last-Write que devolvió la respuesta anterior) y las tareas
+ * de AsyncService que lanza esa petición, aunque corran en otros hilos virtuales.
+ *
+ * Solo cuentan las escrituras de verdad: los DAO llaman a DB.markWrite() después de cada sentencia que escribe,
+ * y con una UnitOfWork abierta la marca se pone al hacer commit. Leer de la principal (por ejemplo comprobar
+ * la versión de EQUIVALENCES) no cuenta.
+ */
+public final class ReadSession {
+
+    private static final ThreadLocal<ReadSession> CURRENT = new ThreadLocal<>();
+
+    // Última escritura confirmada (currentTimeMillis); 0 = ninguna
+    private final AtomicLong lastWrite;
+
+    public ReadSession() {
+        this(0);
+    }
+
+    /**
+     * @param lastWriteMillis última escritura que ya conoce quien la abre (por ejemplo la que trae una cabecera HTTP)
+     */
+    public ReadSession(long lastWriteMillis) {
+        this.lastWrite = new AtomicLong(Math.max(0, lastWriteMillis));
+    }
+
+    /**
+     * Ejecuta el trabajo con esta sesión en el hilo y deja después la que hubiera.
+     */
+    public static <T, E extends Exception> T with(ReadSession session, UnitOfWork.Work<T, E> work) throws E {
+        ReadSession previous = CURRENT.get();
+        CURRENT.set(session);
+        try {
+            return work.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return la sesión del hilo; null si el hilo no trabaja para ninguna (entonces se lee de las réplicas)
+     */
+    public static ReadSession current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Apunta una escritura confirmada ahora.
+     */
+    public void wrote() {
+        lastWrite.accumulateAndGet(System.currentTimeMillis(), Math::max);
+    }
+
+    /**
+     * @return última escritura (currentTimeMillis); 0 si la sesión no ha escrito
+     */
+    public long lastWriteMillis() {
+        return lastWrite.get();
+    }
+
+    /**
+     * @return true si la sesión ha escrito hace menos de ms milisegundos
+     */
+    public boolean wroteWithin(long ms) {
+        long last = lastWrite.get();
+        return last != 0 && System.currentTimeMillis() - last < ms;
+    }
+}
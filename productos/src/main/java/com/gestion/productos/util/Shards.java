@@ -0,0 +1,276 @@
+package com.gestion.productos.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Reparto horizontal (shards) de PRODUCTS y EQUIVALENCES en varias bases de datos, cada una con su ConnectionPool.
+ * CLIENTS sigue en la principal (db.url); cada cliente vive entero en un shard con todos sus productos.
+ *
+ * - Cliente → shard: el de db.shards.clients si aparece ahí; si no, CLIENT_ID módulo número de shards.
+ *   Antes de añadir un shard hay que fijar en db.shards.clients los clientes que ya tienen productos (o moverlos).
+ * - Id → shard: cada shard reparte sus AUTO_INCREMENT con paso db.shards.idStride (por defecto el número de shards)
+ *   y empieza en su posición (1, 2, ...): el id n es del shard (n - 1) % idStride, sin preguntar a nadie.
+ *   La aplicación lo fija en cada conexión (sessionVariables en la URL) y warmUp comprueba que se ha aplicado.
+ * - on(shard, ...) ejecuta código con las conexiones de ese shard: mientras dura, DB.getConnection y
+ *   DB.getReadConnection del hilo devuelven conexiones del shard (antes que la UnitOfWork o las réplicas).
+ *   Así los DAO de siempre trabajan sobre un shard sin cambiar su SQL.
+ * - onEach / onAll lanzan lo mismo en varios shards a la vez (un hilo por shard, el primero en el hilo que llama).
+ *
+ * Se configuran con db.shards=nombre1,nombre2 y, por cada uno, nombre.url, nombre.user, nombre.password
+ * y nombre.pool.* (las que falten se toman de db.*). El esquema de cada shard está en sql/shard_schema.sql.
+ */
+public class Shards implements AutoCloseable {
+
+    // Pool del shard en el que está trabajando el hilo (on); null = fuera de cualquier shard
+    private static final ThreadLocal<ConnectionPool> CURRENT = new ThreadLocal<>();
+
+    private final List<ConnectionPool> pools;
+    private final Map<Integer, Integer> clientShards;
+    private final int idStride;
+    private final ExecutorService executor;
+
+    /**
+     * @param pools        un pool por shard, en el orden de db.shards (posición = número de shard)
+     * @param clientShards shard fijo de algunos clientes (CLIENT_ID → posición); el resto por módulo
+     * @param idStride     paso de los AUTO_INCREMENT (al menos el número de shards)
+     * @param threads      hilos para las consultas en paralelo
+     */
+    public Shards(List<ConnectionPool> pools, Map<Integer, Integer> clientShards, int idStride, int threads) {
+        if (!pools.isEmpty() && idStride < pools.size()) {
+            throw new IllegalArgumentException("db.shards.idStride (" + idStride + ") no puede ser menor que el número de shards (" + pools.size() + ")");
+        }
+        this.pools = List.copyOf(pools);
+        this.clientShards = Map.copyOf(clientShards);
+        this.idStride = Math.max(1, idStride);
+
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = pools.size() < 2 ? null : Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "shard-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Crea los shards de db.shards (ninguno si la clave está vacía).
+     */
+    public static Shards fromConfig() {
+        List<String> names = new ArrayList<>();
+        for (String name : Config.get("db.shards", "").split(",")) {
+            if (!name.trim().isEmpty()) names.add(name.trim());
+        }
+
+        int idStride = Config.getInt("db.shards.idStride", names.size());
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            pools.add(ConnectionPool.fromConfig(name, name, withIdSequence(Config.get(name + ".url"), idStride, i + 1)));
+        }
+
+        Map<Integer, Integer> clientShards = new HashMap<>();
+        for (String entry : Config.get("db.shards.clients", "").split(",")) {
+            if (entry.trim().isEmpty()) continue;
+            String[] parts = entry.split(":");
+            int shard = parts.length == 2 ? names.indexOf(parts[1].trim()) : -1;
+            if (shard < 0) {
+                throw new IllegalArgumentException("db.shards.clients: entrada no válida (CLIENT_ID:shard): " + entry.trim());
+            }
+            clientShards.put(Integer.parseInt(parts[0].trim()), shard);
+        }
+
+        return new Shards(pools, clientShards, idStride, Config.getInt("db.shards.threads", 2 * names.size()));
+    }
+
+    /**
+     * @return true si hay shards configurados
+     */
+    public boolean isEnabled() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * @return número de shards
+     */
+    public int size() {
+        return pools.size();
+    }
+
+    /**
+     * @return paso de los AUTO_INCREMENT: el id n es del shard (n - 1) % idStride
+     */
+    public int idStride() {
+        return idStride;
+    }
+
+    /**
+     * @param clientId CLIENT_ID
+     * @return shard donde viven los productos del cliente
+     */
+    public int shardOfClient(int clientId) {
+        Integer fixed = clientShards.get(clientId);
+        return fixed != null ? fixed : Math.floorMod(clientId, pools.size());
+    }
+
+    /**
+     * @param id id de producto o de equivalencia
+     * @return shard que lo ha generado; -1 si no corresponde a ninguno (id no válido o posición sin shard)
+     */
+    public int shardOfId(long id) {
+        if (id <= 0) return -1;
+        int shard = (int) ((id - 1) % idStride);
+        return shard < pools.size() ? shard : -1;
+    }
+
+    /**
+     * Ejecuta body con las conexiones del shard: DB.getConnection/getReadConnection del hilo van a él mientras dura.
+     *
+     * @param shard número de shard
+     * @param body  código a ejecutar (normalmente llamadas a los DAO)
+     * @return lo que devuelva body
+     */
+    public <T> T on(int shard, Supplier<T> body) {
+        ConnectionPool previous = CURRENT.get();
+        CURRENT.set(pools.get(shard));
+        try {
+            return body.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Lo mismo que onEach con todos los shards.
+     */
+    public <T> List<T> onAll(IntFunction<T> body) {
+        List<Integer> all = new ArrayList<>(pools.size());
+        for (int i = 0; i < pools.size(); i++) {
+            all.add(i);
+        }
+        return onEach(all, body);
+    }
+
+    /**
+     * Ejecuta body(shard) en cada shard de la lista a la vez, cada uno con las conexiones de su shard (ver on).
+     * Espera a todos; si alguno falla, relanza el primer error después de que hayan terminado los demás.
+     *
+     * @param shards números de shard
+     * @param body   código a ejecutar con el número de shard
+     * @return resultado de cada shard, en el orden de la lista
+     */
+    public <T> List<T> onEach(List<Integer> shards, IntFunction<T> body) {
+        List<T> results = new ArrayList<>(shards.size());
+        if (shards.size() == 1 || executor == null) {
+            for (int shard : shards) {
+                results.add(on(shard, () -> body.apply(shard)));
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 1; i < shards.size(); i++) {
+            int shard = shards.get(i);
+            futures.add(executor.submit(() -> on(shard, () -> body.apply(shard))));
+        }
+
+        RuntimeException error = null;
+        try {
+            results.add(on(shards.get(0), () -> body.apply(shards.get(0))));
+        } catch (RuntimeException e) {
+            error = e;
+        }
+
+        boolean interrupted = false;
+        for (Future<T> future : futures) {
+            try {
+                while (true) {
+                    try {
+                        results.add(future.get());
+                        break;
+                    } catch (InterruptedException e) {
+                        // Hay que esperar igualmente: la tarea tiene una conexión del shard prestada
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (error != null) throw error;
+        return results;
+    }
+
+    /**
+     * Abre las conexiones mínimas de cada shard y comprueba que el AUTO_INCREMENT de cada uno sigue su secuencia.
+     *
+     * @throws SQLException si un shard no responde o su secuencia de ids no es la esperada
+     */
+    public void warmUp() throws SQLException {
+        for (int i = 0; i < pools.size(); i++) {
+            ConnectionPool pool = pools.get(i);
+            pool.warmUp();
+
+            try (Connection con = pool.getConnection();
+                 PreparedStatement stmt = con.prepareStatement("SELECT @@SESSION.auto_increment_increment, @@SESSION.auto_increment_offset");
+                 ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                if (rs.getInt(1) != idStride || rs.getInt(2) != i + 1) {
+                    throw new SQLException("Shard " + pool.getName() + ": auto_increment_increment=" + rs.getInt(1)
+                        + " y auto_increment_offset=" + rs.getInt(2) + ", se esperaba " + idStride + " y " + (i + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return estadísticas del pool de cada shard
+     */
+    public List<PoolStats> getStats() {
+        List<PoolStats> stats = new ArrayList<>(pools.size());
+        for (ConnectionPool pool : pools) {
+            stats.add(pool.getStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) executor.shutdownNow();
+        for (ConnectionPool pool : pools) {
+            pool.close();
+        }
+    }
+
+    // Conexión del shard en el que está trabajando el hilo; null si no está dentro de on()
+    static Connection currentConnection() throws SQLException {
+        ConnectionPool pool = CURRENT.get();
+        return pool == null ? null : pool.getConnection();
+    }
+
+    // Cada conexión del shard reparte los AUTO_INCREMENT con paso idStride empezando en offset (variables de sesión de MySQL)
+    private static String withIdSequence(String url, int idStride, int offset) {
+        if (url == null || url.isEmpty()) return url;
+        return url + (url.contains("?") ? "&" : "?")
+            + "sessionVariables=auto_increment_increment=" + idStride + ",auto_increment_offset=" + offset;
+    }
+}
@@ -0,0 +1,106 @@
+package com.gestion.productos.util;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Normalización de nombres de producto para poder compararlos entre clientes.
+ * Cada retailer escribe el mismo producto a su manera (mayúsculas, tildes, "50ml" vs "50 ML"...),
+ * así que antes de comparar lo paso todo a una forma común.
+ */
+public final class TextNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern NON_ALNUM = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Separa números de letras pegados: "50ml" -> "50 ml", "128gb" -> "128 gb"
+    private static final Pattern DIGIT_LETTER = Pattern.compile("(?<=\\p{N})(?=\\p{L})|(?<=\\p{L})(?=\\p{N})");
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Recorta, pasa a minúsculas, quita tildes y deja solo letras/números separados por un espacio.
+     *
+     * @param s texto original
+     * @return texto normalizado ("" si es null)
+     */
+    public static String normalize(String s) {
+        if (s == null) return "";
+
+        String text = Normalizer.normalize(s, Normalizer.Form.NFD);
+        text = MARKS.matcher(text).replaceAll("");
+        text = text.toLowerCase(Locale.ROOT);
+        text = NON_ALNUM.matcher(text).replaceAll(" ");
+        return text.trim();
+    }
+
+    /**
+     * Forma normalizada del nombre para búsquedas exactas (columna PRODUCTS.NAME_NORM).
+     * Más conservadora que normalize(): quita tildes, pasa a minúsculas y junta los espacios,
+     * pero respeta la puntuación ("A-1" y "A 1" siguen siendo nombres distintos).
+     *
+     * @param s nombre original
+     * @return nombre normalizado ("" si es null)
+     */
+    public static String normalizeName(String s) {
+        if (s == null) return "";
+
+        String text = Normalizer.normalize(s, Normalizer.Form.NFD);
+        text = MARKS.matcher(text).replaceAll("");
+        text = text.toLowerCase(Locale.ROOT);
+        text = SPACES.matcher(text).replaceAll(" ");
+        return text.trim();
+    }
+
+    /**
+     * Clave con la que MySQL compara CODE y NAME (collation utf8mb4_0900_ai_ci): sin tildes ni mayúsculas,
+     * pero sin tocar espacios ni puntuación. Es la regla de los UNIQUE de schema.sql.
+     *
+     * @param s texto original
+     * @return clave de comparación ("" si es null)
+     */
+    public static String collationKey(String s) {
+        if (s == null) return "";
+
+        String text = Normalizer.normalize(s, Normalizer.Form.NFD);
+        text = MARKS.matcher(text).replaceAll("");
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Hash compacto (CRC32, 4 bytes sin signo) del nombre ya normalizado, para la columna indexada PRODUCTS.NAME_HASH.
+     *
+     * @param normalizedName resultado de normalizeName
+     * @return valor entre 0 y 2^32 - 1
+     */
+    public static long nameHash(String normalizedName) {
+        CRC32 crc = new CRC32();
+        crc.update(normalizedName.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Palabras del texto normalizado, separando además números y unidades ("50ml" -> "50", "ml").
+     *
+     * @param s texto original
+     * @return lista de palabras (vacía si no hay ninguna)
+     */
+    public static List<String> tokens(String s) {
+        String text = normalize(s);
+        List<String> tokens = new ArrayList<>();
+        if (text.isEmpty()) return tokens;
+
+        for (String word : text.split(" ")) {
+            for (String part : DIGIT_LETTER.split(word)) {
+                if (!part.isEmpty()) tokens.add(part);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,78 @@
+package com.gestion.productos.util;
+
+/**
+ * Union-find (conjuntos disjuntos) sobre índices 0..n-1 con arrays de int.
+ * Uso unión por tamaño y compresión de caminos, así que find/union son prácticamente O(1).
+ * Lo uso para calcular los grupos (clusters) de productos equivalentes.
+ */
+public class UnionFind {
+
+    private final int[] parent;
+    private final int[] size;
+
+    public UnionFind(int n) {
+        this.parent = new int[n];
+        this.size = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    /**
+     * @param weights peso inicial de cada elemento (por ejemplo, tamaño del grupo que representa)
+     */
+    public UnionFind(int[] weights) {
+        this(weights.length);
+        System.arraycopy(weights, 0, size, 0, weights.length);
+    }
+
+    /**
+     * @param x elemento
+     * @return representante del conjunto al que pertenece x
+     */
+    public int find(int x) {
+        int root = x;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // Compresión de caminos: dejo todo el recorrido apuntando directamente a la raíz
+        while (parent[x] != root) {
+            int next = parent[x];
+            parent[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    /**
+     * Une los conjuntos de a y b. El conjunto más pequeño se cuelga del más grande.
+     *
+     * @return representante del conjunto resultante
+     */
+    public int union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) return ra;
+
+        if (size[ra] < size[rb] || (size[ra] == size[rb] && rb < ra)) {
+            int tmp = ra;
+            ra = rb;
+            rb = tmp;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+        return ra;
+    }
+
+    /**
+     * @return tamaño (o peso acumulado) del conjunto de x
+     */
+    public int sizeOf(int x) {
+        return size[find(x)];
+    }
+
+    public int capacity() {
+        return parent.length;
+    }
+}
@@ -0,0 +1,265 @@
+package com.gestion.productos.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unidad de trabajo: una conexión y una transacción para todo un caso de uso, en vez de una conexión
+ * y un autocommit por cada método de DAO.
+ *
+ * Mientras hay una abierta en el hilo, DB.getConnection() devuelve siempre su conexión, así que los DAO
+ * se unen a ella sin cambiar nada: siguen usando try-with-resources y el close() no hace nada.
+ * Las sentencias preparadas salen de la caché por conexión del pool (ver ConnectionPool), así que
+ * repetir el mismo SQL dentro de la unidad no lo vuelve a preparar.
+ *
+ * Los DAO que gestionan su propia transacción también se pueden usar dentro: setAutoCommit y commit
+ * no hacen nada (el commit lo hace la unidad al final) y rollback deshace toda la unidad y la deja marcada
+ * para terminar con rollback.
+ *
+ * Uso normal: UnitOfWork.inTransaction(() -> ...). Si ya hay una abierta en el hilo, se une a ella.
+ * También se puede usar a mano con begin(), commit() / rollback() y close() (try-with-resources).
+ */
+public final class UnitOfWork implements AutoCloseable {
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Trabajo a ejecutar dentro de la unidad.
+     */
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private final Connection connection;
+    private final Connection shared;
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private boolean pending;
+    private boolean rollbackOnly;
+    private boolean closed;
+
+    private UnitOfWork(Connection connection) {
+        this.connection = connection;
+        this.shared = (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            new Joined()
+        );
+    }
+
+    /**
+     * Abre una unidad de trabajo en este hilo: pide una conexión al pool y empieza una transacción.
+     *
+     * @return unidad abierta (hay que cerrarla, mejor con try-with-resources)
+     * @throws SQLException si no se puede obtener la conexión
+     * @throws IllegalStateException si ya hay una abierta en este hilo
+     */
+    public static UnitOfWork begin() throws SQLException {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("Ya hay una unidad de trabajo abierta en este hilo");
+        }
+
+        Connection con = DB.pooledConnection();
+        try {
+            con.setAutoCommit(false);
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+
+        UnitOfWork uow = new UnitOfWork(con);
+        CURRENT.set(uow);
+        return uow;
+    }
+
+    /**
+     * Ejecuta el trabajo en una unidad de trabajo: commit si termina bien, rollback si lanza una excepción.
+     * Si el hilo ya tiene una abierta, el trabajo se une a ella (el commit lo hará la de fuera).
+     *
+     * @param work trabajo a ejecutar
+     * @return lo que devuelva el trabajo
+     */
+    public static <T, E extends Exception> T inTransaction(Work<T, E> work) throws E {
+        if (CURRENT.get() != null) {
+            return work.run();
+        }
+
+        UnitOfWork uow;
+        try {
+            uow = begin();
+        } catch (SQLException e) {
+            throw new RuntimeException("Error en UnitOfWork.begin: " + e.getMessage(), e);
+        }
+
+        try (uow) {
+            T result = work.run();
+            try {
+                uow.commit();
+            } catch (SQLException e) {
+                throw new RuntimeException("Error en UnitOfWork.commit: " + e.getMessage(), e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return la unidad abierta en este hilo; null si no hay ninguna
+     */
+    public static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Ejecuta la acción cuando la unidad de trabajo del hilo haga commit (se descarta si termina con rollback).
+     * Sin unidad abierta se ejecuta en el momento. Sirve para avisar a cachés e índices solo de datos confirmados.
+     */
+    public static void afterCommit(Runnable action) {
+        UnitOfWork uow = CURRENT.get();
+        if (uow == null) {
+            action.run();
+        } else {
+            uow.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * @return conexión de la unidad para los DAO (close, commit y setAutoCommit no hacen nada)
+     */
+    public Connection connection() {
+        checkOpen();
+        return shared;
+    }
+
+    /**
+     * Marca la unidad para que termine con rollback en vez de commit (sin lanzar ninguna excepción).
+     */
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    /**
+     * Confirma la transacción (o la deshace si está marcada para rollback) y ejecuta las acciones de afterCommit.
+     * La unidad sigue abierta: lo que se haga después va en una transacción nueva.
+     */
+    public void commit() throws SQLException {
+        checkOpen();
+        if (rollbackOnly) {
+            rollback();
+            return;
+        }
+
+        connection.commit();
+        pending = false;
+
+        List<Runnable> actions = new ArrayList<>(afterCommit);
+        afterCommit.clear();
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    /**
+     * Deshace la transacción y descarta las acciones de afterCommit.
+     */
+    public void rollback() throws SQLException {
+        checkOpen();
+        afterCommit.clear();
+        rollbackOnly = false;
+        if (pending) {
+            pending = false;
+            connection.rollback();
+        }
+    }
+
+    /**
+     * Cierra la unidad: deshace lo que no se haya confirmado y devuelve la conexión al pool.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        CURRENT.remove();
+
+        try {
+            if (pending) {
+                connection.rollback();
+            }
+        } catch (SQLException ignored) {
+            // Si la conexión está rota el pool la descarta al devolverla
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // close() de la conexión del pool solo la devuelve; no debería fallar
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("La unidad de trabajo ya está cerrada");
+        }
+    }
+
+    /**
+     * Conexión que reciben los DAO dentro de la unidad.
+     */
+    private final class Joined implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String m = method.getName();
+            int argCount = args == null ? 0 : args.length;
+
+            switch (m) {
+                case "close", "setAutoCommit", "setReadOnly":
+                    return null;
+                case "commit":
+                    // Lo confirma la unidad al terminar
+                    return null;
+                case "getAutoCommit":
+                    return false;
+                case "isClosed":
+                    return closed || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "UnitOfWork[" + connection + "]";
+                default:
+                    break;
+            }
+
+            if (m.equals("rollback") && argCount == 0) {
+                // Un DAO que deshace su parte deshace toda la unidad: no se puede confirmar la mitad de un caso de uso
+                afterCommit.clear();
+                rollbackOnly = true;
+                pending = false;
+                connection.rollback();
+                return null;
+            }
+
+            if (closed) {
+                throw new SQLException("La unidad de trabajo ya está cerrada");
+            }
+
+            pending = true;
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}